@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import android.test.AndroidTestCase;
+
+import java.util.Date;
+
+public class ChangeTrackingTest extends AndroidTestCase {
+
+    public void testFestivalSetterMarksOnlyChangedFields() throws Exception {
+        Festival festival = festival();
+        assertFalse(festival.isDirty());
+
+        festival.setName("Fest");
+        festival.setVotes(0);
+        assertFalse(festival.isDirty());
+
+        festival.setGenre("Metal");
+        festival.setOfficial(true);
+        assertEquals(Festival.FIELD_GENRE | Festival.FIELD_OFFICIAL, festival.getDirtyFields());
+
+        festival.clearDirtyFields();
+        assertEquals(0, festival.getDirtyFields());
+    }
+
+    public void testFestivalContentHash() throws Exception {
+        Festival festival = festival();
+        Festival same = festival();
+        same.setId(42L);
+        assertEquals(festival.getContentHash(), same.getContentHash());
+
+        long hash = festival.getContentHash();
+        festival.setPrices("50");
+        assertTrue(hash != festival.getContentHash());
+        festival.setPrices("40");
+        assertEquals(hash, festival.getContentHash());
+    }
+
+    public void testFestivalContentHashSeparatesFields() throws Exception {
+        Festival festival = festival();
+        Festival shifted = festival();
+        festival.setCountry("ab");
+        festival.setCity("c");
+        shifted.setCountry("a");
+        shifted.setCity("bc");
+        assertTrue(festival.getContentHash() != shifted.getContentHash());
+    }
+
+    public void testConcertContentHash() throws Exception {
+        Festival festival = festival();
+        Concert concert = concert(festival);
+        Concert same = concert(festival);
+        assertEquals(concert.getContentHash(), same.getContentHash());
+
+        long hash = concert.getContentHash();
+        concert.setNotify(true);
+        assertEquals(Concert.FIELD_NOTIFY, concert.getDirtyFields());
+        assertEquals(hash, concert.getContentHash());
+
+        concert.setEnd(new Date(3_000));
+        assertEquals(Concert.FIELD_NOTIFY | Concert.FIELD_END, concert.getDirtyFields());
+        assertTrue(hash != concert.getContentHash());
+    }
+
+    public void testRestoredContentHashUsed() throws Exception {
+        Festival festival = festival();
+        festival.setContentHash(5);
+        assertEquals(5, festival.getContentHash());
+        festival.setName("Renamed");
+        assertTrue(festival.getContentHash() != 5);
+    }
+
+    private static Festival festival() {
+        return new Festival(null, 1, "Fest", "Open air", "Bulgaria", "Sofia", "Park", "Rock",
+                "40", "owner", false, 0);
+    }
+
+    private static Concert concert(Festival festival) {
+        return new Concert(null, 7, festival, "Artist", 1, 2, new Date(1_000), new Date(2_000),
+                false);
+    }
+}
@@ -23,11 +23,17 @@ import com.ivanbratoev.festpal.datamodel.db.internal.InternalDatabaseHandler;
 
 import junit.framework.Assert;
 
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 
 import java.util.Date;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -139,8 +145,8 @@ public class DataModelTest extends InstrumentationTestCase {
         } else {
             Assert.assertEquals(festival2Name, result.getName());
         }
-        verify(internalDatabaseHandler).editFestival(id, festival2Name,
-                null, null, null, null, null, null, null, null, null);
+        verify(internalDatabaseHandler).updateFestival(festival1);
+        Assert.assertEquals(Festival.FIELD_NAME, festival1.getDirtyFields());
     }
 
     public void testWriteFestivalInfoOnlineWrongUsername() throws Exception {
@@ -292,15 +298,17 @@ public class DataModelTest extends InstrumentationTestCase {
         Festival festival = festival(fest, "testFest");
         Concert concert = concert(concertId, festival, artist);
         when(internalDatabaseHandler.getConcert(festival, concertId)).thenReturn(null);
-        when(internalDatabaseHandler.addConcert(concert)).thenReturn(concertId);
-        when(externalDatabaseHandler.writeConcertInfo(concertId, concert.getArtist(),
-                concert.getStage(), concert.getDay(),
-                concert.getStart(), concert.getEnd())).thenReturn(true);
+        when(internalDatabaseHandler.addConcerts(any(Concert[].class)))
+                .thenReturn(new long[]{concertId});
+        when(externalDatabaseHandler.readFestivalConcerts(festival)).thenReturn(new Concert[0]);
+        when(externalDatabaseHandler.writeConcertInfoBatch(eq(festival.getExternalId()),
+                any(Concert[].class))).thenReturn(new boolean[]{true});
         Assert.assertTrue(dataModel.writeConcertInfo(concert, true));
-        verify(internalDatabaseHandler).addConcert(concert);
-        verify(externalDatabaseHandler).writeConcertInfo(concertId, concert.getArtist(),
-                concert.getStage(), concert.getDay(),
-                concert.getStart(), concert.getEnd());
+        verify(internalDatabaseHandler).addConcerts(new Concert[]{concert});
+        verify(externalDatabaseHandler).writeConcertInfoBatch(festival.getExternalId(),
+                new Concert[]{concert});
+        verify(externalDatabaseHandler, never()).writeConcertInfo(anyLong(), anyString(),
+                anyInt(), anyInt(), any(Date.class), any(Date.class));
     }
 
     public void testWriteConcertInfoNewServerError() throws Exception {
@@ -310,11 +318,11 @@ public class DataModelTest extends InstrumentationTestCase {
         Festival festival = festival(fest, "testFest");
         Concert concert = concert(concertId, festival, artist);
         when(internalDatabaseHandler.getConcert(festival, concertId)).thenReturn(null);
-        when(externalDatabaseHandler.writeConcertInfo(concertId, concert.getArtist(),
-                concert.getStage(), concert.getDay(),
-                concert.getStart(), concert.getEnd())).thenReturn(false);
+        when(externalDatabaseHandler.readFestivalConcerts(festival)).thenReturn(new Concert[0]);
+        when(externalDatabaseHandler.writeConcertInfoBatch(eq(festival.getExternalId()),
+                any(Concert[].class))).thenReturn(new boolean[]{false});
         Assert.assertFalse(dataModel.writeConcertInfo(concert, true));
-        verify(internalDatabaseHandler, never()).addConcert(concert);
+        verify(internalDatabaseHandler, never()).addConcerts(any(Concert[].class));
     }
 
     public void testWriteConcertInfoUpdateSuccessful() throws Exception {
@@ -326,15 +334,22 @@ public class DataModelTest extends InstrumentationTestCase {
         Concert concert = concert(concertId, festival, artist);
         Concert concertUpdated = concert(concertId, festival, artistUpdated);
         when(internalDatabaseHandler.getConcert(festival, concertId)).thenReturn(concert);
-        when(externalDatabaseHandler.readConcertInfo(festival, concertId)).thenReturn(concert);
-        when(externalDatabaseHandler.updateConcertInfo(concertId, concertUpdated.getArtist(),
-                null, null, null, null)).thenReturn(true);
+        when(externalDatabaseHandler.readFestivalConcerts(festival))
+                .thenReturn(new Concert[]{concert});
+        ArgumentCaptor<ExternalDatabaseHandler.ConcertUpdate[]> updates =
+                ArgumentCaptor.forClass(ExternalDatabaseHandler.ConcertUpdate[].class);
+        when(externalDatabaseHandler.updateConcertInfoBatch(updates.capture()))
+                .thenReturn(new boolean[]{true});
         Assert.assertTrue(dataModel.writeConcertInfo(concertUpdated, true));
-        verify(internalDatabaseHandler).editConcert(concertUpdated.getId(),
-                concertUpdated.getExternalId(),
-                null, concertUpdated.getArtist(), null, null, null, null, null);
-        verify(externalDatabaseHandler).updateConcertInfo(concertId, concertUpdated.getArtist(),
-                null, null, null, null);
+        verify(internalDatabaseHandler).updateConcert(concert);
+        Assert.assertEquals(artistUpdated, concert.getArtist());
+        verify(internalDatabaseHandler).setFestivalDigest(festival, null);
+        Assert.assertEquals(1, updates.getValue().length);
+        Assert.assertEquals(concertId, updates.getValue()[0].getId());
+        Assert.assertEquals(artistUpdated, updates.getValue()[0].getArtist());
+        Assert.assertNull(updates.getValue()[0].getStage());
+        verify(externalDatabaseHandler, never()).updateConcertInfo(anyLong(), anyString(),
+                anyInt(), anyInt(), any(Date.class), any(Date.class));
     }
 
     public void testWriteConcertInfoUpdateServerError() throws Exception {
@@ -346,16 +361,30 @@ public class DataModelTest extends InstrumentationTestCase {
         Concert concert = concert(concertId, festival, artist);
         Concert concertUpdated = concert(concertId, festival, artistUpdated);
         when(internalDatabaseHandler.getConcert(festival, concertId)).thenReturn(concert);
-        when(externalDatabaseHandler.readConcertInfo(festival, concertId)).thenReturn(concert);
-        when(externalDatabaseHandler.updateConcertInfo(concertId, concertUpdated.getArtist(),
-                concertUpdated.getStage(), concertUpdated.getDay(),
-                concertUpdated.getStart(), concertUpdated.getEnd())).thenReturn(false);
+        when(externalDatabaseHandler.readFestivalConcerts(festival))
+                .thenReturn(new Concert[]{concert});
+        when(externalDatabaseHandler.updateConcertInfoBatch(
+                any(ExternalDatabaseHandler.ConcertUpdate[].class)))
+                .thenReturn(new boolean[]{false});
         Assert.assertFalse(dataModel.writeConcertInfo(concertUpdated, true));
-        verify(internalDatabaseHandler, never()).editConcert(concertUpdated.getId(),
-                null, null, concertUpdated.getArtist(), null, null, null, null, null);
-        verify(externalDatabaseHandler).updateConcertInfo(concertId, concertUpdated.getArtist(),
-                null, null,
-                null, null);
+        verify(internalDatabaseHandler, never()).updateConcert(any(Concert.class));
+        verify(externalDatabaseHandler).updateConcertInfoBatch(
+                any(ExternalDatabaseHandler.ConcertUpdate[].class));
+    }
+
+    public void testWriteConcertInfoNotifyKeepsDigest() throws Exception {
+        long fest = 0;
+        long concertId = 0;
+        Festival festival = festival(fest, "testFest");
+        Concert concert = concert(concertId, festival, "The Testers");
+        Concert concertNotified = concert(concertId, festival, "The Testers");
+        concertNotified.setNotify(true);
+        when(internalDatabaseHandler.getConcert(festival, concertId)).thenReturn(concert);
+        Assert.assertTrue(dataModel.writeConcertInfo(concertNotified, false));
+        verify(internalDatabaseHandler).updateConcert(concert);
+        Assert.assertEquals(Concert.FIELD_NOTIFY, concert.getDirtyFields());
+        verify(internalDatabaseHandler, never()).setFestivalDigest(any(Festival.class),
+                anyString());
     }
 
     public void testSynchroniseDontWriteToExternalFestival() throws Exception {
@@ -367,13 +396,37 @@ public class DataModelTest extends InstrumentationTestCase {
         when(internalDatabaseHandler.getFestivals()).thenReturn(new Festival[]{internalFestival});
         when(externalDatabaseHandler.readFestivalConcerts(internalFestival)).thenReturn(new Concert[0]);
         when(externalDatabaseHandler.readFestivalInfo(id)).thenReturn(externalFestival);
+        when(internalDatabaseHandler.getFestival(id)).thenReturn(internalFestival);
+        when(internalDatabaseHandler.getConcerts(internalFestival)).thenReturn(new Concert[0]);
         Assert.assertTrue(dataModel.synchronise(false));
-        verify(internalDatabaseHandler).editFestival(id, externalFestivalName, null, null,
-                null, null, null, null, null, null, null);
+        verify(internalDatabaseHandler).updateFestival(internalFestival);
+        Assert.assertEquals(externalFestivalName, internalFestival.getName());
+        Assert.assertEquals(Festival.FIELD_NAME, internalFestival.getDirtyFields());
         verify(externalDatabaseHandler, never()).updateFestivalInfo(id, internalFestivalName, null, null,
                 null, null, null, null, null);
     }
 
+    public void testSynchroniseKeepsFestivalEditedMeanwhile() throws Exception {
+        int id = 0;
+        Festival internalFestival = festival(id, "TestFest");
+        Festival externalFestival = festival(id, "TestFestOnline");
+        // the festival as edited locally while the synchronisation was fetching it
+        Festival editedFestival = festival(id, "TestFest");
+        editedFestival.setDescription("Local");
+        editedFestival.clearDirtyFields();
+        when(internalDatabaseHandler.getFestivals()).thenReturn(new Festival[]{internalFestival});
+        when(internalDatabaseHandler.getFestival(id)).thenReturn(editedFestival);
+        when(externalDatabaseHandler.readFestivalConcerts(internalFestival))
+                .thenReturn(new Concert[0]);
+        when(externalDatabaseHandler.readFestivalInfo(id)).thenReturn(externalFestival);
+        when(internalDatabaseHandler.getConcerts(internalFestival)).thenReturn(new Concert[0]);
+        Assert.assertTrue(dataModel.synchronise(false));
+        verify(internalDatabaseHandler).updateFestival(editedFestival);
+        Assert.assertEquals("TestFestOnline", editedFestival.getName());
+        Assert.assertEquals("Local", editedFestival.getDescription());
+        Assert.assertEquals(Festival.FIELD_NAME, editedFestival.getDirtyFields());
+    }
+
     public void testSynchroniseDontWriteToExternalConcert() throws Exception {
         String festivalName = "TestFest";
         int festivalID = 0;
@@ -386,13 +439,16 @@ public class DataModelTest extends InstrumentationTestCase {
         Concert externalConcert = concert(concertID, festival, artist);
         internalConcert.setStage(stageInternal);
         externalConcert.setStage(stageExternal);
+        internalConcert.clearDirtyFields();
         when(internalDatabaseHandler.getFestivals()).thenReturn(new Festival[]{festival});
         when(externalDatabaseHandler.readFestivalInfo(festivalID)).thenReturn(festival);
         when(externalDatabaseHandler.readFestivalConcerts(festival)).thenReturn(new Concert[]{externalConcert});
-        when(internalDatabaseHandler.getConcert(festival, concertID)).thenReturn(internalConcert);
+        when(internalDatabaseHandler.getConcerts(festival)).
+                thenReturn(new Concert[]{internalConcert});
         Assert.assertTrue(dataModel.synchronise(false));
-        verify(internalDatabaseHandler).editConcert(concertID, null, null, null, stageExternal,
-                null, null, null, null);
+        verify(internalDatabaseHandler).updateConcert(internalConcert);
+        Assert.assertEquals(stageExternal, internalConcert.getStage());
+        Assert.assertTrue((internalConcert.getDirtyFields() & Concert.FIELD_STAGE) != 0);
         verify(externalDatabaseHandler, never()).updateConcertInfo(concertID, null, stageExternal,
                 null, null, null);
     }
@@ -405,13 +461,49 @@ public class DataModelTest extends InstrumentationTestCase {
         when(internalDatabaseHandler.getConcerts(internalFestival)).thenReturn(new Concert[0]);
         when(externalDatabaseHandler.readFestivalInfo(id)).thenReturn(null);
         Assert.assertFalse(dataModel.synchronise(false));
-        verify(internalDatabaseHandler, never()).editFestival(id, internalFestivalName, null, null,
-                null, null, null, null, null, null, null);
+        verify(internalDatabaseHandler, never()).updateFestival(internalFestival);
         verify(externalDatabaseHandler, never()).updateFestivalInfo(id, internalFestivalName,
                 null, null,
                 null, null, null, null, null);
     }
 
+    public void testSynchroniseUnchangedDigestSkipsFestival() throws Exception {
+        int id = 0;
+        Festival festival = festival(id, "TestFest");
+        when(internalDatabaseHandler.getFestivals()).thenReturn(new Festival[]{festival});
+        when(externalDatabaseHandler.readFestivalDigest(id)).thenReturn("1f2e");
+        when(internalDatabaseHandler.getFestivalDigest(festival)).thenReturn("1f2e");
+        Assert.assertTrue(dataModel.synchronise(false));
+        verify(externalDatabaseHandler, never()).readFestivalInfo(id);
+        verify(externalDatabaseHandler, never()).readFestivalConcerts(festival);
+        verify(internalDatabaseHandler, never()).getConcerts(festival);
+    }
+
+    public void testSynchroniseChangedDigestStored() throws Exception {
+        int id = 0;
+        Festival festival = festival(id, "TestFest");
+        when(internalDatabaseHandler.getFestivals()).thenReturn(new Festival[]{festival});
+        when(externalDatabaseHandler.readFestivalDigest(id)).thenReturn("1f2e");
+        when(internalDatabaseHandler.getFestivalDigest(festival)).thenReturn("0a0b");
+        when(externalDatabaseHandler.readFestivalInfo(id)).thenReturn(festival(id, "TestFest"));
+        when(externalDatabaseHandler.readFestivalConcerts(festival)).thenReturn(new Concert[0]);
+        when(internalDatabaseHandler.getConcerts(festival)).thenReturn(new Concert[0]);
+        Assert.assertTrue(dataModel.synchronise(false));
+        verify(externalDatabaseHandler).readFestivalConcerts(festival);
+        verify(internalDatabaseHandler).setFestivalDigest(festival, "1f2e");
+    }
+
+    public void testSynchroniseFailureDigestNotStored() throws Exception {
+        int id = 0;
+        Festival festival = festival(id, "TestFest");
+        when(internalDatabaseHandler.getFestivals()).thenReturn(new Festival[]{festival});
+        when(externalDatabaseHandler.readFestivalDigest(id)).thenReturn("1f2e");
+        when(externalDatabaseHandler.readFestivalInfo(id)).thenReturn(festival(id, "TestFest"));
+        when(externalDatabaseHandler.readFestivalConcerts(festival)).thenReturn(null);
+        Assert.assertFalse(dataModel.synchronise(false));
+        verify(internalDatabaseHandler, never()).setFestivalDigest(festival, "1f2e");
+    }
+
     public void testSynchroniseWriteToExternalFestival() throws Exception {
         String internalFestivalName = "TestFest";
         String externalFestivalName = "TestFestOnline";
@@ -423,9 +515,11 @@ public class DataModelTest extends InstrumentationTestCase {
         when(externalDatabaseHandler.readFestivalInfo(id)).thenReturn(externalFestival);
         when(externalDatabaseHandler.updateFestivalInfo(id, internalFestivalName, null, null,
                 null, null, null, null, null)).thenReturn(true);
+        when(internalDatabaseHandler.getFestival(id)).thenReturn(internalFestival);
+        when(internalDatabaseHandler.getConcerts(internalFestival)).thenReturn(new Concert[0]);
         Assert.assertTrue(dataModel.synchronise(true));
-        verify(internalDatabaseHandler).editFestival(id, externalFestivalName, null, null,
-                null, null, null, null, null, null, null);
+        verify(internalDatabaseHandler).updateFestival(internalFestival);
+        Assert.assertEquals(externalFestivalName, internalFestival.getName());
         verify(externalDatabaseHandler, never()).updateFestivalInfo(id, internalFestivalName, null, null,
                 null, null, null, null, null);
     }
@@ -450,16 +544,53 @@ public class DataModelTest extends InstrumentationTestCase {
         when(externalDatabaseHandler.readFestivalInfo(festivalID)).thenReturn(festival);
         when(externalDatabaseHandler.readFestivalConcerts(festival)).thenReturn(new Concert[]{externalConcert});
         when(externalDatabaseHandler.readConcertInfo(festival, concertID)).thenReturn(externalConcert);
-        when(externalDatabaseHandler.updateConcertInfo(concertID, null, stageInternal,
-                null, null, null)).thenReturn(true);
-        when(internalDatabaseHandler.getConcert(festival, concertID)).thenReturn(internalConcert);
+        ExternalDatabaseHandler.ConcertUpdate[] updates = new ExternalDatabaseHandler.ConcertUpdate[]{
+                new ExternalDatabaseHandler.ConcertUpdate(concertID, null, stageInternal,
+                        null, null, null)};
+        when(externalDatabaseHandler.updateConcertInfoBatch(updates)).
+                thenReturn(new boolean[]{true});
+        when(internalDatabaseHandler.getConcerts(festival)).
+                thenReturn(new Concert[]{internalConcert});
         Assert.assertTrue(dataModel.synchronise(true));
-        verify(internalDatabaseHandler, never()).editConcert(concertID, null, null, null, stageExternal,
-                null, null, null, null);
-        verify(externalDatabaseHandler).updateConcertInfo(concertID, null, stageInternal,
+        verify(internalDatabaseHandler, never()).updateConcert(internalConcert);
+        verify(externalDatabaseHandler).updateConcertInfoBatch(updates);
+        verify(externalDatabaseHandler, never()).updateConcertInfo(concertID, null, stageInternal,
                 null, null, null);
     }
 
+    public void testWriteConcertsInfoOnlineSingleBatchPerKind() throws Exception {
+        String owner = "owner";
+        Festival festival = festival(0, "testFest");
+        festival.setOwner(owner);
+        dataModel.setUsername(owner);
+        Concert existing = concert(1, festival, "The Testers");
+        Concert changed = concert(1, festival, "The Testers Updated");
+        changed.setStart(existing.getStart());
+        changed.setEnd(existing.getEnd());
+        Concert[] newConcerts = new Concert[]{concert(2, festival, "New Band"),
+                concert(3, festival, "Newer Band")};
+        Concert[] lineup = new Concert[]{changed, newConcerts[0], newConcerts[1]};
+        ExternalDatabaseHandler.ConcertUpdate[] updates = new ExternalDatabaseHandler.ConcertUpdate[]{
+                new ExternalDatabaseHandler.ConcertUpdate(1, changed.getArtist(),
+                        null, null, null, null)};
+        when(externalDatabaseHandler.readFestivalConcerts(festival)).
+                thenReturn(new Concert[]{existing});
+        when(externalDatabaseHandler.writeConcertInfoBatch(festival.getExternalId(), newConcerts)).
+                thenReturn(new boolean[]{true, false});
+        when(externalDatabaseHandler.updateConcertInfoBatch(updates)).
+                thenReturn(new boolean[]{true});
+        when(internalDatabaseHandler.getConcert(festival, 1)).thenReturn(existing);
+        when(internalDatabaseHandler.addConcerts(new Concert[]{newConcerts[0]})).
+                thenReturn(new long[]{2L});
+        Assert.assertFalse(dataModel.writeConcertsInfo(festival, lineup, true));
+        verify(externalDatabaseHandler).writeConcertInfoBatch(festival.getExternalId(), newConcerts);
+        verify(externalDatabaseHandler).updateConcertInfoBatch(updates);
+        verify(internalDatabaseHandler).addConcerts(new Concert[]{newConcerts[0]});
+        verify(internalDatabaseHandler, never()).addConcert(newConcerts[1]);
+        verify(internalDatabaseHandler).editConcert(1, changed.getExternalId(), null,
+                changed.getArtist(), null, null, null, null, null);
+    }
+
     public void testSynchroniseWriteToExternalServerError() throws Exception {
         String internalFestivalName = "TestFest";
         String externalFestivalName = "TestFestOnline";
@@ -476,13 +607,54 @@ public class DataModelTest extends InstrumentationTestCase {
         when(externalDatabaseHandler.updateFestivalInfo(id, internalFestivalName, null, null,
                 null, null, null, null, null)).thenReturn(false);
         Assert.assertFalse(dataModel.synchronise(true));
-        verify(internalDatabaseHandler, never()).editFestival(id, internalFestivalName, null, null,
-                null, null, null, null, null, null, null);
+        verify(internalDatabaseHandler, never()).updateFestival(internalFestival);
         verify(externalDatabaseHandler).updateFestivalInfo(id, internalFestivalName,
                 null, null,
                 null, null, null, null, null);
     }
 
+    public void testSynchroniseWriteToExternalOnlyVotesChanged() throws Exception {
+        int id = 0;
+        String owner = "owner";
+        Festival externalFestival = festival(id, "TestFest");
+        externalFestival.setOwner(owner);
+        externalFestival.setVotes(5);
+        Festival internalFestival = festival(id, "TestFest");
+        internalFestival.setOwner(owner);
+        dataModel.setUsername(owner);
+        when(internalDatabaseHandler.getFestivals()).thenReturn(new Festival[]{internalFestival});
+        when(externalDatabaseHandler.readFestivalConcerts(internalFestival))
+                .thenReturn(new Concert[0]);
+        when(externalDatabaseHandler.readFestivalInfo(id)).thenReturn(externalFestival);
+        when(internalDatabaseHandler.getConcerts(internalFestival)).thenReturn(new Concert[0]);
+        Assert.assertTrue(dataModel.synchronise(true));
+        verify(externalDatabaseHandler, never()).updateFestivalInfo(anyLong(), anyString(),
+                anyString(), anyString(), anyString(), anyString(), anyString(), anyString(),
+                any(Boolean.class));
+    }
+
+    public void testScheduleSnapshotReplacedAfterWrite() throws Exception {
+        Festival festival = festival(41, "testFest");
+        Concert concert = concert(1, festival, "The Testers");
+        when(internalDatabaseHandler.getConcerts(festival)).thenReturn(new Concert[]{concert});
+        ScheduleSnapshot before = dataModel.getSchedule(festival);
+        Assert.assertEquals(1, before.size());
+        Assert.assertSame(before, dataModel.getSchedule(festival));
+
+        Concert added = concert(2, festival, "New Band");
+        when(internalDatabaseHandler.getConcerts(festival)).
+                thenReturn(new Concert[]{concert, added});
+        when(internalDatabaseHandler.addConcerts(new Concert[]{added})).
+                thenReturn(new long[]{2L});
+        Assert.assertTrue(dataModel.writeConcertsInfo(festival, new Concert[]{added}, false));
+
+        ScheduleSnapshot after = dataModel.getSchedule(festival);
+        Assert.assertEquals(2, after.size());
+        Assert.assertTrue(after.getVersion() > before.getVersion());
+        // readers holding the old snapshot are not affected
+        Assert.assertEquals(1, before.size());
+        Assert.assertEquals("The Testers", before.get(0).getArtist());
+    }
 
     private Festival festival(long id, String name) {
         return new Festival(id, id, name, "", "", "", "", "", "", "", false, 0);
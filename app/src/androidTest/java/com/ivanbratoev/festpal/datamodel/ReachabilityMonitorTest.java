@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.test.InstrumentationTestCase;
+
+import com.ivanbratoev.festpal.datamodel.db.external.ExternalDatabaseHandler;
+
+import junit.framework.Assert;
+
+import org.mockito.Mock;
+
+import java.util.concurrent.Executor;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ReachabilityMonitorTest extends InstrumentationTestCase {
+
+    private static final long TIME_TO_LIVE = 60_000;
+
+    @Mock
+    private Context context;
+    @Mock
+    private ConnectivityManager connectivityManager;
+    @Mock
+    private NetworkInfo networkInfo;
+    @Mock
+    private ExternalDatabaseHandler externalDatabaseHandler;
+
+    private ManualClock clock;
+    private ReachabilityMonitor monitor;
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    public void setUp() throws Exception {
+        super.setUp();
+        System.setProperty(
+                "dexmaker.dexcache",
+                getInstrumentation().getTargetContext().getCacheDir().getPath()
+        );
+        initMocks(this);
+        when(context.getSystemService(Context.CONNECTIVITY_SERVICE))
+                .thenReturn(connectivityManager);
+        when(connectivityManager.getActiveNetworkInfo()).thenReturn(networkInfo);
+        when(networkInfo.isConnected()).thenReturn(true);
+        when(externalDatabaseHandler.canConnectToDB()).thenReturn(true);
+        clock = new ManualClock();
+        monitor = new ReachabilityMonitor(context, externalDatabaseHandler, DIRECT_EXECUTOR,
+                clock, TIME_TO_LIVE);
+    }
+
+    public void testStatusIsCachedUntilExpired() throws Exception {
+        monitor.start();
+        for (int i = 0; i < 100; i++)
+            Assert.assertEquals(ReachabilityMonitor.STATUS_CONNECTED, monitor.getStatus());
+        verify(externalDatabaseHandler, times(1)).canConnectToDB();
+
+        clock.now += TIME_TO_LIVE;
+        monitor.getStatus();
+        verify(externalDatabaseHandler, times(2)).canConnectToDB();
+    }
+
+    public void testNetworkChangeTriggersProbe() throws Exception {
+        monitor.start();
+        when(externalDatabaseHandler.canConnectToDB()).thenReturn(false);
+        monitor.onReceive(context, new Intent(ConnectivityManager.CONNECTIVITY_ACTION));
+        Assert.assertEquals(ReachabilityMonitor.STATUS_SERVER_UNREACHABLE, monitor.getStatus());
+        verify(externalDatabaseHandler, times(2)).canConnectToDB();
+    }
+
+    public void testNoNetworkDoesNotProbe() throws Exception {
+        when(connectivityManager.getActiveNetworkInfo()).thenReturn(null);
+        monitor.start();
+        Assert.assertEquals(ReachabilityMonitor.STATUS_NO_NETWORK, monitor.getStatus());
+        verify(externalDatabaseHandler, times(0)).canConnectToDB();
+    }
+
+    public void testOpenCircuitDoesNotProbe() throws Exception {
+        when(externalDatabaseHandler.isCircuitOpen()).thenReturn(true);
+        monitor.start();
+        Assert.assertEquals(ReachabilityMonitor.STATUS_SERVER_UNREACHABLE, monitor.getStatus());
+        verify(externalDatabaseHandler, times(0)).canConnectToDB();
+    }
+
+    private static class ManualClock implements Clock {
+        long now = 1_000_000;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.test.InstrumentationTestCase;
+
+import com.ivanbratoev.festpal.datamodel.db.internal.InternalDatabaseHandler;
+
+import junit.framework.Assert;
+
+import org.mockito.Mock;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class SyncSchedulerTest extends InstrumentationTestCase {
+
+    private static final long NOW = 1_000_000_000_000L;
+
+    @Mock
+    private InternalDatabaseHandler internalDatabaseHandler;
+    @Mock
+    private Context context;
+    @Mock
+    private ConnectivityManager connectivityManager;
+    @Mock
+    private NetworkInfo networkInfo;
+
+    private ManualClock clock;
+    private FakeConstraints constraints;
+    private SyncScheduler scheduler;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        System.setProperty(
+                "dexmaker.dexcache",
+                getInstrumentation().getTargetContext().getCacheDir().getPath()
+        );
+        initMocks(this);
+        clock = new ManualClock();
+        constraints = new FakeConstraints();
+        scheduler = new SyncScheduler(clock, constraints, internalDatabaseHandler);
+    }
+
+    public void testIdleIntervalWithoutFestivalInProgress() throws Exception {
+        Assert.assertEquals(SyncScheduler.IDLE_INTERVAL, scheduler.getInterval());
+        Assert.assertEquals(NOW + SyncScheduler.IDLE_INTERVAL, scheduler.getNextAttempt(NOW));
+    }
+
+    public void testActiveIntervalWhileFestivalInProgress() throws Exception {
+        when(internalDatabaseHandler.hasConcertsBetween(
+                NOW - SyncScheduler.FINISHED_WINDOW, NOW + SyncScheduler.UPCOMING_WINDOW))
+                .thenReturn(true);
+        Assert.assertEquals(SyncScheduler.ACTIVE_INTERVAL, scheduler.getInterval());
+        Assert.assertEquals(NOW + SyncScheduler.ACTIVE_INTERVAL, scheduler.getNextAttempt(NOW));
+
+        clock.now += SyncScheduler.ACTIVE_INTERVAL;
+        Assert.assertEquals(SyncScheduler.IDLE_INTERVAL, scheduler.getInterval());
+    }
+
+    public void testNotDueNotSynchronised() throws Exception {
+        long lastSync = NOW - SyncScheduler.IDLE_INTERVAL + 1;
+        Assert.assertFalse(scheduler.canSyncNow(lastSync));
+        Assert.assertEquals(lastSync + SyncScheduler.IDLE_INTERVAL,
+                scheduler.getNextAttempt(lastSync));
+    }
+
+    public void testDueOnUnmeteredNetworkSynchronised() throws Exception {
+        Assert.assertTrue(scheduler.canSyncNow(NOW - SyncScheduler.IDLE_INTERVAL));
+    }
+
+    public void testDueWithoutNetworkDeferred() throws Exception {
+        constraints.connected = false;
+        long lastSync = NOW - 10 * SyncScheduler.IDLE_INTERVAL;
+        Assert.assertFalse(scheduler.canSyncNow(lastSync));
+        Assert.assertEquals(NOW + SyncScheduler.DEFERRED_RETRY,
+                scheduler.getNextAttempt(lastSync));
+    }
+
+    public void testDueOnMeteredNetworkWaitsForCharger() throws Exception {
+        constraints.unmetered = false;
+        long lastSync = NOW - SyncScheduler.IDLE_INTERVAL;
+        Assert.assertFalse(scheduler.canSyncNow(lastSync));
+        constraints.charging = true;
+        Assert.assertTrue(scheduler.canSyncNow(lastSync));
+    }
+
+    public void testStaleScheduleSynchronisedOnMeteredNetwork() throws Exception {
+        constraints.unmetered = false;
+        when(internalDatabaseHandler.hasConcertsBetween(anyLong(), anyLong())).thenReturn(true);
+        Assert.assertFalse(scheduler.canSyncNow(NOW - SyncScheduler.ACTIVE_INTERVAL));
+        Assert.assertTrue(scheduler.canSyncNow(NOW - 2 * SyncScheduler.ACTIVE_INTERVAL));
+        Assert.assertTrue(scheduler.canSyncNow(0));
+    }
+
+    public void testDeferredRetryNotLongerThanActiveInterval() throws Exception {
+        constraints.connected = false;
+        when(internalDatabaseHandler.hasConcertsBetween(anyLong(), eq(NOW +
+                SyncScheduler.UPCOMING_WINDOW))).thenReturn(true);
+        Assert.assertEquals(NOW + SyncScheduler.ACTIVE_INTERVAL, scheduler.getNextAttempt(0));
+    }
+
+    public void testDeviceConstraintsFollowConnectivity() throws Exception {
+        when(context.getSystemService(Context.CONNECTIVITY_SERVICE))
+                .thenReturn(connectivityManager);
+        SyncConstraints deviceConstraints = new DeviceSyncConstraints(context);
+        Assert.assertFalse(deviceConstraints.isConnected());
+        Assert.assertFalse(deviceConstraints.isUnmetered());
+
+        when(connectivityManager.getActiveNetworkInfo()).thenReturn(networkInfo);
+        when(networkInfo.isConnected()).thenReturn(true);
+        when(connectivityManager.isActiveNetworkMetered()).thenReturn(true);
+        Assert.assertTrue(deviceConstraints.isConnected());
+        Assert.assertFalse(deviceConstraints.isUnmetered());
+        Assert.assertFalse(deviceConstraints.isCharging());
+    }
+
+    private static class ManualClock implements Clock {
+        long now = NOW;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    private static class FakeConstraints implements SyncConstraints {
+        boolean connected = true;
+        boolean unmetered = true;
+        boolean charging;
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public boolean isUnmetered() {
+            return connected && unmetered;
+        }
+
+        @Override
+        public boolean isCharging() {
+            return charging;
+        }
+    }
+}
@@ -1,5 +1,3 @@
-
-
 /*
  * Copyright 2015 Ivan Bratoev
  *
@@ -20,14 +18,351 @@ package com.ivanbratoev.festpal.datamodel.db.external;
 
 import android.test.AndroidTestCase;
 
+import com.ivanbratoev.festpal.datamodel.Clock;
+import com.ivanbratoev.festpal.datamodel.Concert;
+import com.ivanbratoev.festpal.datamodel.Festival;
+import com.ivanbratoev.festpal.datamodel.FestivalSummary;
+import com.ivanbratoev.festpal.datamodel.metrics.Tracer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Date;
+import java.util.Random;
+
 public class ExternalDatabaseHandlerTest extends AndroidTestCase {
 
+    private static final int LINEUP_SIZE = 300;
+
+    private StubExternalServer server;
+    private ExternalDatabaseHandler handler;
+
     public void setUp() throws Exception {
         super.setUp();
-
+        server = new StubExternalServer();
+        server.start();
+        server.useForHandlers();
+        handler = new ExternalDatabaseHandler("test");
     }
 
     public void tearDown() throws Exception {
+        server.stop();
+        super.tearDown();
+    }
+
+    public void testWriteConcertInfoBatchSingleRequest() throws Exception {
+        long festivalId = server.addFestival("testFest", "owner");
+        Concert[] lineup = lineup(festival(festivalId), LINEUP_SIZE);
+
+        long start = System.nanoTime();
+        boolean[] result = handler.writeConcertInfoBatch(festivalId, lineup);
+        long batchNanos = System.nanoTime() - start;
+
+        assertNotNull(result);
+        assertEquals(LINEUP_SIZE, result.length);
+        for (boolean itemResult : result)
+            assertTrue(itemResult);
+        assertEquals(1, server.getRequestCount());
+        assertEquals(LINEUP_SIZE, server.getConcertCount());
+
+        server.resetRequestCounts();
+        start = System.nanoTime();
+        for (Concert concert : lineup) {
+            handler.writeConcertInfo(festivalId, concert.getArtist(), concert.getStage(),
+                    concert.getDay(), concert.getStart(), concert.getEnd());
+        }
+        long sequentialNanos = System.nanoTime() - start;
+        assertEquals(LINEUP_SIZE, server.getRequestCount());
+        assertTrue("batch write of " + LINEUP_SIZE + " concerts took " +
+                        batchNanos / 1_000_000 + " ms, sequential " +
+                        sequentialNanos / 1_000_000 + " ms",
+                batchNanos < sequentialNanos);
+    }
+
+    public void testBatchPerItemStatus() throws Exception {
+        long festivalId = server.addFestival("testFest", "owner");
+        Concert[] lineup = lineup(festival(festivalId), 2);
+        handler.writeConcertInfoBatch(festivalId, lineup);
+        Concert[] written = handler.readFestivalConcerts(festival(festivalId));
+        assertNotNull(written);
+        assertEquals(2, written.length);
+
+        boolean[] updated = handler.updateConcertInfoBatch(new ExternalDatabaseHandler.ConcertUpdate[]{
+                new ExternalDatabaseHandler.ConcertUpdate(written[0].getExternalId(), "Renamed",
+                        null, null, null, null),
+                new ExternalDatabaseHandler.ConcertUpdate(-1, "Missing", null, null, null, null)
+        });
+        assertNotNull(updated);
+        assertTrue(updated[0]);
+        assertFalse(updated[1]);
+
+        boolean[] deleted = handler.deleteConcertBatch(
+                new long[]{written[1].getExternalId(), written[1].getExternalId()});
+        assertNotNull(deleted);
+        assertTrue(deleted[0]);
+        assertFalse(deleted[1]);
+        assertEquals(1, server.getConcertCount());
+    }
+
+    public void testRemoteResponseDistinguishesFailures() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL(server.getAddress() + "unknown/").openConnection();
+        RemoteResponse response = RemoteResponse.read(connection);
+        connection.disconnect();
+        assertEquals(RemoteResponse.Status.CLIENT_ERROR, response.getStatus());
+        assertEquals(404, response.getCode());
+        assertFalse(response.isTransientFailure());
+        assertNull(response.getBody());
+
+        server.stop();
+        assertFalse(handler.writeConcertInfo(1, "artist", 0, 0, new Date(), new Date()));
+    }
+
+    public void testStatusMessageDecoded() throws Exception {
+        long festivalId = server.addFestival("testFest", "owner");
+        assertTrue(handler.writeConcertInfo(festivalId, "artist", 0, 0, new Date(), new Date()));
+        assertFalse(handler.writeConcertInfo(festivalId + 1000, "artist", 0, 0, new Date(),
+                new Date()));
+        assertNull(handler.readFestivalInfo(festivalId + 1000));
+        Festival festival = handler.readFestivalInfo(festivalId);
+        assertNotNull(festival);
+        assertEquals("testFest", festival.getName());
+    }
+
+    public void testFestivalDigestFollowsLineup() throws Exception {
+        long festivalId = server.addFestival("testFest", "owner");
+        handler.writeConcertInfoBatch(festivalId, lineup(festival(festivalId), LINEUP_SIZE));
+        server.resetRequestCounts();
+        String digest = handler.readFestivalDigest(festivalId);
+        assertNotNull(digest);
+        assertEquals(1, server.getRequestCount());
+        assertTrue(server.getResponseBodyBytes() < 64);
+        assertEquals(digest, handler.readFestivalDigest(festivalId));
+
+        Concert[] concerts = handler.readFestivalConcerts(festival(festivalId));
+        assertTrue(handler.updateConcertInfo(concerts[0].getExternalId(), null, 7, null, null,
+                null));
+        assertFalse(digest.equals(handler.readFestivalDigest(festivalId)));
+        assertNull(handler.readFestivalDigest(festivalId + 1000));
+    }
+
+    public void testIdempotentReadRetried() throws Exception {
+        long festivalId = server.addFestival("testFest", "owner");
+        handler = new ExternalDatabaseHandler("test", new RetryPolicy(3, 1, 5, new Random(0)),
+                new CircuitBreaker(10, 1_000, new ManualClock()));
+        server.failNextRequests(2, 503);
+        Festival festival = handler.readFestivalInfo(festivalId);
+        assertNotNull(festival);
+        assertEquals(3, server.getRequestCount());
+        assertFalse(handler.isCircuitOpen());
+    }
+
+    public void testWriteNotRetried() throws Exception {
+        long festivalId = server.addFestival("testFest", "owner");
+        handler = new ExternalDatabaseHandler("test", new RetryPolicy(3, 1, 5, new Random(0)),
+                new CircuitBreaker(10, 1_000, new ManualClock()));
+        server.failNextRequests(1, 500);
+        assertFalse(handler.writeConcertInfo(festivalId, "artist", 0, 0, new Date(), new Date()));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    public void testCircuitBreakerShortCircuitsFailingServer() throws Exception {
+        long festivalId = server.addFestival("testFest", "owner");
+        ManualClock clock = new ManualClock();
+        handler = new ExternalDatabaseHandler("test", new RetryPolicy(3, 1, 5, new Random(0)),
+                new CircuitBreaker(2, 1_000, clock));
+        server.failNextRequests(Integer.MAX_VALUE, 503);
+
+        assertNull(handler.readFestivalInfo(festivalId));
+        assertEquals(2, server.getRequestCount());
+        assertTrue(handler.isCircuitOpen());
+
+        assertNull(handler.readFestivalInfo(festivalId));
+        assertFalse(handler.canConnectToDB());
+        assertEquals(2, server.getRequestCount());
+
+        server.failNextRequests(0, 503);
+        clock.time += 1_000;
+        assertNotNull(handler.readFestivalInfo(festivalId));
+        assertFalse(handler.isCircuitOpen());
+    }
+
+    public void testServerErrorKeepsCircuitOpen() throws Exception {
+        ManualClock clock = new ManualClock();
+        handler = new ExternalDatabaseHandler("test", new RetryPolicy(1, 1, 5, new Random(0)),
+                new CircuitBreaker(1, 1_000, clock));
+        server.failNextRequests(Integer.MAX_VALUE, 503);
+        assertFalse(handler.canConnectToDB());
+        assertTrue(handler.isCircuitOpen());
+
+        clock.time += 1_000;
+        assertFalse(handler.canConnectToDB());
+        assertTrue(handler.isCircuitOpen());
+
+        server.failNextRequests(0, 503);
+        clock.time += 1_000;
+        assertTrue(handler.canConnectToDB());
+        assertFalse(handler.isCircuitOpen());
+    }
+
+    public void testAccountAndFestivalEndpoints() throws Exception {
+        assertEquals(0, handler.register("user", "user@example.com", "secret", null, null,
+                null, null, null));
+        assertEquals(2, handler.register("user", "other@example.com", "secret", null, null,
+                null, null, null));
+        assertEquals(1, handler.login("user", "wrong"));
+        assertEquals(0, handler.login("user", "secret"));
+
+        assertTrue(handler.writeFestivalInfo("Summer Fest", "description", "Bulgaria", "Sofia",
+                "address", "Rock", "20-60", false));
+        Festival[] found = handler.readMultipleFestivals(10, null, "summer", null, null, null,
+                "30", null, null);
+        assertNotNull(found);
+        assertEquals(1, found.length);
+        assertEquals("user", found[0].getOwner());
+        assertEquals(0, handler.readMultipleFestivals(10, null, null, null, null, null,
+                null, "10", null).length);
+
+        int id = (int) found[0].getExternalId();
+        assertTrue(handler.updateFestivalInfo(id, null, null, null, "Plovdiv", null, null, null,
+                null));
+        assertEquals("Plovdiv", handler.readFestivalInfo(id).getCity());
+        assertEquals(1, handler.vote(id));
+        assertEquals(2, handler.vote(id));
+        assertTrue(handler.deleteFestival(id));
+        assertNull(handler.readFestivalInfo(id));
+        assertTrue(handler.logout());
+    }
+
+    public void testFestivalSummariesProjected() throws Exception {
+        long id = server.addFestival("Summer Fest", "owner");
+        server.addFestival("Winter Fest", "owner");
+        Festival[] festivals = handler.readMultipleFestivals(10);
+        server.resetRequestCounts();
+        handler.readMultipleFestivals(10);
+        long wholeBytes = server.getResponseBodyBytes();
+
+        server.resetRequestCounts();
+        FestivalSummary[] summaries = handler.readFestivalSummaries(10);
+        assertNotNull(summaries);
+        assertEquals(festivals.length, summaries.length);
+        assertTrue(server.getResponseBodyBytes() < wholeBytes);
+        for (FestivalSummary summary : summaries) {
+            assertEquals(-1, summary.getId());
+            assertFalse(summary.hasDates());
+            if (summary.getExternalId() == id)
+                assertEquals("Summer Fest", summary.getName());
+        }
+
+        // a server which does not know the projection sends the festivals whole
+        FestivalSummary[] decoded = ExternalDatabaseHandler.parseFestivalSummaries(
+                "[{\"id\":7,\"name\":\"Fest\",\"description\":\"Open air\","
+                        + "\"country\":\"Bulgaria\",\"city\":\"Sofia\",\"address\":\"Park\","
+                        + "\"genre\":\"Rock\",\"prices\":\"40\",\"owner\":\"owner\","
+                        + "\"official\":false,\"votes\":3}]");
+        assertEquals(1, decoded.length);
+        assertEquals(new FestivalSummary(-1, 7, "Fest", "Sofia", 3, FestivalSummary.NO_DATE,
+                FestivalSummary.NO_DATE), decoded[0]);
+    }
+
+    public void testDeniedClient() throws Exception {
+        server.denyClient("test");
+        try {
+            handler.readFestivalInfo(1);
+            fail();
+        } catch (ClientDoesNotHavePermissionException ignore) {
+        }
+    }
+
+    public void testLatencyAndBandwidthInjected() throws Exception {
+        long festivalId = server.addFestival("testFest", "owner");
+        Festival festival = festival(festivalId);
+        handler.writeConcertInfoBatch(festivalId, lineup(festival, 20));
+
+        server.setLatency(200);
+        long start = System.nanoTime();
+        assertNotNull(handler.readFestivalInfo(festivalId));
+        assertTrue(System.nanoTime() - start >= 200_000_000L);
+
+        server.setLatency(0);
+        server.setBandwidth(4_000);
+        start = System.nanoTime();
+        assertEquals(20, handler.readFestivalConcerts(festival).length);
+        assertTrue(System.nanoTime() - start >= 400_000_000L);
+    }
+
+    public void testLoadGeneratorWithInjectedFailures() throws Exception {
+        final long festivalId = server.addFestival("testFest", "owner");
+        server.setFailureRate(0.1, 503);
+        LoadGenerator.Result result = new LoadGenerator(8, 10).run(new LoadGenerator.Call() {
+            @Override
+            public boolean run(ExternalDatabaseHandler handler, int client, int iteration)
+                    throws Exception {
+                return handler.readFestivalInfo(festivalId) != null;
+            }
+        });
+        assertEquals(80, result.getCalls());
+        assertTrue(result.getFailed() < 8);
+        assertTrue(server.getRequestCount() >= 80);
+    }
+
+    public void testRetryDelayBounded() throws Exception {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1_000, new Random(0));
+        for (int retry = 1; retry < 10; retry++) {
+            long delay = policy.delayBeforeRetry(retry);
+            assertTrue(delay >= 0);
+            assertTrue(delay <= Math.min(1_000, 100L << (retry - 1)));
+        }
+    }
+
+    public void testRequestTraced() throws Exception {
+        long festivalId = server.addFestival("testFest", "owner");
+        handler.writeConcertInfoBatch(festivalId, lineup(festival(festivalId), 3));
+        Tracer.clear();
+        Tracer.setEnabled(true);
+        try {
+            assertTrue(Tracer.beginSession());
+            assertEquals(3, handler.readFestivalConcerts(festival(festivalId)).length);
+            Tracer.endSession();
+            handler.readFestivalConcerts(festival(festivalId));
+        } finally {
+            Tracer.setEnabled(false);
+        }
+
+        JSONArray events = new JSONObject(Tracer.exportChromeTrace()).getJSONArray("traceEvents");
+        assertEquals(4, events.length());
+        assertEquals("send", events.getJSONObject(0).getString("name"));
+        assertEquals("receive", events.getJSONObject(1).getString("name"));
+        assertEquals(new URL(ExternalDatabaseHelper.getReadMultipleConcerts()).getPath(),
+                events.getJSONObject(2).getString("name"));
+        JSONObject parse = events.getJSONObject(3);
+        assertEquals("parse concerts", parse.getString("name"));
+        assertEquals(3, parse.getJSONObject("args").getLong("id"));
+        Tracer.clear();
+    }
+
+    private static Festival festival(long externalId) {
+        return new Festival(externalId, externalId, "testFest", "", "", "", "", "", "", "owner",
+                false, 0);
+    }
+
+    private static class ManualClock implements Clock {
+        private long time;
+
+        @Override
+        public long currentTimeMillis() {
+            return time;
+        }
+    }
 
+    private static Concert[] lineup(Festival festival, int size) {
+        Concert[] concerts = new Concert[size];
+        for (int i = 0; i < size; i++) {
+            concerts[i] = new Concert(null, -1, festival, "Artist " + i, i % 8, i % 3,
+                    new Date(i * 3_600_000L), new Date(i * 3_600_000L + 3_000_000L), false);
+        }
+        return concerts;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel.db.internal;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.ivanbratoev.festpal.datamodel.Concert;
+import com.ivanbratoev.festpal.datamodel.Festival;
+
+import junit.framework.Assert;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures the latency of schedule reads while a large bulk import is written, with and
+ * without write-ahead logging
+ */
+public class InternalDatabaseConcurrencyTest extends AndroidTestCase {
+
+    private static final String TAG = "InternalDbConcurrency";
+    private static final String DATABASE_WAL = "concurrency-wal.db";
+    private static final String DATABASE_JOURNAL = "concurrency-journal.db";
+    private static final int IMPORTED_CONCERTS = 20_000;
+    private static final int SCHEDULE_CONCERTS = 50;
+    private static final int MAX_READS = 100_000;
+
+    public void tearDown() throws Exception {
+        getContext().deleteDatabase(DATABASE_WAL);
+        getContext().deleteDatabase(DATABASE_JOURNAL);
+        super.tearDown();
+    }
+
+    public void testReadsProceedDuringImportWithWriteAheadLogging() throws Exception {
+        long[] journal = readLatenciesDuringImport(DATABASE_JOURNAL, false);
+        long[] wal = readLatenciesDuringImport(DATABASE_WAL, true);
+        report("journal", journal);
+        report("wal", wal);
+        Assert.assertTrue("no read finished while the import was running", wal.length > 1);
+    }
+
+    /**
+     * @return latencies in microseconds of the reads which finished while the import was running
+     */
+    private long[] readLatenciesDuringImport(String name, boolean writeAheadLogging)
+            throws Exception {
+        getContext().deleteDatabase(name);
+        final InternalDatabaseHandler handler = new InternalDatabaseHandler(
+                new InternalDBHelper(getContext(), name, writeAheadLogging));
+        try {
+            Festival schedule = festival(handler, "Schedule");
+            handler.addConcerts(concerts(schedule, SCHEDULE_CONCERTS));
+            final Concert[] imported = concerts(festival(handler, "Import"), IMPORTED_CONCERTS);
+
+            final CountDownLatch started = new CountDownLatch(1);
+            final AtomicBoolean importing = new AtomicBoolean(true);
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    handler.addConcerts(imported);
+                    importing.set(false);
+                }
+            });
+            writer.start();
+            started.await();
+
+            long[] latencies = new long[MAX_READS];
+            int reads = 0;
+            while (importing.get() && reads < MAX_READS) {
+                long start = System.nanoTime();
+                Assert.assertEquals(SCHEDULE_CONCERTS, handler.getConcerts(schedule).length);
+                latencies[reads++] = (System.nanoTime() - start) / 1000;
+            }
+            writer.join();
+            return Arrays.copyOf(latencies, reads);
+        } finally {
+            handler.close();
+        }
+    }
+
+    private static void report(String mode, long[] latencies) {
+        if (latencies.length == 0) {
+            Log.i(TAG, mode + ": no reads during import");
+            return;
+        }
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        Log.i(TAG, mode + ": " + sorted.length + " reads during import, median "
+                + sorted[sorted.length / 2] + "us, p99 "
+                + sorted[(int) (sorted.length * 0.99)] + "us, max "
+                + sorted[sorted.length - 1] + "us");
+    }
+
+    private static Festival festival(InternalDatabaseHandler handler, String name) {
+        Festival festival = new Festival(null, 0, name, "", "", "", "", "", "", "", false, 0);
+        return handler.getFestival(handler.addFestival(festival));
+    }
+
+    private static Concert[] concerts(Festival festival, int count) {
+        Concert[] result = new Concert[count];
+        for (int i = 0; i < count; i++)
+            result[i] = new Concert(null, (long) i, festival, "Artist " + i, i % 4, i % 3,
+                    new Date(i * 60_000L), new Date(i * 60_000L + 3_600_000L), false);
+        return result;
+    }
+}
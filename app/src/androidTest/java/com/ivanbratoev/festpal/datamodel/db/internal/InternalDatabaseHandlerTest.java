@@ -18,14 +18,401 @@ package com.ivanbratoev.festpal.datamodel.db.internal;
 
 import android.test.AndroidTestCase;
 
+import com.ivanbratoev.festpal.datamodel.AgendaIterator;
+import com.ivanbratoev.festpal.datamodel.Concert;
+import com.ivanbratoev.festpal.datamodel.Festival;
+import com.ivanbratoev.festpal.datamodel.FestivalStats;
+import com.ivanbratoev.festpal.datamodel.FestivalSummary;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
 public class InternalDatabaseHandlerTest extends AndroidTestCase {
 
+    private static final String DATABASE = "handler-test.db";
+
+    private InternalDatabaseHandler handler;
+    private final List<DatabaseChange> changes = new ArrayList<>();
+    private final ChangeObserver recorder = new ChangeObserver() {
+        @Override
+        public void onChange(DatabaseChange change) {
+            changes.add(change);
+        }
+    };
+
     public void setUp() throws Exception {
         super.setUp();
-
+        getContext().deleteDatabase(DATABASE);
+        changes.clear();
+        // notifications are delivered on the writing thread, so they can be checked right away
+        handler = new InternalDatabaseHandler(new InternalDBHelper(getContext(), DATABASE, true),
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        command.run();
+                    }
+                });
     }
 
     public void tearDown() throws Exception {
+        handler.close();
+        getContext().deleteDatabase(DATABASE);
+        super.tearDown();
+    }
+
+    public void testUpdateFestivalWritesDirtyFieldsAndHash() throws Exception {
+        Festival festival = festival();
+        festival.setId(handler.addFestival(festival));
+
+        Festival stored = handler.getFestival(festival.getId());
+        assertEquals(festival.getContentHash(), stored.getContentHash());
+        assertFalse(stored.isDirty());
+
+        stored.setName("Renamed");
+        stored.setCity("Plovdiv");
+        assertEquals(Festival.FIELD_NAME | Festival.FIELD_CITY, stored.getDirtyFields());
+        handler.updateFestival(stored);
+        assertFalse(stored.isDirty());
+
+        Festival updated = handler.getFestival(festival.getId());
+        assertEquals("Renamed", updated.getName());
+        assertEquals("Plovdiv", updated.getCity());
+        assertEquals(festival.getDescription(), updated.getDescription());
+        assertEquals(stored.getContentHash(), updated.getContentHash());
+    }
+
+    public void testEditFestivalInvalidatesStoredHash() throws Exception {
+        Festival festival = festival();
+        festival.setId(handler.addFestival(festival));
+
+        handler.editFestival(festival.getId(), "Renamed", null, null, null, null, null, null,
+                null, null, null);
+        festival.setName("Renamed");
+
+        assertEquals(festival.getContentHash(),
+                handler.getFestival(festival.getId()).getContentHash());
+    }
+
+    public void testUpdateConcertWritesDirtyFieldsAndHash() throws Exception {
+        Festival festival = festival();
+        festival.setId(handler.addFestival(festival));
+        Concert concert = new Concert(null, 7, festival, "Artist", 1, 2, new Date(1_000),
+                new Date(2_000), false);
+        concert.setId(handler.addConcert(concert));
+
+        Concert stored = handler.getConcert(festival, concert.getId());
+        assertEquals(concert.getContentHash(), stored.getContentHash());
+        stored.setStage(3);
+        handler.updateConcert(stored);
+
+        Concert updated = handler.getConcertByExternalId(festival, 7);
+        assertEquals(3, updated.getStage());
+        assertEquals("Artist", updated.getArtist());
+        assertEquals(stored.getContentHash(), updated.getContentHash());
+
+        handler.editConcert(concert.getId(), null, null, null, 4, null, null, null, null);
+        updated.setStage(4);
+        assertEquals(updated.getContentHash(),
+                handler.getConcert(festival, concert.getId()).getContentHash());
+    }
+
+    public void testImportFestivalAddsConcerts() throws Exception {
+        Festival festival = festival();
+        Concert[] concerts = new Concert[3];
+        for (int i = 0; i < concerts.length; i++)
+            concerts[i] = new Concert(null, i, festival, "Artist " + i, i, 1, new Date(i * 1_000),
+                    new Date(i * 1_000 + 500), false);
+
+        long id = handler.importFestival(festival, concerts);
+        assertTrue(id != -1);
+        assertEquals(Long.valueOf(id), festival.getId());
+        Concert[] stored = handler.getConcerts(handler.getFestival(id));
+        assertEquals(concerts.length, stored.length);
+        assertEquals("Artist 2", handler.getConcertByExternalId(festival, 2).getArtist());
+        for (Concert concert : concerts)
+            assertEquals(handler.getConcertByExternalId(festival, concert.getExternalId()).getId(),
+                    concert.getId());
+    }
+
+    public void testAddConcertsNotifiesOnceWithAllIds() throws Exception {
+        Festival festival = festival();
+        festival.setId(handler.addFestival(festival));
+        handler.subscribeToConcerts(festival.getId(), recorder);
+        Concert[] concerts = new Concert[3];
+        for (int i = 0; i < concerts.length; i++)
+            concerts[i] = new Concert(null, i, festival, "Artist " + i, i, 1, new Date(i * 1_000),
+                    new Date(i * 1_000 + 500), false);
+
+        long[] ids = handler.addConcerts(concerts);
+        assertEquals(1, changes.size());
+        assertEquals(ids.length, changes.get(0).getConcerts(festival.getId()).size());
+        for (long id : ids)
+            assertTrue(changes.get(0).getConcerts(festival.getId()).contains(id));
+    }
+
+    public void testSubscriptionsNotifiedOfTheirRecords() throws Exception {
+        Festival festival = festival();
+        handler.subscribeToFestivals(recorder);
+        festival.setId(handler.addFestival(festival));
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0).isFestivalTableChanged());
+
+        Festival other = festival();
+        other.setId(handler.addFestival(other));
+        changes.clear();
+        Subscription subscription = handler.subscribeToFestival(festival.getId(), recorder);
+        handler.editFestival(other.getId(), "Other", null, null, null, null, null, null, null,
+                null, null);
+        assertEquals(0, changes.size());
+        handler.editFestival(festival.getId(), "Renamed", null, null, null, null, null, null,
+                null, null, null);
+        assertEquals(1, changes.size());
+        assertFalse(changes.get(0).isFestivalTableChanged());
+        assertTrue(changes.get(0).getFestivals().contains(festival.getId()));
+
+        subscription.cancel();
+        handler.editFestival(festival.getId(), "Renamed again", null, null, null, null, null,
+                null, null, null, null);
+        assertEquals(1, changes.size());
+    }
+
+    public void testMovedConcertNotifiesBothFestivals() throws Exception {
+        Festival festival = festival();
+        festival.setId(handler.addFestival(festival));
+        Festival other = festival();
+        other.setId(handler.addFestival(other));
+        Concert concert = new Concert(null, 7, festival, "Artist", 1, 2, new Date(1_000),
+                new Date(2_000), false);
+        concert.setId(handler.addConcert(concert));
+        handler.subscribeToConcerts(festival.getId(), recorder);
+
+        handler.editConcert(concert.getId(), null, other.getId(), null, null, null, null, null,
+                null);
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0).getConcerts(festival.getId()).contains(concert.getId()));
+        assertTrue(changes.get(0).getConcerts(other.getId()).contains(concert.getId()));
+    }
+
+    public void testRemoveFestivalRemovesOnlyItsConcerts() throws Exception {
+        Festival festival = festival();
+        festival.setId(handler.addFestival(festival));
+        Festival other = festival();
+        other.setId(handler.addFestival(other));
+        Concert concert = new Concert(null, 7, festival, "Artist", 1, 2, new Date(1_000),
+                new Date(2_000), false);
+        concert.setId(handler.addConcert(concert));
+        Concert kept = new Concert(null, 7, other, "Artist", 1, 2, new Date(1_000),
+                new Date(2_000), false);
+        kept.setId(handler.addConcert(kept));
+        handler.subscribeToConcerts(festival.getId(), recorder);
+
+        assertTrue(handler.removeFestival(festival.getId()));
+        assertNull(handler.getFestival(festival.getId()));
+        assertEquals(0, handler.getConcerts(festival).length);
+        assertEquals(1, handler.getConcerts(other).length);
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0).isFestivalTableChanged());
+        assertTrue(changes.get(0).getConcerts(festival.getId()).contains(concert.getId()));
+
+        assertFalse(handler.removeFestival(festival.getId()));
+        assertEquals(1, changes.size());
+    }
+
+    public void testConcertOfUnknownFestivalRejected() throws Exception {
+        Festival festival = festival();
+        festival.setId(42L);
+        Concert concert = new Concert(null, 7, festival, "Artist", 1, 2, new Date(1_000),
+                new Date(2_000), false);
+        assertEquals(-1, handler.addConcert(concert));
+        assertEquals(0, handler.getConcerts(festival).length);
+    }
+
+    public void testMaintenanceReclaimsFreePages() throws Exception {
+        Festival festival = festival();
+        Concert[] concerts = new Concert[500];
+        for (int i = 0; i < concerts.length; i++)
+            concerts[i] = new Concert(null, i, festival, "Artist " + i, i, 1, new Date(i * 1_000),
+                    new Date(i * 1_000 + 500), false);
+        handler.importFestival(festival, concerts);
+        handler.removeFestival(festival.getId());
+
+        assertTrue(handler.performMaintenance(0));
+        assertFalse(handler.performMaintenance(0.5));
+    }
+
+    public void testFestivalSummariesDatedByConcerts() throws Exception {
+        Festival festival = festival();
+        Concert[] concerts = new Concert[3];
+        for (int i = 0; i < concerts.length; i++)
+            concerts[i] = new Concert(null, i, festival, "Artist " + i, i, 1,
+                    new Date(5_000 - i * 1_000), new Date(7_000 + i * 1_000), false);
+        handler.importFestival(festival, concerts);
+        Festival empty = festival();
+        empty.setId(handler.addFestival(empty));
+
+        FestivalSummary[] summaries = handler.getFestivalSummaries();
+        assertEquals(2, summaries.length);
+        for (FestivalSummary summary : summaries) {
+            assertEquals("Fest", summary.getName());
+            assertEquals("Sofia", summary.getCity());
+            if (summary.getId() == festival.getId()) {
+                assertEquals(3_000, summary.getStart());
+                assertEquals(9_000, summary.getEnd());
+            } else {
+                assertEquals((long) empty.getId(), summary.getId());
+                assertFalse(summary.hasDates());
+            }
+        }
+    }
+
+    public void testFestivalSummaryKeepsDatesAfterEviction() throws Exception {
+        Festival festival = festival();
+        Concert[] concerts = new Concert[3];
+        for (int i = 0; i < concerts.length; i++)
+            concerts[i] = new Concert(null, i, festival, "Artist " + i, i, 1,
+                    new Date(5_000 - i * 1_000), new Date(7_000 + i * 1_000), false);
+        handler.importFestival(festival, concerts);
+        assertEquals(concerts.length, handler.removeConcerts(festival.getId()));
+        // evicting again finds no concerts and keeps the stored dates
+        assertEquals(0, handler.removeConcerts(festival.getId()));
+
+        FestivalSummary[] summaries = handler.getFestivalSummaries();
+        assertEquals(1, summaries.length);
+        assertEquals(3_000, summaries[0].getStart());
+        assertEquals(9_000, summaries[0].getEnd());
+    }
+
+    public void testAgendaMergesNotifiedConcertsByStart() throws Exception {
+        Festival first = festival();
+        first.setId(handler.addFestival(first));
+        Festival second = festival();
+        second.setId(handler.addFestival(second));
+        // concert i starts at minute 7 * i mod 30, every third one is to be notified of
+        List<Concert> expected = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            Festival festival = i % 2 == 0 ? first : second;
+            long start = (7 * i % 30) * 60_000L;
+            Concert concert = new Concert(null, i, festival, "Artist " + i, 1, 1, new Date(start),
+                    new Date(start + 1_000), i % 3 == 0);
+            concert.setId(handler.addConcert(concert));
+            if (concert.isToNotify())
+                expected.add(concert);
+        }
+
+        ConcertCursor cursor = handler.getNotifiedConcerts(first);
+        long previous = Long.MIN_VALUE;
+        while (cursor.moveToNext()) {
+            assertTrue(cursor.getStart() >= previous);
+            previous = cursor.getStart();
+            assertTrue(cursor.getConcert().isToNotify());
+            assertEquals(first.getId(), cursor.getConcert().getFestival().getId());
+        }
+        cursor.close();
+
+        List<ConcertCursor> cursors = new ArrayList<>();
+        cursors.add(handler.getNotifiedConcerts(first));
+        cursors.add(handler.getNotifiedConcerts(second));
+        AgendaIterator agenda = new AgendaIterator(cursors);
+        List<Concert> merged = new ArrayList<>();
+        while (agenda.hasNext())
+            merged.add(agenda.next());
+        assertEquals(expected.size(), merged.size());
+        for (int i = 1; i < merged.size(); i++)
+            assertTrue(merged.get(i - 1).getStart().compareTo(merged.get(i).getStart()) <= 0);
+        for (Concert concert : expected) {
+            boolean found = false;
+            for (Concert agendaConcert : merged)
+                found |= agendaConcert.getId().equals(concert.getId());
+            assertTrue(found);
+        }
+    }
+
+    public void testFestivalStatsMatchRecomputation() throws Exception {
+        Random random = new Random(42);
+        Festival[] festivals = new Festival[3];
+        for (int f = 0; f < festivals.length; f++) {
+            festivals[f] = festival();
+            handler.importFestival(festivals[f], new Concert[0]);
+            assertFalse(handler.festivalHasConcerts(festivals[f]));
+        }
+        for (int round = 0; round < 200; round++) {
+            Festival festival = festivals[random.nextInt(festivals.length)];
+            Concert[] lineup = handler.getConcerts(festival);
+            int operation = random.nextInt(5);
+            if (operation < 2 || lineup.length == 0) {
+                Concert[] added = new Concert[1 + random.nextInt(3)];
+                for (int i = 0; i < added.length; i++) {
+                    long start = random.nextInt(100) * 60_000L;
+                    added[i] = new Concert(null, round, festival, "Artist " + round,
+                            random.nextInt(4), 1 + random.nextInt(3), new Date(start),
+                            new Date(start + (1 + random.nextInt(60)) * 60_000L), false);
+                }
+                handler.addConcerts(added);
+            } else if (operation == 2) {
+                Concert concert = lineup[random.nextInt(lineup.length)];
+                concert.setStart(new Date(random.nextInt(100) * 60_000L));
+                concert.setEnd(new Date(concert.getStart().getTime() + 30 * 60_000L));
+                concert.setStage(random.nextInt(4));
+                handler.updateConcert(concert);
+            } else if (operation == 3) {
+                Concert concert = lineup[random.nextInt(lineup.length)];
+                Festival other = festivals[random.nextInt(festivals.length)];
+                handler.editConcert(concert.getId(), null, other.getId(), null, null,
+                        1 + random.nextInt(3), null, null, null);
+            } else {
+                Concert concert = lineup[random.nextInt(lineup.length)];
+                handler.removeConcert(festival.getId().intValue(), concert.getArtist());
+            }
+            for (Festival each : festivals) {
+                Concert[] concerts = handler.getConcerts(each);
+                assertEquals(recompute(concerts), handler.getFestivalStats(each.getId()));
+                assertEquals(concerts.length != 0, handler.festivalHasConcerts(each));
+            }
+        }
+
+        handler.removeConcerts(festivals[0].getId());
+        assertTrue(handler.getFestivalStats(festivals[0].getId()).isEmpty());
+        handler.removeFestival(festivals[1].getId());
+        assertTrue(handler.getFestivalStats(festivals[1].getId()).isEmpty());
+        assertEquals(recompute(handler.getConcerts(festivals[2])),
+                handler.getFestivalStats(festivals[2].getId()));
+    }
+
+    /**
+     * the statistics of a lineup computed from its concerts
+     */
+    private static FestivalStats recompute(Concert[] concerts) {
+        Map<Integer, Map<Integer, long[]>> days = new TreeMap<>();
+        for (Concert concert : concerts) {
+            Map<Integer, long[]> stages = days.get(concert.getDay());
+            if (stages == null) {
+                stages = new TreeMap<>();
+                days.put(concert.getDay(), stages);
+            }
+            long[] cell = stages.get(concert.getStage());
+            if (cell == null) {
+                cell = new long[]{0, Long.MAX_VALUE, Long.MIN_VALUE};
+                stages.put(concert.getStage(), cell);
+            }
+            cell[0]++;
+            cell[1] = Math.min(cell[1], concert.getStart().getTime());
+            cell[2] = Math.max(cell[2], concert.getEnd().getTime());
+        }
+        FestivalStats.Builder builder = new FestivalStats.Builder();
+        for (Map.Entry<Integer, Map<Integer, long[]>> day : days.entrySet())
+            for (Map.Entry<Integer, long[]> stage : day.getValue().entrySet())
+                builder.add(day.getKey(), stage.getKey(), (int) stage.getValue()[0],
+                        stage.getValue()[1], stage.getValue()[2]);
+        return builder.build();
+    }
 
+    private static Festival festival() {
+        return new Festival(null, 1, "Fest", "Open air", "Bulgaria", "Sofia", "Park", "Rock",
+                "40", "owner", false, 0);
     }
-}
\ No newline at end of file
+}
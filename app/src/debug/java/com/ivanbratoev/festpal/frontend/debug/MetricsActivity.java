@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.frontend.debug;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.ivanbratoev.festpal.R;
+import com.ivanbratoev.festpal.datamodel.metrics.Metrics;
+import com.ivanbratoev.festpal.datamodel.metrics.Tracer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Debug build only screen listing everything recorded by {@link Metrics}. It also turns
+ * {@link Tracer} on and writes the recorded spans to sync-trace.json in the external files
+ * directory of the application, to be pulled with adb and opened in chrome://tracing.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    private TextView dump;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        dump = (TextView) findViewById(R.id.dump);
+
+        CheckBox enabled = (CheckBox) findViewById(R.id.enabled);
+        enabled.setChecked(Metrics.isEnabled());
+        enabled.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                Metrics.setEnabled(isChecked);
+            }
+        });
+
+        Button refresh = (Button) findViewById(R.id.refresh);
+        refresh.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showMetrics();
+            }
+        });
+
+        Button reset = (Button) findViewById(R.id.reset);
+        reset.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Metrics.reset();
+                showMetrics();
+            }
+        });
+
+        CheckBox traceEnabled = (CheckBox) findViewById(R.id.trace_enabled);
+        traceEnabled.setChecked(Tracer.isEnabled());
+        traceEnabled.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                Tracer.setEnabled(isChecked);
+            }
+        });
+
+        Button traceExport = (Button) findViewById(R.id.trace_export);
+        traceExport.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                exportTrace();
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    private void showMetrics() {
+        String metrics = Metrics.dump();
+        dump.setText(metrics.isEmpty() ? getString(R.string.metrics_empty) : metrics);
+    }
+
+    private void exportTrace() {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            Toast.makeText(this, R.string.trace_export_failed, Toast.LENGTH_LONG).show();
+            return;
+        }
+        File file = new File(directory, "sync-trace.json");
+        int spans = Tracer.size();
+        try {
+            OutputStream stream = new FileOutputStream(file);
+            try {
+                stream.write(Tracer.exportChromeTrace().getBytes("UTF-8"));
+            } finally {
+                stream.close();
+            }
+            Toast.makeText(this, getString(R.string.trace_exported, spans,
+                    file.getAbsolutePath()), Toast.LENGTH_LONG).show();
+        } catch (IOException ignore) {
+            Toast.makeText(this, R.string.trace_export_failed, Toast.LENGTH_LONG).show();
+        }
+    }
+}
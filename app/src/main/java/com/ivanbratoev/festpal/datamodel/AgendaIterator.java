@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import android.support.annotation.NonNull;
+
+import com.ivanbratoev.festpal.datamodel.db.internal.ConcertCursor;
+
+import java.io.Closeable;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Concerts of several festivals in a single stream ordered by start time, merged from cursors
+ * each ordered by start time. Only the current row of every cursor is held, so the memory used
+ * depends on the number of festivals and not on the number of concerts. Concerts starting at
+ * the same time are ordered by festival and concert id. Has to be closed, which also happens
+ * once the last concert was returned
+ */
+public final class AgendaIterator implements Iterator<Concert>, Closeable {
+
+    private static final Comparator<ConcertCursor> BY_START = new Comparator<ConcertCursor>() {
+        @Override
+        public int compare(ConcertCursor a, ConcertCursor b) {
+            int result = compareLongs(a.getStart(), b.getStart());
+            if (result == 0)
+                result = compareLongs(a.getFestival().getId(), b.getFestival().getId());
+            if (result == 0)
+                result = compareLongs(a.getId(), b.getId());
+            return result;
+        }
+    };
+
+    private final PriorityQueue<ConcertCursor> heads;
+
+    /**
+     * @param cursors cursors ordered by start time, closed by the iterator
+     */
+    public AgendaIterator(@NonNull List<ConcertCursor> cursors) {
+        heads = new PriorityQueue<>(Math.max(1, cursors.size()), BY_START);
+        for (ConcertCursor cursor : cursors)
+            advance(cursor);
+    }
+
+    private static int compareLongs(long a, long b) {
+        return (a < b) ? -1 : ((a == b) ? 0 : 1);
+    }
+
+    /**
+     * put the cursor back in the queue at its next row, or close it after its last
+     */
+    private void advance(ConcertCursor cursor) {
+        if (cursor.moveToNext())
+            heads.add(cursor);
+        else
+            cursor.close();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public Concert next() {
+        ConcertCursor head = heads.poll();
+        if (head == null)
+            throw new NoSuchElementException();
+        Concert concert = head.getConcert();
+        advance(head);
+        return concert;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * close the cursors not read to the end
+     */
+    @Override
+    public void close() {
+        for (ConcertCursor cursor : heads)
+            cursor.close();
+        heads.clear();
+    }
+}
@@ -26,6 +26,13 @@ import java.util.Date;
  * Concert information holder class
  */
 public class Concert {
+    public static final int FIELD_FESTIVAL = 1;
+    public static final int FIELD_ARTIST = 1 << 1;
+    public static final int FIELD_STAGE = 1 << 2;
+    public static final int FIELD_DAY = 1 << 3;
+    public static final int FIELD_START = 1 << 4;
+    public static final int FIELD_END = 1 << 5;
+    public static final int FIELD_NOTIFY = 1 << 6;
 
     private Long id;
     private Long externalId;
@@ -36,6 +43,9 @@ public class Concert {
     private Date start;
     private Date end;
     private boolean notify;
+    private int dirtyFields;
+    private long contentHash;
+    private boolean contentHashKnown;
 
     /**
      * @param festival festival hosting the concert
@@ -72,12 +82,25 @@ public class Concert {
         return externalId;
     }
 
+    /**
+     * @param externalId id in the external database, null if the concert was not uploaded
+     */
+    public void setExternalId(@Nullable Long externalId) {
+        if (!same(this.externalId, externalId)) {
+            this.externalId = externalId;
+            contentHashKnown = false;
+        }
+    }
+
     public Festival getFestival() {
         return festival;
     }
 
     public void setFestival(Festival festival) {
-        this.festival = festival;
+        if (this.festival != festival) {
+            this.festival = festival;
+            markDirty(FIELD_FESTIVAL);
+        }
     }
 
     public String getArtist() {
@@ -85,7 +108,10 @@ public class Concert {
     }
 
     public void setArtist(String artist) {
-        this.artist = artist;
+        if (!same(this.artist, artist)) {
+            this.artist = artist;
+            markDirty(FIELD_ARTIST);
+        }
     }
 
     public int getStage() {
@@ -93,7 +119,10 @@ public class Concert {
     }
 
     public void setStage(int stage) {
-        this.stage = stage;
+        if (this.stage != stage) {
+            this.stage = stage;
+            markDirty(FIELD_STAGE);
+        }
     }
 
     public int getDay() {
@@ -101,7 +130,10 @@ public class Concert {
     }
 
     public void setDay(int day) {
-        this.day = day;
+        if (this.day != day) {
+            this.day = day;
+            markDirty(FIELD_DAY);
+        }
     }
 
     public Date getStart() {
@@ -109,7 +141,10 @@ public class Concert {
     }
 
     public void setStart(Date start) {
-        this.start = start;
+        if (!same(this.start, start)) {
+            this.start = start;
+            markDirty(FIELD_START);
+        }
     }
 
     public Date getEnd() {
@@ -117,7 +152,10 @@ public class Concert {
     }
 
     public void setEnd(Date end) {
-        this.end = end;
+        if (!same(this.end, end)) {
+            this.end = end;
+            markDirty(FIELD_END);
+        }
     }
 
     public boolean isToNotify() {
@@ -125,7 +163,62 @@ public class Concert {
     }
 
     public void setNotify(boolean notify) {
-        this.notify = notify;
+        if (this.notify != notify) {
+            this.notify = notify;
+            markDirty(FIELD_NOTIFY);
+        }
+    }
+
+    /**
+     * @return bitmask of the FIELD_ constants of fields changed through setters since the object
+     * was created or {@link #clearDirtyFields()} was last called
+     */
+    public int getDirtyFields() {
+        return dirtyFields;
+    }
+
+    public boolean isDirty() {
+        return dirtyFields != 0;
+    }
+
+    public void clearDirtyFields() {
+        dirtyFields = 0;
+    }
+
+    private void markDirty(int field) {
+        dirtyFields |= field;
+        if (field != FIELD_NOTIFY && field != FIELD_FESTIVAL)
+            contentHashKnown = false;
+    }
+
+    /**
+     * @return hash of the external id and the schedule of the concert. The festival and the
+     * local notification setting are left out. Computed once and cached until a field changes
+     */
+    public long getContentHash() {
+        if (!contentHashKnown) {
+            long hash = ContentHash.INITIAL;
+            hash = ContentHash.add(hash, (externalId == null) ? -1 : externalId);
+            hash = ContentHash.add(hash, artist);
+            hash = ContentHash.add(hash, stage);
+            hash = ContentHash.add(hash, day);
+            hash = ContentHash.add(hash, start.getTime());
+            hash = ContentHash.add(hash, end.getTime());
+            setContentHash(hash);
+        }
+        return contentHash;
+    }
+
+    /**
+     * used by the internal database to restore the stored hash instead of computing it again
+     */
+    public void setContentHash(long contentHash) {
+        this.contentHash = contentHash;
+        this.contentHashKnown = true;
+    }
+
+    private static boolean same(Object a, Object b) {
+        return (a == null) ? b == null : a.equals(b);
     }
 
     @Override
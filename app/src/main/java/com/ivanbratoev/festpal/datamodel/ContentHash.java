@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+/**
+ * 64 bit FNV-1a hash of the content of a record, stored in the internal database so
+ * synchronisation can tell unchanged records apart with one comparison. Unlike
+ * {@link Object#hashCode()} the result must never change between releases, as it is persisted.
+ */
+final class ContentHash {
+
+    static final long INITIAL = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private ContentHash() {
+    }
+
+    static long add(long hash, String value) {
+        if (value == null)
+            return add(hash, -1L);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * PRIME;
+            hash = (hash ^ (c >>> 8)) * PRIME;
+        }
+        // the length keeps "ab" + "c" apart from "a" + "bc"
+        return add(hash, value.length());
+    }
+
+    static long add(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash = (hash ^ (value & 0xff)) * PRIME;
+            value >>>= 8;
+        }
+        return hash;
+    }
+
+    static long add(long hash, boolean value) {
+        return (hash ^ (value ? 1 : 0)) * PRIME;
+    }
+}
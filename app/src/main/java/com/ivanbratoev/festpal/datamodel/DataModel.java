@@ -18,27 +18,97 @@ package com.ivanbratoev.festpal.datamodel;
 
 
 import android.content.Context;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import com.ivanbratoev.festpal.datamodel.bundle.FestivalBundle;
 import com.ivanbratoev.festpal.datamodel.db.external.ClientDoesNotHavePermissionException;
 import com.ivanbratoev.festpal.datamodel.db.external.ExternalDatabaseHandler;
+import com.ivanbratoev.festpal.datamodel.db.internal.ChangeObserver;
+import com.ivanbratoev.festpal.datamodel.db.internal.ConcertCursor;
+import com.ivanbratoev.festpal.datamodel.db.internal.DatabaseChange;
 import com.ivanbratoev.festpal.datamodel.db.internal.InternalDatabaseHandler;
+import com.ivanbratoev.festpal.datamodel.db.internal.Subscription;
+import com.ivanbratoev.festpal.datamodel.metrics.Metrics;
+import com.ivanbratoev.festpal.datamodel.metrics.Tracer;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * Singleton used to organise the model of the application, providing high-level interface
+ * Singleton used to organise the model of the application, providing high-level interface.
+ * Methods writing to the databases are serialised, while the schedules returned by
+ * {@link #getSchedule(Festival)} are immutable snapshots which can be read from any thread
+ * without locking
  */
 public final class DataModel {
 
+    private static final long REACHABILITY_TIME_TO_LIVE = 60_000;
+    private static final String TRACE_CATEGORY = "sync";
+    /**
+     * fields of a concert shared with the external database, covered by the lineup digest
+     */
+    private static final int LINEUP_FIELDS = Concert.FIELD_FESTIVAL | Concert.FIELD_ARTIST |
+            Concert.FIELD_STAGE | Concert.FIELD_DAY | Concert.FIELD_START | Concert.FIELD_END;
+    /**
+     * fields of a festival its owner uploads to the external database
+     */
+    private static final int UPLOADED_FESTIVAL_FIELDS = Festival.FIELD_NAME |
+            Festival.FIELD_DESCRIPTION | Festival.FIELD_COUNTRY | Festival.FIELD_CITY |
+            Festival.FIELD_ADDRESS | Festival.FIELD_GENRE | Festival.FIELD_PRICES |
+            Festival.FIELD_OFFICIAL;
+
     private static DataModel instance;
-    private InternalDatabaseHandler internalDatabaseHandler;
-    private ExternalDatabaseHandler externalDatabaseHandler;
-    private Context context;
-    private String username;
+    private volatile InternalDatabaseHandler internalDatabaseHandler;
+    private volatile ExternalDatabaseHandler externalDatabaseHandler;
+    private volatile ReachabilityMonitor reachabilityMonitor;
+    private volatile SyncScheduler syncScheduler;
+    private volatile RetentionManager retentionManager;
+    private volatile String username;
+    /**
+     * held while writing to the databases, so the synchronisation and the user interface never
+     * write the same records at the same time
+     */
+    private final Lock writeLock = new ReentrantLock();
+    /**
+     * held for reading by every running synchronisation. A replaced internal database handler is
+     * closed while holding it for writing, so it is not closed under a synchronisation
+     */
+    private final ReadWriteLock synchronisations = new ReentrantReadWriteLock();
+    /**
+     * number of writes made by the user, only changed while holding {@link #writeLock}. A
+     * synchronisation does not store the digest it read when the user wrote meanwhile
+     */
+    private volatile long localWrites;
+    private final ScheduleStore schedules = new ScheduleStore();
+    /**
+     * background threads of the reachability probes and the retention trims, kept across calls to
+     * {@link #init} so initialising again does not leave threads behind
+     */
+    private final Executor reachabilityExecutor = Executors.newSingleThreadExecutor();
+    private final Executor retentionExecutor = Executors.newSingleThreadExecutor();
+    /**
+     * festivals whose evicted concerts are being downloaded again
+     */
+    private final Set<Long> restoring =
+            Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
 
     /**
      * empty private constructor to forbid instantiation
@@ -61,13 +131,68 @@ public final class DataModel {
     }
 
     /**
+     * initialise the handlers and schedule the background synchronisation
+     *
      * @param context    application context
      * @param clientName client name used for authentication with external DB
      */
     public void init(@NonNull Context context, @NonNull String clientName) {
-        internalDatabaseHandler = new InternalDatabaseHandler(context);
-        externalDatabaseHandler = new ExternalDatabaseHandler(clientName);
-        this.context = context;
+        InternalDatabaseHandler previous;
+        writeLock.lock();
+        try {
+            previous = internalDatabaseHandler;
+            // the subscriptions made through the previous handler are kept
+            internalDatabaseHandler = (previous == null) ? new InternalDatabaseHandler(context)
+                    : new InternalDatabaseHandler(context, previous);
+            externalDatabaseHandler = new ExternalDatabaseHandler(clientName);
+            if (reachabilityMonitor != null)
+                reachabilityMonitor.stop();
+            reachabilityMonitor = new ReachabilityMonitor(context.getApplicationContext(),
+                    externalDatabaseHandler, reachabilityExecutor, Clock.SYSTEM,
+                    REACHABILITY_TIME_TO_LIVE);
+            reachabilityMonitor.start();
+            syncScheduler = new SyncScheduler(Clock.SYSTEM,
+                    new DeviceSyncConstraints(context.getApplicationContext()),
+                    internalDatabaseHandler);
+            retentionManager = new RetentionManager(internalDatabaseHandler, writeLock, schedules,
+                    retentionExecutor, Clock.SYSTEM,
+                    context.getApplicationContext().getSharedPreferences(
+                            RetentionManager.PREFERENCES, Context.MODE_PRIVATE),
+                    (retentionManager == null) ? RetentionManager.DEFAULT_BUDGET
+                            : retentionManager.getBudget());
+        } finally {
+            writeLock.unlock();
+        }
+        if (previous != null)
+            closeWhenUnused(previous);
+        retentionManager.requestTrim();
+        SyncService.start(context.getApplicationContext(), clientName, syncScheduler);
+    }
+
+    /**
+     * close an internal database handler replaced by {@link #init} once the work still using
+     * it is done: the trims and downloads queued on the retention executor before it and the
+     * running synchronisations
+     */
+    private void closeWhenUnused(final InternalDatabaseHandler handler) {
+        retentionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronisations.writeLock().lock();
+                try {
+                    handler.close();
+                } finally {
+                    synchronisations.writeLock().unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return scheduler of the background synchronisation, null before {@link #init}
+     */
+    SyncScheduler getSyncScheduler() {
+        return syncScheduler;
     }
 
     public String getUsername() {
@@ -92,8 +217,13 @@ public final class DataModel {
                         @Nullable String firstName, @Nullable String lastName,
                         @Nullable String country, @Nullable String city,
                         @Nullable Boolean representative) throws ClientDoesNotHavePermissionException {
-        return externalDatabaseHandler.register(username, email, password, firstName, lastName,
-                country, city, representative);
+        long timer = Metrics.start();
+        try {
+            return externalDatabaseHandler.register(username, email, password, firstName, lastName,
+                    country, city, representative);
+        } finally {
+            Metrics.stop("DataModel.register", timer);
+        }
     }
 
     /**
@@ -102,15 +232,19 @@ public final class DataModel {
      * @throws NullPointerException
      */
     public int logInExternalDatabase(@NonNull String username, @NonNull String password) {
+        long timer = Metrics.start();
         try {
             int result = externalDatabaseHandler.login(username, password);
             if (result == 0)
                 this.username = username;
             return result;
         } catch (ClientDoesNotHavePermissionException ignore) {
+            Metrics.increment("DataModel.errors.permission");
             return 5;
         } catch (NullPointerException ignore) {
             throw new NullPointerException("init() method has not been called on this instance!");
+        } finally {
+            Metrics.stop("DataModel.logInExternalDatabase", timer);
         }
     }
 
@@ -118,13 +252,17 @@ public final class DataModel {
      * @return true on success, false otherwise
      */
     public boolean logOutExternalDatabase() {
+        long timer = Metrics.start();
         try {
             boolean result = externalDatabaseHandler.logout();
             if (result)
                 username = null;
             return result;
         } catch (ClientDoesNotHavePermissionException ignore) {
+            Metrics.increment("DataModel.errors.permission");
             return false;
+        } finally {
+            Metrics.stop("DataModel.logOutExternalDatabase", timer);
         }
     }
 
@@ -138,7 +276,12 @@ public final class DataModel {
      */
     public Festival[] getOnlineFestivals(int numberOfResults)
             throws ClientDoesNotHavePermissionException {
-        return externalDatabaseHandler.readMultipleFestivals(numberOfResults);
+        long timer = Metrics.start();
+        try {
+            return externalDatabaseHandler.readMultipleFestivals(numberOfResults);
+        } finally {
+            Metrics.stop("DataModel.getOnlineFestivals", timer);
+        }
     }
 
     /**
@@ -162,17 +305,60 @@ public final class DataModel {
     public Festival[] getOnlineFestivals(int numberOfResults, Boolean official, String name,
                                          String country, String city, String genre,
                                          String minPrice, String maxPrice, String artist) throws ClientDoesNotHavePermissionException {
-        return externalDatabaseHandler.readMultipleFestivals(numberOfResults, official,
-                name, country, city, genre, minPrice, maxPrice, artist);
+        long timer = Metrics.start();
+        try {
+            return externalDatabaseHandler.readMultipleFestivals(numberOfResults, official,
+                    name, country, city, genre, minPrice, maxPrice, artist);
+        } finally {
+            Metrics.stop("DataModel.getOnlineFestivals", timer);
+        }
+    }
+
+
+    /**
+     * return the list fields of the top festival results from the online database, the whole
+     * festival is read with {@link #readFestivalInfo(long, boolean)} once it is downloaded
+     *
+     * @param numberOfResults number of festivals to return
+     * @return summaries of the festivals, null on error
+     * @throws ClientDoesNotHavePermissionException
+     */
+    public FestivalSummary[] getOnlineFestivalSummaries(int numberOfResults)
+            throws ClientDoesNotHavePermissionException {
+        long timer = Metrics.start();
+        try {
+            return externalDatabaseHandler.readFestivalSummaries(numberOfResults);
+        } finally {
+            Metrics.stop("DataModel.getOnlineFestivalSummaries", timer);
+        }
     }
 
+    /**
+     * return the list fields of the festivals in the offline database. The description, address
+     * and prices are read with {@link #readFestivalInfo(long, boolean)} when a festival is opened
+     *
+     * @return summaries of all festivals in the offline database
+     */
+    public FestivalSummary[] getOfflineFestivalSummaries() {
+        long timer = Metrics.start();
+        try {
+            return internalDatabaseHandler.getFestivalSummaries();
+        } finally {
+            Metrics.stop("DataModel.getOfflineFestivalSummaries", timer);
+        }
+    }
 
     /**
      *
      * @return all festivals in the offline database
      */
     public Festival[] getOfflineFestivals() {
-        return internalDatabaseHandler.getFestivals();
+        long timer = Metrics.start();
+        try {
+            return internalDatabaseHandler.getFestivals();
+        } finally {
+            Metrics.stop("DataModel.getOfflineFestivals", timer);
+        }
     }
 
 
@@ -186,76 +372,72 @@ public final class DataModel {
      */
     public Festival readFestivalInfo(long id, boolean update)
             throws ClientDoesNotHavePermissionException {
-        Festival festival = internalDatabaseHandler.getFestival(id);
-
+        long timer = Metrics.start();
         try {
-            if (update) {
-                Festival externalFestival = externalDatabaseHandler.
-                        readFestivalInfo(festival.getExternalId());
-                updateInternalFestivalObjectFromExternal(festival, externalFestival);
+            Festival festival = internalDatabaseHandler.getFestival(id);
+
+            try {
+                if (update) {
+                    Festival externalFestival = externalDatabaseHandler.
+                            readFestivalInfo(festival.getExternalId());
+                    writeLock.lock();
+                    try {
+                        updateInternalFestivalObjectFromExternal(festival, externalFestival);
+                    } finally {
+                        writeLock.unlock();
+                    }
+                }
+            } catch (NullPointerException ignore) {
+                Metrics.increment("DataModel.errors.missing_record");
+                return null;
             }
-        } catch (NullPointerException ignore) {
-            return null;
+            return festival;
+        } finally {
+            Metrics.stop("DataModel.readFestivalInfo", timer);
         }
-        return festival;
     }
 
     private void updateInternalFestivalObjectFromExternal(@NonNull Festival festival,
                                                           @NonNull Festival newData) {
-        if (festival.equals(newData))
+        if (festival.getContentHash() == newData.getContentHash())
             return;
-        String name = null;
-        if (!festival.getName().equals(newData.getName())) {
-            name = newData.getName();
-            festival.setName(name);
-        }
-        String description = null;
-        if (!festival.getDescription().equals(newData.getDescription())) {
-            description = newData.getDescription();
-            festival.setDescription(description);
-        }
-        String country = null;
-        if (!festival.getCountry().equals(newData.getCountry())) {
-            country = newData.getCountry();
-            festival.setCountry(country);
-        }
-        String city = null;
-        if (!festival.getCity().equals(newData.getCity())) {
-            city = newData.getCity();
-            festival.setCity(city);
-        }
-        String address = null;
-        if (!festival.getAddress().equals(newData.getAddress())) {
-            address = newData.getAddress();
-            festival.setAddress(address);
-        }
-        String genre = null;
-        if (!festival.getGenre().equals(newData.getGenre())) {
-            genre = newData.getGenre();
-            festival.setGenre(genre);
-        }
-        String prices = null;
-        if (!festival.getPrices().equals(newData.getPrices())) {
-            prices = newData.getPrices();
-            festival.setPrices(prices);
-        }
-        String owner = null;
-        if (!festival.getOwner().equals(newData.getOwner())) {
-            owner = newData.getOwner();
-            festival.setOwner(owner);
-        }
-        Boolean official = null;
-        if (festival.isOfficial() != newData.isOfficial()) {
-            official = newData.isOfficial();
-            festival.setOfficial(official);
-        }
-        Integer votes = null;
-        if (festival.getVotes() != newData.getVotes()) {
-            votes = newData.getVotes();
-            festival.setVotes(votes);
-        }
-        internalDatabaseHandler.editFestival(festival.getId(), name, description, country, city,
-                address, genre, prices, owner, official, votes);
+        copyFestivalFields(festival, newData);
+        internalDatabaseHandler.updateFestival(festival);
+    }
+
+    /**
+     * set the fields of the target which differ from the source, marking them dirty
+     */
+    private static void copyFestivalFields(Festival target, Festival source) {
+        copyFestivalFields(target, source, ~0);
+    }
+
+    /**
+     * set the given fields of the target which differ from the source, marking them dirty
+     *
+     * @param fields bitmask of the FIELD_ constants of {@link Festival} to copy
+     */
+    private static void copyFestivalFields(Festival target, Festival source, int fields) {
+        if ((fields & Festival.FIELD_NAME) != 0)
+            target.setName(source.getName());
+        if ((fields & Festival.FIELD_DESCRIPTION) != 0)
+            target.setDescription(source.getDescription());
+        if ((fields & Festival.FIELD_COUNTRY) != 0)
+            target.setCountry(source.getCountry());
+        if ((fields & Festival.FIELD_CITY) != 0)
+            target.setCity(source.getCity());
+        if ((fields & Festival.FIELD_ADDRESS) != 0)
+            target.setAddress(source.getAddress());
+        if ((fields & Festival.FIELD_GENRE) != 0)
+            target.setGenre(source.getGenre());
+        if ((fields & Festival.FIELD_PRICES) != 0)
+            target.setPrices(source.getPrices());
+        if ((fields & Festival.FIELD_OWNER) != 0)
+            target.setOwner(source.getOwner());
+        if ((fields & Festival.FIELD_OFFICIAL) != 0)
+            target.setOfficial(source.isOfficial());
+        if ((fields & Festival.FIELD_VOTES) != 0)
+            target.setVotes(source.getVotes());
     }
 
     /**
@@ -269,36 +451,44 @@ public final class DataModel {
      */
     public long writeFestivalInfo(Festival festival, boolean online)
             throws ClientDoesNotHavePermissionException {
-        if (!festival.getOwner().equals(username))
-            return -1;
-        if (online) {
-            boolean result;
-            if (externalDatabaseHandler.readFestivalInfo(festival.getExternalId()) == null) {
-                result = externalDatabaseHandler.writeFestivalInfo(
-                        festival.getName(), festival.getDescription(), festival.getCountry(),
-                        festival.getCity(), festival.getAddress(), festival.getGenre(),
-                        festival.getPrices(), festival.isOfficial()
-                );
-            } else {
-                result = externalDatabaseHandler.updateFestivalInfo(
-                        festival.getExternalId(), festival.getName(), festival.getDescription(),
-                        festival.getCountry(), festival.getCity(), festival.getAddress(),
-                        festival.getGenre(), festival.getPrices(), festival.isOfficial()
-                );
-            }
-            if (!result)
+        long timer = Metrics.start();
+        writeLock.lock();
+        try {
+            localWrites++;
+            if (!festival.getOwner().equals(username))
                 return -1;
-        }
-        if (festival.getId() != null) {
-            if (internalDatabaseHandler.getFestival(festival.getId()) != null) {
-                internalDatabaseHandler.editFestival(festival.getId(), festival.getName(),
-                        festival.getDescription(), festival.getCountry(), festival.getCity(),
-                        festival.getAddress(), festival.getGenre(), festival.getPrices(),
-                        festival.getOwner(), festival.isOfficial(), festival.getVotes());
-                return festival.getId();
+            if (online) {
+                boolean result;
+                if (externalDatabaseHandler.readFestivalInfo(festival.getExternalId()) == null) {
+                    result = externalDatabaseHandler.writeFestivalInfo(
+                            festival.getName(), festival.getDescription(), festival.getCountry(),
+                            festival.getCity(), festival.getAddress(), festival.getGenre(),
+                            festival.getPrices(), festival.isOfficial()
+                    );
+                } else {
+                    result = externalDatabaseHandler.updateFestivalInfo(
+                            festival.getExternalId(), festival.getName(), festival.getDescription(),
+                            festival.getCountry(), festival.getCity(), festival.getAddress(),
+                            festival.getGenre(), festival.getPrices(), festival.isOfficial()
+                    );
+                }
+                if (!result)
+                    return -1;
+            }
+            if (festival.getId() != null) {
+                if (internalDatabaseHandler.getFestival(festival.getId()) != null) {
+                    internalDatabaseHandler.editFestival(festival.getId(), festival.getName(),
+                            festival.getDescription(), festival.getCountry(), festival.getCity(),
+                            festival.getAddress(), festival.getGenre(), festival.getPrices(),
+                            festival.getOwner(), festival.isOfficial(), festival.getVotes());
+                    return festival.getId();
+                }
             }
+            return internalDatabaseHandler.addFestival(festival);
+        } finally {
+            writeLock.unlock();
+            Metrics.stop("DataModel.writeFestivalInfo", timer);
         }
-        return internalDatabaseHandler.addFestival(festival);
     }
 
     /**
@@ -312,6 +502,7 @@ public final class DataModel {
      */
     public Concert readConcertInfo(long festivalId, long concertId, boolean update)
             throws ClientDoesNotHavePermissionException {
+        long timer = Metrics.start();
         try {
             Festival festival = internalDatabaseHandler.getFestival(festivalId);
             Concert concert = internalDatabaseHandler.getConcert(festival, concertId);
@@ -332,55 +523,427 @@ public final class DataModel {
             }
             return concert;
         } catch (NullPointerException ignore) {
+            Metrics.increment("DataModel.errors.missing_record");
             return null;
+        } finally {
+            Metrics.stop("DataModel.readConcertInfo", timer);
         }
     }
 
     /**
-     * write concert information to the internal database
+     * write concert information to the internal database. When writing online the concert is
+     * sent with the batch requests of {@link #writeConcertsInfo}, which is to be used for many
+     * concerts
      * @param concert the concert information object to write
      * @param online also write to external database if set <code>true</code>
      * @return true on success false otherwise
      */
     public boolean writeConcertInfo(@NonNull Concert concert, boolean online) throws ClientDoesNotHavePermissionException {
-        Concert existentConcert = internalDatabaseHandler.getConcert
-                (concert.getFestival(), concert.getId());
-        if (existentConcert == null) {
-            return externalDatabaseHandler.writeConcertInfo(concert.getExternalId(),
-                    concert.getArtist(), concert.getStage(), concert.getDay(),
-                    concert.getStart(), concert.getEnd()) &&
-                    (internalDatabaseHandler.addConcert(concert) != -1);
-        }
-
-        Long festival = (concert.getFestival().equals(existentConcert.getFestival())) ?
-                null : concert.getFestival().getId();
-        String artist = (concert.getArtist().equals(existentConcert.getArtist())) ?
-                null : concert.getArtist();
-        Integer stage = (concert.getStage() == existentConcert.getStage()) ?
-                null : concert.getStage();
-        Integer day = (concert.getDay() == existentConcert.getDay()) ?
-                null : concert.getDay();
-        Date start = (concert.getStart().equals(existentConcert.getStart())) ?
-                null : concert.getStart();
-        Date end = (concert.getEnd().equals(existentConcert.getEnd())) ?
-                null : concert.getEnd();
-        Boolean notify = (concert.isToNotify() == existentConcert.isToNotify()) ?
-                null : concert.isToNotify();
-        internalDatabaseHandler.editConcert(concert.getId(), concert.getExternalId(),
-                festival, artist, stage, day, start, end, notify);
-        if (online) {
-            if (externalDatabaseHandler.readConcertInfo(
-                    concert.getFestival(), concert.getExternalId()) == null)
-                return externalDatabaseHandler.writeConcertInfo(
-                        concert.getFestival().getExternalId(),
-                        concert.getArtist(), concert.getStage(),
-                        concert.getDay(), concert.getStart(), concert.getEnd());
-            else
-                return externalDatabaseHandler.updateConcertInfo(
-                        concert.getExternalId(), artist, stage, day, start, end);
-        } else {
+        long timer = Metrics.start();
+        try {
+            return writeConcertsInfo(concert.getFestival(), new Concert[]{concert}, online);
+        } finally {
+            Metrics.stop("DataModel.writeConcertInfo", timer);
+        }
+    }
+
+    /**
+     * copy the fields of a concert onto its record read from the internal database, whose dirty
+     * fields are then the ones the write changes
+     */
+    private static void applyConcert(Concert stored, Concert concert) {
+        if (!concert.getFestival().equals(stored.getFestival()))
+            stored.setFestival(concert.getFestival());
+        stored.setArtist(concert.getArtist());
+        stored.setStage(concert.getStage());
+        stored.setDay(concert.getDay());
+        stored.setStart(concert.getStart());
+        stored.setEnd(concert.getEnd());
+        stored.setNotify(concert.isToNotify());
+    }
+
+    /**
+     * write the lineup of a festival to the internal database. When writing online, all concerts
+     * are sent to the external database with one request for the new and one for the existing
+     * concerts instead of a request per concert
+     *
+     * @param festival festival hosting the concerts
+     * @param concerts the concert information objects to write
+     * @param online   also write to external database if set <code>true</code>
+     * @return true if every concert was written successfully, false otherwise
+     */
+    public boolean writeConcertsInfo(@NonNull Festival festival, @NonNull Concert[] concerts,
+                                     boolean online)
+            throws ClientDoesNotHavePermissionException {
+        long timer = Metrics.start();
+        writeLock.lock();
+        try {
+            localWrites++;
+            Concert[] stored = new Concert[concerts.length];
+            boolean lineupChanged = false;
+            for (int i = 0; i < concerts.length; i++) {
+                stored[i] = (concerts[i].getId() == null) ? null :
+                        internalDatabaseHandler.getConcert(festival, concerts[i].getId());
+                if (stored[i] != null)
+                    applyConcert(stored[i], concerts[i]);
+                lineupChanged |= stored[i] == null ||
+                        (stored[i].getDirtyFields() & LINEUP_FIELDS) != 0;
+            }
+            // the lineup the stored digest was sent for differs, unless only notifications
+            // were toggled
+            if (lineupChanged)
+                internalDatabaseHandler.setFestivalDigest(festival, null);
+            boolean[] written = new boolean[concerts.length];
+            Arrays.fill(written, true);
+            if (online) {
+                Concert[] externalConcerts = externalDatabaseHandler.readFestivalConcerts(festival);
+                if (externalConcerts == null)
+                    return false;
+                Map<Long, Concert> existing = new HashMap<>();
+                for (Concert external : externalConcerts)
+                    existing.put(external.getExternalId(), external);
+
+                List<Integer> newIndices = new ArrayList<>();
+                List<Integer> updateIndices = new ArrayList<>();
+                List<ExternalDatabaseHandler.ConcertUpdate> updates = new ArrayList<>();
+                for (int i = 0; i < concerts.length; i++) {
+                    Concert external = existing.get(concerts[i].getExternalId());
+                    if (external == null) {
+                        newIndices.add(i);
+                    } else if (!external.equals(concerts[i])) {
+                        updateIndices.add(i);
+                        updates.add(concertUpdateFromInternal(external, concerts[i]));
+                    }
+                }
+
+                Concert[] newConcerts = new Concert[newIndices.size()];
+                for (int i = 0; i < newConcerts.length; i++)
+                    newConcerts[i] = concerts[newIndices.get(i)];
+                if (!markBatchResults(written, newIndices, externalDatabaseHandler.
+                        writeConcertInfoBatch(festival.getExternalId(), newConcerts)))
+                    return false;
+                if (!markBatchResults(written, updateIndices, externalDatabaseHandler.
+                        updateConcertInfoBatch(updates.toArray(
+                                new ExternalDatabaseHandler.ConcertUpdate[updates.size()]))))
+                    return false;
+            }
+
+            boolean result = true;
+            List<Concert> added = new ArrayList<>();
+            for (int i = 0; i < concerts.length; i++) {
+                if (!written[i]) {
+                    result = false;
+                    continue;
+                }
+                if (stored[i] == null)
+                    added.add(concerts[i]);
+                else
+                    internalDatabaseHandler.updateConcert(stored[i]);
+            }
+            return addConcertsToInternal(added) && result;
+        } finally {
+            finishWrite(festival);
+            Metrics.stop("DataModel.writeConcertsInfo", timer);
+        }
+    }
+
+    /**
+     * write a festival and its concerts from the internal database to a bundle file, to be
+     * shared offline
+     *
+     * @param festival festival to export
+     * @param file     file to write, replaced if it exists
+     * @return true on success, false otherwise
+     */
+    public boolean exportFestivalBundle(@NonNull Festival festival, @NonNull File file) {
+        long timer = Metrics.start();
+        try {
+            FestivalBundle bundle = new FestivalBundle(festival,
+                    internalDatabaseHandler.getConcerts(festival));
+            OutputStream out = new FileOutputStream(file);
+            try {
+                bundle.write(out);
+            } finally {
+                out.close();
+            }
             return true;
+        } catch (IOException ignore) {
+            Metrics.increment("DataModel.errors.bundle");
+            return false;
+        } finally {
+            Metrics.stop("DataModel.exportFestivalBundle", timer);
+        }
+    }
+
+    /**
+     * add the festival and the concerts of a bundle file to the internal database in a single
+     * transaction. A festival imported before, or downloaded, is updated instead of added again
+     *
+     * @param file bundle file written by {@link #exportFestivalBundle(Festival, File)}
+     * @return internal id of the imported festival or -1 if the file is not a valid bundle or
+     * could not be written to the internal database
+     */
+    public long importFestivalBundle(@NonNull File file) {
+        long timer = Metrics.start();
+        FestivalBundle bundle;
+        try {
+            bundle = FestivalBundle.read(file);
+        } catch (IOException ignore) {
+            Metrics.increment("DataModel.errors.bundle");
+            Metrics.stop("DataModel.importFestivalBundle", timer);
+            return -1;
+        }
+        writeLock.lock();
+        try {
+            localWrites++;
+            return internalDatabaseHandler.importFestival(bundle.getFestival(),
+                    bundle.getConcerts());
+        } finally {
+            // the festival may have had concerts which are not in the bundle
+            finishWrite(bundle.getFestival());
+            Metrics.stop("DataModel.importFestivalBundle", timer);
+        }
+    }
+
+    /**
+     * set the disk space the data of the internal database may take up. When it is exceeded
+     * the concerts of past festivals, then of the festivals viewed least recently, are removed
+     * in the background. The festivals themselves are kept, the synchronisation leaves their
+     * concerts out until they are viewed with {@link #getSchedule(Festival)} again. Has no
+     * effect before {@link #init}
+     *
+     * @param bytes budget in bytes
+     */
+    public void setInternalDatabaseBudget(long bytes) {
+        RetentionManager retention = retentionManager;
+        if (retention == null)
+            return;
+        retention.setBudget(bytes);
+        retention.requestTrim();
+    }
+
+    /**
+     * remove a festival and its concerts from the internal database. The external database is
+     * not changed
+     *
+     * @param festival festival recorded in the internal database
+     * @return true if the festival was removed, false if it is not in the internal database
+     */
+    public boolean removeOfflineFestival(@NonNull Festival festival) {
+        Long id = festival.getId();
+        if (id == null)
+            return false;
+        long timer = Metrics.start();
+        writeLock.lock();
+        try {
+            boolean removed = internalDatabaseHandler.removeFestival(id);
+            schedules.clear(id);
+            return removed;
+        } finally {
+            writeLock.unlock();
+            Metrics.stop("DataModel.removeOfflineFestival", timer);
+        }
+    }
+
+    /**
+     * get the concerts of all festivals in the internal database the user is to be notified of,
+     * as one agenda ordered by start time. The concerts are read while iterating, one row of each
+     * festival at a time
+     *
+     * @return iterator over the agenda, to be closed when not read to the end
+     */
+    public AgendaIterator getAgenda() {
+        long timer = Metrics.start();
+        try {
+            Festival[] festivals = internalDatabaseHandler.getFestivals();
+            List<ConcertCursor> cursors = new ArrayList<>(festivals.length);
+            boolean opened = false;
+            try {
+                for (Festival festival : festivals)
+                    cursors.add(internalDatabaseHandler.getNotifiedConcerts(festival));
+                AgendaIterator agenda = new AgendaIterator(cursors);
+                opened = true;
+                return agenda;
+            } finally {
+                // the iterator owns the cursors once created, until then they are closed here
+                if (!opened)
+                    for (ConcertCursor cursor : cursors)
+                        cursor.close();
+            }
+        } finally {
+            Metrics.stop("DataModel.getAgenda", timer);
+        }
+    }
+
+    /**
+     * get notified on a background thread when concerts of a festival are added, changed or
+     * removed in the internal database, also by the background synchronisation. The
+     * observer is called after the writer published the new schedule, so
+     * {@link #getSchedule} returns it. The subscription is kept when {@link #init} is called
+     * again
+     *
+     * @param festival festival recorded in the internal database
+     * @param observer observer to notify
+     * @return subscription to cancel when the notifications are no longer needed
+     */
+    public Subscription subscribeToConcerts(@NonNull Festival festival,
+                                            @NonNull final ChangeObserver observer) {
+        return internalDatabaseHandler.subscribeToConcerts(festival.getId(),
+                new ChangeObserver() {
+                    @Override
+                    public void onChange(DatabaseChange change) {
+                        // writers commit and notify while holding the lock and publish the
+                        // schedule before releasing it
+                        writeLock.lock();
+                        writeLock.unlock();
+                        observer.onChange(change);
+                    }
+                });
+    }
+
+    /**
+     * get notified on a background thread when a festival is changed or removed in the internal
+     * database. The subscription is kept when {@link #init} is called again
+     *
+     * @param festival festival recorded in the internal database
+     * @param observer observer to notify
+     * @return subscription to cancel when the notifications are no longer needed
+     */
+    public Subscription subscribeToFestival(@NonNull Festival festival,
+                                            @NonNull ChangeObserver observer) {
+        return internalDatabaseHandler.subscribeToFestival(festival.getId(), observer);
+    }
+
+    /**
+     * get notified on a background thread when festivals are added to or removed from the
+     * internal database. The subscription is kept when {@link #init} is called again
+     *
+     * @param observer observer to notify
+     * @return subscription to cancel when the notifications are no longer needed
+     */
+    public Subscription subscribeToFestivals(@NonNull ChangeObserver observer) {
+        return internalDatabaseHandler.subscribeToFestivals(observer);
+    }
+
+    /**
+     * get the schedule of a festival without waiting for writers. The returned snapshot does not
+     * change, a newer one is published after every write to the festival's concerts. When the
+     * concerts were evicted they are downloaded again in the background
+     *
+     * @param festival festival recorded in the internal database
+     * @return snapshot of the festival's concerts, null if they could not be read
+     */
+    @Nullable
+    public ScheduleSnapshot getSchedule(@NonNull Festival festival) {
+        Long id = festival.getId();
+        if (id == null)
+            return null;
+        RetentionManager retention = retentionManager;
+        if (retention != null)
+            retention.recordAccess(id);
+        ScheduleSnapshot snapshot = schedules.get(id);
+        if (snapshot == null) {
+            long timer = Metrics.start();
+            try {
+                Concert[] concerts = internalDatabaseHandler.getConcerts(festival);
+                if (concerts == null)
+                    return null;
+                snapshot = schedules.publishIfAbsent(id, concerts);
+            } finally {
+                Metrics.stop("DataModel.getSchedule", timer);
+            }
         }
+        // only festivals without concerts can have been evicted
+        if (snapshot.getConcerts().isEmpty())
+            restoreEvictedConcerts(festival);
+        return snapshot;
+    }
+
+    /**
+     * download the concerts of a festival again in the background if they were evicted. A
+     * failed download is repeated by the next synchronisation, the festival is no longer left
+     * out of it
+     */
+    private void restoreEvictedConcerts(final Festival festival) {
+        final long id = festival.getId();
+        if (!restoring.add(id))
+            return;
+        retentionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeLock.lock();
+                    try {
+                        if (!internalDatabaseHandler.isEvicted(id))
+                            return;
+                        internalDatabaseHandler.setEvicted(id, false);
+                    } finally {
+                        writeLock.unlock();
+                    }
+                    Metrics.increment("DataModel.synchronise.restored");
+                    synchroniseChangedFestival(festival, false);
+                } finally {
+                    restoring.remove(id);
+                }
+            }
+        });
+    }
+
+    /**
+     * publish the schedule of the festival written to and release {@link #writeLock}, also when
+     * publishing fails
+     */
+    private void finishWrite(Festival festival) {
+        try {
+            publishSchedule(festival);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * replace the published schedule of a festival with its concerts in the internal database.
+     * Called by writers holding {@link #writeLock}
+     */
+    private void publishSchedule(Festival festival) {
+        Long id = festival.getId();
+        if (id == null)
+            return;
+        Concert[] concerts = internalDatabaseHandler.getConcerts(festival);
+        if (concerts == null)
+            schedules.invalidate(id);
+        else
+            schedules.publish(id, concerts);
+    }
+
+    /**
+     * insert new concerts in the internal database in a single transaction
+     *
+     * @return false if any of the inserts failed
+     */
+    private boolean addConcertsToInternal(List<Concert> concerts) {
+        if (concerts.isEmpty())
+            return true;
+        long[] ids = internalDatabaseHandler.addConcerts(
+                concerts.toArray(new Concert[concerts.size()]));
+        for (long id : ids)
+            if (id == -1)
+                return false;
+        return true;
+    }
+
+    /**
+     * copy the per-item results of a batch request to the items they belong to
+     *
+     * @return false if the whole request failed
+     */
+    private static boolean markBatchResults(boolean[] written, List<Integer> indices,
+                                            boolean[] results) {
+        if (results == null)
+            return indices.isEmpty();
+        for (int i = 0; i < results.length; i++)
+            written[indices.get(i)] = results[i];
+        return true;
     }
 
     /**
@@ -390,19 +953,85 @@ public final class DataModel {
      * @return <code>true</code> on success, <code>false</code> otherwise
      */
     public boolean synchronise(boolean writeToOnline) throws ClientDoesNotHavePermissionException {
-        Festival[] festivals = internalDatabaseHandler.getFestivals();
-        for (Festival festival : festivals) {
-            if (!synchroniseFestival(festival, writeToOnline))
-                return false;
-            if (!synchroniseFestivalConcerts(festival, writeToOnline))
-                return false;
+        long timer = Metrics.start();
+        synchronisations.readLock().lock();
+        boolean traced = Tracer.beginSession();
+        long span = Tracer.start();
+        try {
+            Festival[] festivals = internalDatabaseHandler.getFestivals();
+            Set<Long> evicted = internalDatabaseHandler.getEvictedFestivals();
+            boolean result = true;
+            for (Festival festival : festivals) {
+                // evicted concerts are downloaded again when the festival is viewed. Downloading
+                // them here would have the trim below evict them again on every run
+                if (evicted.contains(festival.getId())) {
+                    Metrics.increment("DataModel.synchronise.evicted");
+                    continue;
+                }
+                long festivalSpan = Tracer.start();
+                // a failing festival does not stop the others from being synchronised
+                if (!synchroniseChangedFestival(festival, writeToOnline))
+                    result = false;
+                Tracer.stop(TRACE_CATEGORY, "festival", festivalSpan, festival.getId());
+            }
+            RetentionManager retention = retentionManager;
+            if (retention != null)
+                retention.requestTrim();
+            return result;
+        } finally {
+            Tracer.stop(TRACE_CATEGORY, "synchronise", span);
+            if (traced)
+                Tracer.endSession();
+            synchronisations.readLock().unlock();
+            Metrics.stop("DataModel.synchronise", timer);
+        }
+    }
+
+    /**
+     * compare the digest of the festival and its lineup with the one stored at the last
+     * synchronisation first, so a festival which did not change costs a single small request.
+     * Servers without digests get the festival and all its concerts compared every time.
+     * The requests to the external database are made without holding {@link #writeLock}, it is
+     * only taken for the writes to the internal database, so user changes never wait for the
+     * network
+     */
+    private boolean synchroniseChangedFestival(Festival festival, boolean writeToOnline) {
+        long writes = localWrites;
+        String digest;
+        try {
+            long span = Tracer.start();
+            digest = externalDatabaseHandler.readFestivalDigest(festival.getExternalId());
+            Tracer.stop(TRACE_CATEGORY, "fetch digest", span, festival.getExternalId());
+        } catch (ClientDoesNotHavePermissionException ignore) {
+            Metrics.increment("DataModel.errors.permission");
+            return false;
+        }
+        if (digest != null && digest.equals(internalDatabaseHandler.getFestivalDigest(festival))) {
+            Metrics.increment("DataModel.synchronise.unchanged");
+            return true;
+        }
+        if (!synchroniseFestival(festival, writeToOnline) ||
+                !synchroniseFestivalConcerts(festival, writeToOnline))
+            return false;
+        // after an upload the digest is outdated, the next synchronisation compares once more.
+        // So it is after a local write made while the lock was not held
+        if (digest != null) {
+            writeLock.lock();
+            try {
+                if (localWrites == writes)
+                    internalDatabaseHandler.setFestivalDigest(festival, digest);
+            } finally {
+                writeLock.unlock();
+            }
         }
         return true;
     }
 
     private boolean synchroniseFestival(Festival festival, boolean writeToOnline) {
         try {
+            long span = Tracer.start();
             Festival externalFestival = externalDatabaseHandler.readFestivalInfo(festival.getExternalId());
+            Tracer.stop(TRACE_CATEGORY, "fetch festival", span, festival.getExternalId());
             if (externalFestival == null) {
                 if (!(writeToOnline && festival.getOwner().equals(getUsername())))
                     return false;
@@ -417,118 +1046,141 @@ public final class DataModel {
                         festival.isOfficial()
                 );
             }
+            if (festival.getContentHash() == externalFestival.getContentHash())
+                return true;
             if (writeToOnline && festival.getOwner().equals(getUsername())) {
                 return writeFestInfoToExternalFromInternal(externalFestival, festival);
             } else {
-                writeFestInfoToInternalFromExternal(festival, externalFestival);
+                span = Tracer.start();
+                writeLock.lock();
+                try {
+                    writeFestInfoToInternalFromExternal(festival, externalFestival);
+                } finally {
+                    writeLock.unlock();
+                }
+                Tracer.stop(TRACE_CATEGORY, "write festival", span, festival.getId());
                 return true;
             }
         } catch (ClientDoesNotHavePermissionException ignore) {
+            Metrics.increment("DataModel.errors.permission");
             return false;
         }
     }
 
+    /**
+     * upload the fields of a festival which differ from the external record, nothing is sent
+     * when none differs
+     */
     private boolean writeFestInfoToExternalFromInternal(Festival external, Festival internal) throws ClientDoesNotHavePermissionException {
-        if (internal.equals(external))
+        // the dirty fields of the external record are the ones the internal record changes
+        external.clearDirtyFields();
+        copyFestivalFields(external, internal);
+        int changed = external.getDirtyFields() & UPLOADED_FESTIVAL_FIELDS;
+        if (changed == 0) {
+            Metrics.increment("DataModel.synchronise.festival_unchanged");
             return true;
+        }
         return externalDatabaseHandler.updateFestivalInfo(
                 external.getExternalId(),
-                (internal.getName().equals(external.getName())) ?
-                        null : internal.getName(),
-                (internal.getDescription().equals(external.getDescription())) ?
-                        null : internal.getDescription(),
-                (internal.getCountry().equals(external.getCountry())) ?
-                        null : internal.getCountry(),
-                (internal.getCity().equals(external.getCity())) ?
-                        null : internal.getCity(),
-                (internal.getAddress().equals(external.getAddress())) ?
-                        null : internal.getAddress(),
-                (internal.getGenre().equals(external.getGenre())) ?
-                        null : internal.getGenre(),
-                (internal.getPrices().equals(external.getPrices())) ?
-                        null : internal.getPrices(),
-                (internal.isOfficial() == external.isOfficial()) ?
-                        null : internal.isOfficial()
+                changedField(changed, Festival.FIELD_NAME, internal.getName()),
+                changedField(changed, Festival.FIELD_DESCRIPTION, internal.getDescription()),
+                changedField(changed, Festival.FIELD_COUNTRY, internal.getCountry()),
+                changedField(changed, Festival.FIELD_CITY, internal.getCity()),
+                changedField(changed, Festival.FIELD_ADDRESS, internal.getAddress()),
+                changedField(changed, Festival.FIELD_GENRE, internal.getGenre()),
+                changedField(changed, Festival.FIELD_PRICES, internal.getPrices()),
+                ((changed & Festival.FIELD_OFFICIAL) == 0) ? null : internal.isOfficial()
         );
     }
 
-    private void writeFestInfoToInternalFromExternal(Festival internal, Festival external) {
-        internalDatabaseHandler.editFestival(
-                internal.getId(),
-                (internal.getName().equals(external.getName())) ?
-                        null : external.getName(),
-                (internal.getDescription().equals(external.getDescription())) ?
-                        null : external.getDescription(),
-                (internal.getCountry().equals(external.getCountry())) ?
-                        null : external.getCountry(),
-                (internal.getCity().equals(external.getCity())) ?
-                        null : external.getCity(),
-                (internal.getAddress().equals(external.getAddress())) ?
-                        null : external.getAddress(),
-                (internal.getGenre().equals(external.getGenre())) ?
-                        null : external.getGenre(),
-                (internal.getPrices().equals(external.getPrices())) ?
-                        null : external.getPrices(),
-                (internal.getOwner().equals(external.getOwner())) ?
-                        null : external.getOwner(),
-                (internal.isOfficial() == external.isOfficial()) ?
-                        null : external.isOfficial(),
-                (internal.getVotes() == external.getVotes()) ?
-                        null : external.getVotes()
-        );
+    /**
+     * @return the value if the field is in the changed fields, null to leave it unchanged
+     */
+    private static String changedField(int changed, int field, String value) {
+        return ((changed & field) == 0) ? null : value;
+    }
+
+    /**
+     * write the external festival to the internal database. Called holding {@link #writeLock},
+     * the festival is read again, fields edited locally since it was first read keep the local
+     * values
+     *
+     * @param read     festival as read before the network requests
+     * @param external festival read from the external database
+     */
+    private void writeFestInfoToInternalFromExternal(Festival read, Festival external) {
+        Festival current = internalDatabaseHandler.getFestival(read.getId());
+        if (current == null)
+            return;
+        read.clearDirtyFields();
+        copyFestivalFields(read, current);
+        int edited = read.getDirtyFields();
+        if (edited != 0)
+            Metrics.increment("DataModel.synchronise.festival_edited");
+        copyFestivalFields(current, external, ~edited);
+        internalDatabaseHandler.updateFestival(current);
     }
 
     private boolean synchroniseFestivalConcerts(Festival festival, boolean writeToOnline) {
         try {
-            for (Concert concert : externalDatabaseHandler.readFestivalConcerts(festival)) {
-                Concert internalConcert = internalDatabaseHandler.getConcert(festival, concert.getId());
-                if (internalConcert == null) {
-                    internalDatabaseHandler.addConcert(concert);
-                } else {
-                    if (!synchroniseConcert(internalConcert, concert, writeToOnline))
-                        return false;
+            long span = Tracer.start();
+            Concert[] externalConcerts = externalDatabaseHandler.readFestivalConcerts(festival);
+            Tracer.stop(TRACE_CATEGORY, "fetch concerts", span, festival.getExternalId());
+            if (externalConcerts == null)
+                return false;
+            boolean upload = writeToOnline && festival.getOwner().equals(getUsername());
+            List<ExternalDatabaseHandler.ConcertUpdate> updates = new ArrayList<>();
+            List<Concert> added = new ArrayList<>();
+            writeLock.lock();
+            try {
+                Concert[] internalConcerts = internalDatabaseHandler.getConcerts(festival);
+                Map<Long, Concert> internalByExternalId =
+                        new HashMap<>(internalConcerts.length * 2);
+                for (Concert internalConcert : internalConcerts)
+                    internalByExternalId.put(internalConcert.getExternalId(), internalConcert);
+                for (Concert concert : externalConcerts) {
+                    span = Tracer.start();
+                    Concert internalConcert = internalByExternalId.get(concert.getExternalId());
+                    if (internalConcert == null) {
+                        added.add(concert);
+                    } else if (internalConcert.getContentHash() != concert.getContentHash()) {
+                        if (upload)
+                            updates.add(concertUpdateFromInternal(concert, internalConcert));
+                        else
+                            writeConcertInfoFromExternalToInternal(internalConcert, concert);
+                    }
+                    Tracer.stop(TRACE_CATEGORY, "diff concert", span, concert.getExternalId());
                 }
+                span = Tracer.start();
+                addConcertsToInternal(added);
+                Tracer.stop(TRACE_CATEGORY, "write concerts", span, added.size());
+            } finally {
+                // readers switch to the new schedule at once, also after a partial update
+                finishWrite(festival);
             }
+            // the uploads are made after the lock is released
+            span = Tracer.start();
+            boolean uploaded = uploadConcertUpdates(updates);
+            Tracer.stop(TRACE_CATEGORY, "upload concerts", span, updates.size());
+            return uploaded;
         } catch (ClientDoesNotHavePermissionException e) {
+            Metrics.increment("DataModel.errors.permission");
             return false;
         }
-        return true;
-    }
-
-    private boolean synchroniseConcert(Concert internal, Concert external, boolean writeToOnline) throws ClientDoesNotHavePermissionException {
-        if (internal.equals(external))
-            return true;
-        if (writeToOnline && external.getFestival().getOwner().equals(getUsername())) {
-            return writeConcertFromInternalToExternal(external, internal);
-        } else {
-            writeConcertInfoFromExternalToInternal(internal, external);
-            return true;
-        }
     }
 
     private void writeConcertInfoFromExternalToInternal(Concert internal, Concert external) {
-        internalDatabaseHandler.editConcert(
-                internal.getId(),
-                (internal.getExternalId().equals(external.getExternalId())) ?
-                        null : external.getExternalId(),
-                (internal.getFestival() == external.getFestival()) ?
-                        null : external.getFestival().getId(),
-                (internal.getArtist().equals(external.getArtist())) ?
-                        null : external.getArtist(),
-                (internal.getStage() == external.getStage()) ?
-                        null : external.getStage(),
-                (internal.getDay() == external.getDay()) ?
-                        null : external.getDay(),
-                (internal.getStart().equals(external.getStart())) ?
-                        null : external.getStart(),
-                (internal.getEnd().equals(external.getEnd())) ?
-                        null : external.getEnd(),
-                null
-        );
+        internal.setArtist(external.getArtist());
+        internal.setStage(external.getStage());
+        internal.setDay(external.getDay());
+        internal.setStart(external.getStart());
+        internal.setEnd(external.getEnd());
+        internalDatabaseHandler.updateConcert(internal);
     }
 
-    private boolean writeConcertFromInternalToExternal(Concert external, Concert internal) throws ClientDoesNotHavePermissionException {
-        return externalDatabaseHandler.updateConcertInfo(
+    private ExternalDatabaseHandler.ConcertUpdate concertUpdateFromInternal(Concert external,
+                                                                           Concert internal) {
+        return new ExternalDatabaseHandler.ConcertUpdate(
                 external.getExternalId(),
                 (internal.getArtist().equals(external.getArtist())) ?
                         null : internal.getArtist(),
@@ -544,23 +1196,55 @@ public final class DataModel {
     }
 
     /**
+     * send all collected concert changes to the external database in one request
+     *
+     * @return true if every update succeeded, false otherwise
+     */
+    private boolean uploadConcertUpdates(List<ExternalDatabaseHandler.ConcertUpdate> updates)
+            throws ClientDoesNotHavePermissionException {
+        if (updates.isEmpty())
+            return true;
+        return allSucceeded(externalDatabaseHandler.updateConcertInfoBatch(
+                updates.toArray(new ExternalDatabaseHandler.ConcertUpdate[updates.size()])));
+    }
+
+    private static boolean allSucceeded(boolean[] results) {
+        if (results == null)
+            return false;
+        for (boolean result : results) {
+            if (!result)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * returns the last known status without blocking. The server is probed in the background
+     * when the network changes or the status is older than a minute
+     *
      * @return 0 if the external database is accessible, 1 if there is Internet connection, but
-     * there is problem connecting to the external database, 2 if there is no Internet Connection
+     * there is problem connecting to the external database, 2 if there is no Internet Connection.
+     * While the external database has been failing recently 1 is returned without contacting it
      */
     public int externalDatabaseConnectivityStatus() {
-        ConnectivityManager connectivityManager =
-                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
-        if (networkInfo == null)
-            return 2;
-        return (externalDatabaseHandler.canConnectToDB()) ? 0 : 1;
+        long timer = Metrics.start();
+        try {
+            return reachabilityMonitor.getStatus();
+        } finally {
+            Metrics.stop("DataModel.externalDatabaseConnectivityStatus", timer);
+        }
     }
 
     /**
      * @return true if festivals are recorded in the internal database, false otherwise
      */
     public boolean internalDatabaseHasFestivals() {
-        return internalDatabaseHandler.hasFestivals();
+        long timer = Metrics.start();
+        try {
+            return internalDatabaseHandler.hasFestivals();
+        } finally {
+            Metrics.stop("DataModel.internalDatabaseHasFestivals", timer);
+        }
     }
 
     /**
@@ -570,6 +1254,28 @@ public final class DataModel {
      * false otherwise
      */
     public boolean internalDatabaseFestivalHasConcerts(@NonNull Festival festival) {
-        return internalDatabaseHandler.festivalHasConcerts(festival);
+        long timer = Metrics.start();
+        try {
+            return internalDatabaseHandler.festivalHasConcerts(festival);
+        } finally {
+            Metrics.stop("DataModel.internalDatabaseFestivalHasConcerts", timer);
+        }
+    }
+
+    /**
+     * read the number of concerts, days and stages and the dates of a festival without loading
+     * its lineup
+     *
+     * @param festival festival of the internal database
+     * @return statistics of the concerts of the festival in the internal database, empty if it
+     * has none
+     */
+    public FestivalStats getFestivalStats(@NonNull Festival festival) {
+        long timer = Metrics.start();
+        try {
+            return internalDatabaseHandler.getFestivalStats(festival.getId());
+        } finally {
+            Metrics.stop("DataModel.getFestivalStats", timer);
+        }
     }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.support.annotation.NonNull;
+import android.support.v4.net.ConnectivityManagerCompat;
+
+/**
+ * {@link SyncConstraints} read from the system services. None of the checks uses the network
+ */
+class DeviceSyncConstraints implements SyncConstraints {
+
+    private final Context context;
+
+    /**
+     * @param context application context
+     */
+    DeviceSyncConstraints(@NonNull Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public boolean isConnected() {
+        NetworkInfo networkInfo = getConnectivityManager().getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    @Override
+    public boolean isUnmetered() {
+        return isConnected() &&
+                !ConnectivityManagerCompat.isActiveNetworkMetered(getConnectivityManager());
+    }
+
+    @Override
+    public boolean isCharging() {
+        // sticky broadcast, no receiver is registered
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    private ConnectivityManager getConnectivityManager() {
+        return (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+}
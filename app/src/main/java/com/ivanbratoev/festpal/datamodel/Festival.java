@@ -24,6 +24,17 @@ import android.support.annotation.Nullable;
  * Holder class for festival info
  */
 public class Festival {
+    public static final int FIELD_NAME = 1;
+    public static final int FIELD_DESCRIPTION = 1 << 1;
+    public static final int FIELD_COUNTRY = 1 << 2;
+    public static final int FIELD_CITY = 1 << 3;
+    public static final int FIELD_ADDRESS = 1 << 4;
+    public static final int FIELD_GENRE = 1 << 5;
+    public static final int FIELD_PRICES = 1 << 6;
+    public static final int FIELD_OWNER = 1 << 7;
+    public static final int FIELD_OFFICIAL = 1 << 8;
+    public static final int FIELD_VOTES = 1 << 9;
+
     private Long id;
     private long externalId;
     private String name;
@@ -36,6 +47,9 @@ public class Festival {
     private String owner;
     private boolean official;
     private int votes;
+    private int dirtyFields;
+    private long contentHash;
+    private boolean contentHashKnown;
 
     /**
      * @param id          id in internal DB. If object is not saved in the internal db set to null
@@ -86,7 +100,10 @@ public class Festival {
     }
 
     public void setName(String name) {
-        this.name = name;
+        if (!same(this.name, name)) {
+            this.name = name;
+            markDirty(FIELD_NAME);
+        }
     }
 
     public String getDescription() {
@@ -94,7 +111,10 @@ public class Festival {
     }
 
     public void setDescription(String description) {
-        this.description = description;
+        if (!same(this.description, description)) {
+            this.description = description;
+            markDirty(FIELD_DESCRIPTION);
+        }
     }
 
     public String getCountry() {
@@ -102,7 +122,10 @@ public class Festival {
     }
 
     public void setCountry(String country) {
-        this.country = country;
+        if (!same(this.country, country)) {
+            this.country = country;
+            markDirty(FIELD_COUNTRY);
+        }
     }
 
     public String getCity() {
@@ -110,7 +133,10 @@ public class Festival {
     }
 
     public void setCity(String city) {
-        this.city = city;
+        if (!same(this.city, city)) {
+            this.city = city;
+            markDirty(FIELD_CITY);
+        }
     }
 
     public String getAddress() {
@@ -118,7 +144,10 @@ public class Festival {
     }
 
     public void setAddress(String address) {
-        this.address = address;
+        if (!same(this.address, address)) {
+            this.address = address;
+            markDirty(FIELD_ADDRESS);
+        }
     }
 
     public String getGenre() {
@@ -126,7 +155,10 @@ public class Festival {
     }
 
     public void setGenre(String genre) {
-        this.genre = genre;
+        if (!same(this.genre, genre)) {
+            this.genre = genre;
+            markDirty(FIELD_GENRE);
+        }
     }
 
     public String getPrices() {
@@ -134,7 +166,10 @@ public class Festival {
     }
 
     public void setPrices(String prices) {
-        this.prices = prices;
+        if (!same(this.prices, prices)) {
+            this.prices = prices;
+            markDirty(FIELD_PRICES);
+        }
     }
 
     public String getOwner() {
@@ -142,7 +177,10 @@ public class Festival {
     }
 
     public void setOwner(String owner) {
-        this.owner = owner;
+        if (!same(this.owner, owner)) {
+            this.owner = owner;
+            markDirty(FIELD_OWNER);
+        }
     }
 
     public boolean isOfficial() {
@@ -150,7 +188,10 @@ public class Festival {
     }
 
     public void setOfficial(boolean official) {
-        this.official = official;
+        if (this.official != official) {
+            this.official = official;
+            markDirty(FIELD_OFFICIAL);
+        }
     }
 
     public int getVotes() {
@@ -158,7 +199,65 @@ public class Festival {
     }
 
     public void setVotes(int votes) {
-        this.votes = votes;
+        if (this.votes != votes) {
+            this.votes = votes;
+            markDirty(FIELD_VOTES);
+        }
+    }
+
+    /**
+     * @return bitmask of the FIELD_ constants of fields changed through setters since the object
+     * was created or {@link #clearDirtyFields()} was last called
+     */
+    public int getDirtyFields() {
+        return dirtyFields;
+    }
+
+    public boolean isDirty() {
+        return dirtyFields != 0;
+    }
+
+    public void clearDirtyFields() {
+        dirtyFields = 0;
+    }
+
+    private void markDirty(int field) {
+        dirtyFields |= field;
+        contentHashKnown = false;
+    }
+
+    /**
+     * @return hash of every field except the ids, equal for festivals whose information is the
+     * same. Computed once and cached until a field changes
+     */
+    public long getContentHash() {
+        if (!contentHashKnown) {
+            long hash = ContentHash.INITIAL;
+            hash = ContentHash.add(hash, name);
+            hash = ContentHash.add(hash, description);
+            hash = ContentHash.add(hash, country);
+            hash = ContentHash.add(hash, city);
+            hash = ContentHash.add(hash, address);
+            hash = ContentHash.add(hash, genre);
+            hash = ContentHash.add(hash, prices);
+            hash = ContentHash.add(hash, owner);
+            hash = ContentHash.add(hash, official);
+            hash = ContentHash.add(hash, votes);
+            setContentHash(hash);
+        }
+        return contentHash;
+    }
+
+    /**
+     * used by the internal database to restore the stored hash instead of computing it again
+     */
+    public void setContentHash(long contentHash) {
+        this.contentHash = contentHash;
+        this.contentHashKnown = true;
+    }
+
+    private static boolean same(String a, String b) {
+        return (a == null) ? b == null : a.equals(b);
     }
 
     @Override
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import java.util.Arrays;
+
+/**
+ * Immutable statistics of the lineup of a festival: the number of concerts and the start of the
+ * first and the end of the last concert of every day and stage. Read without loading the lineup,
+ * for headers such as "3 days, 8 stages, 240 concerts"
+ */
+public final class FestivalStats {
+
+    private final int[] days;
+    private final int[] stages;
+    private final int[] concerts;
+    private final long[] firstStarts;
+    private final long[] lastEnds;
+
+    private FestivalStats(Builder builder) {
+        days = Arrays.copyOf(builder.days, builder.size);
+        stages = Arrays.copyOf(builder.stages, builder.size);
+        concerts = Arrays.copyOf(builder.concerts, builder.size);
+        firstStarts = Arrays.copyOf(builder.firstStarts, builder.size);
+        lastEnds = Arrays.copyOf(builder.lastEnds, builder.size);
+    }
+
+    /**
+     * @return true if the festival has no concerts
+     */
+    public boolean isEmpty() {
+        return days.length == 0;
+    }
+
+    /**
+     * @return number of concerts of the festival
+     */
+    public int getConcertCount() {
+        int count = 0;
+        for (int cell : concerts)
+            count += cell;
+        return count;
+    }
+
+    /**
+     * @param day number of the day
+     * @return number of concerts on the day
+     */
+    public int getConcertCount(int day) {
+        int count = 0;
+        for (int i = 0; i < days.length; i++)
+            if (days[i] == day)
+                count += concerts[i];
+        return count;
+    }
+
+    /**
+     * @param day   number of the day
+     * @param stage number of the stage
+     * @return number of concerts on the stage on the day
+     */
+    public int getConcertCount(int day, int stage) {
+        for (int i = 0; i < days.length; i++)
+            if (days[i] == day && stages[i] == stage)
+                return concerts[i];
+        return 0;
+    }
+
+    /**
+     * @return numbers of the days with concerts, in ascending order
+     */
+    public int[] getDays() {
+        int[] result = new int[days.length];
+        int count = 0;
+        for (int i = 0; i < days.length; i++)
+            if (count == 0 || result[count - 1] != days[i])
+                result[count++] = days[i];
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @return numbers of the stages with concerts on any day, in ascending order
+     */
+    public int[] getStages() {
+        int[] sorted = stages.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++)
+            if (count == 0 || sorted[count - 1] != sorted[i])
+                sorted[count++] = sorted[i];
+        return Arrays.copyOf(sorted, count);
+    }
+
+    /**
+     * @return start of the first concert in milliseconds since the epoch,
+     * {@link FestivalSummary#NO_DATE} if the festival has no concerts
+     */
+    public long getFirstStart() {
+        long first = FestivalSummary.NO_DATE;
+        for (int i = 0; i < days.length; i++)
+            if (first == FestivalSummary.NO_DATE || firstStarts[i] < first)
+                first = firstStarts[i];
+        return first;
+    }
+
+    /**
+     * @return end of the last concert in milliseconds since the epoch,
+     * {@link FestivalSummary#NO_DATE} if the festival has no concerts
+     */
+    public long getLastEnd() {
+        long last = FestivalSummary.NO_DATE;
+        for (int i = 0; i < days.length; i++)
+            if (last == FestivalSummary.NO_DATE || lastEnds[i] > last)
+                last = lastEnds[i];
+        return last;
+    }
+
+    /**
+     * @param day number of the day
+     * @return start of the first concert of the day, {@link FestivalSummary#NO_DATE} if there
+     * are no concerts on the day
+     */
+    public long getFirstStart(int day) {
+        long first = FestivalSummary.NO_DATE;
+        for (int i = 0; i < days.length; i++)
+            if (days[i] == day && (first == FestivalSummary.NO_DATE || firstStarts[i] < first))
+                first = firstStarts[i];
+        return first;
+    }
+
+    /**
+     * @param day number of the day
+     * @return end of the last concert of the day, {@link FestivalSummary#NO_DATE} if there are
+     * no concerts on the day
+     */
+    public long getLastEnd(int day) {
+        long last = FestivalSummary.NO_DATE;
+        for (int i = 0; i < days.length; i++)
+            if (days[i] == day && (last == FestivalSummary.NO_DATE || lastEnds[i] > last))
+                last = lastEnds[i];
+        return last;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FestivalStats)) return false;
+        FestivalStats that = (FestivalStats) o;
+        return Arrays.equals(days, that.days) && Arrays.equals(stages, that.stages) &&
+                Arrays.equals(concerts, that.concerts) &&
+                Arrays.equals(firstStarts, that.firstStarts) &&
+                Arrays.equals(lastEnds, that.lastEnds);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(days);
+        result = 31 * result + Arrays.hashCode(stages);
+        result = 31 * result + Arrays.hashCode(concerts);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("FestivalStats[");
+        for (int i = 0; i < days.length; i++)
+            builder.append(i == 0 ? "" : ", ").append(days[i]).append('/').append(stages[i])
+                    .append(": ").append(concerts[i]).append(' ').append(firstStarts[i])
+                    .append('-').append(lastEnds[i]);
+        return builder.append(']').toString();
+    }
+
+    /**
+     * collects the statistics of the days and stages of a festival, added in ascending order of
+     * day and then stage
+     */
+    public static final class Builder {
+        private int size;
+        private int[] days = new int[8];
+        private int[] stages = new int[8];
+        private int[] concerts = new int[8];
+        private long[] firstStarts = new long[8];
+        private long[] lastEnds = new long[8];
+
+        /**
+         * @param day        number of the day
+         * @param stage      number of the stage
+         * @param concerts   number of concerts on the stage on the day
+         * @param firstStart start of the first of them in milliseconds since the epoch
+         * @param lastEnd    end of the last of them in milliseconds since the epoch
+         */
+        public Builder add(int day, int stage, int concerts, long firstStart, long lastEnd) {
+            if (size == days.length) {
+                days = Arrays.copyOf(days, size * 2);
+                stages = Arrays.copyOf(stages, size * 2);
+                this.concerts = Arrays.copyOf(this.concerts, size * 2);
+                firstStarts = Arrays.copyOf(firstStarts, size * 2);
+                lastEnds = Arrays.copyOf(lastEnds, size * 2);
+            }
+            days[size] = day;
+            stages[size] = stage;
+            this.concerts[size] = concerts;
+            firstStarts[size] = firstStart;
+            lastEnds[size] = lastEnd;
+            size++;
+            return this;
+        }
+
+        public FestivalStats build() {
+            return new FestivalStats(this);
+        }
+    }
+}
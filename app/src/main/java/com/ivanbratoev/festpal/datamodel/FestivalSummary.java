@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Immutable projection of the fields of a {@link Festival} shown in lists. The description,
+ * address and prices are left out, the whole festival is read when it is opened
+ */
+public final class FestivalSummary {
+
+    /**
+     * value of the dates of a festival without concerts
+     */
+    public static final long NO_DATE = -1;
+
+    private final long id;
+    private final long externalId;
+    private final String name;
+    private final String city;
+    private final int votes;
+    private final long start;
+    private final long end;
+
+    /**
+     * @param id         internal id of the festival, -1 if it is not in the internal database
+     * @param externalId id of the festival in the external database
+     * @param name       festival name
+     * @param city       city hosting the festival
+     * @param votes      number of votes of the festival
+     * @param start      start of the first concert in milliseconds since the epoch,
+     *                   {@link #NO_DATE} if unknown
+     * @param end        end of the last concert in milliseconds since the epoch,
+     *                   {@link #NO_DATE} if unknown
+     */
+    public FestivalSummary(long id, long externalId, @NonNull String name, @NonNull String city,
+                           int votes, long start, long end) {
+        this.id = id;
+        this.externalId = externalId;
+        this.name = name;
+        this.city = city;
+        this.votes = votes;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return internal id, -1 if the festival is not in the internal database
+     */
+    public long getId() {
+        return id;
+    }
+
+    public long getExternalId() {
+        return externalId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public int getVotes() {
+        return votes;
+    }
+
+    /**
+     * @return start of the first concert, {@link #NO_DATE} if unknown
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return end of the last concert, {@link #NO_DATE} if unknown
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    public boolean hasDates() {
+        return start != NO_DATE && end != NO_DATE;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FestivalSummary)) return false;
+        FestivalSummary that = (FestivalSummary) o;
+        return id == that.id && externalId == that.externalId && votes == that.votes &&
+                start == that.start && end == that.end && name.equals(that.name) &&
+                city.equals(that.city);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (id ^ (id >>> 32));
+        result = 31 * result + (int) (externalId ^ (externalId >>> 32));
+        result = 31 * result + name.hashCode();
+        result = 31 * result + votes;
+        return result;
+    }
+}
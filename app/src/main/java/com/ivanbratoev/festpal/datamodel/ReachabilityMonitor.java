@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.annotation.NonNull;
+
+import com.ivanbratoev.festpal.datamodel.db.external.ExternalDatabaseHandler;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the connectivity status of the external database. The server is probed in the
+ * background only when the network changes or the cached status has expired, so reading the
+ * status never blocks and does not cause network traffic by itself.
+ */
+class ReachabilityMonitor extends BroadcastReceiver {
+
+    static final int STATUS_CONNECTED = 0;
+    static final int STATUS_SERVER_UNREACHABLE = 1;
+    static final int STATUS_NO_NETWORK = 2;
+
+    private final Context context;
+    private final ExternalDatabaseHandler externalDatabaseHandler;
+    private final Executor executor;
+    private final Clock clock;
+    private final long timeToLive;
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    private volatile int status = STATUS_SERVER_UNREACHABLE;
+    private volatile long statusTime = Long.MIN_VALUE;
+
+    /**
+     * @param context                 application context
+     * @param externalDatabaseHandler handler used to probe the server
+     * @param executor                executor running the probes off the calling thread
+     * @param clock                   time source
+     * @param timeToLive              time in milliseconds after which the cached status expires
+     */
+    ReachabilityMonitor(@NonNull Context context,
+                        @NonNull ExternalDatabaseHandler externalDatabaseHandler,
+                        @NonNull Executor executor, @NonNull Clock clock, long timeToLive) {
+        this.context = context;
+        this.externalDatabaseHandler = externalDatabaseHandler;
+        this.executor = executor;
+        this.clock = clock;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * start listening for network changes and probe the server
+     */
+    void start() {
+        context.registerReceiver(this, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        refresh();
+    }
+
+    void stop() {
+        context.unregisterReceiver(this);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        refresh();
+    }
+
+    /**
+     * @return cached status: {@link #STATUS_CONNECTED}, {@link #STATUS_SERVER_UNREACHABLE} or
+     * {@link #STATUS_NO_NETWORK}. An expired status is returned as well, while a new probe is
+     * started in the background
+     */
+    int getStatus() {
+        if (clock.currentTimeMillis() - statusTime >= timeToLive)
+            refresh();
+        return status;
+    }
+
+    private void refresh() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            setStatus(STATUS_NO_NETWORK);
+            return;
+        }
+        if (!probing.compareAndSet(false, true))
+            return;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    setStatus((!externalDatabaseHandler.isCircuitOpen() &&
+                            externalDatabaseHandler.canConnectToDB()) ?
+                            STATUS_CONNECTED : STATUS_SERVER_UNREACHABLE);
+                } finally {
+                    probing.set(false);
+                }
+            }
+        });
+    }
+
+    private void setStatus(int status) {
+        this.status = status;
+        statusTime = clock.currentTimeMillis();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import com.ivanbratoev.festpal.datamodel.db.internal.InternalDatabaseHandler;
+import com.ivanbratoev.festpal.datamodel.metrics.Metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Keeps the internal database within a disk budget. When the data outgrows the budget the
+ * concerts of festivals which are over are removed first, earliest first, then the concerts of
+ * the festivals viewed least recently, until the data fits. The festivals themselves are kept.
+ * Each step reads only the festival evicted, so the cost is proportional to the data removed.
+ * Views are recorded in memory and written to the database when trimming. Once every
+ * {@link #MAINTENANCE_INTERVAL} the trim also refreshes the query planner statistics and gives
+ * the free pages back once they pass {@link #MAX_FREE_RATIO} of the file. The time of the last
+ * maintenance is kept in the preferences, so restarting the process does not run it again.
+ */
+final class RetentionManager {
+
+    static final long DEFAULT_BUDGET = 16 * 1024 * 1024;
+    static final long MAINTENANCE_INTERVAL = 24 * 60 * 60_000L;
+    static final double MAX_FREE_RATIO = 0.25;
+    static final String PREFERENCES = "retention";
+    static final String KEY_LAST_MAINTENANCE = "lastMaintenance";
+
+    private final InternalDatabaseHandler internalDatabaseHandler;
+    private final Lock writeLock;
+    private final ScheduleStore schedules;
+    private final Executor executor;
+    private final Clock clock;
+    private final SharedPreferences preferences;
+    private final ConcurrentMap<Long, Long> accessTimes = new ConcurrentHashMap<>();
+    private final AtomicBoolean trimPending = new AtomicBoolean();
+    private volatile long budget;
+
+    private final Runnable trim = new Runnable() {
+        @Override
+        public void run() {
+            trimPending.set(false);
+            trim();
+        }
+    };
+
+    /**
+     * @param internalDatabaseHandler handler of the database kept within the budget
+     * @param writeLock               lock held by the writers of the database, held while the
+     *                                concerts of a festival are removed
+     * @param schedules               published schedules, those of evicted festivals are
+     *                                replaced with empty ones
+     * @param executor                executor trimming in the background
+     * @param clock                   time source
+     * @param preferences             preferences the time of the last maintenance is kept in
+     * @param budget                  bytes the data of the database may take up
+     */
+    RetentionManager(@NonNull InternalDatabaseHandler internalDatabaseHandler,
+                     @NonNull Lock writeLock, @NonNull ScheduleStore schedules,
+                     @NonNull Executor executor, @NonNull Clock clock,
+                     @NonNull SharedPreferences preferences, long budget) {
+        this.internalDatabaseHandler = internalDatabaseHandler;
+        this.writeLock = writeLock;
+        this.schedules = schedules;
+        this.executor = executor;
+        this.clock = clock;
+        this.preferences = preferences;
+        this.budget = budget;
+    }
+
+    long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @param budget bytes the data of the database may take up, applied at the next trim
+     */
+    void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * record that a festival was viewed now
+     *
+     * @param festivalId internal id of the festival
+     */
+    void recordAccess(long festivalId) {
+        accessTimes.put(festivalId, clock.currentTimeMillis());
+    }
+
+    /**
+     * trim the database in the background. Requests made while a trim is waiting to run are
+     * merged with it
+     */
+    void requestTrim() {
+        if (trimPending.compareAndSet(false, true))
+            executor.execute(trim);
+    }
+
+    /**
+     * evict concerts until the data of the database fits the budget, then return the freed
+     * pages to the file system. Runs the maintenance of the database when it is due
+     *
+     * @return number of festivals whose concerts were removed
+     */
+    int trim() {
+        long timer = Metrics.start();
+        try {
+            flushAccessTimes();
+            int evicted = 0;
+            if (internalDatabaseHandler.getUsedSize() > budget)
+                evicted = evict();
+            long now = clock.currentTimeMillis();
+            long lastMaintenance = preferences.getLong(KEY_LAST_MAINTENANCE, 0);
+            // a clock set back is treated as a due maintenance
+            if (now - lastMaintenance >= MAINTENANCE_INTERVAL || now < lastMaintenance) {
+                internalDatabaseHandler.performMaintenance(MAX_FREE_RATIO);
+                preferences.edit().putLong(KEY_LAST_MAINTENANCE, now).apply();
+            } else if (evicted > 0) {
+                internalDatabaseHandler.incrementalVacuum();
+            }
+            return evicted;
+        } finally {
+            Metrics.stop("RetentionManager.trim", timer);
+        }
+    }
+
+    private int evict() {
+        int evicted = 0;
+        for (long festivalId : internalDatabaseHandler.getEvictionOrder(
+                clock.currentTimeMillis())) {
+            if (internalDatabaseHandler.getUsedSize() <= budget)
+                break;
+            writeLock.lock();
+            try {
+                internalDatabaseHandler.removeConcerts(festivalId);
+                schedules.clear(festivalId);
+            } finally {
+                writeLock.unlock();
+            }
+            evicted++;
+        }
+        Metrics.add("RetentionManager.evicted", evicted);
+        return evicted;
+    }
+
+    /**
+     * write the recorded views to the database, so the eviction order sees them
+     */
+    private void flushAccessTimes() {
+        if (accessTimes.isEmpty())
+            return;
+        Map<Long, Long> flushed = new HashMap<>(accessTimes);
+        internalDatabaseHandler.setLastAccessTimes(flushed);
+        // a view recorded meanwhile is kept for the next flush
+        for (Map.Entry<Long, Long> entry : flushed.entrySet())
+            accessTimes.remove(entry.getKey(), entry.getValue());
+    }
+}
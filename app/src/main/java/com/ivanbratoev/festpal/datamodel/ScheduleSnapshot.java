@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import android.support.annotation.NonNull;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable schedule of a festival at one point in time, ordered by start time and stage.
+ * Snapshots are built by writers and published as a whole, so readers never see a schedule
+ * that is half way through a synchronisation and need no locking
+ */
+public final class ScheduleSnapshot {
+
+    private static final Comparator<ScheduledConcert> BY_START =
+            new Comparator<ScheduledConcert>() {
+                @Override
+                public int compare(ScheduledConcert a, ScheduledConcert b) {
+                    if (a.getStart() != b.getStart())
+                        return (a.getStart() < b.getStart()) ? -1 : 1;
+                    if (a.getStage() != b.getStage())
+                        return (a.getStage() < b.getStage()) ? -1 : 1;
+                    return (a.getId() < b.getId()) ? -1 : ((a.getId() == b.getId()) ? 0 : 1);
+                }
+            };
+
+    private final long festivalId;
+    private final long version;
+    private final ScheduledConcert[] concerts;
+    private final List<ScheduledConcert> view;
+
+    private ScheduleSnapshot(long festivalId, long version, ScheduledConcert[] concerts) {
+        this.festivalId = festivalId;
+        this.version = version;
+        this.concerts = concerts;
+        this.view = new AbstractList<ScheduledConcert>() {
+            @Override
+            public ScheduledConcert get(int location) {
+                return ScheduleSnapshot.this.concerts[location];
+            }
+
+            @Override
+            public int size() {
+                return ScheduleSnapshot.this.concerts.length;
+            }
+        };
+    }
+
+    /**
+     * @param festivalId internal id of the festival
+     * @param version    increasing number telling apart snapshots of the same festival
+     * @param concerts   concerts of the festival, copied so later changes are not seen
+     * @return the snapshot
+     */
+    public static ScheduleSnapshot of(long festivalId, long version, @NonNull Concert[] concerts) {
+        ScheduledConcert[] copies = new ScheduledConcert[concerts.length];
+        for (int i = 0; i < concerts.length; i++)
+            copies[i] = ScheduledConcert.of(concerts[i]);
+        Arrays.sort(copies, BY_START);
+        return new ScheduleSnapshot(festivalId, version, copies);
+    }
+
+    public long getFestivalId() {
+        return festivalId;
+    }
+
+    /**
+     * @return version of the snapshot, a later snapshot of the same festival has a greater one
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return unmodifiable list of the concerts ordered by start time and stage
+     */
+    public List<ScheduledConcert> getConcerts() {
+        return view;
+    }
+
+    public int size() {
+        return concerts.length;
+    }
+
+    public ScheduledConcert get(int index) {
+        return concerts[index];
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Published {@link ScheduleSnapshot}s by festival id. Readers get the latest snapshot without
+ * locking, writers replace it with a single atomic put after the database has been updated
+ */
+final class ScheduleStore {
+
+    private static final Concert[] NO_CONCERTS = new Concert[0];
+
+    private final ConcurrentMap<Long, ScheduleSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * @return the latest published snapshot, null if none was published for the festival
+     */
+    @Nullable
+    ScheduleSnapshot get(long festivalId) {
+        return snapshots.get(festivalId);
+    }
+
+    /**
+     * publish the schedule written by a writer, replacing any earlier snapshot
+     *
+     * @return the published snapshot
+     */
+    ScheduleSnapshot publish(long festivalId, @NonNull Concert[] concerts) {
+        ScheduleSnapshot snapshot = ScheduleSnapshot.of(festivalId, versions.incrementAndGet(),
+                concerts);
+        snapshots.put(festivalId, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * publish a schedule loaded by a reader, unless a writer published one in the meantime,
+     * which is never older than what the reader loaded
+     *
+     * @return the snapshot published for the festival
+     */
+    ScheduleSnapshot publishIfAbsent(long festivalId, @NonNull Concert[] concerts) {
+        ScheduleSnapshot snapshot = ScheduleSnapshot.of(festivalId, versions.incrementAndGet(),
+                concerts);
+        ScheduleSnapshot existing = snapshots.putIfAbsent(festivalId, snapshot);
+        return (existing == null) ? snapshot : existing;
+    }
+
+    /**
+     * publish an empty schedule after the concerts of a festival were deleted. Dropping the
+     * snapshot instead would let a reader which loaded the concerts before the delete publish
+     * them afterwards with {@link #publishIfAbsent}. Called by writers holding the write lock
+     *
+     * @return the published snapshot
+     */
+    ScheduleSnapshot clear(long festivalId) {
+        return publish(festivalId, NO_CONCERTS);
+    }
+
+    /**
+     * drop the snapshot of a festival, the next reader loads it again
+     */
+    void invalidate(long festivalId) {
+        snapshots.remove(festivalId);
+    }
+}
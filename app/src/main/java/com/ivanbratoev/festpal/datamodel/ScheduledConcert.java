@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Immutable copy of the schedule fields of a {@link Concert}, safe to share between the
+ * synchronisation and the user interface threads
+ */
+public final class ScheduledConcert {
+
+    private final long id;
+    private final long externalId;
+    private final long festivalId;
+    private final String artist;
+    private final int stage;
+    private final int day;
+    private final long start;
+    private final long end;
+    private final boolean notify;
+
+    /**
+     * @param id         internal id of the concert
+     * @param externalId id of the concert in the external database
+     * @param festivalId internal id of the festival hosting the concert
+     * @param artist     concert's performing artist name
+     * @param stage      stage number, relevant to the festival
+     * @param day        day number, relevant to the festival
+     * @param start      start time in milliseconds since the epoch
+     * @param end        end time in milliseconds since the epoch
+     * @param notify     whether the user is to be notified that this concert is about to start
+     */
+    public ScheduledConcert(long id, long externalId, long festivalId, @NonNull String artist,
+                            int stage, int day, long start, long end, boolean notify) {
+        this.id = id;
+        this.externalId = externalId;
+        this.festivalId = festivalId;
+        this.artist = artist;
+        this.stage = stage;
+        this.day = day;
+        this.start = start;
+        this.end = end;
+        this.notify = notify;
+    }
+
+    /**
+     * @param concert concert read from the internal database
+     * @return copy of the concert's current state, later changes of the concert are not seen
+     */
+    public static ScheduledConcert of(@NonNull Concert concert) {
+        Long id = concert.getId();
+        Long externalId = concert.getExternalId();
+        Long festivalId = concert.getFestival().getId();
+        return new ScheduledConcert(
+                (id == null) ? -1 : id,
+                (externalId == null) ? -1 : externalId,
+                (festivalId == null) ? -1 : festivalId,
+                concert.getArtist(),
+                concert.getStage(),
+                concert.getDay(),
+                concert.getStart().getTime(),
+                concert.getEnd().getTime(),
+                concert.isToNotify());
+    }
+
+    /**
+     * @return internal id, -1 if the concert was not stored
+     */
+    public long getId() {
+        return id;
+    }
+
+    public long getExternalId() {
+        return externalId;
+    }
+
+    public long getFestivalId() {
+        return festivalId;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public int getStage() {
+        return stage;
+    }
+
+    public int getDay() {
+        return day;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public boolean isToNotify() {
+        return notify;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ScheduledConcert)) return false;
+        ScheduledConcert that = (ScheduledConcert) o;
+        return id == that.id && externalId == that.externalId &&
+                festivalId == that.festivalId && stage == that.stage && day == that.day &&
+                start == that.start && end == that.end && notify == that.notify &&
+                artist.equals(that.artist);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (id ^ (id >>> 32));
+        result = 31 * result + (int) (externalId ^ (externalId >>> 32));
+        result = 31 * result + artist.hashCode();
+        result = 31 * result + (int) (start ^ (start >>> 32));
+        return result;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+/**
+ * Bounded table of canonical string instances. Values repeated across many objects, like the
+ * countries and genres of thousands of festivals, are then kept in memory once. Each string is
+ * stored in a single slot chosen by its hash, and a colliding string replaces the previous one,
+ * so the table never grows and needs no locking: a lost update only costs a duplicate copy.
+ */
+public final class StringInterner {
+
+    private final String[] table;
+    private final int mask;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    public StringInterner(int capacity) {
+        int size = (capacity <= 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        table = new String[size];
+        mask = size - 1;
+    }
+
+    /**
+     * @param value string to look up, may be null
+     * @return an equal string already in the table or the value itself, which is then stored
+     */
+    public String intern(String value) {
+        if (value == null)
+            return null;
+        int hash = value.hashCode();
+        int index = (hash ^ (hash >>> 16)) & mask;
+        String cached = table[index];
+        if (value.equals(cached))
+            return cached;
+        table[index] = value;
+        return value;
+    }
+}
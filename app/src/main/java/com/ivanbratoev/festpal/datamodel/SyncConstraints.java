@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+/**
+ * Device conditions a background synchronisation depends on, replaceable in tests
+ */
+interface SyncConstraints {
+
+    /**
+     * @return true if a network connection is available
+     */
+    boolean isConnected();
+
+    /**
+     * @return true if the active network is not metered, e.g. Wi-Fi
+     */
+    boolean isUnmetered();
+
+    /**
+     * @return true if the device is connected to a power source
+     */
+    boolean isCharging();
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import android.support.annotation.NonNull;
+
+import com.ivanbratoev.festpal.datamodel.db.internal.InternalDatabaseHandler;
+
+/**
+ * Decides when the schedule is synchronised in the background. While a festival in the internal
+ * database is in progress or about to start the schedule is refreshed every
+ * {@link #ACTIVE_INTERVAL}, otherwise every {@link #IDLE_INTERVAL}. A due synchronisation waits
+ * for an unmetered network or a power source, unless the schedule has become twice as old as
+ * the interval, so it is not kept from ever running on mobile data.
+ */
+class SyncScheduler {
+
+    static final long ACTIVE_INTERVAL = 15 * 60_000L;
+    static final long IDLE_INTERVAL = 12 * 60 * 60_000L;
+    /**
+     * longest wait before checking the conditions again when a synchronisation is due
+     */
+    static final long DEFERRED_RETRY = 60 * 60_000L;
+    /**
+     * a festival counts as in progress from this long before its next concert starts
+     */
+    static final long UPCOMING_WINDOW = 24 * 60 * 60_000L;
+    /**
+     * a festival counts as in progress until this long after its last concert ended
+     */
+    static final long FINISHED_WINDOW = 6 * 60 * 60_000L;
+    private static final int METERED_STALENESS = 2;
+
+    private final Clock clock;
+    private final SyncConstraints constraints;
+    private final InternalDatabaseHandler internalDatabaseHandler;
+
+    /**
+     * @param clock                   time source
+     * @param constraints             device conditions
+     * @param internalDatabaseHandler handler used to find festivals in progress
+     */
+    SyncScheduler(@NonNull Clock clock, @NonNull SyncConstraints constraints,
+                  @NonNull InternalDatabaseHandler internalDatabaseHandler) {
+        this.clock = clock;
+        this.constraints = constraints;
+        this.internalDatabaseHandler = internalDatabaseHandler;
+    }
+
+    /**
+     * @return {@link #ACTIVE_INTERVAL} while a festival is in progress, {@link #IDLE_INTERVAL}
+     * otherwise
+     */
+    long getInterval() {
+        long now = clock.currentTimeMillis();
+        return internalDatabaseHandler.hasConcertsBetween(now - FINISHED_WINDOW,
+                now + UPCOMING_WINDOW) ? ACTIVE_INTERVAL : IDLE_INTERVAL;
+    }
+
+    /**
+     * @param lastSync time of the last successful synchronisation, 0 if there was none
+     * @return true if a synchronisation is due and the device conditions allow it
+     */
+    boolean canSyncNow(long lastSync) {
+        long now = clock.currentTimeMillis();
+        long interval = getInterval();
+        if (now - lastSync < interval || !constraints.isConnected())
+            return false;
+        return constraints.isUnmetered() || constraints.isCharging() ||
+                now - lastSync >= interval * METERED_STALENESS;
+    }
+
+    /**
+     * @param lastSync time of the last successful synchronisation, 0 if there was none
+     * @return time of the next check in milliseconds since the epoch
+     */
+    long getNextAttempt(long lastSync) {
+        long now = clock.currentTimeMillis();
+        long interval = getInterval();
+        if (now - lastSync < interval)
+            return lastSync + interval;
+        return now + Math.min(interval, DEFERRED_RETRY);
+    }
+}
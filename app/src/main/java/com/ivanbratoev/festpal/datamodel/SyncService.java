@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import com.ivanbratoev.festpal.datamodel.db.external.ClientDoesNotHavePermissionException;
+import com.ivanbratoev.festpal.datamodel.metrics.Metrics;
+
+/**
+ * Runs {@link DataModel#synchronise(boolean)} in the background at the times chosen by
+ * {@link SyncScheduler}. The alarms do not wake the device up, so a synchronisation never turns
+ * the radio on by itself and runs the next time the device is in use instead.
+ */
+public class SyncService extends IntentService {
+
+    private static final String PREFERENCES = "sync";
+    private static final String KEY_LAST_SYNC = "lastSync";
+    private static final String KEY_CLIENT_NAME = "clientName";
+
+    public SyncService() {
+        super("SyncService");
+    }
+
+    /**
+     * remember the client name for synchronisations started after the process was killed and
+     * schedule the next synchronisation
+     *
+     * @param context    application context
+     * @param clientName client name used for authentication with external DB
+     * @param scheduler  scheduler choosing the time
+     */
+    static void start(@NonNull Context context, @NonNull String clientName,
+                      @NonNull SyncScheduler scheduler) {
+        SharedPreferences preferences = getPreferences(context);
+        preferences.edit().putString(KEY_CLIENT_NAME, clientName).apply();
+        setAlarm(context, scheduler.getNextAttempt(preferences.getLong(KEY_LAST_SYNC, 0)));
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        SharedPreferences preferences = getPreferences(this);
+        DataModel dataModel = DataModel.getInstance();
+        if (dataModel.getSyncScheduler() == null) {
+            String clientName = preferences.getString(KEY_CLIENT_NAME, null);
+            if (clientName == null)
+                return;
+            dataModel.init(getApplicationContext(), clientName);
+        }
+        SyncScheduler scheduler = dataModel.getSyncScheduler();
+        long lastSync = preferences.getLong(KEY_LAST_SYNC, 0);
+        if (scheduler.canSyncNow(lastSync)) {
+            long started = Clock.SYSTEM.currentTimeMillis();
+            try {
+                if (dataModel.synchronise(false)) {
+                    lastSync = started;
+                    preferences.edit().putLong(KEY_LAST_SYNC, lastSync).apply();
+                }
+            } catch (ClientDoesNotHavePermissionException ignore) {
+                Metrics.increment("SyncService.errors.permission");
+            }
+        } else {
+            Metrics.increment("SyncService.deferred");
+        }
+        setAlarm(this, scheduler.getNextAttempt(lastSync));
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * replace the pending alarm, if any
+     */
+    private static void setAlarm(Context context, long time) {
+        PendingIntent operation = PendingIntent.getService(context, 0,
+                new Intent(context, SyncService.class), PendingIntent.FLAG_UPDATE_CURRENT);
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        // inexact from API 19, so the system can batch it with the alarms of other applications
+        alarmManager.set(AlarmManager.RTC, time, operation);
+    }
+}
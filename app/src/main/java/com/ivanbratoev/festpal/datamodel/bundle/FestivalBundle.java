@@ -0,0 +1,241 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.bundle;
+
+import android.support.annotation.NonNull;
+
+import com.ivanbratoev.festpal.datamodel.Concert;
+import com.ivanbratoev.festpal.datamodel.Festival;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A festival and its concerts in a compact binary form, used to share a festival offline and to
+ * ship preloaded festivals. All numbers are big-endian. The bundle starts with the magic number
+ * and the format version, followed by a string table and the records, which refer to strings by
+ * their index in the table, {@link #NULL_STRING} standing for null:
+ * <pre>
+ * int magic, short version
+ * int stringCount, stringCount * (int byteLength, UTF-8 bytes)
+ * long externalId, int name, int description, int country, int city, int address, int genre,
+ *     int prices, int owner, byte official, int votes
+ * int concertCount, concertCount * (byte hasExternalId, long externalId, int artist,
+ *     int stage, int day, long start, long end)
+ * </pre>
+ * A concert which was not uploaded has hasExternalId 0 and externalId {@link #NO_EXTERNAL_ID}.
+ * Version 1 bundles, without hasExternalId and with nulls written as empty strings, are still
+ * read. Internal ids and notification settings are not part of the bundle.
+ */
+public final class FestivalBundle {
+
+    static final int MAGIC = 0x46504231;
+    static final short VERSION = 2;
+    static final short VERSION_NULLABLE_EXTERNAL_IDS = 2;
+    static final int NULL_STRING = -1;
+    static final long NO_EXTERNAL_ID = -1;
+
+    private final Festival festival;
+    private final Concert[] concerts;
+
+    /**
+     * @param festival festival of the bundle
+     * @param concerts concerts hosted by the festival
+     */
+    public FestivalBundle(@NonNull Festival festival, @NonNull Concert[] concerts) {
+        this.festival = festival;
+        this.concerts = concerts;
+    }
+
+    public Festival getFestival() {
+        return festival;
+    }
+
+    /**
+     * @return concerts of the bundle, each referring to {@link #getFestival()}
+     */
+    public Concert[] getConcerts() {
+        return concerts;
+    }
+
+    /**
+     * @param out stream to write the bundle to, it is not closed
+     * @throws IOException
+     */
+    public void write(@NonNull OutputStream out) throws IOException {
+        StringTable strings = new StringTable();
+        int name = strings.add(festival.getName());
+        int description = strings.add(festival.getDescription());
+        int country = strings.add(festival.getCountry());
+        int city = strings.add(festival.getCity());
+        int address = strings.add(festival.getAddress());
+        int genre = strings.add(festival.getGenre());
+        int prices = strings.add(festival.getPrices());
+        int owner = strings.add(festival.getOwner());
+        int[] artists = new int[concerts.length];
+        for (int i = 0; i < concerts.length; i++)
+            artists[i] = strings.add(concerts[i].getArtist());
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeInt(strings.values.size());
+        for (String value : strings.values) {
+            byte[] bytes = value.getBytes("UTF-8");
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+        data.writeLong(festival.getExternalId());
+        data.writeInt(name);
+        data.writeInt(description);
+        data.writeInt(country);
+        data.writeInt(city);
+        data.writeInt(address);
+        data.writeInt(genre);
+        data.writeInt(prices);
+        data.writeInt(owner);
+        data.writeByte(festival.isOfficial() ? 1 : 0);
+        data.writeInt(festival.getVotes());
+        data.writeInt(concerts.length);
+        for (int i = 0; i < concerts.length; i++) {
+            Concert concert = concerts[i];
+            Long externalId = concert.getExternalId();
+            data.writeByte((externalId == null) ? 0 : 1);
+            data.writeLong((externalId == null) ? NO_EXTERNAL_ID : externalId);
+            data.writeInt(artists[i]);
+            data.writeInt(concert.getStage());
+            data.writeInt(concert.getDay());
+            data.writeLong(concert.getStart().getTime());
+            data.writeLong(concert.getEnd().getTime());
+        }
+        data.flush();
+    }
+
+    /**
+     * map a bundle file into memory and decode it
+     *
+     * @param file bundle file
+     * @return decoded bundle
+     * @throws IOException if the file can not be read or is not a valid bundle
+     */
+    public static FestivalBundle read(@NonNull File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param buffer buffer positioned at the start of a bundle
+     * @return decoded bundle, the festival and the concerts have no internal ids
+     * @throws IOException if the buffer does not hold a valid bundle
+     */
+    public static FestivalBundle read(@NonNull ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a festival bundle");
+            short version = buffer.getShort();
+            if (version < 1 || version > VERSION)
+                throw new IOException("Unsupported festival bundle version " + version);
+
+            String[] strings = new String[checkCount(buffer.getInt(), buffer)];
+            byte[] bytes = new byte[0];
+            for (int i = 0; i < strings.length; i++) {
+                int length = checkCount(buffer.getInt(), buffer);
+                if (bytes.length < length)
+                    bytes = new byte[length];
+                buffer.get(bytes, 0, length);
+                strings[i] = new String(bytes, 0, length, "UTF-8");
+            }
+
+            Festival festival = new Festival(null, buffer.getLong(),
+                    string(strings, buffer.getInt()), string(strings, buffer.getInt()),
+                    string(strings, buffer.getInt()), string(strings, buffer.getInt()),
+                    string(strings, buffer.getInt()), string(strings, buffer.getInt()),
+                    string(strings, buffer.getInt()), string(strings, buffer.getInt()),
+                    buffer.get() != 0, buffer.getInt());
+
+            Concert[] concerts = new Concert[checkCount(buffer.getInt(), buffer)];
+            for (int i = 0; i < concerts.length; i++) {
+                boolean hasExternalId = version < VERSION_NULLABLE_EXTERNAL_IDS ||
+                        buffer.get() != 0;
+                long externalId = buffer.getLong();
+                concerts[i] = new Concert(null, externalId, festival,
+                        string(strings, buffer.getInt()), buffer.getInt(), buffer.getInt(),
+                        new Date(buffer.getLong()), new Date(buffer.getLong()), false);
+                if (!hasExternalId)
+                    concerts[i].setExternalId(null);
+            }
+            return new FestivalBundle(festival, concerts);
+        } catch (BufferUnderflowException ignore) {
+            throw new IOException("Truncated festival bundle");
+        }
+    }
+
+    /**
+     * reject counts which can not fit in the rest of the buffer before allocating for them
+     */
+    private static int checkCount(int count, ByteBuffer buffer) throws IOException {
+        if (count < 0 || count > buffer.remaining())
+            throw new IOException("Corrupt festival bundle");
+        return count;
+    }
+
+    private static String string(String[] strings, int index) throws IOException {
+        if (index == NULL_STRING)
+            return null;
+        if (index < 0 || index >= strings.length)
+            throw new IOException("Corrupt festival bundle");
+        return strings[index];
+    }
+
+    /**
+     * strings of the bundle in the order they were first added
+     */
+    private static class StringTable {
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int add(String value) {
+            if (value == null)
+                return NULL_STRING;
+            Integer index = indices.get(value);
+            if (index == null) {
+                index = values.size();
+                indices.put(value, index);
+                values.add(value);
+            }
+            return index;
+        }
+    }
+}
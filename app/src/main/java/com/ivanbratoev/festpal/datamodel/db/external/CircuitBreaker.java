@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel.db.external;
+
+import android.support.annotation.NonNull;
+
+import com.ivanbratoev.festpal.datamodel.Clock;
+
+/**
+ * Circuit breaker guarding the requests to the external database. After a number of
+ * consecutive failures the circuit opens and requests are rejected without touching the network.
+ * Once the open period has passed, a single trial request is let through: its success closes the
+ * circuit again, its failure reopens it.
+ */
+class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Clock clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    /**
+     * @param failureThreshold number of consecutive failures opening the circuit
+     * @param openMillis       time in milliseconds the circuit stays open before a trial request
+     * @param clock            time source
+     */
+    CircuitBreaker(int failureThreshold, long openMillis, @NonNull Clock clock) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if a request may be sent now. In the half-open state only the first caller
+     * is allowed through until its outcome is recorded
+     */
+    synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.currentTimeMillis() - openedAt < openMillis)
+                    return false;
+                state = State.HALF_OPEN;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return current state, an open circuit whose open period has passed is reported as
+     * half-open
+     */
+    synchronized State getState() {
+        if (state == State.OPEN && clock.currentTimeMillis() - openedAt >= openMillis)
+            return State.HALF_OPEN;
+        return state;
+    }
+}
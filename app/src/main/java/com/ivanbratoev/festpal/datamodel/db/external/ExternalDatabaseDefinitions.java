@@ -29,32 +29,40 @@ class ExternalDatabaseDefinitions {
     public static final String LOGOUT = "logout";
 
     public static final String MULTIPLE = "mult";
+    public static final String BATCH = "batch";
 
     public static final String READ = "r";
     public static final String WRITE = "w";
     public static final String UPDATE = "u";
     public static final String DELETE = "d";
     public static final String VOTE = "v";
+    public static final String DIGEST = "dig";
 
     public static final String FESTIVAL = "fest";
     public static final String CONCERT = "conc";
 
     public static final String PARAMETER_CLIENT = "client";
-    public static final String RESPONSE_NO_CLIENT_NAME = "Client name not provided\n";
-    public static final String RESPONSE_CLIENT_NO_PERMISSION = "Permission not granted\n";
-    public static final String LOG_OUT_RESPONSE_SUCCESS = "Logged out\n";
+    public static final String RESPONSE_NO_CLIENT_NAME = "Client name not provided";
+    public static final String RESPONSE_CLIENT_NO_PERMISSION = "Permission not granted";
+    public static final String LOG_OUT_RESPONSE_SUCCESS = "Logged out";
     public static final String PARAMETER_NUMBER = "num";
     public static final String PARAMETER_ID = "id";
     public static final String PARAMETER_FESTIVAL = "festival";
-    public static final String RESPONSE_INVALID_FESTIVAL_ID = "Invalid Festival ID\n";
-    public static final String RESPONSE_CONCERT_NOT_FOUND = "Concert Not Found\n";
-    public static final String RESPONSE_INCORRECT_INPUT = "Incorrect input\n";
-    public static final String RESPONSE_NAME_EXISTS = "Name exists\n";
-    public static final String RESPONSE_ARTIST_EXISTS = "Artist exists\n";
-    public static final String RESPONSE_PERMISSION_NOT_GRANTED = "Permission not granted\n";
-    public static final String RESPONSE_OK = "OK\n";
+    public static final String RESPONSE_INVALID_FESTIVAL_ID = "Invalid Festival ID";
+    public static final String RESPONSE_CONCERT_NOT_FOUND = "Concert Not Found";
+    public static final String RESPONSE_INCORRECT_INPUT = "Incorrect input";
+    public static final String RESPONSE_NAME_EXISTS = "Name exists";
+    public static final String RESPONSE_ARTIST_EXISTS = "Artist exists";
+    public static final String RESPONSE_PERMISSION_NOT_GRANTED = "Permission not granted";
+    public static final String RESPONSE_OK = "OK";
     public static final String PARAMETER_MIN_PRICE = "min_price";
     public static final String PARAMETER_MAX_PRICE = "max_price";
+    public static final String PARAMETER_ITEMS = "items";
+    /**
+     * asks for a projection of the records, a server which does not know it sends them whole
+     */
+    public static final String PARAMETER_FIELDS = "fields";
+    public static final String FIELDS_SUMMARY = "summary";
 
     public class RegisterContext {
         public static final String PARAMETER_USERNAME = "username";
@@ -65,25 +73,25 @@ class ExternalDatabaseDefinitions {
         public static final String PARAMETER_COUNTRY = "country";
         public static final String PARAMETER_CITY = "city";
         public static final String PARAMETER_REPRESENTATIVE = "representative";
-        public static final String RESULT_MISSING_NON_OPTIONAL_FIELDS = "Missing Non-Optional Fields\n";
-        public static final String RESULT_INVALID_USERNAME = "Invalid Username\n";
-        public static final String RESULT_INVALID_EMAIL = "Invalid e-mail\n";
-        public static final String RESULT_INVALID_PASSWORD = "Invalid Password\n";
-        public static final String RESULT_INVALID_FIRST_NAME = "Invalid First Name\n";
-        public static final String RESULT_INVALID_LAST_NAME = "Invalid Last Name\n";
-        public static final String RESULT_INVALID_COUNTRY = "Invalid Country\n";
-        public static final String RESULT_INVALID_CITY = "Invalid City\n";
-        public static final String RESULT_OK = "OK\n";
+        public static final String RESULT_MISSING_NON_OPTIONAL_FIELDS = "Missing Non-Optional Fields";
+        public static final String RESULT_INVALID_USERNAME = "Invalid Username";
+        public static final String RESULT_INVALID_EMAIL = "Invalid e-mail";
+        public static final String RESULT_INVALID_PASSWORD = "Invalid Password";
+        public static final String RESULT_INVALID_FIRST_NAME = "Invalid First Name";
+        public static final String RESULT_INVALID_LAST_NAME = "Invalid Last Name";
+        public static final String RESULT_INVALID_COUNTRY = "Invalid Country";
+        public static final String RESULT_INVALID_CITY = "Invalid City";
+        public static final String RESULT_OK = "OK";
     }
 
     public class LogInContext {
         public static final String PARAMETER_USERNAME = "username";
         public static final String PARAMETER_PASSWORD = "password";
-        public static final String RESPONSE_OK = "OK\n";
-        public static final String RESPONSE_DISABLED = "Disabled account\n";
-        public static final String RESPONSE_INVALID = "Invalid login\n";
-        public static final String RESPONSE_NO_PASSWORD = "No password\n";
-        public static final String RESPONSE_NO_USERNAME = "No username\n";
+        public static final String RESPONSE_OK = "OK";
+        public static final String RESPONSE_DISABLED = "Disabled account";
+        public static final String RESPONSE_INVALID = "Invalid login";
+        public static final String RESPONSE_NO_PASSWORD = "No password";
+        public static final String RESPONSE_NO_USERNAME = "No username";
     }
 
     public class FestivalsContext {
@@ -98,6 +106,7 @@ class ExternalDatabaseDefinitions {
         public static final String RESULT_PARAMETER_OWNER = "owner";
         public static final String RESULT_PARAMETER_OFFICIAL = "official";
         public static final String RESULT_PARAMETER_VOTES = "votes";
+        public static final String RESULT_PARAMETER_DIGEST = "digest";
     }
 
     public class ConcertContext {
@@ -19,59 +19,128 @@ package com.ivanbratoev.festpal.datamodel.db.external;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import com.ivanbratoev.festpal.datamodel.Clock;
 import com.ivanbratoev.festpal.datamodel.Concert;
 import com.ivanbratoev.festpal.datamodel.Festival;
+import com.ivanbratoev.festpal.datamodel.FestivalSummary;
+import com.ivanbratoev.festpal.datamodel.StringInterner;
+import com.ivanbratoev.festpal.datamodel.metrics.Metrics;
+import com.ivanbratoev.festpal.datamodel.metrics.Tracer;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Random;
 
 /**
  * Helper class for accessing the external database
  */
 public class ExternalDatabaseHandler {
 
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_BASE_RETRY_DELAY = 500;
+    private static final long DEFAULT_MAX_RETRY_DELAY = 5_000;
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_OPEN_CIRCUIT_TIME = 30_000;
+
+    private static final String REQUEST_PREFIX = "ExternalDatabaseHandler";
+    private static final String RETRIES = "ExternalDatabaseHandler.retries";
+    private static final String DECODE_ERRORS = "ExternalDatabaseHandler.errors.decode";
+    private static final String BYTES_OUT = "ExternalDatabaseHandler.out.bytes";
+    private static final String BYTES_IN = "ExternalDatabaseHandler.in.bytes";
+    private static final String[] STATUS_COUNTERS;
+    private static final String TRACE_CATEGORY = "network";
+    /**
+     * large searches return thousands of festivals sharing a few countries and genres
+     */
+    private static final StringInterner INTERNER = new StringInterner(1024);
+
+    static {
+        RemoteResponse.Status[] statuses = RemoteResponse.Status.values();
+        STATUS_COUNTERS = new String[statuses.length];
+        for (int i = 0; i < statuses.length; i++)
+            STATUS_COUNTERS[i] = "ExternalDatabaseHandler.status." +
+                    statuses[i].name().toLowerCase(Locale.US);
+    }
+
     private final String client;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
 
     /**
      * @param client client name used for authentication with external DB
      */
     public ExternalDatabaseHandler(@NonNull String client) {
+        this(client,
+                new RetryPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_RETRY_DELAY,
+                        DEFAULT_MAX_RETRY_DELAY, new Random()),
+                new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_CIRCUIT_TIME,
+                        Clock.SYSTEM));
+    }
+
+    /**
+     * @param client         client name used for authentication with external DB
+     * @param retryPolicy    retry settings used for idempotent requests
+     * @param circuitBreaker circuit breaker guarding all requests
+     */
+    ExternalDatabaseHandler(@NonNull String client, @NonNull RetryPolicy retryPolicy,
+                            @NonNull CircuitBreaker circuitBreaker) {
         this.client = client;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
     }
 
     /**
-     * check whether connection to the database server can be established
+     * @return true if requests are currently rejected without contacting the server, because
+     * it has been failing recently
+     */
+    public boolean isCircuitOpen() {
+        return circuitBreaker.getState() == CircuitBreaker.State.OPEN;
+    }
+
+    /**
+     * check whether connection to the database server can be established. Only a HEAD request
+     * to the server root is sent, any HTTP answer but a server error counts as reachable
      *
      * @return true on success false otherwise
      */
     public boolean canConnectToDB() {
+        if (!circuitBreaker.allowRequest())
+            return false;
+        HttpURLConnection connection = null;
+        boolean reachable = false;
         try {
             URL url = new URL(ExternalDatabaseHelper.getAddress());
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setConnectTimeout(15_000);
-            connection.connect();
-            connection.disconnect();
-            return true;
-        } catch (Exception ignore) {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(5_000);
+            connection.setReadTimeout(5_000);
+            connection.setRequestMethod("HEAD");
+            // a failing server answers too, it must not close a half open breaker
+            reachable = connection.getResponseCode() < HttpURLConnection.HTTP_INTERNAL_ERROR;
+        } catch (IOException ignore) {
+        } finally {
+            if (connection != null)
+                connection.disconnect();
+            // reported here, so an unexpected exception does not leave the breaker half open
+            if (reachable)
+                circuitBreaker.recordSuccess();
+            else
+                circuitBreaker.recordFailure();
         }
-        return false;
+        return reachable;
     }
 
     /**
@@ -86,7 +155,7 @@ public class ExternalDatabaseHandler {
                         @Nullable String country, @Nullable String city,
                         @Nullable Boolean representative) throws ClientDoesNotHavePermissionException {
         try {
-            URL url = new URL(ExternalDatabaseDefinitions.REGISTER);
+            URL url = new URL(ExternalDatabaseHelper.getRegister());
             Map<String, String> parameters = new HashMap<>();
             parameters.put(ExternalDatabaseDefinitions.RegisterContext.PARAMETER_USERNAME,
                     username);
@@ -115,10 +184,10 @@ public class ExternalDatabaseHandler {
                     parameters.put(ExternalDatabaseDefinitions.RegisterContext.PARAMETER_REPRESENTATIVE,
                             "1");
             }
-            String response = getRemoteData(url, parameters);
-            if (response == null)
+            RemoteResponse response = getRemoteData(url, parameters, false);
+            if (!response.isSuccessful() || response.getMessage() == null)
                 return 4;
-            switch (response) {
+            switch (response.getMessage()) {
                 case ExternalDatabaseDefinitions.RegisterContext.RESULT_MISSING_NON_OPTIONAL_FIELDS:
                     return 1;
                 case ExternalDatabaseDefinitions.RegisterContext.RESULT_INVALID_USERNAME:
@@ -159,11 +228,11 @@ public class ExternalDatabaseHandler {
                     username);
             parameters.put(ExternalDatabaseDefinitions.LogInContext.PARAMETER_PASSWORD,
                     password);
-            String response = getRemoteData(url, parameters);
-            if (response == null) {
+            RemoteResponse response = getRemoteData(url, parameters, false);
+            if (!response.isSuccessful() || response.getMessage() == null) {
                 return 5;
             }
-            switch (response) {
+            switch (response.getMessage()) {
                 case ExternalDatabaseDefinitions.LogInContext.RESPONSE_OK:
                     return 0;
                 case ExternalDatabaseDefinitions.LogInContext.RESPONSE_INVALID:
@@ -190,9 +259,9 @@ public class ExternalDatabaseHandler {
         try {
             URL url = new URL(ExternalDatabaseHelper.getLogout());
             Map<String, String> parameters = new HashMap<>();
-            return (ExternalDatabaseDefinitions.LOG_OUT_RESPONSE_SUCCESS.equals(
-                    getRemoteData(url, parameters)));
-        } catch (IOException | NullPointerException ignore) {
+            return getRemoteData(url, parameters, false).
+                    hasMessage(ExternalDatabaseDefinitions.LOG_OUT_RESPONSE_SUCCESS);
+        } catch (IOException ignore) {
             return false;
         }
     }
@@ -260,50 +329,45 @@ public class ExternalDatabaseHandler {
             if (artist != null)
                 parameters.put(ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_ARTIST,
                         artist);
-            String response = getRemoteData(url, parameters);
-            JSONArray json = new JSONArray(response);
-            Festival[] result = new Festival[json.length()];
-            for (int i = 0; i < json.length(); i++) {
-                JSONObject current = json.getJSONObject(i);
-                result[i] = new Festival(
-                        -1L,
-                        current.getLong(
-                                ExternalDatabaseDefinitions.FestivalsContext.
-                                        RESULT_PARAMETER_ID),
-                        current.getString(
-                                ExternalDatabaseDefinitions.FestivalsContext.
-                                        RESULT_PARAMETER_NAME),
-                        current.getString(
-                                ExternalDatabaseDefinitions.FestivalsContext.
-                                        RESULT_PARAMETER_DESCRIPTION),
-                        current.getString(
-                                ExternalDatabaseDefinitions.FestivalsContext.
-                                        RESULT_PARAMETER_COUNTRY),
-                        current.getString(
-                                ExternalDatabaseDefinitions.FestivalsContext.
-                                        RESULT_PARAMETER_CITY),
-                        current.getString(
-                                ExternalDatabaseDefinitions.FestivalsContext.
-                                        RESULT_PARAMETER_ADDRESS),
-                        current.getString(
-                                ExternalDatabaseDefinitions.FestivalsContext.
-                                        RESULT_PARAMETER_GENRE),
-                        current.getString(
-                                ExternalDatabaseDefinitions.FestivalsContext.
-                                        RESULT_PARAMETER_PRICES),
-                        current.getString(
-                                ExternalDatabaseDefinitions.FestivalsContext.
-                                        RESULT_PARAMETER_OWNER),
-                        current.getBoolean(
-                                ExternalDatabaseDefinitions.FestivalsContext.
-                                        RESULT_PARAMETER_OFFICIAL),
-                        current.getInt(
-                                ExternalDatabaseDefinitions.FestivalsContext.
-                                        RESULT_PARAMETER_VOTES)
-                );
-            }
-            return result;
+            String body = getRemoteData(url, parameters, true).getBody();
+            if (body == null)
+                return null;
+            long span = Tracer.start();
+            Festival[] festivals = parseFestivals(body);
+            Tracer.stop(TRACE_CATEGORY, "parse festivals", span, festivals.length);
+            return festivals;
+        } catch (JSONException | MalformedURLException ignore) {
+            Metrics.increment(DECODE_ERRORS);
+            return null;
+        }
+    }
+
+    /**
+     * return the list fields of the top festival results. Only the id, name, city and votes are
+     * requested, the whole festival is read with {@link #readFestivalInfo(long)} when it is
+     * opened. The external database does not date festivals, so the summaries have no dates
+     *
+     * @param num number of festivals to return
+     * @return summaries of the festivals or null on error
+     * @throws ClientDoesNotHavePermissionException
+     */
+    public FestivalSummary[] readFestivalSummaries(int num)
+            throws ClientDoesNotHavePermissionException {
+        try {
+            URL url = new URL(ExternalDatabaseHelper.getReadMultipleFestivals());
+            Map<String, String> parameters = new HashMap<>();
+            parameters.put(ExternalDatabaseDefinitions.PARAMETER_NUMBER, String.valueOf(num));
+            parameters.put(ExternalDatabaseDefinitions.PARAMETER_FIELDS,
+                    ExternalDatabaseDefinitions.FIELDS_SUMMARY);
+            String body = getRemoteData(url, parameters, true).getBody();
+            if (body == null)
+                return null;
+            long span = Tracer.start();
+            FestivalSummary[] summaries = parseFestivalSummaries(body);
+            Tracer.stop(TRACE_CATEGORY, "parse festival summaries", span, summaries.length);
+            return summaries;
         } catch (JSONException | MalformedURLException ignore) {
+            Metrics.increment(DECODE_ERRORS);
             return null;
         }
     }
@@ -319,38 +383,157 @@ public class ExternalDatabaseHandler {
             URL url = new URL(ExternalDatabaseHelper.getReadMultipleConcerts());
             Map<String, String> parameters = new HashMap<>();
             parameters.put(ExternalDatabaseDefinitions.PARAMETER_ID,
-                    String.valueOf(festival.getId()));
-            String content = getRemoteData(url, parameters);
-            if (content == null)
+                    String.valueOf(festival.getExternalId()));
+            String body = getRemoteData(url, parameters, true).getBody();
+            if (body == null)
                 return null;
-            if (content.equals(ExternalDatabaseDefinitions.RESPONSE_INVALID_FESTIVAL_ID))
+            long span = Tracer.start();
+            Concert[] concerts = parseConcerts(body, festival);
+            Tracer.stop(TRACE_CATEGORY, "parse concerts", span, concerts.length);
+            return concerts;
+        } catch (MalformedURLException | JSONException ignore) {
+            Metrics.increment(DECODE_ERRORS);
+            return null;
+        }
+    }
+
+    /**
+     * @param body JSON array of festivals as sent by the server
+     * @return decoded festivals
+     */
+    static Festival[] parseFestivals(@NonNull String body) throws JSONException {
+        JSONArray json = new JSONArray(body);
+        Festival[] result = new Festival[json.length()];
+        for (int i = 0; i < json.length(); i++) {
+            JSONObject current = json.getJSONObject(i);
+            result[i] = new Festival(
+                    -1L,
+                    current.getLong(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_ID),
+                    current.getString(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_NAME),
+                    current.getString(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_DESCRIPTION),
+                    INTERNER.intern(current.getString(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_COUNTRY)),
+                    INTERNER.intern(current.getString(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_CITY)),
+                    current.getString(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_ADDRESS),
+                    INTERNER.intern(current.getString(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_GENRE)),
+                    current.getString(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_PRICES),
+                    INTERNER.intern(current.getString(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_OWNER)),
+                    current.getBoolean(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_OFFICIAL),
+                    current.getInt(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_VOTES)
+            );
+        }
+        return result;
+    }
+
+    /**
+     * @param body JSON array of festivals as sent by the server, whole or projected to the
+     *             summary fields
+     * @return decoded summaries, the other fields are skipped
+     */
+    static FestivalSummary[] parseFestivalSummaries(@NonNull String body) throws JSONException {
+        JSONArray json = new JSONArray(body);
+        FestivalSummary[] result = new FestivalSummary[json.length()];
+        for (int i = 0; i < json.length(); i++) {
+            JSONObject current = json.getJSONObject(i);
+            result[i] = new FestivalSummary(
+                    -1L,
+                    current.getLong(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_ID),
+                    current.getString(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_NAME),
+                    INTERNER.intern(current.getString(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_CITY)),
+                    current.getInt(
+                            ExternalDatabaseDefinitions.FestivalsContext.
+                                    RESULT_PARAMETER_VOTES),
+                    FestivalSummary.NO_DATE,
+                    FestivalSummary.NO_DATE);
+        }
+        return result;
+    }
+
+    /**
+     * @param body     JSON array of concerts as sent by the server
+     * @param festival festival hosting the concerts
+     * @return decoded concerts
+     */
+    static Concert[] parseConcerts(@NonNull String body, @NonNull Festival festival)
+            throws JSONException {
+        JSONArray json = new JSONArray(body);
+        Concert[] result = new Concert[json.length()];
+        for (int i = 0; i < json.length(); i++) {
+            JSONObject current = json.getJSONObject(i);
+            result[i] = new Concert(
+                    null,
+                    current.getLong(ExternalDatabaseDefinitions.ConcertContext.
+                            RESULT_PARAMETER_EXTERNAL_ID),
+                    festival,
+                    current.getString(ExternalDatabaseDefinitions.ConcertContext.
+                            RESULT_PARAMETER_ARTIST),
+                    current.getInt(ExternalDatabaseDefinitions.ConcertContext.
+                            RESULT_PARAMETER_SCENE),
+                    current.getInt(ExternalDatabaseDefinitions.ConcertContext.
+                            RESULT_PARAMETER_DAY),
+                    new Date(
+                            current.getLong(ExternalDatabaseDefinitions.ConcertContext.
+                                    RESULT_PARAMETER_START)),
+                    new Date(
+                            current.getLong(ExternalDatabaseDefinitions.ConcertContext.
+                                    RESULT_PARAMETER_END)),
+                    false
+            );
+        }
+        return result;
+    }
+
+    /**
+     * read the digest the server keeps of a festival and its full lineup. The digest changes
+     * whenever the festival or any of its concerts changes, so comparing it with the last known
+     * one tells if the festival needs to be downloaded again
+     *
+     * @param festivalID external id of the festival
+     * @return the digest or null if the festival does not exist, the request failed or the server
+     * does not provide digests
+     * @throws ClientDoesNotHavePermissionException
+     */
+    public String readFestivalDigest(long festivalID) throws ClientDoesNotHavePermissionException {
+        if (festivalID < 0)
+            return null;
+        try {
+            URL url = new URL(ExternalDatabaseHelper.getReadFestivalDigest());
+            Map<String, String> parameters = new HashMap<>();
+            parameters.put(ExternalDatabaseDefinitions.PARAMETER_ID, String.valueOf(festivalID));
+            String body = getRemoteData(url, parameters, true).getBody();
+            if (body == null)
                 return null;
-            JSONArray json = new JSONArray(content);
-            Concert[] result = new Concert[json.length()];
-            for (int i = 0; i < json.length(); i++) {
-                JSONObject current = json.getJSONObject(i);
-                result[i] = new Concert(
-                        null,
-                        current.getLong(ExternalDatabaseDefinitions.ConcertContext.
-                                RESULT_PARAMETER_EXTERNAL_ID),
-                        festival,
-                        current.getString(ExternalDatabaseDefinitions.ConcertContext.
-                                RESULT_PARAMETER_ARTIST),
-                        current.getInt(ExternalDatabaseDefinitions.ConcertContext.
-                                RESULT_PARAMETER_SCENE),
-                        current.getInt(ExternalDatabaseDefinitions.ConcertContext.
-                                RESULT_PARAMETER_DAY),
-                        new Date(
-                                current.getInt(ExternalDatabaseDefinitions.ConcertContext.
-                                        RESULT_PARAMETER_START)),
-                        new Date(
-                                current.getInt(ExternalDatabaseDefinitions.ConcertContext.
-                                        RESULT_PARAMETER_END)),
-                        false
-                );
-            }
-            return result;
+            return new JSONObject(body).getString(
+                    ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_DIGEST);
         } catch (MalformedURLException | JSONException ignore) {
+            Metrics.increment(DECODE_ERRORS);
             return null;
         }
     }
@@ -367,12 +550,10 @@ public class ExternalDatabaseHandler {
             URL url = new URL(ExternalDatabaseHelper.getReadFestivalInfo());
             Map<String, String> parameters = new HashMap<>();
             parameters.put(ExternalDatabaseDefinitions.PARAMETER_ID, String.valueOf(festivalID));
-            String response = getRemoteData(url, parameters);
-            if (response == null)
-                return null;
-            if (response.equals(ExternalDatabaseDefinitions.RESPONSE_INVALID_FESTIVAL_ID))
+            String body = getRemoteData(url, parameters, true).getBody();
+            if (body == null)
                 return null;
-            JSONObject json = new JSONObject(response);
+            JSONObject json = new JSONObject(body);
             return new Festival(
                     -1L,
                     json.getLong(ExternalDatabaseDefinitions.FestivalsContext.
@@ -381,18 +562,18 @@ public class ExternalDatabaseHandler {
                             RESULT_PARAMETER_NAME),
                     json.getString(ExternalDatabaseDefinitions.FestivalsContext.
                             RESULT_PARAMETER_DESCRIPTION),
-                    json.getString(ExternalDatabaseDefinitions.FestivalsContext.
-                            RESULT_PARAMETER_COUNTRY),
-                    json.getString(ExternalDatabaseDefinitions.FestivalsContext.
-                            RESULT_PARAMETER_CITY),
+                    INTERNER.intern(json.getString(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_COUNTRY)),
+                    INTERNER.intern(json.getString(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_CITY)),
                     json.getString(ExternalDatabaseDefinitions.FestivalsContext.
                             RESULT_PARAMETER_ADDRESS),
-                    json.getString(ExternalDatabaseDefinitions.FestivalsContext.
-                            RESULT_PARAMETER_GENRE),
+                    INTERNER.intern(json.getString(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_GENRE)),
                     json.getString(ExternalDatabaseDefinitions.FestivalsContext.
                             RESULT_PARAMETER_PRICES),
-                    json.getString(ExternalDatabaseDefinitions.FestivalsContext.
-                            RESULT_PARAMETER_OWNER),
+                    INTERNER.intern(json.getString(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_OWNER)),
                     json.getBoolean(ExternalDatabaseDefinitions.FestivalsContext.
                             RESULT_PARAMETER_OFFICIAL),
                     json.getInt(ExternalDatabaseDefinitions.FestivalsContext.
@@ -400,6 +581,7 @@ public class ExternalDatabaseHandler {
 
             );
         } catch (MalformedURLException | JSONException ignore) {
+            Metrics.increment(DECODE_ERRORS);
             return null;
         }
     }
@@ -455,7 +637,8 @@ public class ExternalDatabaseHandler {
                 parameters.put(
                         ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_OFFICIAL,
                         String.valueOf(official));
-            return ExternalDatabaseDefinitions.RESPONSE_OK.equals(getRemoteData(url, parameters));
+            return getRemoteData(url, parameters, false).
+                    hasMessage(ExternalDatabaseDefinitions.RESPONSE_OK);
         } catch (MalformedURLException ignore) {
             return false;
         }
@@ -513,9 +696,10 @@ public class ExternalDatabaseHandler {
                 parameters.put(ExternalDatabaseDefinitions.FestivalsContext.
                                 RESULT_PARAMETER_OFFICIAL,
                         String.valueOf(official));
-            String response = getRemoteData(url, parameters);
-            return !ExternalDatabaseDefinitions.RESPONSE_INVALID_FESTIVAL_ID.equals(response) &&
-                    !(ExternalDatabaseDefinitions.RESPONSE_INCORRECT_INPUT.equals(response));
+            RemoteResponse response = getRemoteData(url, parameters, false);
+            return response.isSuccessful() &&
+                    !response.hasMessage(ExternalDatabaseDefinitions.RESPONSE_INVALID_FESTIVAL_ID) &&
+                    !response.hasMessage(ExternalDatabaseDefinitions.RESPONSE_INCORRECT_INPUT);
         } catch (MalformedURLException ignore) {
             return false;
         }
@@ -534,12 +718,10 @@ public class ExternalDatabaseHandler {
             Map<String, String> parameters = new HashMap<>();
             parameters.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_ID,
                     String.valueOf(id));
-            String response = getRemoteData(url, parameters);
-            if (response == null)
-                return null;
-            if (ExternalDatabaseDefinitions.RESPONSE_INVALID_FESTIVAL_ID.equals(response))
+            String body = getRemoteData(url, parameters, true).getBody();
+            if (body == null)
                 return null;
-            JSONObject json = new JSONObject(response);
+            JSONObject json = new JSONObject(body);
             return new Concert(
                     null,
                     id,
@@ -549,14 +731,15 @@ public class ExternalDatabaseHandler {
                     json.getInt(ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_SCENE),
                     json.getInt(ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_DAY),
                     new Date(
-                            json.getInt(ExternalDatabaseDefinitions.ConcertContext.
+                            json.getLong(ExternalDatabaseDefinitions.ConcertContext.
                                     RESULT_PARAMETER_START)),
                     new Date(
-                            json.getInt(ExternalDatabaseDefinitions.ConcertContext.
+                            json.getLong(ExternalDatabaseDefinitions.ConcertContext.
                                     RESULT_PARAMETER_END)),
                     false
             );
         } catch (MalformedURLException | JSONException ignore) {
+            Metrics.increment(DECODE_ERRORS);
             return null;
         }
     }
@@ -591,8 +774,8 @@ public class ExternalDatabaseHandler {
                     String.valueOf(start.getTime()));
             parameters.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_END,
                     String.valueOf(end.getTime()));
-            String response = getRemoteData(url, parameters);
-            return response != null && ExternalDatabaseDefinitions.RESPONSE_OK.equals(response);
+            return getRemoteData(url, parameters, false).
+                    hasMessage(ExternalDatabaseDefinitions.RESPONSE_OK);
         } catch (MalformedURLException ignore) {
             return false;
         }
@@ -632,10 +815,10 @@ public class ExternalDatabaseHandler {
             if (end != null)
                 parameters.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_END,
                         String.valueOf(end.getTime()));
-            String response = getRemoteData(url, parameters);
-            if (response == null)
+            RemoteResponse response = getRemoteData(url, parameters, false);
+            if (!response.isSuccessful() || response.getMessage() == null)
                 return false;
-            switch (response) {
+            switch (response.getMessage()) {
                 case ExternalDatabaseDefinitions.RESPONSE_CONCERT_NOT_FOUND:
                     return false;
                 case ExternalDatabaseDefinitions.RESPONSE_PERMISSION_NOT_GRANTED:
@@ -650,6 +833,131 @@ public class ExternalDatabaseHandler {
         }
     }
 
+    /**
+     * Writes many concerts of one festival to the external database in a single request
+     *
+     * @param festivalExternalID external ID of the festival hosting the concerts
+     * @param concerts           concerts to write
+     * @return success of each item in the order of the input or null if the request failed
+     * @throws ClientDoesNotHavePermissionException
+     */
+    public boolean[] writeConcertInfoBatch(long festivalExternalID, @NonNull Concert[] concerts)
+            throws ClientDoesNotHavePermissionException {
+        try {
+            JSONArray items = new JSONArray();
+            for (Concert concert : concerts) {
+                JSONObject item = new JSONObject();
+                item.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_FESTIVAL,
+                        festivalExternalID);
+                item.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_ARTIST,
+                        concert.getArtist());
+                item.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_SCENE,
+                        concert.getStage());
+                item.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_DAY,
+                        concert.getDay());
+                item.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_START,
+                        concert.getStart().getTime());
+                item.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_END,
+                        concert.getEnd().getTime());
+                items.put(item);
+            }
+            return sendBatch(new URL(ExternalDatabaseHelper.getWriteConcertBatch()), items);
+        } catch (MalformedURLException | JSONException ignore) {
+            Metrics.increment(DECODE_ERRORS);
+            return null;
+        }
+    }
+
+    /**
+     * Updates many concerts in the external database in a single request
+     *
+     * @param updates changes to apply, see {@link ConcertUpdate}
+     * @return success of each item in the order of the input or null if the request failed
+     * @throws ClientDoesNotHavePermissionException
+     */
+    public boolean[] updateConcertInfoBatch(@NonNull ConcertUpdate[] updates)
+            throws ClientDoesNotHavePermissionException {
+        try {
+            JSONArray items = new JSONArray();
+            for (ConcertUpdate update : updates) {
+                JSONObject item = new JSONObject();
+                item.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_ID, update.id);
+                if (update.artist != null)
+                    item.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_ARTIST,
+                            update.artist);
+                if (update.stage != null)
+                    item.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_SCENE,
+                            update.stage.intValue());
+                if (update.day != null)
+                    item.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_DAY,
+                            update.day.intValue());
+                if (update.start != null)
+                    item.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_START,
+                            update.start.getTime());
+                if (update.end != null)
+                    item.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_END,
+                            update.end.getTime());
+                items.put(item);
+            }
+            return sendBatch(new URL(ExternalDatabaseHelper.getUpdateConcertBatch()), items);
+        } catch (MalformedURLException | JSONException ignore) {
+            Metrics.increment(DECODE_ERRORS);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes many concerts from the external database in a single request
+     *
+     * @param ids ids of the concerts
+     * @return success of each item in the order of the input or null if the request failed
+     * @throws ClientDoesNotHavePermissionException
+     */
+    public boolean[] deleteConcertBatch(@NonNull long[] ids)
+            throws ClientDoesNotHavePermissionException {
+        try {
+            JSONArray items = new JSONArray();
+            for (long id : ids) {
+                JSONObject item = new JSONObject();
+                item.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_ID, id);
+                items.put(item);
+            }
+            return sendBatch(new URL(ExternalDatabaseHelper.getDeleteConcertBatch()), items);
+        } catch (MalformedURLException | JSONException ignore) {
+            Metrics.increment(DECODE_ERRORS);
+            return null;
+        }
+    }
+
+    /**
+     * send the items of a batch request and read the status of each item from the response,
+     * which is a JSON array of status messages in the order of the request items
+     */
+    private boolean[] sendBatch(URL url, JSONArray items)
+            throws ClientDoesNotHavePermissionException {
+        if (items.length() == 0)
+            return new boolean[0];
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put(ExternalDatabaseDefinitions.PARAMETER_ITEMS, items.toString());
+        String body = getRemoteData(url, parameters, false).getBody();
+        if (body == null)
+            return null;
+        try {
+            JSONArray statuses = new JSONArray(body);
+            if (statuses.length() != items.length())
+                return null;
+            boolean[] result = new boolean[statuses.length()];
+            for (int i = 0; i < statuses.length(); i++) {
+                result[i] = ExternalDatabaseDefinitions.RESPONSE_OK.equals(
+                        statuses.getString(i));
+            }
+            return result;
+        } catch (JSONException ignore) {
+            Metrics.increment(DECODE_ERRORS);
+            return null;
+        }
+    }
+
     /**
      * @param externalID external id of the festival
      * @return true on success false otherwise
@@ -661,8 +969,8 @@ public class ExternalDatabaseHandler {
             Map<String, String> parameters = new HashMap<>();
             parameters.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_ID,
                     String.valueOf(externalID));
-            String response = getRemoteData(url, parameters);
-            return ExternalDatabaseDefinitions.RESPONSE_OK.equals(response);
+            return getRemoteData(url, parameters, false).
+                    hasMessage(ExternalDatabaseDefinitions.RESPONSE_OK);
         } catch (MalformedURLException ignore) {
             return false;
         }
@@ -680,8 +988,8 @@ public class ExternalDatabaseHandler {
             Map<String, String> parameters = new HashMap<>();
             parameters.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_ID,
                     String.valueOf(id));
-            String response = getRemoteData(url, parameters);
-            return ExternalDatabaseDefinitions.RESPONSE_OK.equals(response);
+            return getRemoteData(url, parameters, false).
+                    hasMessage(ExternalDatabaseDefinitions.RESPONSE_OK);
         } catch (MalformedURLException ignore) {
             return false;
         }
@@ -698,54 +1006,94 @@ public class ExternalDatabaseHandler {
             Map<String, String> parameters = new HashMap<>();
             parameters.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_ID,
                     String.valueOf(festivalExternalID));
-            String response = getRemoteData(url, parameters);
-
-            if (response == null ||
-                    ExternalDatabaseDefinitions.RESPONSE_INVALID_FESTIVAL_ID.equals(response))
+            RemoteResponse response = getRemoteData(url, parameters, false);
+            if (!response.isSuccessful() || response.getMessage() == null)
                 return -1;
-            return Integer.getInteger(response, -1);
-        } catch (MalformedURLException ignore) {
+            return Integer.parseInt(response.getMessage());
+        } catch (MalformedURLException | NumberFormatException ignore) {
+            Metrics.increment(DECODE_ERRORS);
             return -1;
         }
     }
 
-    private String getRemoteData(URL url, Map<String, String> parameters)
+    /**
+     * send a request through the circuit breaker, retrying transient failures of idempotent
+     * requests
+     *
+     * @param idempotent whether the request can safely be repeated
+     */
+    private RemoteResponse getRemoteData(URL url, Map<String, String> parameters,
+                                         boolean idempotent)
             throws ClientDoesNotHavePermissionException {
+        parameters.put(ExternalDatabaseDefinitions.PARAMETER_CLIENT,
+                client);
+        long timer = Metrics.start();
+        int attempts = idempotent ? retryPolicy.getMaxAttempts() : 1;
+        RemoteResponse response = RemoteResponse.failure(RemoteResponse.Status.CIRCUIT_OPEN);
+        for (int attempt = 1; attempt <= attempts; attempt++) {
+            if (attempt > 1) {
+                if (!sleep(retryPolicy.delayBeforeRetry(attempt - 1)))
+                    break;
+                Metrics.increment(RETRIES);
+            }
+            if (!circuitBreaker.allowRequest())
+                break;
+            response = sendRequest(url, parameters);
+            if (!response.isTransientFailure()) {
+                circuitBreaker.recordSuccess();
+                break;
+            }
+            circuitBreaker.recordFailure();
+        }
+        if (Metrics.isEnabled()) {
+            Metrics.stop(REQUEST_PREFIX + url.getPath().replace('/', '.'), timer);
+            Metrics.increment(STATUS_COUNTERS[response.getStatus().ordinal()]);
+        }
+        checkForDeniedClientPermission(response);
+        return response;
+    }
+
+    private RemoteResponse sendRequest(URL url, Map<String, String> parameters) {
+        HttpURLConnection connection = null;
+        long span = Tracer.start();
         try {
-            parameters.put(ExternalDatabaseDefinitions.PARAMETER_CLIENT,
-                    client);
-            HttpURLConnection connection = setupConnection(url, parameters);
-            connection.connect();
-            String response = parseResponse(connection.getContent());
-            connection.disconnect();
+            connection = setupConnection(url, parameters);
+            Tracer.stop(TRACE_CATEGORY, "send", span);
+            long responseSpan = Tracer.start();
+            RemoteResponse response = RemoteResponse.read(connection);
+            Tracer.stop(TRACE_CATEGORY, "receive", responseSpan, connection.getContentLength());
+            if (connection.getContentLength() >= 0)
+                Metrics.record(BYTES_IN, connection.getContentLength());
             return response;
+        } catch (SocketTimeoutException ignore) {
+            return RemoteResponse.failure(RemoteResponse.Status.TIMEOUT);
         } catch (IOException ignore) {
-            return null;
+            return RemoteResponse.failure(RemoteResponse.Status.NETWORK_ERROR);
+        } finally {
+            if (connection != null)
+                connection.disconnect();
+            Tracer.stop(TRACE_CATEGORY, url.getPath(), span);
         }
     }
 
-    private String parseResponse(Object content)
-            throws IOException, ClientDoesNotHavePermissionException {
-        InputStreamReader inputStreamReader = new InputStreamReader((InputStream) content);
-        BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
-        StringBuilder result = new StringBuilder();
-        String line;
-        do {
-            line = bufferedReader.readLine();
-            result.append(line).append("\n");
-        } while (line != null);
-        checkForDeniedClientPermission(result.toString());
-        return result.toString();
+    /**
+     * @return false if the thread was interrupted while waiting
+     */
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
-    private void checkForDeniedClientPermission(String response)
+    private void checkForDeniedClientPermission(RemoteResponse response)
             throws ClientDoesNotHavePermissionException {
-        switch (response) {
-            case ExternalDatabaseDefinitions.RESPONSE_NO_CLIENT_NAME:
-                throw new ClientDoesNotHavePermissionException(response.split("\n")[0]);
-            case ExternalDatabaseDefinitions.RESPONSE_CLIENT_NO_PERMISSION:
-                throw new ClientDoesNotHavePermissionException(response.split("\n")[0]);
-        }
+        if (response.hasMessage(ExternalDatabaseDefinitions.RESPONSE_NO_CLIENT_NAME) ||
+                response.hasMessage(ExternalDatabaseDefinitions.RESPONSE_CLIENT_NO_PERMISSION))
+            throw new ClientDoesNotHavePermissionException(response.getMessage());
     }
 
     private HttpURLConnection setupConnection(URL url, Map<String, String> parameters)
@@ -756,13 +1104,13 @@ public class ExternalDatabaseHandler {
         connection.setRequestMethod("POST");
         connection.setDoInput(true);
         connection.setDoOutput(true);
+        byte[] payload = buildParametersList(parameters).getBytes("UTF-8");
+        connection.setFixedLengthStreamingMode(payload.length);
         OutputStream os = connection.getOutputStream();
-        BufferedWriter writer = new BufferedWriter(
-                new OutputStreamWriter(os, "UTF-8"));
-        writer.write(buildParametersList(parameters));
-        writer.flush();
-        writer.close();
+        os.write(payload);
+        os.flush();
         os.close();
+        Metrics.record(BYTES_OUT, payload.length);
         return connection;
     }
 
@@ -777,11 +1125,94 @@ public class ExternalDatabaseHandler {
                     result.append("&");
                 result.append(URLEncoder.encode(key, "UTF-8"));
                 result.append("=");
-                result.append(parameters.get(key));
+                result.append(URLEncoder.encode(parameters.get(key), "UTF-8"));
             }
         } catch (UnsupportedEncodingException e) {
             e.printStackTrace();
         }
         return result.toString();
     }
+
+    /**
+     * Holder for the changes of a single concert sent with
+     * {@link #updateConcertInfoBatch(ConcertUpdate[])}
+     */
+    public static class ConcertUpdate {
+        private final long id;
+        private final String artist;
+        private final Integer stage;
+        private final Integer day;
+        private final Date start;
+        private final Date end;
+
+        /**
+         * @param id     id of the concert item
+         * @param artist new artist name or null to remain unchanged
+         * @param stage  new stage or null to remain unchanged
+         * @param day    new day or null to remain unchanged
+         * @param start  new start or null to remain unchanged
+         * @param end    new end or null to remain unchanged
+         */
+        public ConcertUpdate(long id, @Nullable String artist, @Nullable Integer stage,
+                             @Nullable Integer day, @Nullable Date start, @Nullable Date end) {
+            this.id = id;
+            this.artist = artist;
+            this.stage = stage;
+            this.day = day;
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getArtist() {
+            return artist;
+        }
+
+        public Integer getStage() {
+            return stage;
+        }
+
+        public Integer getDay() {
+            return day;
+        }
+
+        public Date getStart() {
+            return start;
+        }
+
+        public Date getEnd() {
+            return end;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ConcertUpdate update = (ConcertUpdate) o;
+
+            if (id != update.id) return false;
+            if (artist != null ? !artist.equals(update.artist) : update.artist != null)
+                return false;
+            if (stage != null ? !stage.equals(update.stage) : update.stage != null) return false;
+            if (day != null ? !day.equals(update.day) : update.day != null) return false;
+            if (start != null ? !start.equals(update.start) : update.start != null) return false;
+            return !(end != null ? !end.equals(update.end) : update.end != null);
+
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (id ^ (id >>> 32));
+            result = 31 * result + (artist != null ? artist.hashCode() : 0);
+            result = 31 * result + (stage != null ? stage.hashCode() : 0);
+            result = 31 * result + (day != null ? day.hashCode() : 0);
+            result = 31 * result + (start != null ? start.hashCode() : 0);
+            result = 31 * result + (end != null ? end.hashCode() : 0);
+            return result;
+        }
+    }
 }
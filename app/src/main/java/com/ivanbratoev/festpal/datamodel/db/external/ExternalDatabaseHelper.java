@@ -20,10 +20,21 @@ package com.ivanbratoev.festpal.datamodel.db.external;
  * Helper class building the URL necessary for the handler
  */
 class ExternalDatabaseHelper {
+    private static volatile String address = ExternalDatabaseDefinitions.PROTOCOL + "://" +
+            ExternalDatabaseDefinitions.ADDRESS +
+            ":" + ExternalDatabaseDefinitions.HOST + "/";
+
     public static String getAddress() {
-        return ExternalDatabaseDefinitions.PROTOCOL + "://" +
-                ExternalDatabaseDefinitions.ADDRESS +
-                ":" + ExternalDatabaseDefinitions.HOST + "/";
+        return address;
+    }
+
+    /**
+     * redirect all requests to another server, e.g. a local stub server used in tests
+     *
+     * @param address base address of the server, ending with "/"
+     */
+    static void setAddress(String address) {
+        ExternalDatabaseHelper.address = address;
     }
 
     public static String getRegister() {
@@ -48,6 +59,11 @@ class ExternalDatabaseHelper {
                 "/" + ExternalDatabaseDefinitions.CONCERT + "/";
     }
 
+    public static String getReadFestivalDigest() {
+        return getAddress() + ExternalDatabaseDefinitions.DIGEST +
+                "/" + ExternalDatabaseDefinitions.FESTIVAL + "/";
+    }
+
     public static String getReadFestivalInfo() {
         return getAddress() + ExternalDatabaseDefinitions.READ +
                 "/" + ExternalDatabaseDefinitions.FESTIVAL + "/";
@@ -88,6 +104,24 @@ class ExternalDatabaseHelper {
                 "/" + ExternalDatabaseDefinitions.CONCERT + "/";
     }
 
+    public static String getWriteConcertBatch() {
+        return getAddress() + ExternalDatabaseDefinitions.BATCH +
+                "/" + ExternalDatabaseDefinitions.WRITE +
+                "/" + ExternalDatabaseDefinitions.CONCERT + "/";
+    }
+
+    public static String getUpdateConcertBatch() {
+        return getAddress() + ExternalDatabaseDefinitions.BATCH +
+                "/" + ExternalDatabaseDefinitions.UPDATE +
+                "/" + ExternalDatabaseDefinitions.CONCERT + "/";
+    }
+
+    public static String getDeleteConcertBatch() {
+        return getAddress() + ExternalDatabaseDefinitions.BATCH +
+                "/" + ExternalDatabaseDefinitions.DELETE +
+                "/" + ExternalDatabaseDefinitions.CONCERT + "/";
+    }
+
     public static String getVote() {
         return getAddress() + ExternalDatabaseDefinitions.VOTE + "/";
     }
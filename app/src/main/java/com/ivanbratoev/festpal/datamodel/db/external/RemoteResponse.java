@@ -0,0 +1,205 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel.db.external;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+
+/**
+ * Decoded response of the external database. The server answers either with a short status
+ * message (e.g. "OK") or with a JSON document. Status messages are read up to the end of their
+ * first line only, JSON documents are read whole, so they can be parsed.
+ */
+class RemoteResponse {
+
+    /**
+     * transport level outcome of a request
+     */
+    enum Status {
+        /**
+         * HTTP 2xx, the message or body holds the answer of the server
+         */
+        SUCCESS,
+        /**
+         * HTTP 4xx
+         */
+        CLIENT_ERROR,
+        /**
+         * HTTP 5xx or any other unexpected HTTP status
+         */
+        SERVER_ERROR,
+        /**
+         * connecting or reading timed out
+         */
+        TIMEOUT,
+        /**
+         * the server could not be reached
+         */
+        NETWORK_ERROR,
+        /**
+         * the request was not sent, because the server has been failing recently
+         */
+        CIRCUIT_OPEN
+    }
+
+    private static final int MAX_MESSAGE_LENGTH = 256;
+    private static final int BUFFER_SIZE = 4096;
+
+    private final Status status;
+    private final int code;
+    private final String message;
+    private final String body;
+
+    private RemoteResponse(@NonNull Status status, int code, @Nullable String message,
+                           @Nullable String body) {
+        this.status = status;
+        this.code = code;
+        this.message = message;
+        this.body = body;
+    }
+
+    /**
+     * @param status reason for the request to fail, {@link Status#TIMEOUT},
+     *               {@link Status#NETWORK_ERROR} or {@link Status#CIRCUIT_OPEN}
+     * @return response of a request which did not reach the server
+     */
+    static RemoteResponse failure(@NonNull Status status) {
+        return new RemoteResponse(status, -1, null, null);
+    }
+
+    /**
+     * read the response of a connection whose request has already been sent
+     *
+     * @param connection connection to read from
+     * @return decoded response
+     * @throws IOException on network errors, including timeouts
+     */
+    static RemoteResponse read(@NonNull HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        Status status;
+        if (code >= 200 && code < 300)
+            status = Status.SUCCESS;
+        else if (code >= 400 && code < 500)
+            status = Status.CLIENT_ERROR;
+        else
+            status = Status.SERVER_ERROR;
+
+        InputStream stream = (status == Status.SUCCESS) ?
+                connection.getInputStream() : connection.getErrorStream();
+        if (stream == null)
+            return new RemoteResponse(status, code, null, null);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        try {
+            int first = skipWhitespace(reader);
+            if (first == -1)
+                return new RemoteResponse(status, code, "", null);
+            if (first == '[' || first == '{')
+                return new RemoteResponse(status, code, null, readAll(reader, (char) first));
+            return new RemoteResponse(status, code, readMessage(reader, (char) first), null);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static int skipWhitespace(BufferedReader reader) throws IOException {
+        int c;
+        do {
+            c = reader.read();
+        } while (c != -1 && Character.isWhitespace(c));
+        return c;
+    }
+
+    private static String readMessage(BufferedReader reader, char first) throws IOException {
+        StringBuilder message = new StringBuilder();
+        message.append(first);
+        int c;
+        while (message.length() < MAX_MESSAGE_LENGTH &&
+                (c = reader.read()) != -1 && c != '\n' && c != '\r') {
+            message.append((char) c);
+        }
+        return message.toString();
+    }
+
+    private static String readAll(BufferedReader reader, char first) throws IOException {
+        StringBuilder result = new StringBuilder(BUFFER_SIZE);
+        result.append(first);
+        char[] buffer = new char[BUFFER_SIZE];
+        int count;
+        while ((count = reader.read(buffer)) != -1)
+            result.append(buffer, 0, count);
+        return result.toString();
+    }
+
+    Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return HTTP status code or -1 if the server was not reached
+     */
+    int getCode() {
+        return code;
+    }
+
+    /**
+     * @return true if the server was reached and answered with HTTP 2xx
+     */
+    boolean isSuccessful() {
+        return status == Status.SUCCESS;
+    }
+
+    /**
+     * @return true if repeating the request may lead to a different outcome
+     */
+    boolean isTransientFailure() {
+        return status == Status.SERVER_ERROR || status == Status.TIMEOUT ||
+                status == Status.NETWORK_ERROR;
+    }
+
+    /**
+     * @return first line of a status message response, null if the response is a JSON document
+     * or the request failed
+     */
+    @Nullable
+    String getMessage() {
+        return message;
+    }
+
+    /**
+     * @param expected status message to compare with
+     * @return true if the request succeeded and the server answered with the expected message
+     */
+    boolean hasMessage(@NonNull String expected) {
+        return isSuccessful() && expected.equals(message);
+    }
+
+    /**
+     * @return the JSON document of a successful response, null if the response is a status
+     * message or the request failed
+     */
+    @Nullable
+    String getBody() {
+        return isSuccessful() ? body : null;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel.db.external;
+
+import java.util.Random;
+
+/**
+ * Retry settings for idempotent requests to the external database. Delays grow exponentially
+ * with every attempt and are randomised ("full jitter") so that many clients failing at the same
+ * time do not retry in lockstep.
+ */
+class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random;
+
+    /**
+     * @param maxAttempts     total number of attempts, including the first one
+     * @param baseDelayMillis upper bound of the delay before the first retry
+     * @param maxDelayMillis  upper bound of any delay
+     * @param random          source of the jitter
+     */
+    RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, Random random) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param retry number of the retry, starting at 1
+     * @return time in milliseconds to wait before the retry
+     */
+    long delayBeforeRetry(int retry) {
+        long ceiling = baseDelayMillis << Math.min(retry - 1, 30);
+        if (ceiling <= 0 || ceiling > maxDelayMillis)
+            ceiling = maxDelayMillis;
+        synchronized (random) {
+            return (long) (random.nextDouble() * (ceiling + 1));
+        }
+    }
+}
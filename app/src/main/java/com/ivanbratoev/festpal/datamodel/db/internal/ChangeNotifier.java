@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.db.internal;
+
+import com.ivanbratoev.festpal.datamodel.metrics.Metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Delivers the changes of committed transactions to the subscriptions on an executor, so
+ * writers never wait for observers. Changes committed while a delivery is still queued are
+ * merged into it, a slow observer gets fewer and larger notifications instead of a backlog
+ */
+final class ChangeNotifier {
+
+    private final Executor executor;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final Runnable delivery = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+    private DatabaseChange.Builder pending;
+
+    ChangeNotifier(Executor executor) {
+        this.executor = executor;
+    }
+
+    Subscription add(ChangeObserver observer, int kind, long festivalId) {
+        Subscription subscription = new Subscription(this, observer, kind, festivalId);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    void remove(Subscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    /**
+     * @return true if there are subscriptions, writers skip collecting changes otherwise
+     */
+    boolean hasSubscriptions() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * queue the changes of a committed transaction
+     *
+     * @param change changes of the transaction, not to be used by the caller afterwards
+     */
+    void notify(DatabaseChange.Builder change) {
+        if (change.isEmpty() || subscriptions.isEmpty())
+            return;
+        boolean schedule;
+        synchronized (this) {
+            schedule = (pending == null);
+            if (schedule)
+                pending = change;
+            else
+                pending.add(change.build());
+        }
+        if (!schedule) {
+            Metrics.increment("InternalDatabaseHandler.notifications.coalesced");
+            return;
+        }
+        try {
+            executor.execute(delivery);
+        } catch (RejectedExecutionException ignore) {
+            // the executor was shut down. Later changes are not to be merged into a delivery
+            // which never runs
+            synchronized (this) {
+                pending = null;
+            }
+            Metrics.increment("InternalDatabaseHandler.notifications.rejected");
+        }
+    }
+
+    private void deliver() {
+        DatabaseChange change;
+        synchronized (this) {
+            change = pending.build();
+            pending = null;
+        }
+        for (Subscription subscription : subscriptions)
+            if (subscription.matches(change))
+                subscription.getObserver().onChange(change);
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.db.internal;
+
+/**
+ * Receives the changes of the internal database a {@link Subscription} was made for
+ */
+public interface ChangeObserver {
+
+    /**
+     * called on the notification thread after the changes were committed
+     *
+     * @param change all changes committed since the previous call, also the ones of records
+     *               the subscription is not interested in
+     */
+    void onChange(DatabaseChange change);
+}
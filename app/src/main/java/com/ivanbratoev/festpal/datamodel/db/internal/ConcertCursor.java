@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.db.internal;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import com.ivanbratoev.festpal.datamodel.Concert;
+import com.ivanbratoev.festpal.datamodel.Festival;
+
+import java.io.Closeable;
+import java.util.Date;
+
+/**
+ * Concerts of a festival read one row at a time, instead of loading the whole lineup in an
+ * array. The column indices are looked up once
+ */
+public final class ConcertCursor implements Closeable {
+
+    private final Cursor cursor;
+    private final Festival festival;
+    private final int idColumn;
+    private final int externalIdColumn;
+    private final int artistColumn;
+    private final int stageColumn;
+    private final int dayColumn;
+    private final int startColumn;
+    private final int endColumn;
+    private final int notifyColumn;
+    private final int contentHashColumn;
+
+    /**
+     * @param cursor   rows of the concert table
+     * @param festival festival the concerts are part of
+     */
+    public ConcertCursor(@NonNull Cursor cursor, @NonNull Festival festival) {
+        this.cursor = cursor;
+        this.festival = festival;
+        idColumn = cursor.getColumnIndexOrThrow(InternalDBContract.ConcertEntry._ID);
+        externalIdColumn = cursor.getColumnIndexOrThrow(
+                InternalDBContract.ConcertEntry.COLUMN_NAME_EXTERNAL_ID);
+        artistColumn = cursor.getColumnIndexOrThrow(
+                InternalDBContract.ConcertEntry.COLUMN_NAME_ARTIST);
+        stageColumn = cursor.getColumnIndexOrThrow(
+                InternalDBContract.ConcertEntry.COLUMN_NAME_STAGE);
+        dayColumn = cursor.getColumnIndexOrThrow(InternalDBContract.ConcertEntry.COLUMN_NAME_DAY);
+        startColumn = cursor.getColumnIndexOrThrow(
+                InternalDBContract.ConcertEntry.COLUMN_NAME_START);
+        endColumn = cursor.getColumnIndexOrThrow(InternalDBContract.ConcertEntry.COLUMN_NAME_END);
+        notifyColumn = cursor.getColumnIndexOrThrow(
+                InternalDBContract.ConcertEntry.COLUMN_NAME_NOTIFY);
+        contentHashColumn = cursor.getColumnIndex(
+                InternalDBContract.ConcertEntry.COLUMN_NAME_CONTENT_HASH);
+    }
+
+    /**
+     * @return false if there are no more concerts
+     */
+    public boolean moveToNext() {
+        return cursor.moveToNext();
+    }
+
+    public Festival getFestival() {
+        return festival;
+    }
+
+    /**
+     * @return internal id of the current concert
+     */
+    public long getId() {
+        return cursor.getLong(idColumn);
+    }
+
+    /**
+     * @return start time of the current concert, read without creating the concert
+     */
+    public long getStart() {
+        return cursor.getLong(startColumn);
+    }
+
+    /**
+     * @return the current concert
+     */
+    public Concert getConcert() {
+        Concert concert = new Concert(
+                cursor.getLong(idColumn),
+                cursor.getLong(externalIdColumn),
+                festival,
+                cursor.getString(artistColumn),
+                cursor.getInt(stageColumn),
+                cursor.getInt(dayColumn),
+                new Date(cursor.getLong(startColumn)),
+                new Date(cursor.getLong(endColumn)),
+                cursor.getInt(notifyColumn) == 1);
+        if (contentHashColumn != -1 && !cursor.isNull(contentHashColumn))
+            concert.setContentHash(cursor.getLong(contentHashColumn));
+        return concert;
+    }
+
+    @Override
+    public void close() {
+        cursor.close();
+    }
+}
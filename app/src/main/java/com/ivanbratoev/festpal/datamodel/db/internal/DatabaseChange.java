@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.db.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable description of the records changed by one or more committed transactions of the
+ * internal database, given to {@link ChangeObserver}s
+ */
+public final class DatabaseChange {
+
+    private final boolean festivalTableChanged;
+    private final Set<Long> festivals;
+    private final Map<Long, Set<Long>> concerts;
+
+    private DatabaseChange(boolean festivalTableChanged, Set<Long> festivals,
+                           Map<Long, Set<Long>> concerts) {
+        this.festivalTableChanged = festivalTableChanged;
+        this.festivals = Collections.unmodifiableSet(festivals);
+        this.concerts = Collections.unmodifiableMap(concerts);
+    }
+
+    /**
+     * @return true if festivals were added or removed
+     */
+    public boolean isFestivalTableChanged() {
+        return festivalTableChanged;
+    }
+
+    /**
+     * @return internal ids of the festivals added, changed or removed
+     */
+    public Set<Long> getFestivals() {
+        return festivals;
+    }
+
+    /**
+     * @return internal ids of the festivals whose concerts were added, changed or removed
+     */
+    public Set<Long> getConcertFestivals() {
+        return concerts.keySet();
+    }
+
+    /**
+     * @param festivalId internal id of the festival
+     * @return internal ids of the concerts of the festival added, changed or removed, empty if
+     * there are none
+     */
+    public Set<Long> getConcerts(long festivalId) {
+        Set<Long> ids = concerts.get(festivalId);
+        return (ids == null) ? Collections.<Long>emptySet() : ids;
+    }
+
+    /**
+     * collects the changes of a transaction
+     */
+    static final class Builder {
+        private boolean festivalTableChanged;
+        private final Set<Long> festivals = new HashSet<>();
+        private final Map<Long, Set<Long>> concerts = new HashMap<>();
+
+        Builder festivalAdded(long festivalId) {
+            festivalTableChanged = true;
+            festivals.add(festivalId);
+            return this;
+        }
+
+        Builder festivalRemoved(long festivalId) {
+            return festivalAdded(festivalId);
+        }
+
+        Builder festivalChanged(long festivalId) {
+            festivals.add(festivalId);
+            return this;
+        }
+
+        /**
+         * @param festivalId internal id of the festival of the concert, a concert without one
+         *                   is in no festival's list and is left out
+         */
+        Builder concertChanged(Long festivalId, long concertId) {
+            if (festivalId == null)
+                return this;
+            Set<Long> ids = concerts.get(festivalId);
+            if (ids == null) {
+                ids = new HashSet<>();
+                concerts.put(festivalId, ids);
+            }
+            ids.add(concertId);
+            return this;
+        }
+
+        Builder add(DatabaseChange change) {
+            festivalTableChanged |= change.festivalTableChanged;
+            festivals.addAll(change.festivals);
+            for (Map.Entry<Long, Set<Long>> entry : change.concerts.entrySet())
+                for (Long concertId : entry.getValue())
+                    concertChanged(entry.getKey(), concertId);
+            return this;
+        }
+
+        boolean isEmpty() {
+            return !festivalTableChanged && festivals.isEmpty() && concerts.isEmpty();
+        }
+
+        DatabaseChange build() {
+            Map<Long, Set<Long>> frozen = new HashMap<>(concerts.size() * 2);
+            for (Map.Entry<Long, Set<Long>> entry : concerts.entrySet())
+                frozen.put(entry.getKey(),
+                        Collections.unmodifiableSet(new HashSet<>(entry.getValue())));
+            return new DatabaseChange(festivalTableChanged, new HashSet<>(festivals), frozen);
+        }
+    }
+}
@@ -34,7 +34,9 @@ public class InternalDBContract {
             + ConcertEntry.COLUMN_NAME_START + " INTEGER, "
             + ConcertEntry.COLUMN_NAME_END + " INTEGER, "
             + ConcertEntry.COLUMN_NAME_NOTIFY + " INTEGER, "
+            + ConcertEntry.COLUMN_NAME_CONTENT_HASH + " INTEGER, "
             + "FOREIGN KEY(" + ConcertEntry.COLUMN_NAME_FESTIVAL + ") REFERENCES " + FestivalEntry.TABLE_NAME + "(" + FestivalEntry._ID + ") "
+            + "ON DELETE CASCADE"
             + ")";
     public static final String CREATE_TABLE_FESTIVAL_QUERY =
             "CREATE TABLE " + FestivalEntry.TABLE_NAME + " ("
@@ -49,12 +51,263 @@ public class InternalDBContract {
             + FestivalEntry.COLUMN_NAME_PRICES + " TEXT, "
                     + FestivalEntry.COLUMN_NAME_OWNER + " TEXT, "
             + FestivalEntry.COLUMN_NAME_OFFICIAL + " INTEGER, "
-                    + FestivalEntry.COLUMN_NAME_VOTES + " VOTES "
+                    + FestivalEntry.COLUMN_NAME_VOTES + " VOTES, "
+            + FestivalEntry.COLUMN_NAME_CONTENT_HASH + " INTEGER, "
+            + FestivalEntry.COLUMN_NAME_DIGEST + " TEXT, "
+            + FestivalEntry.COLUMN_NAME_LAST_ACCESS + " INTEGER, "
+            + FestivalEntry.COLUMN_NAME_EVICTED + " INTEGER, "
+            + FestivalEntry.COLUMN_NAME_FIRST_START + " INTEGER, "
+            + FestivalEntry.COLUMN_NAME_LAST_END + " INTEGER "
             + ")";
 
+    /**
+     * number of concerts and the start of the first and the end of the last concert of every
+     * day and stage of a festival. The rows are kept up to date by triggers on the concert table
+     * and removed with their festival
+     */
+    public static final String CREATE_TABLE_CONCERT_STATS_QUERY =
+            "CREATE TABLE " + ConcertStatsEntry.TABLE_NAME + " ("
+            + ConcertStatsEntry.COLUMN_NAME_FESTIVAL + " INTEGER REFERENCES "
+            + FestivalEntry.TABLE_NAME + "(" + FestivalEntry._ID + ") ON DELETE CASCADE, "
+            + ConcertStatsEntry.COLUMN_NAME_DAY + " INTEGER, "
+            + ConcertStatsEntry.COLUMN_NAME_STAGE + " INTEGER, "
+            + ConcertStatsEntry.COLUMN_NAME_CONCERTS + " INTEGER, "
+            + ConcertStatsEntry.COLUMN_NAME_FIRST_START + " INTEGER, "
+            + ConcertStatsEntry.COLUMN_NAME_LAST_END + " INTEGER, "
+            + "PRIMARY KEY(" + ConcertStatsEntry.COLUMN_NAME_FESTIVAL + ", "
+            + ConcertStatsEntry.COLUMN_NAME_DAY + ", " + ConcertStatsEntry.COLUMN_NAME_STAGE + ")"
+            + ")";
+
+    public static final String CREATE_TRIGGER_CONCERT_STATS_INSERT_QUERY =
+            "CREATE TRIGGER " + ConcertStatsEntry.TRIGGER_INSERT + " AFTER INSERT ON "
+            + ConcertEntry.TABLE_NAME + " BEGIN "
+            + addToStats("NEW")
+            + "END";
+
+    public static final String CREATE_TRIGGER_CONCERT_STATS_DELETE_QUERY =
+            "CREATE TRIGGER " + ConcertStatsEntry.TRIGGER_DELETE + " AFTER DELETE ON "
+            + ConcertEntry.TABLE_NAME + " BEGIN "
+            + removeFromStats("OLD")
+            + "END";
+
+    /**
+     * only fires when a column the statistics are computed from changes, not when a concert is
+     * renamed or marked to notify of
+     */
+    public static final String CREATE_TRIGGER_CONCERT_STATS_UPDATE_QUERY =
+            "CREATE TRIGGER " + ConcertStatsEntry.TRIGGER_UPDATE + " AFTER UPDATE OF "
+            + ConcertEntry.COLUMN_NAME_FESTIVAL + ", "
+            + ConcertEntry.COLUMN_NAME_DAY + ", "
+            + ConcertEntry.COLUMN_NAME_STAGE + ", "
+            + ConcertEntry.COLUMN_NAME_START + ", "
+            + quote(ConcertEntry.COLUMN_NAME_END) + " ON " + ConcertEntry.TABLE_NAME + " BEGIN "
+            + removeFromStats("OLD")
+            + addToStats("NEW")
+            + "END";
+
+    /**
+     * computes the statistics of all concerts from scratch, for databases created before the
+     * triggers
+     */
+    public static final String POPULATE_CONCERT_STATS_QUERY =
+            "INSERT INTO " + ConcertStatsEntry.TABLE_NAME + " SELECT "
+            + ConcertEntry.COLUMN_NAME_FESTIVAL + ", "
+            + ConcertEntry.COLUMN_NAME_DAY + ", "
+            + ConcertEntry.COLUMN_NAME_STAGE + ", "
+            + "COUNT(*), "
+            + "MIN(" + ConcertEntry.COLUMN_NAME_START + "), "
+            + "MAX(" + quote(ConcertEntry.COLUMN_NAME_END) + ")"
+            + " FROM " + ConcertEntry.TABLE_NAME
+            + " WHERE " + ConcertEntry.COLUMN_NAME_FESTIVAL + " IS NOT NULL"
+            + " GROUP BY " + ConcertEntry.COLUMN_NAME_FESTIVAL + ", "
+            + ConcertEntry.COLUMN_NAME_DAY + ", "
+            + ConcertEntry.COLUMN_NAME_STAGE;
+
+    /**
+     * concerts of a festival to notify of, in order of their start
+     */
+    public static final String CREATE_INDEX_CONCERT_NOTIFY_QUERY =
+            "CREATE INDEX " + ConcertEntry.INDEX_NOTIFY + " ON " + ConcertEntry.TABLE_NAME + " ("
+            + ConcertEntry.COLUMN_NAME_FESTIVAL + ", "
+            + ConcertEntry.COLUMN_NAME_NOTIFY + ", "
+            + ConcertEntry.COLUMN_NAME_START
+            + ")";
+
+    /**
+     * partitions the concert table by festival: every per-festival query and the removal of a
+     * festival's concerts read only that festival's range. Sync looks concerts up by external id
+     */
+    public static final String CREATE_INDEX_CONCERT_FESTIVAL_QUERY =
+            "CREATE INDEX " + ConcertEntry.INDEX_FESTIVAL + " ON " + ConcertEntry.TABLE_NAME + " ("
+            + ConcertEntry.COLUMN_NAME_FESTIVAL + ", "
+            + ConcertEntry.COLUMN_NAME_EXTERNAL_ID
+            + ")";
+
+    /**
+     * the last concert of a festival is found without reading its other concerts
+     */
+    public static final String CREATE_INDEX_CONCERT_END_QUERY =
+            "CREATE INDEX " + ConcertEntry.INDEX_END + " ON " + ConcertEntry.TABLE_NAME + " ("
+            + ConcertEntry.COLUMN_NAME_FESTIVAL + ", "
+            + ConcertEntry.COLUMN_NAME_END
+            + ")";
+
+    /**
+     * ids of the festivals with concerts, past festivals first by their end, then the others by
+     * their last access. Both parameters are the current time
+     */
+    public static final String EVICTION_ORDER_QUERY =
+            "SELECT " + FestivalEntry._ID + " FROM (SELECT "
+            + FestivalEntry._ID + ", "
+            + FestivalEntry.COLUMN_NAME_LAST_ACCESS + ", "
+            + "(SELECT MAX(" + ConcertEntry.COLUMN_NAME_END + ") FROM " + ConcertEntry.TABLE_NAME
+            + " WHERE " + ConcertEntry.COLUMN_NAME_FESTIVAL + "="
+            + FestivalEntry.TABLE_NAME + "." + FestivalEntry._ID + ") AS ends"
+            + " FROM " + FestivalEntry.TABLE_NAME + ")"
+            + " WHERE ends IS NOT NULL"
+            + " ORDER BY ends >= CAST(? AS INTEGER),"
+            + " CASE WHEN ends < CAST(? AS INTEGER) THEN ends"
+            + " ELSE IFNULL(" + FestivalEntry.COLUMN_NAME_LAST_ACCESS + ", 0) END, "
+            + FestivalEntry._ID;
+
+    /**
+     * the list fields of all festivals, with the start of their first and the end of their last
+     * concert. Both are read from the indices on the concert table
+     */
+    public static final String FESTIVAL_SUMMARIES_QUERY =
+            "SELECT " + FestivalEntry._ID + ", "
+            + FestivalEntry.COLUMN_NAME_EXTERNAL_ID + ", "
+            + FestivalEntry.COLUMN_NAME_NAME + ", "
+            + FestivalEntry.COLUMN_NAME_CITY + ", "
+            + FestivalEntry.COLUMN_NAME_VOTES + ", "
+            + "COALESCE((SELECT MIN(" + ConcertStatsEntry.TABLE_NAME + "."
+            + ConcertStatsEntry.COLUMN_NAME_FIRST_START + ")" + statsOfFestivalRow() + "), "
+            + FestivalEntry.TABLE_NAME + "." + FestivalEntry.COLUMN_NAME_FIRST_START + "), "
+            + "COALESCE((SELECT MAX(" + ConcertStatsEntry.TABLE_NAME + "."
+            + ConcertStatsEntry.COLUMN_NAME_LAST_END + ")" + statsOfFestivalRow() + "), "
+            + FestivalEntry.TABLE_NAME + "." + FestivalEntry.COLUMN_NAME_LAST_END + ")"
+            + " FROM " + FestivalEntry.TABLE_NAME;
+
+    /**
+     * stores the dates of the concerts of the festival whose id is bound to the parameter on its
+     * row, before the concerts are evicted. Dates stored earlier are kept when it has no concerts
+     */
+    public static final String STORE_FESTIVAL_DATES_QUERY =
+            "UPDATE " + FestivalEntry.TABLE_NAME + " SET "
+            + FestivalEntry.COLUMN_NAME_FIRST_START + "=COALESCE((SELECT MIN("
+            + ConcertStatsEntry.TABLE_NAME + "." + ConcertStatsEntry.COLUMN_NAME_FIRST_START
+            + ")" + statsOfFestivalRow() + "), " + FestivalEntry.COLUMN_NAME_FIRST_START + "), "
+            + FestivalEntry.COLUMN_NAME_LAST_END + "=COALESCE((SELECT MAX("
+            + ConcertStatsEntry.TABLE_NAME + "." + ConcertStatsEntry.COLUMN_NAME_LAST_END
+            + ")" + statsOfFestivalRow() + "), " + FestivalEntry.COLUMN_NAME_LAST_END + ")"
+            + " WHERE " + FestivalEntry._ID + "=?";
+
+    /**
+     * all columns of the concert table, in the order they are created in
+     */
+    public static final String CONCERT_COLUMNS =
+            ConcertEntry._ID + ", "
+            + ConcertEntry.COLUMN_NAME_EXTERNAL_ID + ", "
+            + ConcertEntry.COLUMN_NAME_FESTIVAL + ", "
+            + ConcertEntry.COLUMN_NAME_ARTIST + ", "
+            + ConcertEntry.COLUMN_NAME_STAGE + ", "
+            + ConcertEntry.COLUMN_NAME_DAY + ", "
+            + ConcertEntry.COLUMN_NAME_START + ", "
+            + ConcertEntry.COLUMN_NAME_END + ", "
+            + ConcertEntry.COLUMN_NAME_NOTIFY + ", "
+            + ConcertEntry.COLUMN_NAME_CONTENT_HASH;
+
+    /**
+     * removes the concerts whose festival is not in the festival table
+     */
+    public static final String DELETE_ORPHANED_CONCERTS_QUERY =
+            "DELETE FROM " + ConcertEntry.TABLE_NAME + " WHERE "
+            + ConcertEntry.COLUMN_NAME_FESTIVAL + " NOT IN (SELECT "
+            + FestivalEntry._ID + " FROM " + FestivalEntry.TABLE_NAME + ")";
+
     public InternalDBContract() {
     }
 
+    /**
+     * "end" is a keyword closing the body of a trigger, it is quoted in the trigger statements
+     */
+    private static String quote(String column) {
+        return "\"" + column + "\"";
+    }
+
+    /**
+     * @return condition matching the statistics row of the day and stage of a concert row
+     */
+    /**
+     * FROM and WHERE clauses of a subquery over the statistics of the festival of the outer row
+     */
+    private static String statsOfFestivalRow() {
+        return " FROM " + ConcertStatsEntry.TABLE_NAME + " WHERE "
+                + ConcertStatsEntry.TABLE_NAME + "." + ConcertStatsEntry.COLUMN_NAME_FESTIVAL
+                + "=" + FestivalEntry.TABLE_NAME + "." + FestivalEntry._ID;
+    }
+
+    private static String statsRowOf(String row) {
+        return ConcertStatsEntry.COLUMN_NAME_FESTIVAL + "=" + row + "."
+                + ConcertEntry.COLUMN_NAME_FESTIVAL + " AND "
+                + ConcertStatsEntry.COLUMN_NAME_DAY + "=" + row + "."
+                + ConcertEntry.COLUMN_NAME_DAY + " AND "
+                + ConcertStatsEntry.COLUMN_NAME_STAGE + "=" + row + "."
+                + ConcertEntry.COLUMN_NAME_STAGE;
+    }
+
+    /**
+     * trigger statements counting a concert row in. A concert without a festival is not counted
+     */
+    private static String addToStats(String row) {
+        String end = row + "." + quote(ConcertEntry.COLUMN_NAME_END);
+        String start = row + "." + ConcertEntry.COLUMN_NAME_START;
+        return "INSERT OR IGNORE INTO " + ConcertStatsEntry.TABLE_NAME + " SELECT "
+                + row + "." + ConcertEntry.COLUMN_NAME_FESTIVAL + ", "
+                + row + "." + ConcertEntry.COLUMN_NAME_DAY + ", "
+                + row + "." + ConcertEntry.COLUMN_NAME_STAGE + ", 0, " + start + ", " + end
+                + " WHERE " + row + "." + ConcertEntry.COLUMN_NAME_FESTIVAL + " IS NOT NULL; "
+                + "UPDATE " + ConcertStatsEntry.TABLE_NAME + " SET "
+                + ConcertStatsEntry.COLUMN_NAME_CONCERTS + "="
+                + ConcertStatsEntry.COLUMN_NAME_CONCERTS + "+1, "
+                + ConcertStatsEntry.COLUMN_NAME_FIRST_START + "=MIN("
+                + ConcertStatsEntry.COLUMN_NAME_FIRST_START + ", " + start + "), "
+                + ConcertStatsEntry.COLUMN_NAME_LAST_END + "=MAX("
+                + ConcertStatsEntry.COLUMN_NAME_LAST_END + ", " + end + ")"
+                + " WHERE " + statsRowOf(row) + "; ";
+    }
+
+    /**
+     * trigger statements counting a concert row out. The first start and last end are only
+     * computed again from the concerts of the day and stage when the row held one of them
+     */
+    private static String removeFromStats(String row) {
+        String sameCell = " FROM " + ConcertEntry.TABLE_NAME + " WHERE "
+                + ConcertEntry.COLUMN_NAME_FESTIVAL + "=" + row + "."
+                + ConcertEntry.COLUMN_NAME_FESTIVAL + " AND "
+                + ConcertEntry.COLUMN_NAME_DAY + "=" + row + "."
+                + ConcertEntry.COLUMN_NAME_DAY + " AND "
+                + ConcertEntry.COLUMN_NAME_STAGE + "=" + row + "."
+                + ConcertEntry.COLUMN_NAME_STAGE + ")";
+        return "UPDATE " + ConcertStatsEntry.TABLE_NAME + " SET "
+                + ConcertStatsEntry.COLUMN_NAME_CONCERTS + "="
+                + ConcertStatsEntry.COLUMN_NAME_CONCERTS + "-1"
+                + " WHERE " + statsRowOf(row) + "; "
+                + "DELETE FROM " + ConcertStatsEntry.TABLE_NAME
+                + " WHERE " + statsRowOf(row) + " AND "
+                + ConcertStatsEntry.COLUMN_NAME_CONCERTS + "<=0; "
+                + "UPDATE " + ConcertStatsEntry.TABLE_NAME + " SET "
+                + ConcertStatsEntry.COLUMN_NAME_FIRST_START + "=(SELECT MIN("
+                + ConcertEntry.COLUMN_NAME_START + ")" + sameCell + ", "
+                + ConcertStatsEntry.COLUMN_NAME_LAST_END + "=(SELECT MAX("
+                + quote(ConcertEntry.COLUMN_NAME_END) + ")" + sameCell
+                + " WHERE " + statsRowOf(row) + " AND ("
+                + ConcertStatsEntry.COLUMN_NAME_FIRST_START + "=" + row + "."
+                + ConcertEntry.COLUMN_NAME_START + " OR "
+                + ConcertStatsEntry.COLUMN_NAME_LAST_END + "=" + row + "."
+                + quote(ConcertEntry.COLUMN_NAME_END) + "); ";
+    }
+
     /**
      * Concert table definition
      */
@@ -68,6 +321,31 @@ public class InternalDBContract {
         public static final String COLUMN_NAME_START = "start";
         public static final String COLUMN_NAME_END = "end";
         public static final String COLUMN_NAME_NOTIFY = "notify";
+        /**
+         * {@link com.ivanbratoev.festpal.datamodel.Concert#getContentHash()} of the row, null
+         * when the row was edited without knowing it
+         */
+        public static final String COLUMN_NAME_CONTENT_HASH = "contentHash";
+        public static final String INDEX_NOTIFY = "concert_notify";
+        public static final String INDEX_FESTIVAL = "concert_festival";
+        public static final String INDEX_END = "concert_end";
+    }
+
+    /**
+     * Concert statistics table definition, one row for every day and stage of a festival with
+     * concerts
+     */
+    public static abstract class ConcertStatsEntry {
+        public static final String TABLE_NAME = "concert_stats";
+        public static final String COLUMN_NAME_FESTIVAL = "festival";
+        public static final String COLUMN_NAME_DAY = "day";
+        public static final String COLUMN_NAME_STAGE = "stage";
+        public static final String COLUMN_NAME_CONCERTS = "concerts";
+        public static final String COLUMN_NAME_FIRST_START = "firstStart";
+        public static final String COLUMN_NAME_LAST_END = "lastEnd";
+        public static final String TRIGGER_INSERT = "concert_stats_insert";
+        public static final String TRIGGER_DELETE = "concert_stats_delete";
+        public static final String TRIGGER_UPDATE = "concert_stats_update";
     }
 
     /**
@@ -86,5 +364,32 @@ public class InternalDBContract {
         public static final String COLUMN_NAME_OWNER = "owner";
         public static final String COLUMN_NAME_OFFICIAL = "official";
         public static final String COLUMN_NAME_VOTES = "votes";
+        /**
+         * {@link com.ivanbratoev.festpal.datamodel.Festival#getContentHash()} of the row, null
+         * when the row was edited without knowing it
+         */
+        public static final String COLUMN_NAME_CONTENT_HASH = "contentHash";
+        /**
+         * digest of the festival and its lineup sent by the external database at the last
+         * synchronisation, null when the festival or its lineup was edited locally since
+         */
+        public static final String COLUMN_NAME_DIGEST = "digest";
+        /**
+         * when the festival was last viewed in milliseconds since the epoch, null if it was
+         * never viewed
+         */
+        public static final String COLUMN_NAME_LAST_ACCESS = "lastAccess";
+        /**
+         * 1 when the concerts of the festival were removed to keep the database within its
+         * budget, the synchronisation leaves them out until the festival is viewed again
+         */
+        public static final String COLUMN_NAME_EVICTED = "evicted";
+        /**
+         * start of the first and end of the last concert of the festival when its concerts
+         * were evicted, so its summary keeps its dates. The concert statistics are used while
+         * the festival has concerts
+         */
+        public static final String COLUMN_NAME_FIRST_START = "firstStart";
+        public static final String COLUMN_NAME_LAST_END = "lastEnd";
     }
 }
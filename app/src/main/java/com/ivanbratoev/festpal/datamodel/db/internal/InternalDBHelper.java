@@ -17,31 +17,214 @@
 package com.ivanbratoev.festpal.datamodel.db.internal;
 
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
- * DB helper class used to open the internal database
+ * DB helper class used to open the internal database. The database is opened in write-ahead
+ * logging mode, so UI reads are not blocked while a synchronisation is writing. On first run a
+ * prebuilt database shipped in the assets is used instead of empty tables, if there is one.
+ * Foreign keys are enforced, so removing a festival removes its concerts, and new databases use
+ * incremental auto vacuum, so free pages can be given back with
+ * {@link InternalDatabaseHandler#performMaintenance(double)}. Triggers keep the per day and stage
+ * statistics of the concerts up to date with every write
  */
 class InternalDBHelper extends SQLiteOpenHelper {
 
-    public static final int DATABASE_VERSION = 1;
+    public static final int DATABASE_VERSION = 10;
     public static final String DATABASE_NAME = "festpal.db";
 
+    /**
+     * page cache of the writing connection in pages, about 4MB with the default page size
+     */
+    static final int CACHE_SIZE = 1000;
+    /**
+     * prebuilt database with the schema of {@link InternalDBContract} and
+     * {@link #DATABASE_VERSION}, generated into the release assets by the
+     * <code>generatePreloadedDatabase</code> task of releases built with
+     * <code>-PpreloadedDatabase</code>
+     */
+    static final String PRELOADED_DATABASE_ASSET = "databases/" + DATABASE_NAME;
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final boolean writeAheadLogging;
+
     public InternalDBHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, true);
+        installPreloadedDatabase(context, PRELOADED_DATABASE_ASSET, DATABASE_NAME);
+    }
 
+    /**
+     * @param context           application context
+     * @param name              database file name
+     * @param writeAheadLogging false to keep the default rollback journal, used for comparison
+     *                          in benchmarks
+     */
+    InternalDBHelper(Context context, String name, boolean writeAheadLogging) {
+        super(context, name, null, DATABASE_VERSION);
+        this.writeAheadLogging = writeAheadLogging;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            setWriteAheadLoggingEnabled(writeAheadLogging);
+    }
+
+    /**
+     * copy a prebuilt database from the assets, unless the database already exists. The copy is
+     * written to a temporary file first, so an interrupted copy is never opened
+     *
+     * @param context application context
+     * @param asset   path of the prebuilt database in the assets
+     * @param name    database file name
+     * @return true if the database was copied
+     */
+    static boolean installPreloadedDatabase(Context context, String asset, String name) {
+        File database = context.getDatabasePath(name);
+        if (database.exists())
+            return false;
+        InputStream in;
+        try {
+            in = context.getAssets().open(asset);
+        } catch (IOException ignore) {
+            // no prebuilt database shipped, the tables are created empty
+            return false;
+        }
+        File temporary = new File(database.getPath() + ".tmp");
+        try {
+            try {
+                database.getParentFile().mkdirs();
+                OutputStream out = new FileOutputStream(temporary);
+                try {
+                    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                    int count;
+                    while ((count = in.read(buffer)) != -1)
+                        out.write(buffer, 0, count);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            return temporary.renameTo(database);
+        } catch (IOException ignore) {
+            temporary.delete();
+            return false;
+        }
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(InternalDBContract.CREATE_TABLE_CONCERT_QUERY);
         db.execSQL(InternalDBContract.CREATE_TABLE_FESTIVAL_QUERY);
+        db.execSQL(InternalDBContract.CREATE_INDEX_CONCERT_NOTIFY_QUERY);
+        db.execSQL(InternalDBContract.CREATE_INDEX_CONCERT_FESTIVAL_QUERY);
+        db.execSQL(InternalDBContract.CREATE_INDEX_CONCERT_END_QUERY);
+        createConcertStats(db);
+    }
+
+    private static void createConcertStats(SQLiteDatabase db) {
+        db.execSQL(InternalDBContract.CREATE_TABLE_CONCERT_STATS_QUERY);
+        db.execSQL(InternalDBContract.CREATE_TRIGGER_CONCERT_STATS_INSERT_QUERY);
+        db.execSQL(InternalDBContract.CREATE_TRIGGER_CONCERT_STATS_DELETE_QUERY);
+        db.execSQL(InternalDBContract.CREATE_TRIGGER_CONCERT_STATS_UPDATE_QUERY);
     }
 
+    /**
+     * only called from Jelly Bean on, older versions enable the foreign keys in {@link #onOpen}
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        db.setForeignKeyConstraintsEnabled(true);
+        // only takes effect before the tables are created, existing databases are converted by
+        // the maintenance
+        db.execSQL("PRAGMA auto_vacuum=INCREMENTAL");
+    }
 
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (writeAheadLogging && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)
+            db.enableWriteAheadLogging();
+        if (!db.isReadOnly() && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)
+            db.execSQL("PRAGMA foreign_keys=ON");
+        if (!db.isReadOnly()) {
+            // in WAL mode NORMAL only syncs at checkpoints and still can not corrupt the db
+            db.execSQL("PRAGMA synchronous=" + (writeAheadLogging ? "NORMAL" : "FULL"));
+            db.execSQL("PRAGMA cache_size=" + CACHE_SIZE);
+        }
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + InternalDBContract.FestivalEntry.TABLE_NAME +
+                    " ADD COLUMN " + InternalDBContract.FestivalEntry.COLUMN_NAME_CONTENT_HASH +
+                    " INTEGER");
+            db.execSQL("ALTER TABLE " + InternalDBContract.ConcertEntry.TABLE_NAME +
+                    " ADD COLUMN " + InternalDBContract.ConcertEntry.COLUMN_NAME_CONTENT_HASH +
+                    " INTEGER");
+        }
+        if (oldVersion < 3) {
+            db.execSQL("ALTER TABLE " + InternalDBContract.FestivalEntry.TABLE_NAME +
+                    " ADD COLUMN " + InternalDBContract.FestivalEntry.COLUMN_NAME_DIGEST +
+                    " TEXT");
+        }
+        if (oldVersion < 4) {
+            db.execSQL(InternalDBContract.CREATE_INDEX_CONCERT_NOTIFY_QUERY);
+        }
+        if (oldVersion < 5) {
+            // removed festivals used to leave their concerts behind
+            db.execSQL(InternalDBContract.DELETE_ORPHANED_CONCERTS_QUERY);
+            db.execSQL(InternalDBContract.CREATE_INDEX_CONCERT_FESTIVAL_QUERY);
+        }
+        if (oldVersion < 6) {
+            db.execSQL("ALTER TABLE " + InternalDBContract.FestivalEntry.TABLE_NAME +
+                    " ADD COLUMN " + InternalDBContract.FestivalEntry.COLUMN_NAME_LAST_ACCESS +
+                    " INTEGER");
+            db.execSQL(InternalDBContract.CREATE_INDEX_CONCERT_END_QUERY);
+        }
+        if (oldVersion < 7) {
+            // SQLite can not add a constraint to a table, it is rebuilt with ON DELETE CASCADE.
+            // The indices are dropped with the old table
+            String concert = InternalDBContract.ConcertEntry.TABLE_NAME;
+            db.execSQL("ALTER TABLE " + concert + " RENAME TO " + concert + "_old");
+            db.execSQL(InternalDBContract.CREATE_TABLE_CONCERT_QUERY);
+            db.execSQL("INSERT INTO " + concert + " (" + InternalDBContract.CONCERT_COLUMNS +
+                    ") SELECT " + InternalDBContract.CONCERT_COLUMNS + " FROM " + concert +
+                    "_old WHERE " + InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL +
+                    " IS NULL OR " + InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL +
+                    " IN (SELECT " + InternalDBContract.FestivalEntry._ID + " FROM " +
+                    InternalDBContract.FestivalEntry.TABLE_NAME + ")");
+            db.execSQL("DROP TABLE " + concert + "_old");
+            db.execSQL(InternalDBContract.CREATE_INDEX_CONCERT_NOTIFY_QUERY);
+            db.execSQL(InternalDBContract.CREATE_INDEX_CONCERT_FESTIVAL_QUERY);
+            db.execSQL(InternalDBContract.CREATE_INDEX_CONCERT_END_QUERY);
+        }
+        if (oldVersion < 8) {
+            createConcertStats(db);
+            db.execSQL(InternalDBContract.POPULATE_CONCERT_STATS_QUERY);
+        }
+        if (oldVersion < 9) {
+            db.execSQL("ALTER TABLE " + InternalDBContract.FestivalEntry.TABLE_NAME +
+                    " ADD COLUMN " + InternalDBContract.FestivalEntry.COLUMN_NAME_EVICTED +
+                    " INTEGER");
+        }
+        if (oldVersion < 10) {
+            db.execSQL("ALTER TABLE " + InternalDBContract.FestivalEntry.TABLE_NAME +
+                    " ADD COLUMN " + InternalDBContract.FestivalEntry.COLUMN_NAME_FIRST_START +
+                    " INTEGER");
+            db.execSQL("ALTER TABLE " + InternalDBContract.FestivalEntry.TABLE_NAME +
+                    " ADD COLUMN " + InternalDBContract.FestivalEntry.COLUMN_NAME_LAST_END +
+                    " INTEGER");
+        }
     }
 }
@@ -20,27 +20,127 @@ package com.ivanbratoev.festpal.datamodel.db.internal;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.ivanbratoev.festpal.datamodel.Concert;
 import com.ivanbratoev.festpal.datamodel.Festival;
+import com.ivanbratoev.festpal.datamodel.FestivalStats;
+import com.ivanbratoev.festpal.datamodel.FestivalSummary;
+import com.ivanbratoev.festpal.datamodel.StringInterner;
+import com.ivanbratoev.festpal.datamodel.metrics.Metrics;
 
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Helper class for accessing the internal database
+ * Helper class for accessing the internal database. Changes of the records are delivered to
+ * subscribed {@link ChangeObserver}s after they are committed
  */
 public class InternalDatabaseHandler {
 
+    /**
+     * shared by all handlers, festivals read from the database repeat a few values
+     */
+    private static final StringInterner INTERNER = new StringInterner(512);
+    /**
+     * value of <code>PRAGMA auto_vacuum</code> in incremental mode
+     */
+    private static final long AUTO_VACUUM_INCREMENTAL = 2;
+
     private InternalDBHelper dbHelper;
+    private final ChangeNotifier notifier;
+    private final Executor notificationExecutor;
+    /**
+     * true when the notification executor was created by this handler and is shut down with it
+     */
+    private boolean ownsNotificationExecutor;
 
     /**
      *
      * @param context application contexts
      */
     public InternalDatabaseHandler(Context context) {
-        dbHelper = new InternalDBHelper(context);
+        this(new InternalDBHelper(context));
+    }
+
+    /**
+     * @param context  application context
+     * @param previous handler replaced by the new one. Its subscriptions are kept and notified
+     *                 of the changes made through either handler, closing it no longer stops
+     *                 the notification thread
+     */
+    public InternalDatabaseHandler(Context context, @NonNull InternalDatabaseHandler previous) {
+        this(new InternalDBHelper(context), previous.notifier, previous.notificationExecutor);
+        ownsNotificationExecutor = previous.ownsNotificationExecutor;
+        previous.ownsNotificationExecutor = false;
+    }
+
+    InternalDatabaseHandler(InternalDBHelper dbHelper) {
+        this(dbHelper, Executors.newSingleThreadExecutor());
+        ownsNotificationExecutor = true;
+    }
+
+    /**
+     * @param dbHelper              helper opening the database
+     * @param notificationExecutor executor the change notifications are delivered on
+     */
+    InternalDatabaseHandler(InternalDBHelper dbHelper, Executor notificationExecutor) {
+        this(dbHelper, new ChangeNotifier(notificationExecutor), notificationExecutor);
+    }
+
+    private InternalDatabaseHandler(InternalDBHelper dbHelper, ChangeNotifier notifier,
+                                    Executor notificationExecutor) {
+        this.dbHelper = dbHelper;
+        this.notifier = notifier;
+        this.notificationExecutor = notificationExecutor;
+    }
+
+    /**
+     * get notified when a festival is changed or removed
+     * @param festivalId internal id of the festival
+     * @param observer observer to notify
+     * @return subscription to cancel when the notifications are no longer needed
+     */
+    public Subscription subscribeToFestival(long festivalId, ChangeObserver observer) {
+        return notifier.add(observer, Subscription.FESTIVAL, festivalId);
+    }
+
+    /**
+     * get notified when concerts of a festival are added, changed or removed
+     * @param festivalId internal id of the festival
+     * @param observer observer to notify
+     * @return subscription to cancel when the notifications are no longer needed
+     */
+    public Subscription subscribeToConcerts(long festivalId, ChangeObserver observer) {
+        return notifier.add(observer, Subscription.CONCERTS, festivalId);
+    }
+
+    /**
+     * get notified when festivals are added or removed
+     * @param observer observer to notify
+     * @return subscription to cancel when the notifications are no longer needed
+     */
+    public Subscription subscribeToFestivals(ChangeObserver observer) {
+        return notifier.add(observer, Subscription.FESTIVAL_TABLE, -1);
+    }
+
+    /**
+     * close the connections to the internal database and stop the notification thread once the
+     * pending notifications are delivered
+     */
+    public void close() {
+        dbHelper.close();
+        if (ownsNotificationExecutor)
+            ((ExecutorService) notificationExecutor).shutdown();
     }
 
     /**
@@ -48,6 +148,7 @@ public class InternalDatabaseHandler {
      * @return true if festivals are recorded in the database, false otherwise
      */
     public boolean hasFestivals(){
+        long timer = Metrics.start();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
 
         Cursor cursor = db.query(InternalDBContract.FestivalEntry.TABLE_NAME,
@@ -58,27 +159,90 @@ public class InternalDatabaseHandler {
 
         cursor.close();
 
+        Metrics.stop("InternalDatabaseHandler.hasFestivals", timer);
         return result;
     }
 
     /**
-     *
+     * reads a single row of the concert statistics, the lineup is not read
      * @param festival festival to check for
      * @return true if there are concerts recorded for the input festival, false otherwise
      */
     public boolean festivalHasConcerts(Festival festival) {
+        long timer = Metrics.start();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
 
-        Cursor cursor = db.query(InternalDBContract.FestivalEntry.TABLE_NAME,
-                new String[]{InternalDBContract.FestivalEntry._ID},
-                InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL + "=?",
+        Cursor cursor = db.query(InternalDBContract.ConcertStatsEntry.TABLE_NAME,
+                new String[]{InternalDBContract.ConcertStatsEntry.COLUMN_NAME_CONCERTS},
+                InternalDBContract.ConcertStatsEntry.COLUMN_NAME_FESTIVAL + "=?",
                 new String[]{String.valueOf(festival.getId())},
-                null, null, null);
+                null, null, null, "1");
 
         boolean result = (cursor.getCount() != 0);
 
         cursor.close();
 
+        Metrics.stop("InternalDatabaseHandler.festivalHasConcerts", timer);
+        return result;
+    }
+
+    /**
+     * read the statistics of the lineup of a festival, kept up to date by triggers on every
+     * concert write, without reading the lineup
+     * @param festivalId internal id of the festival
+     * @return number of concerts and the first start and last end of every day and stage of the
+     * festival, empty if it has no concerts or does not exist
+     */
+    public FestivalStats getFestivalStats(long festivalId) {
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.query(InternalDBContract.ConcertStatsEntry.TABLE_NAME,
+                new String[]{
+                        InternalDBContract.ConcertStatsEntry.COLUMN_NAME_DAY,
+                        InternalDBContract.ConcertStatsEntry.COLUMN_NAME_STAGE,
+                        InternalDBContract.ConcertStatsEntry.COLUMN_NAME_CONCERTS,
+                        InternalDBContract.ConcertStatsEntry.COLUMN_NAME_FIRST_START,
+                        InternalDBContract.ConcertStatsEntry.COLUMN_NAME_LAST_END},
+                InternalDBContract.ConcertStatsEntry.COLUMN_NAME_FESTIVAL + "=?",
+                new String[]{String.valueOf(festivalId)},
+                null, null,
+                InternalDBContract.ConcertStatsEntry.COLUMN_NAME_DAY + ", " +
+                        InternalDBContract.ConcertStatsEntry.COLUMN_NAME_STAGE);
+
+        FestivalStats.Builder builder = new FestivalStats.Builder();
+        while (cursor.moveToNext())
+            builder.add(cursor.getInt(0), cursor.getInt(1), cursor.getInt(2),
+                    cursor.getLong(3), cursor.getLong(4));
+        cursor.close();
+
+        Metrics.stop("InternalDatabaseHandler.getFestivalStats", timer);
+        return builder.build();
+    }
+
+    /**
+     *
+     * @param from start of the period in milliseconds since the epoch
+     * @param to end of the period in milliseconds since the epoch
+     * @return true if any concert recorded in the database takes place during the period, false
+     * otherwise
+     */
+    public boolean hasConcertsBetween(long from, long to) {
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.query(InternalDBContract.ConcertEntry.TABLE_NAME,
+                new String[]{InternalDBContract.ConcertEntry._ID},
+                InternalDBContract.ConcertEntry.COLUMN_NAME_START + "<? AND " +
+                        InternalDBContract.ConcertEntry.COLUMN_NAME_END + ">?",
+                new String[]{String.valueOf(to), String.valueOf(from)},
+                null, null, null, "1");
+
+        boolean result = (cursor.getCount() != 0);
+
+        cursor.close();
+
+        Metrics.stop("InternalDatabaseHandler.hasConcertsBetween", timer);
         return result;
     }
 
@@ -86,7 +250,7 @@ public class InternalDatabaseHandler {
      * @return an array of all festivals in the internal db
      */
     public Festival[] getFestivals(){
-
+        long timer = Metrics.start();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
 
         Cursor cursor = db.query(InternalDBContract.FestivalEntry.TABLE_NAME,
@@ -105,46 +269,83 @@ public class InternalDatabaseHandler {
                             cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_NAME)),
                     cursor.getString(
                             cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_DESCRIPTION)),
-                    cursor.getString(
-                            cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_COUNTRY)),
-                    cursor.getString(
-                            cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_CITY)),
+                    INTERNER.intern(cursor.getString(
+                            cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_COUNTRY))),
+                    INTERNER.intern(cursor.getString(
+                            cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_CITY))),
                     cursor.getString(
                             cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_ADDRESS)),
-                    cursor.getString(
-                            cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_GENRE)),
+                    INTERNER.intern(cursor.getString(
+                            cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_GENRE))),
                     cursor.getString(
                             cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_PRICES)),
-                    cursor.getString(
-                            cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_OWNER)),
+                    INTERNER.intern(cursor.getString(
+                            cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_OWNER))),
                     (1 == cursor.getInt(
                             cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_OFFICIAL))),
                     cursor.getInt(
                             cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_VOTES))
             );
+            restoreContentHash(cursor, result[i]);
             i++;
             cursor.moveToNext();
         }
 
         cursor.close();
 
+        Metrics.record("InternalDatabaseHandler.getFestivals.rows", result.length);
+        Metrics.stop("InternalDatabaseHandler.getFestivals", timer);
+        return result;
+    }
+
+    /**
+     * read only the fields of the festivals shown in lists. The description, address and prices
+     * are left out, {@link #getFestival(long)} reads them when a festival is opened
+     * @return summaries of all festivals in the internal db, dated by their first and last
+     * concert
+     */
+    public FestivalSummary[] getFestivalSummaries() {
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.rawQuery(InternalDBContract.FESTIVAL_SUMMARIES_QUERY, null);
+        FestivalSummary[] result = new FestivalSummary[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            result[i] = new FestivalSummary(
+                    cursor.getLong(0),
+                    cursor.getLong(1),
+                    cursor.getString(2),
+                    INTERNER.intern(cursor.getString(3)),
+                    cursor.getInt(4),
+                    cursor.isNull(5) ? FestivalSummary.NO_DATE : cursor.getLong(5),
+                    cursor.isNull(6) ? FestivalSummary.NO_DATE : cursor.getLong(6));
+        }
+        cursor.close();
+
+        Metrics.record("InternalDatabaseHandler.getFestivalSummaries.rows", result.length);
+        Metrics.stop("InternalDatabaseHandler.getFestivalSummaries", timer);
         return result;
     }
 
     /**
      *
      * @param id of the festival
-     * @return Festival object found
+     * @return Festival object found or null if there is no such festival
      */
     public Festival getFestival(long id) {
+        long timer = Metrics.start();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
 
         Cursor cursor = db.query(InternalDBContract.FestivalEntry.TABLE_NAME,
-                null, "?=?",
-                new String[]{InternalDBContract.FestivalEntry._ID, String.valueOf(id)},
+                null, InternalDBContract.FestivalEntry._ID + "=?",
+                new String[]{String.valueOf(id)},
                 null, null, null);
 
-        cursor.moveToFirst();
+        if (!cursor.moveToFirst()) {
+            cursor.close();
+            Metrics.stop("InternalDatabaseHandler.getFestival", timer);
+            return null;
+        }
         Festival festival = new Festival(
                 cursor.getLong(cursor.getColumnIndex(InternalDBContract.FestivalEntry._ID)),
                 cursor.getLong(cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_EXTERNAL_ID)),
@@ -152,24 +353,26 @@ public class InternalDatabaseHandler {
                         cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_NAME)),
                 cursor.getString(
                         cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_DESCRIPTION)),
-                cursor.getString(
-                        cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_COUNTRY)),
-                cursor.getString(
-                        cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_CITY)),
+                INTERNER.intern(cursor.getString(
+                        cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_COUNTRY))),
+                INTERNER.intern(cursor.getString(
+                        cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_CITY))),
                 cursor.getString(
                         cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_ADDRESS)),
-                cursor.getString(
-                        cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_GENRE)),
+                INTERNER.intern(cursor.getString(
+                        cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_GENRE))),
                 cursor.getString(
                         cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_PRICES)),
-                cursor.getString(
-                        cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_OWNER)),
+                INTERNER.intern(cursor.getString(
+                        cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_OWNER))),
                 (1 == cursor.getInt(
                         cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_OFFICIAL))),
                 cursor.getInt(
                         cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_VOTES))
         );
+        restoreContentHash(cursor, festival);
         cursor.close();
+        Metrics.stop("InternalDatabaseHandler.getFestival", timer);
         return festival;
     }
 
@@ -179,8 +382,131 @@ public class InternalDatabaseHandler {
      * @return internal ID of the added object or -1 on fail
      */
     public long addFestival(Festival festival){
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        long id = db.insert(InternalDBContract.FestivalEntry.TABLE_NAME, null,
+                festivalValues(festival));
+        if (id != -1)
+            notifier.notify(new DatabaseChange.Builder().festivalAdded(id));
+        Metrics.stop("InternalDatabaseHandler.addFestival", timer);
+        return id;
+    }
+
+    /**
+     * add a festival together with its concerts in a single transaction, either everything is
+     * written or nothing. A festival already recorded with the same external id is updated
+     * instead, and so are its concerts with the same external id, so importing a festival again
+     * does not duplicate it. Concerts without an external id are matched by their content. The
+     * notification settings of updated concerts are kept. The ids of the festival and its
+     * concerts are set to the ones they were given
+     * @param festival the festival information to insert
+     * @param concerts concerts hosted by the festival
+     * @return internal ID of the added or updated festival or -1 on fail
+     */
+    public long importFestival(Festival festival, Concert[] concerts) {
+        long timer = Metrics.start();
         SQLiteDatabase db = dbHelper.getWritableDatabase();
 
+        long id = -1;
+        DatabaseChange.Builder change = new DatabaseChange.Builder();
+        db.beginTransactionNonExclusive();
+        try {
+            long festivalId = findFestivalByExternalId(db, festival.getExternalId());
+            if (festivalId == -1) {
+                festivalId = db.insert(InternalDBContract.FestivalEntry.TABLE_NAME, null,
+                        festivalValues(festival));
+                change.festivalAdded(festivalId);
+            } else {
+                ContentValues values = festivalValues(festival);
+                // the lineup no longer is the one the digest was sent for
+                values.putNull(InternalDBContract.FestivalEntry.COLUMN_NAME_DIGEST);
+                values.putNull(InternalDBContract.FestivalEntry.COLUMN_NAME_EVICTED);
+                db.update(InternalDBContract.FestivalEntry.TABLE_NAME, values,
+                        InternalDBContract.FestivalEntry._ID + "=?",
+                        new String[]{String.valueOf(festivalId)});
+                change.festivalChanged(festivalId);
+            }
+            if (festivalId != -1) {
+                festival.setId(festivalId);
+                boolean written = true;
+                for (int i = 0; i < concerts.length && written; i++) {
+                    ContentValues values = concertValues(concerts[i]);
+                    long concertId = findImportedConcert(db, festivalId, concerts[i]);
+                    if (concertId == -1) {
+                        concertId = db.insert(InternalDBContract.ConcertEntry.TABLE_NAME, null,
+                                values);
+                        written = concertId != -1;
+                    } else {
+                        values.remove(InternalDBContract.ConcertEntry.COLUMN_NAME_NOTIFY);
+                        written = db.update(InternalDBContract.ConcertEntry.TABLE_NAME, values,
+                                InternalDBContract.ConcertEntry._ID + "=?",
+                                new String[]{String.valueOf(concertId)}) == 1;
+                    }
+                    change.concertChanged(festivalId, concertId);
+                    concerts[i].setId(concertId);
+                }
+                if (written) {
+                    db.setTransactionSuccessful();
+                    id = festivalId;
+                }
+            }
+        } finally {
+            db.endTransaction();
+        }
+        if (id == -1) {
+            festival.setId(null);
+            for (Concert concert : concerts)
+                concert.setId(null);
+        } else {
+            notifier.notify(change);
+        }
+        Metrics.record("InternalDatabaseHandler.importFestival.rows", concerts.length);
+        Metrics.stop("InternalDatabaseHandler.importFestival", timer);
+        return id;
+    }
+
+    /**
+     * @return internal id of the festival with the external id, -1 if there is none
+     */
+    private static long findFestivalByExternalId(SQLiteDatabase db, long externalId) {
+        Cursor cursor = db.query(InternalDBContract.FestivalEntry.TABLE_NAME,
+                new String[]{InternalDBContract.FestivalEntry._ID},
+                InternalDBContract.FestivalEntry.COLUMN_NAME_EXTERNAL_ID + "=?",
+                new String[]{String.valueOf(externalId)},
+                null, null, null, "1");
+        long id = cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        cursor.close();
+        return id;
+    }
+
+    /**
+     * @return internal id of the concert of the festival with the external id of the given one,
+     * or with its content when it has none, -1 if there is no such concert
+     */
+    private static long findImportedConcert(SQLiteDatabase db, long festivalId,
+                                            Concert concert) {
+        String selection = InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL + "=? AND ";
+        String[] selectionArgs;
+        if (concert.getExternalId() != null) {
+            selection += InternalDBContract.ConcertEntry.COLUMN_NAME_EXTERNAL_ID + "=?";
+            selectionArgs = new String[]{String.valueOf(festivalId),
+                    String.valueOf(concert.getExternalId())};
+        } else {
+            selection += InternalDBContract.ConcertEntry.COLUMN_NAME_EXTERNAL_ID + " IS NULL AND "
+                    + InternalDBContract.ConcertEntry.COLUMN_NAME_CONTENT_HASH + "=?";
+            selectionArgs = new String[]{String.valueOf(festivalId),
+                    String.valueOf(concert.getContentHash())};
+        }
+        Cursor cursor = db.query(InternalDBContract.ConcertEntry.TABLE_NAME,
+                new String[]{InternalDBContract.ConcertEntry._ID},
+                selection, selectionArgs, null, null, null, "1");
+        long id = cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        cursor.close();
+        return id;
+    }
+
+    private static ContentValues festivalValues(Festival festival) {
         ContentValues values = new ContentValues();
         values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_EXTERNAL_ID, festival.getExternalId());
         values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_NAME, festival.getName());
@@ -193,8 +519,9 @@ public class InternalDatabaseHandler {
         values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_OWNER, festival.getOwner());
         values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_OFFICIAL, festival.isOfficial());
         values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_VOTES, festival.getVotes());
-
-        return db.insert(InternalDBContract.FestivalEntry.TABLE_NAME, null, values);
+        values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_CONTENT_HASH,
+                festival.getContentHash());
+        return values;
     }
 
     /**
@@ -216,6 +543,7 @@ public class InternalDatabaseHandler {
                              @Nullable String address, @Nullable String genre,
                              @Nullable String prices, @Nullable String owner,
                              @Nullable Boolean official, @Nullable Integer votes) {
+        long timer = Metrics.start();
         SQLiteDatabase db = dbHelper.getWritableDatabase();
 
         ContentValues values = new ContentValues();
@@ -240,24 +568,350 @@ public class InternalDatabaseHandler {
             values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_OFFICIAL, official);
         if (votes != null)
             values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_VOTES, votes);
+        // the stored hash no longer matches, it is computed again when the row is read
+        if (values.size() != 0) {
+            values.putNull(InternalDBContract.FestivalEntry.COLUMN_NAME_CONTENT_HASH);
+            values.putNull(InternalDBContract.FestivalEntry.COLUMN_NAME_DIGEST);
+        }
 
-        db.update(InternalDBContract.FestivalEntry.TABLE_NAME,
+        if (db.update(InternalDBContract.FestivalEntry.TABLE_NAME,
                 values,
                 InternalDBContract.FestivalEntry._ID + " LIKE ? ",
-                new String[]{String.valueOf(id)});
+                new String[]{String.valueOf(id)}) > 0)
+            notifier.notify(new DatabaseChange.Builder().festivalChanged(id));
+        Metrics.stop("InternalDatabaseHandler.editFestival", timer);
+    }
+
+    /**
+     * write the fields of a festival changed through its setters, together with its new content
+     * hash, and mark the fields clean. Nothing is written if no field changed
+     * @param festival festival read from the internal database
+     */
+    public void updateFestival(Festival festival) {
+        long timer = Metrics.start();
+        int dirty = festival.getDirtyFields();
+        if (dirty == 0) {
+            Metrics.stop("InternalDatabaseHandler.updateFestival", timer);
+            return;
+        }
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        ContentValues values = new ContentValues();
+
+        if ((dirty & Festival.FIELD_NAME) != 0)
+            values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_NAME, festival.getName());
+        if ((dirty & Festival.FIELD_DESCRIPTION) != 0)
+            values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_DESCRIPTION,
+                    festival.getDescription());
+        if ((dirty & Festival.FIELD_COUNTRY) != 0)
+            values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_COUNTRY, festival.getCountry());
+        if ((dirty & Festival.FIELD_CITY) != 0)
+            values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_CITY, festival.getCity());
+        if ((dirty & Festival.FIELD_ADDRESS) != 0)
+            values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_ADDRESS, festival.getAddress());
+        if ((dirty & Festival.FIELD_GENRE) != 0)
+            values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_GENRE, festival.getGenre());
+        if ((dirty & Festival.FIELD_PRICES) != 0)
+            values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_PRICES, festival.getPrices());
+        if ((dirty & Festival.FIELD_OWNER) != 0)
+            values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_OWNER, festival.getOwner());
+        if ((dirty & Festival.FIELD_OFFICIAL) != 0)
+            values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_OFFICIAL,
+                    festival.isOfficial());
+        if ((dirty & Festival.FIELD_VOTES) != 0)
+            values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_VOTES, festival.getVotes());
+        values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_CONTENT_HASH,
+                festival.getContentHash());
+
+        if (db.update(InternalDBContract.FestivalEntry.TABLE_NAME,
+                values,
+                InternalDBContract.FestivalEntry._ID + "=?",
+                new String[]{String.valueOf(festival.getId())}) > 0)
+            notifier.notify(new DatabaseChange.Builder().festivalChanged(festival.getId()));
+        festival.clearDirtyFields();
+        Metrics.stop("InternalDatabaseHandler.updateFestival", timer);
     }
 
     /**
-     * remove festival
+     * @param festival festival read from the internal database
+     * @return digest of the festival and its lineup stored at the last synchronisation or null
+     * if there is none
+     */
+    public String getFestivalDigest(Festival festival) {
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.query(InternalDBContract.FestivalEntry.TABLE_NAME,
+                new String[]{InternalDBContract.FestivalEntry.COLUMN_NAME_DIGEST},
+                InternalDBContract.FestivalEntry._ID + "=?",
+                new String[]{String.valueOf(festival.getId())},
+                null, null, null);
+
+        String digest = (cursor.moveToFirst() && !cursor.isNull(0)) ? cursor.getString(0) : null;
+        cursor.close();
+        Metrics.stop("InternalDatabaseHandler.getFestivalDigest", timer);
+        return digest;
+    }
+
+    /**
+     * @param festival festival read from the internal database
+     * @param digest digest the external database sent for the festival and its lineup, or
+     *               <code>null</code> to force the next synchronisation to compare every concert
+     */
+    public void setFestivalDigest(Festival festival, @Nullable String digest) {
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        ContentValues values = new ContentValues();
+        values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_DIGEST, digest);
+
+        db.update(InternalDBContract.FestivalEntry.TABLE_NAME,
+                values,
+                InternalDBContract.FestivalEntry._ID + "=?",
+                new String[]{String.valueOf(festival.getId())});
+        Metrics.stop("InternalDatabaseHandler.setFestivalDigest", timer);
+    }
+
+    /**
+     * remove festival and its concerts in a single transaction
      * @param id id of the festival to remove
+     * @return true if the festival was removed, false if there is no such festival
      */
-    public void removeFestival(long id) {
+    public boolean removeFestival(long id) {
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        String[] selectionArgs = new String[]{String.valueOf(id)};
+        DatabaseChange.Builder change = new DatabaseChange.Builder();
+        boolean removed;
 
+        db.beginTransactionNonExclusive();
+        try {
+            collectConcertsOfFestival(db, id, change);
+            // the concerts are removed by the foreign key
+            removed = db.delete(InternalDBContract.FestivalEntry.TABLE_NAME,
+                    InternalDBContract.FestivalEntry._ID + "=?",
+                    selectionArgs) > 0;
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (removed)
+            change.festivalRemoved(id);
+        if (!change.isEmpty())
+            notifier.notify(change);
+        Metrics.stop("InternalDatabaseHandler.removeFestival", timer);
+        return removed;
+    }
+
+    /**
+     * remove all concerts of a festival, keeping the festival. It is marked evicted in the same
+     * transaction, so the synchronisation does not download the lineup again until
+     * {@link #setEvicted(long, boolean)} clears the mark. Its digest is cleared as well
+     * @param festivalId internal id of the festival
+     * @return number of concerts removed
+     */
+    public int removeConcerts(long festivalId) {
+        long timer = Metrics.start();
         SQLiteDatabase db = dbHelper.getWritableDatabase();
+        DatabaseChange.Builder change = new DatabaseChange.Builder();
+        int removed;
+
+        db.beginTransactionNonExclusive();
+        try {
+            collectConcertsOfFestival(db, festivalId, change);
+            // the statistics are removed with the concerts, the summary keeps the dates
+            db.execSQL(InternalDBContract.STORE_FESTIVAL_DATES_QUERY, new Object[]{festivalId});
+            removed = db.delete(InternalDBContract.ConcertEntry.TABLE_NAME,
+                    InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL + "=?",
+                    new String[]{String.valueOf(festivalId)});
+            ContentValues values = new ContentValues();
+            values.putNull(InternalDBContract.FestivalEntry.COLUMN_NAME_DIGEST);
+            values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_EVICTED, 1);
+            db.update(InternalDBContract.FestivalEntry.TABLE_NAME, values,
+                    InternalDBContract.FestivalEntry._ID + "=?",
+                    new String[]{String.valueOf(festivalId)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (!change.isEmpty())
+            notifier.notify(change);
+        Metrics.stop("InternalDatabaseHandler.removeConcerts", timer);
+        return removed;
+    }
+
+    /**
+     * @param festivalId internal id of the festival
+     * @return true if the concerts of the festival were evicted and not downloaded since
+     */
+    public boolean isEvicted(long festivalId) {
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.query(InternalDBContract.FestivalEntry.TABLE_NAME,
+                new String[]{InternalDBContract.FestivalEntry.COLUMN_NAME_EVICTED},
+                InternalDBContract.FestivalEntry._ID + "=?",
+                new String[]{String.valueOf(festivalId)},
+                null, null, null);
+        boolean evicted = cursor.moveToFirst() && cursor.getInt(0) == 1;
+        cursor.close();
+        Metrics.stop("InternalDatabaseHandler.isEvicted", timer);
+        return evicted;
+    }
 
-        db.delete(InternalDBContract.FestivalEntry.TABLE_NAME,
-                InternalDBContract.FestivalEntry._ID + "LIKE ?",
-                new String[]{String.valueOf(id)});
+    /**
+     * @return internal ids of the festivals whose concerts were evicted and not downloaded since
+     */
+    public Set<Long> getEvictedFestivals() {
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.query(InternalDBContract.FestivalEntry.TABLE_NAME,
+                new String[]{InternalDBContract.FestivalEntry._ID},
+                InternalDBContract.FestivalEntry.COLUMN_NAME_EVICTED + "=1",
+                null, null, null, null);
+        Set<Long> result = new HashSet<>();
+        while (cursor.moveToNext())
+            result.add(cursor.getLong(0));
+        cursor.close();
+        Metrics.stop("InternalDatabaseHandler.getEvictedFestivals", timer);
+        return result;
+    }
+
+    /**
+     * @param festivalId internal id of the festival
+     * @param evicted    whether the concerts of the festival are left out of the
+     *                   synchronisation
+     */
+    public void setEvicted(long festivalId, boolean evicted) {
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        ContentValues values = new ContentValues();
+        if (evicted)
+            values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_EVICTED, 1);
+        else
+            values.putNull(InternalDBContract.FestivalEntry.COLUMN_NAME_EVICTED);
+        db.update(InternalDBContract.FestivalEntry.TABLE_NAME,
+                values,
+                InternalDBContract.FestivalEntry._ID + "=?",
+                new String[]{String.valueOf(festivalId)});
+        Metrics.stop("InternalDatabaseHandler.setEvicted", timer);
+    }
+
+    /**
+     * record when festivals were last viewed, in a single transaction
+     * @param accessTimes time of the last access in milliseconds since the epoch by internal id
+     *                    of the festival
+     */
+    public void setLastAccessTimes(Map<Long, Long> accessTimes) {
+        if (accessTimes.isEmpty())
+            return;
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        db.beginTransactionNonExclusive();
+        try {
+            for (Map.Entry<Long, Long> entry : accessTimes.entrySet()) {
+                values.put(InternalDBContract.FestivalEntry.COLUMN_NAME_LAST_ACCESS,
+                        entry.getValue());
+                db.update(InternalDBContract.FestivalEntry.TABLE_NAME,
+                        values,
+                        InternalDBContract.FestivalEntry._ID + "=?",
+                        new String[]{String.valueOf(entry.getKey())});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Metrics.stop("InternalDatabaseHandler.setLastAccessTimes", timer);
+    }
+
+    /**
+     * list the festivals which have concerts in the order their concerts are to be evicted in:
+     * the festivals whose last concert ended before the given time, earliest first, then the
+     * others by their last access, never viewed ones first. The end of each festival is read
+     * from the index on the concert table, so the cost does not depend on the lineup sizes
+     * @param now current time in milliseconds since the epoch
+     * @return internal ids of the festivals
+     */
+    public long[] getEvictionOrder(long now) {
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.rawQuery(InternalDBContract.EVICTION_ORDER_QUERY,
+                new String[]{String.valueOf(now), String.valueOf(now)});
+        long[] result = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++)
+            result[i] = cursor.getLong(0);
+        cursor.close();
+
+        Metrics.stop("InternalDatabaseHandler.getEvictionOrder", timer);
+        return result;
+    }
+
+    /**
+     * @return size in bytes of the pages of the database file holding data, free pages are not
+     * counted
+     */
+    public long getUsedSize() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        long pageSize = DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+        long pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+        long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        return (pageCount - freePages) * pageSize;
+    }
+
+    /**
+     * refresh the statistics of the query planner and give the free pages of the database file
+     * back to the file system once they make up more than the given share of it. A database
+     * created without incremental auto vacuum is converted on the first call, which rewrites the
+     * whole file
+     * @param maxFreeRatio share of free pages left in the file, between 0 and 1
+     * @return true if space was reclaimed, false if there was too little free or on error
+     */
+    public boolean performMaintenance(double maxFreeRatio) {
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        try {
+            db.execSQL("ANALYZE");
+            if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null)
+                    != AUTO_VACUUM_INCREMENTAL) {
+                db.execSQL("PRAGMA auto_vacuum=INCREMENTAL");
+                db.execSQL("VACUUM");
+                return true;
+            }
+            long pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+            long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+            if (freePages <= pageCount * maxFreeRatio)
+                return false;
+            incrementalVacuum();
+            return true;
+        } catch (SQLiteException ignore) {
+            // VACUUM fails while another connection is in a transaction, it is retried next time
+            Metrics.increment("InternalDatabaseHandler.errors.maintenance");
+            return false;
+        } finally {
+            Metrics.stop("InternalDatabaseHandler.performMaintenance", timer);
+        }
+    }
+
+    /**
+     * return the free pages of the database file to the file system. Has no effect unless the
+     * database uses incremental auto vacuum
+     */
+    public void incrementalVacuum() {
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        // the pragma frees one page per step of its cursor
+        Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum", null);
+        while (cursor.moveToNext()) {
+            // keep stepping
+        }
+        cursor.close();
+        Metrics.stop("InternalDatabaseHandler.incrementalVacuum", timer);
     }
 
     /**
@@ -266,12 +920,12 @@ public class InternalDatabaseHandler {
      * @return all concerts in the festival
      */
     public Concert[] getConcerts(Festival festival){
-
+        long timer = Metrics.start();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
 
         Cursor cursor = db.query(InternalDBContract.ConcertEntry.TABLE_NAME,
                 null,
-                "WHERE " + InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL + "=?",
+                InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL + "=?",
                 new String[]{String.valueOf(festival.getId())},
                 null, null, null);
 
@@ -293,19 +947,22 @@ public class InternalDatabaseHandler {
                             InternalDBContract.ConcertEntry.COLUMN_NAME_STAGE)),
                     cursor.getInt(cursor.getColumnIndex(
                             InternalDBContract.ConcertEntry.COLUMN_NAME_DAY)),
-                    new Date(cursor.getInt(cursor.getColumnIndex(
+                    new Date(cursor.getLong(cursor.getColumnIndex(
                             InternalDBContract.ConcertEntry.COLUMN_NAME_START))),
-                    new Date(cursor.getInt(cursor.getColumnIndex(
+                    new Date(cursor.getLong(cursor.getColumnIndex(
                             InternalDBContract.ConcertEntry.COLUMN_NAME_END))),
                     (1 == cursor.getInt(cursor.getColumnIndex(
                             InternalDBContract.ConcertEntry.COLUMN_NAME_NOTIFY)))
             );
+            restoreContentHash(cursor, result[i]);
             i++;
             cursor.moveToNext();
         }
 
         cursor.close();
 
+        Metrics.record("InternalDatabaseHandler.getConcerts.rows", result.length);
+        Metrics.stop("InternalDatabaseHandler.getConcerts", timer);
         return result;
     }
 
@@ -313,20 +970,64 @@ public class InternalDatabaseHandler {
      *
      * @param festival festival hosting the concert
      * @param id id of the concert
-     * @return the concert object found
+     * @return the concert object found or null if there is no such concert
      */
     public Concert getConcert(Festival festival, long id) {
+        long timer = Metrics.start();
+        Concert concert = findConcert(festival, InternalDBContract.ConcertEntry._ID, id);
+        Metrics.stop("InternalDatabaseHandler.getConcert", timer);
+        return concert;
+    }
+
+    /**
+     *
+     * @param festival festival hosting the concert
+     * @param externalId id of the concert in the external database
+     * @return the concert object found or null if there is no such concert
+     */
+    public Concert getConcertByExternalId(Festival festival, long externalId) {
+        long timer = Metrics.start();
+        Concert concert = findConcert(festival,
+                InternalDBContract.ConcertEntry.COLUMN_NAME_EXTERNAL_ID, externalId);
+        Metrics.stop("InternalDatabaseHandler.getConcertByExternalId", timer);
+        return concert;
+    }
+
+    /**
+     * read the concerts of a festival the user is to be notified of one at a time, ordered by
+     * start time
+     * @param festival festival hosting the concerts
+     * @return cursor over the concerts, to be closed by the caller
+     */
+    public ConcertCursor getNotifiedConcerts(Festival festival) {
+        long timer = Metrics.start();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
 
-        Cursor cursor = db.query(InternalDBContract.FestivalEntry.TABLE_NAME,
-                null, "?=? AND ?=?",
-                new String[]{InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL,
-                        String.valueOf(festival.getId()),
-                        InternalDBContract.ConcertEntry._ID,
-                        String.valueOf(id)},
+        Cursor cursor = db.query(InternalDBContract.ConcertEntry.TABLE_NAME,
+                null,
+                InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL + "=? AND " +
+                        InternalDBContract.ConcertEntry.COLUMN_NAME_NOTIFY + "=1",
+                new String[]{String.valueOf(festival.getId())},
+                null, null,
+                InternalDBContract.ConcertEntry.COLUMN_NAME_START + ", " +
+                        InternalDBContract.ConcertEntry._ID);
+        Metrics.stop("InternalDatabaseHandler.getNotifiedConcerts", timer);
+        return new ConcertCursor(cursor, festival);
+    }
+
+    private Concert findConcert(Festival festival, String column, long value) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.query(InternalDBContract.ConcertEntry.TABLE_NAME,
+                null,
+                InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL + "=? AND " + column + "=?",
+                new String[]{String.valueOf(festival.getId()), String.valueOf(value)},
                 null, null, null);
 
-        cursor.moveToFirst();
+        if (!cursor.moveToFirst()) {
+            cursor.close();
+            return null;
+        }
         Concert concert = new Concert(
                 cursor.getLong(cursor.getColumnIndex(
                         InternalDBContract.ConcertEntry._ID)),
@@ -339,13 +1040,14 @@ public class InternalDatabaseHandler {
                         InternalDBContract.ConcertEntry.COLUMN_NAME_STAGE)),
                 cursor.getInt(cursor.getColumnIndex(
                         InternalDBContract.ConcertEntry.COLUMN_NAME_DAY)),
-                new Date(cursor.getInt(cursor.getColumnIndex(
+                new Date(cursor.getLong(cursor.getColumnIndex(
                         InternalDBContract.ConcertEntry.COLUMN_NAME_START))),
-                new Date(cursor.getInt(cursor.getColumnIndex(
+                new Date(cursor.getLong(cursor.getColumnIndex(
                         InternalDBContract.ConcertEntry.COLUMN_NAME_END))),
                 (1 == cursor.getInt(cursor.getColumnIndex(
                         InternalDBContract.ConcertEntry.COLUMN_NAME_NOTIFY)))
         );
+        restoreContentHash(cursor, concert);
         cursor.close();
         return concert;
     }
@@ -356,9 +1058,53 @@ public class InternalDatabaseHandler {
      * @return result from DB insert
      */
     public long addConcert(Concert concert){
+        long timer = Metrics.start();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        long id = db.insert(InternalDBContract.ConcertEntry.TABLE_NAME, null,
+                concertValues(concert));
+        if (id != -1)
+            notifier.notify(new DatabaseChange.Builder().concertChanged(
+                    concert.getFestival().getId(), id));
+        Metrics.stop("InternalDatabaseHandler.addConcert", timer);
+        return id;
+    }
+
+    /**
+     * add several concerts to the internal DB in a single transaction. The transaction does not
+     * lock out readers, so the schedule can still be read while a large import runs
+     * @param concerts concerts info to insert
+     * @return result from DB insert for each concert, in the same order
+     */
+    public long[] addConcerts(Concert[] concerts) {
+        long timer = Metrics.start();
         SQLiteDatabase db = dbHelper.getWritableDatabase();
 
+        long[] result = new long[concerts.length];
+        DatabaseChange.Builder change = new DatabaseChange.Builder();
+        db.beginTransactionNonExclusive();
+        try {
+            for (int i = 0; i < concerts.length; i++) {
+                result[i] = db.insert(InternalDBContract.ConcertEntry.TABLE_NAME, null,
+                        concertValues(concerts[i]));
+                if (result[i] != -1)
+                    change.concertChanged(concerts[i].getFestival().getId(), result[i]);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        // the whole batch is delivered as a single notification
+        notifier.notify(change);
+        Metrics.record("InternalDatabaseHandler.addConcerts.rows", concerts.length);
+        Metrics.stop("InternalDatabaseHandler.addConcerts", timer);
+        return result;
+    }
+
+    private static ContentValues concertValues(Concert concert) {
         ContentValues values = new ContentValues();
+        values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_EXTERNAL_ID,
+                concert.getExternalId());
         values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL,
                 concert.getFestival().getId());
         values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_ARTIST,
@@ -373,8 +1119,21 @@ public class InternalDatabaseHandler {
                 concert.getEnd().getTime());
         values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_NOTIFY,
                 concert.isToNotify());
+        values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_CONTENT_HASH,
+                concert.getContentHash());
+        return values;
+    }
 
-        return db.insert(InternalDBContract.ConcertEntry.TABLE_NAME, null, values);
+    private static void restoreContentHash(Cursor cursor, Festival festival) {
+        int column = cursor.getColumnIndex(InternalDBContract.FestivalEntry.COLUMN_NAME_CONTENT_HASH);
+        if (!cursor.isNull(column))
+            festival.setContentHash(cursor.getLong(column));
+    }
+
+    private static void restoreContentHash(Cursor cursor, Concert concert) {
+        int column = cursor.getColumnIndex(InternalDBContract.ConcertEntry.COLUMN_NAME_CONTENT_HASH);
+        if (!cursor.isNull(column))
+            concert.setContentHash(cursor.getLong(column));
     }
 
     /**
@@ -392,6 +1151,7 @@ public class InternalDatabaseHandler {
     public void editConcert(long concertId, Long externalID, Long festival,
                             String artist, Integer stage,
                             Integer day, Date start, Date end, Boolean notify) {
+        long timer = Metrics.start();
         SQLiteDatabase db = dbHelper.getWritableDatabase();
 
         ContentValues values = new ContentValues();
@@ -412,12 +1172,77 @@ public class InternalDatabaseHandler {
             values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_END, end.getTime());
         if (notify != null)
             values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_NOTIFY, notify);
+        // the stored hash no longer matches, it is computed again when the row is read
+        if (externalID != null || artist != null || stage != null || day != null ||
+                start != null || end != null)
+            values.putNull(InternalDBContract.ConcertEntry.COLUMN_NAME_CONTENT_HASH);
 
-        db.update(InternalDBContract.ConcertEntry.TABLE_NAME,
+        // the festival the concert is moved away from has to be looked up before the update
+        long previousFestival = notifier.hasSubscriptions() ?
+                festivalOfConcert(db, concertId) : -1;
+        if (db.update(InternalDBContract.ConcertEntry.TABLE_NAME,
                 values,
-                "?=?",
-                new String[]{InternalDBContract.ConcertEntry._ID, String.valueOf(concertId)});
+                InternalDBContract.ConcertEntry._ID + "=?",
+                new String[]{String.valueOf(concertId)}) > 0 && previousFestival != -1) {
+            DatabaseChange.Builder change = new DatabaseChange.Builder().
+                    concertChanged(previousFestival, concertId);
+            if (festival != null)
+                change.concertChanged(festival, concertId);
+            notifier.notify(change);
+        }
+        Metrics.stop("InternalDatabaseHandler.editConcert", timer);
+    }
+
+    /**
+     * write the fields of a concert changed through its setters, together with its new content
+     * hash, and mark the fields clean. Nothing is written if no field changed
+     * @param concert concert read from the internal database
+     */
+    public void updateConcert(Concert concert) {
+        long timer = Metrics.start();
+        int dirty = concert.getDirtyFields();
+        if (dirty == 0) {
+            Metrics.stop("InternalDatabaseHandler.updateConcert", timer);
+            return;
+        }
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
 
+        ContentValues values = new ContentValues();
+
+        if ((dirty & Concert.FIELD_FESTIVAL) != 0)
+            values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL,
+                    concert.getFestival().getId());
+        if ((dirty & Concert.FIELD_ARTIST) != 0)
+            values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_ARTIST, concert.getArtist());
+        if ((dirty & Concert.FIELD_STAGE) != 0)
+            values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_STAGE, concert.getStage());
+        if ((dirty & Concert.FIELD_DAY) != 0)
+            values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_DAY, concert.getDay());
+        if ((dirty & Concert.FIELD_START) != 0)
+            values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_START,
+                    concert.getStart().getTime());
+        if ((dirty & Concert.FIELD_END) != 0)
+            values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_END,
+                    concert.getEnd().getTime());
+        if ((dirty & Concert.FIELD_NOTIFY) != 0)
+            values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_NOTIFY, concert.isToNotify());
+        values.put(InternalDBContract.ConcertEntry.COLUMN_NAME_CONTENT_HASH,
+                concert.getContentHash());
+
+        long previousFestival = ((dirty & Concert.FIELD_FESTIVAL) != 0 &&
+                notifier.hasSubscriptions()) ? festivalOfConcert(db, concert.getId()) : -1;
+        if (db.update(InternalDBContract.ConcertEntry.TABLE_NAME,
+                values,
+                InternalDBContract.ConcertEntry._ID + "=?",
+                new String[]{String.valueOf(concert.getId())}) > 0) {
+            DatabaseChange.Builder change = new DatabaseChange.Builder().
+                    concertChanged(concert.getFestival().getId(), concert.getId());
+            if (previousFestival != -1)
+                change.concertChanged(previousFestival, concert.getId());
+            notifier.notify(change);
+        }
+        concert.clearDirtyFields();
+        Metrics.stop("InternalDatabaseHandler.updateConcert", timer);
     }
 
     /**
@@ -426,10 +1251,62 @@ public class InternalDatabaseHandler {
      * @param artist artist name
      */
     public void removeConcert(int festival, String artist){
+        long timer = Metrics.start();
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        db.delete(InternalDBContract.ConcertEntry.TABLE_NAME,
-                InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL + " LIKE ? AND "
-                        + InternalDBContract.ConcertEntry.COLUMN_NAME_ARTIST + " LIKE ? ",
-                new String[]{String.valueOf(festival), artist});
+        String selection = InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL + " LIKE ? AND "
+                + InternalDBContract.ConcertEntry.COLUMN_NAME_ARTIST + " LIKE ? ";
+        String[] selectionArgs = new String[]{String.valueOf(festival), artist};
+        if (!notifier.hasSubscriptions()) {
+            db.delete(InternalDBContract.ConcertEntry.TABLE_NAME, selection, selectionArgs);
+            Metrics.stop("InternalDatabaseHandler.removeConcert", timer);
+            return;
+        }
+        DatabaseChange.Builder change = new DatabaseChange.Builder();
+        db.beginTransactionNonExclusive();
+        try {
+            Cursor cursor = db.query(InternalDBContract.ConcertEntry.TABLE_NAME,
+                    new String[]{InternalDBContract.ConcertEntry._ID},
+                    selection, selectionArgs, null, null, null);
+            while (cursor.moveToNext())
+                change.concertChanged((long) festival, cursor.getLong(0));
+            cursor.close();
+            db.delete(InternalDBContract.ConcertEntry.TABLE_NAME, selection, selectionArgs);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifier.notify(change);
+        Metrics.stop("InternalDatabaseHandler.removeConcert", timer);
+    }
+
+    /**
+     * record the concerts of a festival in a change when anyone is subscribed, before they are
+     * deleted
+     */
+    private void collectConcertsOfFestival(SQLiteDatabase db, long festivalId,
+                                           DatabaseChange.Builder change) {
+        if (!notifier.hasSubscriptions())
+            return;
+        Cursor cursor = db.query(InternalDBContract.ConcertEntry.TABLE_NAME,
+                new String[]{InternalDBContract.ConcertEntry._ID},
+                InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL + "=?",
+                new String[]{String.valueOf(festivalId)}, null, null, null);
+        while (cursor.moveToNext())
+            change.concertChanged(festivalId, cursor.getLong(0));
+        cursor.close();
+    }
+
+    /**
+     * @return internal id of the festival of a concert, -1 if there is no such concert
+     */
+    private static long festivalOfConcert(SQLiteDatabase db, long concertId) {
+        Cursor cursor = db.query(InternalDBContract.ConcertEntry.TABLE_NAME,
+                new String[]{InternalDBContract.ConcertEntry.COLUMN_NAME_FESTIVAL},
+                InternalDBContract.ConcertEntry._ID + "=?",
+                new String[]{String.valueOf(concertId)},
+                null, null, null);
+        long festival = cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        cursor.close();
+        return festival;
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.db.internal;
+
+/**
+ * Registration of a {@link ChangeObserver} for the changes of a festival, the concerts of a
+ * festival or the festival table
+ */
+public final class Subscription {
+
+    static final int FESTIVAL = 0;
+    static final int CONCERTS = 1;
+    static final int FESTIVAL_TABLE = 2;
+
+    private final ChangeNotifier notifier;
+    private final ChangeObserver observer;
+    private final int kind;
+    private final long festivalId;
+
+    Subscription(ChangeNotifier notifier, ChangeObserver observer, int kind, long festivalId) {
+        this.notifier = notifier;
+        this.observer = observer;
+        this.kind = kind;
+        this.festivalId = festivalId;
+    }
+
+    /**
+     * stop the notifications, one already being delivered may still arrive
+     */
+    public void cancel() {
+        notifier.remove(this);
+    }
+
+    ChangeObserver getObserver() {
+        return observer;
+    }
+
+    boolean matches(DatabaseChange change) {
+        switch (kind) {
+            case FESTIVAL:
+                return change.getFestivals().contains(festivalId);
+            case CONCERTS:
+                return change.getConcertFestivals().contains(festivalId);
+            default:
+                return change.isFestivalTableChanged();
+        }
+    }
+}
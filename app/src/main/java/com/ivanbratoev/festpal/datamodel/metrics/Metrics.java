@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel.metrics;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide registry of counters and histograms describing the work of the data model.
+ * Metrics are disabled by default; while disabled every call returns after reading a single
+ * volatile flag and nothing is allocated, so instrumentation can stay in release builds.
+ * <p/>
+ * Timings are taken with
+ * <pre>
+ * long timer = Metrics.start();
+ * try {
+ *     ...
+ * } finally {
+ *     Metrics.stop(NAME, timer);
+ * }
+ * </pre>
+ */
+public final class Metrics {
+
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private static volatile boolean enabled;
+    private static final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Histogram> histograms =
+            new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * @return timer to pass to {@link #stop(String, long)}
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : NOT_STARTED;
+    }
+
+    /**
+     * record the nanoseconds elapsed since the timer was started in the histogram of the name
+     *
+     * @param timer value returned by {@link #start()}
+     */
+    public static void stop(@NonNull String name, long timer) {
+        if (timer == NOT_STARTED || !enabled)
+            return;
+        histogram(name).record(System.nanoTime() - timer);
+    }
+
+    /**
+     * record a value in the histogram of the name
+     */
+    public static void record(@NonNull String name, long value) {
+        if (!enabled)
+            return;
+        histogram(name).record(value);
+    }
+
+    public static void increment(@NonNull String name) {
+        add(name, 1);
+    }
+
+    public static void add(@NonNull String name, long amount) {
+        if (!enabled)
+            return;
+        counter(name).add(amount);
+    }
+
+    /**
+     * @return the counter of the name, created if it does not exist yet
+     */
+    @NonNull
+    public static Counter counter(@NonNull String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter(name);
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null)
+                counter = created;
+        }
+        return counter;
+    }
+
+    /**
+     * @return the histogram of the name, created if it does not exist yet
+     */
+    @NonNull
+    public static Histogram histogram(@NonNull String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram(name);
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null)
+                histogram = created;
+        }
+        return histogram;
+    }
+
+    /**
+     * set every counter and histogram back to zero
+     */
+    public static void reset() {
+        for (Counter counter : counters.values())
+            counter.reset();
+        for (Histogram histogram : histograms.values())
+            histogram.reset();
+    }
+
+    /**
+     * @return human readable listing of all metrics with recorded values, sorted by name.
+     * Histograms are assumed to hold nanoseconds unless their name ends with ".rows" or
+     * ".bytes"
+     */
+    @NonNull
+    public static String dump() {
+        List<String> lines = new ArrayList<>();
+        for (Counter counter : counters.values()) {
+            if (counter.getValue() != 0)
+                lines.add(counter.getName() + " " + counter.getValue());
+        }
+        for (Histogram histogram : histograms.values()) {
+            if (histogram.getCount() == 0)
+                continue;
+            if (histogram.getName().endsWith(".rows") || histogram.getName().endsWith(".bytes"))
+                lines.add(String.format(Locale.US, "%s n=%d mean=%.1f p50=%d p99=%d max=%d",
+                        histogram.getName(), histogram.getCount(), histogram.getMean(),
+                        histogram.getPercentile(50), histogram.getPercentile(99),
+                        histogram.getMax()));
+            else
+                lines.add(String.format(Locale.US,
+                        "%s n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+                        histogram.getName(), histogram.getCount(), histogram.getMean() / 1e6,
+                        histogram.getPercentile(50) / 1e6, histogram.getPercentile(99) / 1e6,
+                        histogram.getMax() / 1e6));
+        }
+        Collections.sort(lines);
+        StringBuilder result = new StringBuilder();
+        for (String line : lines)
+            result.append(line).append('\n');
+        return result.toString();
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.metrics;
+
+import android.support.annotation.NonNull;
+
+import java.util.Locale;
+
+
+/**
+ * Process wide recorder of timed spans, kept in a fixed size ring buffer and exported in the
+ * Chrome trace event format, which can be opened with chrome://tracing. The buffer is
+ * preallocated and span names are expected to be constants, so recording a span allocates
+ * nothing; once full, the oldest spans are overwritten.
+ * <p/>
+ * Spans are only recorded inside a session which was picked by sampling: every
+ * {@link #setSampleInterval(int) n-th} session is recorded. Sessions are not meant to overlap.
+ * <pre>
+ * boolean traced = Tracer.beginSession();
+ * try {
+ *     long span = Tracer.start();
+ *     ...
+ *     Tracer.stop(CATEGORY, NAME, span);
+ * } finally {
+ *     if (traced)
+ *         Tracer.endSession();
+ * }
+ * </pre>
+ */
+public final class Tracer {
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    /**
+     * argument of spans which have none, left out of the export
+     */
+    public static final long NO_ARGUMENT = Long.MIN_VALUE;
+
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private static volatile boolean enabled;
+    private static volatile boolean recording;
+    private static int sampleInterval = 1;
+    private static long sessions;
+
+    private static String[] categories;
+    private static String[] names;
+    private static long[] starts;
+    private static long[] durations;
+    private static long[] threads;
+    private static long[] arguments;
+    /**
+     * total number of spans recorded since the last clear, the next one goes to
+     * recorded % capacity
+     */
+    private static long recorded;
+
+    static {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    private Tracer() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * disabling the tracer ends the current session
+     */
+    public static void setEnabled(boolean enabled) {
+        Tracer.enabled = enabled;
+        if (!enabled)
+            recording = false;
+    }
+
+    /**
+     * @param interval record one session out of every <code>interval</code>, 1 records all
+     */
+    public static synchronized void setSampleInterval(int interval) {
+        if (interval < 1)
+            throw new IllegalArgumentException("interval must be positive");
+        sampleInterval = interval;
+    }
+
+    /**
+     * replace the buffer with an empty one holding up to <code>capacity</code> spans
+     */
+    public static synchronized void setCapacity(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        allocate(capacity);
+    }
+
+    private static void allocate(int capacity) {
+        categories = new String[capacity];
+        names = new String[capacity];
+        starts = new long[capacity];
+        durations = new long[capacity];
+        threads = new long[capacity];
+        arguments = new long[capacity];
+        recorded = 0;
+    }
+
+    /**
+     * @return true if the session was sampled and its spans are recorded, in which case
+     * {@link #endSession()} has to be called when it is over
+     */
+    public static synchronized boolean beginSession() {
+        if (!enabled)
+            return false;
+        recording = (sessions++ % sampleInterval == 0);
+        return recording;
+    }
+
+    public static void endSession() {
+        recording = false;
+    }
+
+    /**
+     * @return start of a span to pass to {@link #stop(String, String, long)}
+     */
+    public static long start() {
+        return recording ? System.nanoTime() : NOT_STARTED;
+    }
+
+    public static void stop(@NonNull String category, @NonNull String name, long start) {
+        stop(category, name, start, NO_ARGUMENT);
+    }
+
+    /**
+     * record a span from <code>start</code> until now
+     *
+     * @param start    value returned by {@link #start()}
+     * @param argument value shown with the span, e.g. the id of the record being worked on
+     */
+    public static void stop(@NonNull String category, @NonNull String name, long start,
+                            long argument) {
+        if (start == NOT_STARTED || !recording)
+            return;
+        long end = System.nanoTime();
+        long thread = Thread.currentThread().getId();
+        synchronized (Tracer.class) {
+            int slot = (int) (recorded % names.length);
+            categories[slot] = category;
+            names[slot] = name;
+            starts[slot] = start;
+            durations[slot] = end - start;
+            threads[slot] = thread;
+            arguments[slot] = argument;
+            recorded++;
+        }
+    }
+
+    /**
+     * @return number of spans held in the buffer
+     */
+    public static synchronized int size() {
+        return (int) Math.min(recorded, names.length);
+    }
+
+    public static synchronized void clear() {
+        for (int i = 0; i < names.length; i++) {
+            categories[i] = null;
+            names[i] = null;
+        }
+        recorded = 0;
+    }
+
+    /**
+     * @return the spans in the buffer, oldest first, as a Chrome trace event JSON document
+     */
+    @NonNull
+    public static synchronized String exportChromeTrace() {
+        int size = size();
+        long first = recorded - size;
+        StringBuilder result = new StringBuilder(64 + size * 128);
+        result.append("{\"traceEvents\":[");
+        for (long i = first; i < recorded; i++) {
+            int slot = (int) (i % names.length);
+            if (i != first)
+                result.append(',');
+            result.append("{\"name\":").append(quote(names[slot]))
+                    .append(",\"cat\":").append(quote(categories[slot]))
+                    .append(",\"ph\":\"X\",\"ts\":").append(starts[slot] / 1000)
+                    .append(",\"dur\":").append(durations[slot] / 1000)
+                    .append(",\"pid\":1,\"tid\":").append(threads[slot]);
+            if (arguments[slot] != NO_ARGUMENT)
+                result.append(",\"args\":{\"id\":").append(arguments[slot]).append('}');
+            result.append('}');
+        }
+        result.append("],\"displayTimeUnit\":\"ms\"}");
+        return result.toString();
+    }
+
+    /**
+     * @return the string as a JSON string literal. Written here rather than with org.json, whose
+     * classes are only stubs on the local JVM
+     */
+    static String quote(String string) {
+        StringBuilder result = new StringBuilder(string.length() + 2).append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    result.append('\\').append(c);
+                    break;
+                case '\n':
+                    result.append("\\n");
+                    break;
+                case '\r':
+                    result.append("\\r");
+                    break;
+                case '\t':
+                    result.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029')
+                        result.append(String.format(Locale.US, "\\u%04x", (int) c));
+                    else
+                        result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.frontend.currentfestival;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.ivanbratoev.festpal.R;
+import com.ivanbratoev.festpal.datamodel.ScheduledConcert;
+
+import java.text.DateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Rows of the concerts of a festival. A new lineup is diffed against the shown one on a
+ * background executor; rows whose contents changed are bound again in place, and when rows are
+ * added, removed or moved the first visible concert stays where it was on the screen
+ */
+class ConcertListAdapter extends BaseAdapter {
+
+    private static final long MINUTE = 60_000;
+
+    private final LayoutInflater inflater;
+    private final Context context;
+    private final Executor diffExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final DateFormat timeFormat;
+    private List<ScheduledConcert> concerts = Collections.emptyList();
+    private ListView listView;
+    /**
+     * number of the latest submitted lineup, a diff of an earlier one is dropped
+     */
+    private int generation;
+
+    /**
+     * @param context      context of the list
+     * @param diffExecutor executor the diffs are computed on
+     */
+    ConcertListAdapter(Context context, Executor diffExecutor) {
+        this.context = context;
+        this.inflater = LayoutInflater.from(context);
+        this.diffExecutor = diffExecutor;
+        this.timeFormat = android.text.format.DateFormat.getTimeFormat(context);
+    }
+
+    /**
+     * show the rows in a list, whose scroll position is kept on updates
+     */
+    void attach(ListView listView) {
+        this.listView = listView;
+        listView.setAdapter(this);
+    }
+
+    /**
+     * show a new lineup once its diff against the shown one is computed. Called on the main
+     * thread
+     *
+     * @param update concerts to show, not modified afterwards
+     */
+    void submit(final List<ScheduledConcert> update) {
+        final int submitted = ++generation;
+        final List<ScheduledConcert> shown = concerts;
+        diffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ConcertListDiff diff = ConcertListDiff.compute(shown, update);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // the shown lineup is still the one the diff was computed against
+                        if (submitted == generation)
+                            apply(update, diff);
+                    }
+                });
+            }
+        });
+    }
+
+    private void apply(List<ScheduledConcert> update, ConcertListDiff diff) {
+        if (diff.getOperations().isEmpty() || listView == null) {
+            concerts = update;
+            if (!diff.getOperations().isEmpty())
+                notifyDataSetChanged();
+            return;
+        }
+        int first = listView.getFirstVisiblePosition();
+        if (!diff.isStructural()) {
+            concerts = update;
+            for (ConcertListDiff.Operation operation : diff.getOperations())
+                for (int i = 0; i < operation.getCount(); i++) {
+                    View row = listView.getChildAt(operation.getPosition() + i - first);
+                    if (row != null)
+                        getView(operation.getPosition() + i, row, listView);
+                }
+            return;
+        }
+        int anchor = first;
+        while (anchor < concerts.size() && diff.getNewPosition(anchor) == -1)
+            anchor++;
+        View top = listView.getChildAt(anchor - first);
+        int offset = (top == null) ? 0 : top.getTop();
+        concerts = update;
+        notifyDataSetChanged();
+        if (anchor < diff.getOldSize())
+            listView.setSelectionFromTop(diff.getNewPosition(anchor), offset);
+    }
+
+    @Override
+    public int getCount() {
+        return concerts.size();
+    }
+
+    @Override
+    public ScheduledConcert getItem(int position) {
+        return concerts.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return concerts.get(position).getId();
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View row = convertView;
+        RowViews views;
+        if (row == null) {
+            row = inflater.inflate(R.layout.current_festival_concerts_list_row, parent, false);
+            views = new RowViews(row);
+            row.setTag(views);
+        } else {
+            views = (RowViews) row.getTag();
+        }
+        ScheduledConcert concert = concerts.get(position);
+        views.artist.setText(concert.getArtist());
+        views.stage.setText(context.getString(R.string.concert_stage, concert.getStage()));
+        views.dayTime.setText(context.getString(R.string.concert_day_time, concert.getDay(),
+                timeFormat.format(new Date(concert.getStart()))));
+        views.duration.setText(context.getString(R.string.concert_duration,
+                (concert.getEnd() - concert.getStart()) / MINUTE));
+        views.notify.setImageResource(concert.isToNotify() ?
+                android.R.drawable.btn_star_big_on : android.R.drawable.btn_star_big_off);
+        return row;
+    }
+
+    private static class RowViews {
+        final TextView artist;
+        final TextView stage;
+        final TextView dayTime;
+        final TextView duration;
+        final ImageView notify;
+
+        RowViews(View row) {
+            artist = (TextView) row.findViewById(R.id.artist);
+            stage = (TextView) row.findViewById(R.id.starts_in_stage);
+            dayTime = (TextView) row.findViewById(R.id.day_time);
+            duration = (TextView) row.findViewById(R.id.duration);
+            notify = (ImageView) row.findViewById(R.id.notify);
+        }
+    }
+}
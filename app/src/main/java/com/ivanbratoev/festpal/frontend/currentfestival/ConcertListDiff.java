@@ -0,0 +1,340 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.frontend.currentfestival;
+
+import android.support.annotation.NonNull;
+
+import com.ivanbratoev.festpal.datamodel.ScheduledConcert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Operations turning one concert list into another, so a list only updates the rows that
+ * changed. Concerts are matched by their internal id, which has to be unique in each list.
+ * The concerts kept in place are the longest run in the same relative order in both lists,
+ * every other concert found in both lists is moved, so the number of moves is minimal.
+ * <p/>
+ * The operations are to be applied in the order they are returned: removals, moves, insertions
+ * and changes. The positions of each refer to the list with the previous operations applied.
+ * Computing the diff takes O(n log n) time, also when every row moves, and does not need the
+ * main thread
+ */
+public final class ConcertListDiff {
+
+    public static final int REMOVE = 0;
+    public static final int MOVE = 1;
+    public static final int INSERT = 2;
+    public static final int CHANGE = 3;
+
+    /**
+     * a single step of the diff
+     */
+    public static final class Operation {
+        private final int type;
+        private final int position;
+        private final int count;
+        private final int toPosition;
+
+        Operation(int type, int position, int count, int toPosition) {
+            this.type = type;
+            this.position = position;
+            this.count = count;
+            this.toPosition = toPosition;
+        }
+
+        /**
+         * @return one of {@link #REMOVE}, {@link #MOVE}, {@link #INSERT} or {@link #CHANGE}
+         */
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * @return first position of the affected rows, the original position for a move
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        /**
+         * @return number of affected rows, always 1 for a move
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return position a moved row is inserted at after it was taken out of the list, -1 for
+         * other operations
+         */
+        public int getToPosition() {
+            return toPosition;
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case REMOVE:
+                    return "remove " + position + "+" + count;
+                case MOVE:
+                    return "move " + position + "->" + toPosition;
+                case INSERT:
+                    return "insert " + position + "+" + count;
+                default:
+                    return "change " + position + "+" + count;
+            }
+        }
+    }
+
+    private final List<Operation> operations;
+    private final int[] oldToNew;
+    private final boolean structural;
+
+    private ConcertListDiff(List<Operation> operations, int[] oldToNew, boolean structural) {
+        this.operations = Collections.unmodifiableList(operations);
+        this.oldToNew = oldToNew;
+        this.structural = structural;
+    }
+
+    /**
+     * @param before list shown now
+     * @param after  list to show
+     * @return operations turning <code>before</code> into <code>after</code>
+     * @throws IllegalArgumentException if an id appears twice in one of the lists
+     */
+    public static ConcertListDiff compute(@NonNull List<ScheduledConcert> before,
+                                          @NonNull List<ScheduledConcert> after) {
+        int oldSize = before.size();
+        int newSize = after.size();
+        Map<Long, Integer> oldPositions = new HashMap<>(oldSize * 2);
+        for (int i = 0; i < oldSize; i++)
+            if (oldPositions.put(before.get(i).getId(), i) != null)
+                throw new IllegalArgumentException("duplicate id " + before.get(i).getId());
+        int[] oldToNew = new int[oldSize];
+        Arrays.fill(oldToNew, -1);
+        int[] newToOld = new int[newSize];
+        for (int j = 0; j < newSize; j++) {
+            Integer i = oldPositions.get(after.get(j).getId());
+            newToOld[j] = (i == null) ? -1 : i;
+            if (i != null) {
+                if (oldToNew[i] != -1)
+                    throw new IllegalArgumentException("duplicate id " + after.get(j).getId());
+                oldToNew[i] = j;
+            }
+        }
+        boolean[] kept = longestIncreasingRun(newToOld);
+
+        List<Operation> operations = new ArrayList<>();
+        // from the end, so the positions of the rows before a removal stay valid
+        for (int i = oldSize - 1; i >= 0; i--) {
+            if (oldToNew[i] != -1)
+                continue;
+            int end = i;
+            while (i > 0 && oldToNew[i - 1] == -1)
+                i--;
+            operations.add(new Operation(REMOVE, i, end - i + 1, -1));
+        }
+
+        addMoves(operations, newToOld, oldToNew, kept);
+
+        for (int j = 0; j < newSize; j++) {
+            if (newToOld[j] != -1)
+                continue;
+            int start = j;
+            while (j + 1 < newSize && newToOld[j + 1] == -1)
+                j++;
+            operations.add(new Operation(INSERT, start, j - start + 1, -1));
+        }
+        boolean structural = !operations.isEmpty();
+
+        for (int j = 0; j < newSize; j++) {
+            if (!changed(before, after, newToOld, j))
+                continue;
+            int start = j;
+            while (j + 1 < newSize && changed(before, after, newToOld, j + 1))
+                j++;
+            operations.add(new Operation(CHANGE, start, j - start + 1, -1));
+        }
+        return new ConcertListDiff(operations, oldToNew, structural);
+    }
+
+    /**
+     * add the moves of the rows not kept in place. Each moved row goes right before the row
+     * following it in the new list, which is already in place when the moves are made from the
+     * end. Every row moved is put in a slot of its own, so the order of all the slots ever used
+     * is known before the moves are made. The positions are then counted in a Fenwick tree over
+     * the occupied slots, in O(log n) per move
+     */
+    private static void addMoves(List<Operation> operations, int[] newToOld, int[] oldToNew,
+                                 boolean[] kept) {
+        // the slots of the rows in both lists in their old order, then an end and a head slot,
+        // then one slot for every move
+        int common = 0;
+        int[] slot = new int[oldToNew.length];
+        for (int i = 0; i < oldToNew.length; i++)
+            if (oldToNew[i] != -1)
+                slot[i] = common++;
+        int end = common;
+        int head = common + 1;
+        int slots = common + 2;
+        int[] following = new int[2 * common + 2];
+        int[] preceding = new int[2 * common + 2];
+        for (int s = 0; s < common; s++) {
+            following[s] = s + 1;
+            preceding[s] = (s == 0) ? head : s - 1;
+        }
+        following[head] = (common == 0) ? end : 0;
+        preceding[end] = (common == 0) ? head : common - 1;
+
+        // first pass: link the slot of every move right before the slot of the following row
+        int[] current = slot.clone();
+        int[] movedTo = new int[newToOld.length];
+        int next = -1;
+        for (int j = newToOld.length - 1; j >= 0; j--) {
+            int i = newToOld[j];
+            if (i == -1)
+                continue;
+            if (!kept[j]) {
+                int anchor = (next == -1) ? end : current[next];
+                int moved = slots++;
+                following[moved] = anchor;
+                preceding[moved] = preceding[anchor];
+                following[preceding[anchor]] = moved;
+                preceding[anchor] = moved;
+                current[i] = moved;
+                movedTo[j] = moved;
+            }
+            next = i;
+        }
+        int[] rank = new int[slots];
+        int count = 0;
+        for (int s = following[head]; s != end; s = following[s])
+            rank[s] = count++;
+
+        // second pass: make the moves, counting the occupied slots before each position
+        int[] tree = new int[count + 1];
+        for (int s = 0; s < common; s++)
+            add(tree, rank[s], 1);
+        current = slot;
+        next = -1;
+        for (int j = newToOld.length - 1; j >= 0; j--) {
+            int i = newToOld[j];
+            if (i == -1)
+                continue;
+            if (!kept[j]) {
+                int from = countBefore(tree, rank[current[i]]);
+                add(tree, rank[current[i]], -1);
+                int to = (next == -1) ? common - 1 : countBefore(tree, rank[current[next]]);
+                current[i] = movedTo[j];
+                add(tree, rank[current[i]], 1);
+                if (from != to)
+                    operations.add(new Operation(MOVE, from, 1, to));
+            }
+            next = i;
+        }
+    }
+
+    private static void add(int[] tree, int index, int delta) {
+        for (int k = index + 1; k < tree.length; k += k & -k)
+            tree[k] += delta;
+    }
+
+    /**
+     * @return number of occupied slots ranked before the index
+     */
+    private static int countBefore(int[] tree, int index) {
+        int sum = 0;
+        for (int k = index; k > 0; k -= k & -k)
+            sum += tree[k];
+        return sum;
+    }
+
+    private static boolean changed(List<ScheduledConcert> before, List<ScheduledConcert> after,
+                                   int[] newToOld, int j) {
+        return newToOld[j] != -1 && !before.get(newToOld[j]).equals(after.get(j));
+    }
+
+    /**
+     * patience sorting of the old positions in the new order
+     *
+     * @param newToOld old position of each new row, -1 for new rows
+     * @return for each new row whether it is part of the longest run of old rows kept in order
+     */
+    private static boolean[] longestIncreasingRun(int[] newToOld) {
+        int[] tails = new int[newToOld.length];
+        int[] previous = new int[newToOld.length];
+        int length = 0;
+        for (int j = 0; j < newToOld.length; j++) {
+            int value = newToOld[j];
+            if (value == -1)
+                continue;
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (newToOld[tails[middle]] < value)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            previous[j] = (low > 0) ? tails[low - 1] : -1;
+            tails[low] = j;
+            if (low == length)
+                length++;
+        }
+        boolean[] kept = new boolean[newToOld.length];
+        for (int j = (length > 0) ? tails[length - 1] : -1; j != -1; j = previous[j])
+            kept[j] = true;
+        return kept;
+    }
+
+    /**
+     * @return the operations in the order they have to be applied
+     */
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return true if rows are removed, moved or inserted, false if at most the contents of some
+     * rows change
+     */
+    public boolean isStructural() {
+        return structural;
+    }
+
+    /**
+     * @return number of rows before the change
+     */
+    public int getOldSize() {
+        return oldToNew.length;
+    }
+
+    /**
+     * @param oldPosition position in the list before the change
+     * @return position of the same concert in the list after the change, -1 if it was removed
+     */
+    public int getNewPosition(int oldPosition) {
+        return oldToNew[oldPosition];
+    }
+}
@@ -18,6 +18,7 @@ package com.ivanbratoev.festpal.frontend.currentfestival;
 
 import android.app.Activity;
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
@@ -27,16 +28,25 @@ import android.support.v7.app.AppCompatActivity;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ListView;
 
 import com.ivanbratoev.festpal.R;
 import com.ivanbratoev.festpal.datamodel.DataModel;
+import com.ivanbratoev.festpal.datamodel.ScheduledConcert;
 import com.ivanbratoev.festpal.frontend.NavigationDrawerFragment;
 import com.ivanbratoev.festpal.frontend.festivallists.DownloadedFestivalsActivity;
 
+import java.util.List;
+
 //TODO:implement
 public class CurrentFestivalConcertsListActivity extends AppCompatActivity
         implements NavigationDrawerFragment.NavigationDrawerCallbacks {
 
+    /**
+     * position of the timetable in the navigation drawer
+     */
+    private static final int TIMETABLE_POSITION = 1;
+
     /**
      * Fragment managing the behaviors, interactions and presentation of the navigation drawer.
      */
@@ -72,8 +82,11 @@ public class CurrentFestivalConcertsListActivity extends AppCompatActivity
     public void onNavigationDrawerItemSelected(int position) {
         // update the main content by replacing fragments
         FragmentManager fragmentManager = getSupportFragmentManager();
+        Fragment fragment = (position == TIMETABLE_POSITION) ?
+                TimetableFragment.newInstance(position + 1) :
+                PlaceholderFragment.newInstance(position + 1);
         fragmentManager.beginTransaction()
-                .replace(R.id.container, PlaceholderFragment.newInstance(position + 1))
+                .replace(R.id.container, fragment)
                 .commit();
     }
 
@@ -108,6 +121,16 @@ public class CurrentFestivalConcertsListActivity extends AppCompatActivity
          */
         private static final String ARG_SECTION_NUMBER = "section_number";
 
+        private ConcertListAdapter adapter;
+        private final CurrentScheduleLoader loader = new CurrentScheduleLoader(
+                new CurrentScheduleLoader.Callback() {
+                    @Override
+                    public void onScheduleLoaded(List<ScheduledConcert> concerts) {
+                        if (adapter != null)
+                            adapter.submit(concerts);
+                    }
+                });
+
         public PlaceholderFragment() {
         }
 
@@ -127,9 +150,24 @@ public class CurrentFestivalConcertsListActivity extends AppCompatActivity
         public View onCreateView(LayoutInflater inflater, ViewGroup container,
                                  Bundle savedInstanceState) {
             View rootView = inflater.inflate(R.layout.fragment_concerts_list, container, false);
+            // diffs are computed on the same serial executor the schedule is loaded on
+            adapter = new ConcertListAdapter(getActivity(), AsyncTask.SERIAL_EXECUTOR);
+            adapter.attach((ListView) rootView.findViewById(R.id.concerts_list));
             return rootView;
         }
 
+        @Override
+        public void onResume() {
+            super.onResume();
+            loader.start();
+        }
+
+        @Override
+        public void onPause() {
+            loader.stop();
+            super.onPause();
+        }
+
         @Override
         public void onAttach(Activity activity) {
             super.onAttach(activity);
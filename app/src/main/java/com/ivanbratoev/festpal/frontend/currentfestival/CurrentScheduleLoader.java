@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.frontend.currentfestival;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.ivanbratoev.festpal.datamodel.DataModel;
+import com.ivanbratoev.festpal.datamodel.Festival;
+import com.ivanbratoev.festpal.datamodel.FestivalSummary;
+import com.ivanbratoev.festpal.datamodel.ScheduleSnapshot;
+import com.ivanbratoev.festpal.datamodel.ScheduledConcert;
+import com.ivanbratoev.festpal.datamodel.db.internal.ChangeObserver;
+import com.ivanbratoev.festpal.datamodel.db.internal.DatabaseChange;
+import com.ivanbratoev.festpal.datamodel.db.internal.Subscription;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the schedule of the current festival on {@link AsyncTask#SERIAL_EXECUTOR} and follows
+ * it while started: the schedule is loaded again when its concerts change, also by the
+ * background synchronisation, and when festivals are added or removed. Shared by the concert
+ * list and the timetable
+ */
+class CurrentScheduleLoader {
+
+    /**
+     * receives the schedules on the main thread
+     */
+    interface Callback {
+        /**
+         * @param concerts concerts of the current festival, empty if there is no festival
+         */
+        void onScheduleLoaded(List<ScheduledConcert> concerts);
+    }
+
+    private final Callback callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ChangeObserver observer = new ChangeObserver() {
+        @Override
+        public void onChange(DatabaseChange change) {
+            if (started)
+                AsyncTask.SERIAL_EXECUTOR.execute(load);
+        }
+    };
+    private final Runnable load = new Runnable() {
+        @Override
+        public void run() {
+            if (started)
+                load();
+        }
+    };
+    private final Runnable unsubscribe = new Runnable() {
+        @Override
+        public void run() {
+            unsubscribe();
+        }
+    };
+    private volatile boolean started;
+    // subscriptions and the shown festival are only used on the serial executor
+    private Subscription festivalsSubscription;
+    private Subscription concertsSubscription;
+    private Long festivalId;
+
+    CurrentScheduleLoader(Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * load the schedule and follow its changes, called from onResume
+     */
+    void start() {
+        started = true;
+        AsyncTask.SERIAL_EXECUTOR.execute(load);
+    }
+
+    /**
+     * stop following the schedule, a schedule already being loaded is not delivered. Called
+     * from onPause
+     */
+    void stop() {
+        started = false;
+        AsyncTask.SERIAL_EXECUTOR.execute(unsubscribe);
+    }
+
+    private void load() {
+        DataModel dataModel = DataModel.getInstance();
+        if (festivalsSubscription == null)
+            festivalsSubscription = dataModel.subscribeToFestivals(observer);
+        Festival festival = currentFestival(dataModel);
+        Long id = (festival == null) ? null : festival.getId();
+        if (id == null || !id.equals(festivalId)) {
+            if (concertsSubscription != null)
+                concertsSubscription.cancel();
+            concertsSubscription = (id == null) ? null :
+                    dataModel.subscribeToConcerts(festival, observer);
+            festivalId = id;
+        }
+        List<ScheduledConcert> concerts;
+        if (id == null) {
+            concerts = Collections.emptyList();
+        } else {
+            ScheduleSnapshot schedule = dataModel.getSchedule(festival);
+            if (schedule == null)
+                return;
+            concerts = schedule.getConcerts();
+        }
+        deliver(concerts);
+    }
+
+    private void deliver(final List<ScheduledConcert> concerts) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (started)
+                    callback.onScheduleLoaded(concerts);
+            }
+        });
+    }
+
+    private void unsubscribe() {
+        if (started)
+            return;
+        if (festivalsSubscription != null)
+            festivalsSubscription.cancel();
+        if (concertsSubscription != null)
+            concertsSubscription.cancel();
+        festivalsSubscription = null;
+        concertsSubscription = null;
+        festivalId = null;
+    }
+
+    /**
+     * the current festival is the one ending first among those not over yet, or the one which
+     * ended last when all are over. Festivals without concerts come after those with dates
+     *
+     * @return current festival, null if the internal database has no festivals
+     */
+    private static Festival currentFestival(DataModel dataModel) {
+        Festival[] festivals = dataModel.getOfflineFestivals();
+        if (festivals == null || festivals.length == 0)
+            return null;
+        FestivalSummary[] summaries = dataModel.getOfflineFestivalSummaries();
+        FestivalSummary current = null;
+        long now = System.currentTimeMillis();
+        if (summaries != null)
+            for (FestivalSummary summary : summaries)
+                if (summary.hasDates() && (current == null || isBefore(summary, current, now)))
+                    current = summary;
+        if (current != null)
+            for (Festival festival : festivals)
+                if (festival.getId() != null && festival.getId() == current.getId())
+                    return festival;
+        return festivals[0];
+    }
+
+    /**
+     * @return true if the festival a is more current than b
+     */
+    private static boolean isBefore(FestivalSummary a, FestivalSummary b, long now) {
+        boolean aOver = a.getEnd() < now;
+        boolean bOver = b.getEnd() < now;
+        if (aOver != bOver)
+            return bOver;
+        return aOver ? a.getEnd() > b.getEnd() : a.getEnd() < b.getEnd();
+    }
+}
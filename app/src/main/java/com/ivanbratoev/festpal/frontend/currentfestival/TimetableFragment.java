@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.frontend.currentfestival;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.ivanbratoev.festpal.R;
+import com.ivanbratoev.festpal.datamodel.ScheduledConcert;
+
+import java.util.List;
+
+/**
+ * Timetable of the current festival, with a column per stage
+ */
+public class TimetableFragment extends Fragment {
+
+    private static final String ARG_SECTION_NUMBER = "section_number";
+
+    private TimetableView timetable;
+    private final CurrentScheduleLoader loader = new CurrentScheduleLoader(
+            new CurrentScheduleLoader.Callback() {
+                @Override
+                public void onScheduleLoaded(List<ScheduledConcert> concerts) {
+                    // cells of concerts which did not change are kept
+                    if (timetable != null)
+                        timetable.setSchedule(concerts);
+                }
+            });
+
+    public TimetableFragment() {
+    }
+
+    /**
+     * Returns a new instance of this fragment for the given section
+     * number.
+     */
+    public static TimetableFragment newInstance(int sectionNumber) {
+        TimetableFragment fragment = new TimetableFragment();
+        Bundle args = new Bundle();
+        args.putInt(ARG_SECTION_NUMBER, sectionNumber);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        timetable = (TimetableView) inflater.inflate(R.layout.fragment_timetable, container,
+                false);
+        return timetable;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        loader.start();
+    }
+
+    @Override
+    public void onPause() {
+        loader.stop();
+        super.onPause();
+    }
+
+    @Override
+    public void onAttach(Activity activity) {
+        super.onAttach(activity);
+        ((CurrentFestivalConcertsListActivity) activity).onSectionAttached(
+                getArguments().getInt(ARG_SECTION_NUMBER));
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.frontend.currentfestival;
+
+import com.ivanbratoev.festpal.datamodel.ScheduledConcert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Positions of the concert cells of a timetable, with a column per stage and the days one
+ * below the other, in minutes. Each day is as high as the time from its first start to its
+ * last end, so the nights take no space. The cells of a column are sorted, so the cells
+ * intersecting the visible area are found with a binary search instead of checking all of
+ * them.
+ * <p/>
+ * When the lineup changes, cells of unchanged concerts are kept as they are and only the
+ * columns with added, removed or changed concerts are sorted again
+ */
+final class TimetableLayout {
+
+    /**
+     * space above each day for its header, in minutes
+     */
+    static final int DAY_HEADER = 30;
+    private static final long MINUTE = 60_000;
+
+    /**
+     * position of a concert in the timetable, kept between updates while the concert does not
+     * change
+     */
+    static final class Cell {
+        ScheduledConcert concert;
+        int column;
+        float top;
+        float bottom;
+        /**
+         * label as drawn by the view, cached until the concert changes
+         */
+        CharSequence label;
+    }
+
+    private static final class Column {
+        final int stage;
+        final List<Cell> cells = new ArrayList<>();
+        /**
+         * greatest bottom of the cells up to each index, increasing even if concerts overlap
+         */
+        float[] maxBottoms = new float[0];
+
+        Column(int stage) {
+            this.stage = stage;
+        }
+    }
+
+    private static final Comparator<Cell> BY_START = new Comparator<Cell>() {
+        @Override
+        public int compare(Cell a, Cell b) {
+            if (a.concert.getDay() != b.concert.getDay())
+                return (a.concert.getDay() < b.concert.getDay()) ? -1 : 1;
+            if (a.concert.getStart() != b.concert.getStart())
+                return (a.concert.getStart() < b.concert.getStart()) ? -1 : 1;
+            return (a.concert.getId() < b.concert.getId()) ? -1 :
+                    ((a.concert.getId() == b.concert.getId()) ? 0 : 1);
+        }
+    };
+
+    private Map<Long, Cell> cells = new HashMap<>();
+    private final Map<Integer, Column> columnsByStage = new HashMap<>();
+    private Column[] columns = new Column[0];
+    private int[] days = new int[0];
+    private float[] dayTops = new float[0];
+    private long[] dayStarts = new long[0];
+    private float height;
+
+    /**
+     * lay out a new lineup
+     *
+     * @param concerts concerts of the festival
+     * @return false if nothing changed since the last call
+     */
+    boolean setConcerts(List<ScheduledConcert> concerts) {
+        Map<Long, Cell> next = new HashMap<>(concerts.size() * 2);
+        Set<Integer> dirtyStages = new HashSet<>();
+        for (ScheduledConcert concert : concerts) {
+            Cell cell = cells.remove(concert.getId());
+            if (cell == null) {
+                cell = new Cell();
+                dirtyStages.add(concert.getStage());
+            } else if (!cell.concert.equals(concert)) {
+                dirtyStages.add(cell.concert.getStage());
+                dirtyStages.add(concert.getStage());
+                if (!cell.concert.getArtist().equals(concert.getArtist()))
+                    cell.label = null;
+            }
+            cell.concert = concert;
+            next.put(concert.getId(), cell);
+        }
+        // the cells left are of removed concerts
+        for (Cell cell : cells.values())
+            dirtyStages.add(cell.concert.getStage());
+        cells = next;
+        if (dirtyStages.isEmpty())
+            return false;
+
+        for (Integer stage : dirtyStages) {
+            Column column = columnsByStage.get(stage);
+            if (column == null)
+                columnsByStage.put(stage, new Column(stage));
+            else
+                column.cells.clear();
+        }
+        for (Cell cell : cells.values())
+            if (dirtyStages.contains(cell.concert.getStage()))
+                columnsByStage.get(cell.concert.getStage()).cells.add(cell);
+        for (Integer stage : dirtyStages) {
+            Column column = columnsByStage.get(stage);
+            if (column.cells.isEmpty())
+                columnsByStage.remove(stage);
+            else
+                Collections.sort(column.cells, BY_START);
+        }
+
+        boolean stagesChanged = updateColumns();
+        boolean daysChanged = updateDays();
+        for (int i = 0; i < columns.length; i++)
+            if (stagesChanged || daysChanged || dirtyStages.contains(columns[i].stage))
+                position(columns[i], i);
+        return true;
+    }
+
+    /**
+     * @return true if the columns got other indices
+     */
+    private boolean updateColumns() {
+        int[] stages = new int[columnsByStage.size()];
+        int i = 0;
+        for (Integer stage : columnsByStage.keySet())
+            stages[i++] = stage;
+        Arrays.sort(stages);
+        boolean changed = stages.length != columns.length;
+        for (i = 0; i < stages.length && !changed; i++)
+            changed = columns[i].stage != stages[i];
+        if (!changed)
+            return false;
+        columns = new Column[stages.length];
+        for (i = 0; i < stages.length; i++)
+            columns[i] = columnsByStage.get(stages[i]);
+        return true;
+    }
+
+    /**
+     * @return true if the top or the start of a day moved
+     */
+    private boolean updateDays() {
+        TreeMap<Integer, long[]> bounds = new TreeMap<>();
+        for (Cell cell : cells.values()) {
+            long start = cell.concert.getStart() / MINUTE;
+            long end = cell.concert.getEnd() / MINUTE;
+            long[] day = bounds.get(cell.concert.getDay());
+            if (day == null) {
+                bounds.put(cell.concert.getDay(), new long[]{start, end});
+            } else {
+                day[0] = Math.min(day[0], start);
+                day[1] = Math.max(day[1], end);
+            }
+        }
+        int[] newDays = new int[bounds.size()];
+        float[] newTops = new float[bounds.size()];
+        long[] newStarts = new long[bounds.size()];
+        float top = 0;
+        int i = 0;
+        for (Map.Entry<Integer, long[]> day : bounds.entrySet()) {
+            top += DAY_HEADER;
+            newDays[i] = day.getKey();
+            newTops[i] = top;
+            newStarts[i] = day.getValue()[0];
+            top += Math.max(0, day.getValue()[1] - day.getValue()[0]);
+            i++;
+        }
+        height = top;
+        boolean changed = !Arrays.equals(days, newDays) || !Arrays.equals(dayTops, newTops) ||
+                !Arrays.equals(dayStarts, newStarts);
+        days = newDays;
+        dayTops = newTops;
+        dayStarts = newStarts;
+        return changed;
+    }
+
+    private void position(Column column, int index) {
+        int size = column.cells.size();
+        if (column.maxBottoms.length != size)
+            column.maxBottoms = new float[size];
+        float maxBottom = 0;
+        for (int i = 0; i < size; i++) {
+            Cell cell = column.cells.get(i);
+            int day = Arrays.binarySearch(days, cell.concert.getDay());
+            cell.column = index;
+            cell.top = dayTops[day] + (cell.concert.getStart() / MINUTE - dayStarts[day]);
+            cell.bottom = Math.max(cell.top,
+                    dayTops[day] + (cell.concert.getEnd() / MINUTE - dayStarts[day]));
+            maxBottom = Math.max(maxBottom, cell.bottom);
+            column.maxBottoms[i] = maxBottom;
+        }
+    }
+
+    /**
+     * collect the cells intersecting an area of the timetable
+     *
+     * @param firstColumn first visible column
+     * @param lastColumn  last visible column, inclusive
+     * @param top         top of the area in minutes
+     * @param bottom      bottom of the area in minutes
+     * @param result      list the cells are added to, cleared first
+     */
+    void getVisibleCells(int firstColumn, int lastColumn, float top, float bottom,
+                         List<Cell> result) {
+        result.clear();
+        firstColumn = Math.max(firstColumn, 0);
+        lastColumn = Math.min(lastColumn, columns.length - 1);
+        for (int c = firstColumn; c <= lastColumn; c++) {
+            Column column = columns[c];
+            float[] maxBottoms = column.maxBottoms;
+            int low = 0;
+            int high = maxBottoms.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (maxBottoms[middle] <= top)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            for (int i = low; i < maxBottoms.length; i++) {
+                Cell cell = column.cells.get(i);
+                if (cell.top >= bottom)
+                    break;
+                if (cell.bottom > top)
+                    result.add(cell);
+            }
+        }
+    }
+
+    /**
+     * forget the cached labels, after the width they were made for changed
+     */
+    void clearLabels() {
+        for (Cell cell : cells.values())
+            cell.label = null;
+    }
+
+    int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * @return stage number shown in a column
+     */
+    int getStage(int column) {
+        return columns[column].stage;
+    }
+
+    int getDayCount() {
+        return days.length;
+    }
+
+    /**
+     * @param index index of the day, from 0 to {@link #getDayCount()}
+     * @return day number, relevant to the festival
+     */
+    int getDay(int index) {
+        return days[index];
+    }
+
+    /**
+     * @return top of the first concert of a day in minutes, its header is right above
+     */
+    float getDayTop(int index) {
+        return dayTops[index];
+    }
+
+    /**
+     * @return bottom of the last concert of a day in minutes
+     */
+    float getDayBottom(int index) {
+        return (index + 1 < dayTops.length) ? dayTops[index + 1] - DAY_HEADER : height;
+    }
+
+    /**
+     * @return start of the first concert of a day in minutes since the epoch
+     */
+    long getDayStart(int index) {
+        return dayStarts[index];
+    }
+
+    /**
+     * @return height of the whole timetable in minutes
+     */
+    float getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.frontend.currentfestival;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.support.v4.view.ViewCompat;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+import android.widget.OverScroller;
+
+import com.ivanbratoev.festpal.R;
+import com.ivanbratoev.festpal.datamodel.ScheduledConcert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Timetable of a festival with a column per stage and time running down, the days one below
+ * the other. Only the cells intersecting the screen are drawn, from positions computed by a
+ * {@link TimetableLayout} when the lineup changes, so drawing a frame does not depend on the
+ * size of the festival and allocates nothing. Scrolls and flings in both directions and zooms
+ * the time axis with a pinch
+ */
+public class TimetableView extends View {
+
+    private static final float COLUMN_WIDTH_DP = 120;
+    private static final float HEADER_HEIGHT_DP = 32;
+    private static final float TIME_AXIS_WIDTH_DP = 48;
+    private static final float CELL_INSET_DP = 2;
+    private static final float TEXT_PADDING_DP = 4;
+    private static final float TEXT_SIZE_SP = 14;
+    private static final float DEFAULT_PIXELS_PER_MINUTE_DP = 2;
+    private static final float MIN_PIXELS_PER_MINUTE_DP = 0.25f;
+    private static final float MAX_PIXELS_PER_MINUTE_DP = 8;
+    private static final int MINUTES_PER_HOUR = 60;
+    private static final long MINUTE_MILLIS = 60_000;
+    private static final int HOURS_PER_DAY = 24;
+    private static final String[] HOUR_LABELS = new String[HOURS_PER_DAY];
+
+    static {
+        for (int i = 0; i < HOURS_PER_DAY; i++)
+            HOUR_LABELS[i] = String.format(Locale.US, "%02d:00", i);
+    }
+
+    private final TimetableLayout layout = new TimetableLayout();
+    /**
+     * cells drawn in the current frame, reused between frames
+     */
+    private final List<TimetableLayout.Cell> visible = new ArrayList<>();
+    private final RectF rect = new RectF();
+    private final Paint cellPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint headerPaint = new Paint();
+    private final TextPaint textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final OverScroller scroller;
+    private final GestureDetector gestureDetector;
+    private final ScaleGestureDetector scaleGestureDetector;
+
+    private final float columnWidth;
+    private final float headerHeight;
+    private final float timeAxisWidth;
+    private final float cellInset;
+    private final float textPadding;
+    private final float minPixelsPerMinute;
+    private final float maxPixelsPerMinute;
+    private float pixelsPerMinute;
+    private float offsetX;
+    private float offsetY;
+    /**
+     * header labels, made when the lineup changes instead of in every frame
+     */
+    private String[] stageLabels = new String[0];
+    private String[] dayLabels = new String[0];
+    /**
+     * offset of the local time from UTC at the start of each day, in minutes
+     */
+    private int[] dayTimeZoneOffsets = new int[0];
+
+    public TimetableView(Context context) {
+        this(context, null);
+    }
+
+    public TimetableView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        float density = getResources().getDisplayMetrics().density;
+        columnWidth = COLUMN_WIDTH_DP * density;
+        headerHeight = HEADER_HEIGHT_DP * density;
+        timeAxisWidth = TIME_AXIS_WIDTH_DP * density;
+        cellInset = CELL_INSET_DP * density;
+        textPadding = TEXT_PADDING_DP * density;
+        minPixelsPerMinute = MIN_PIXELS_PER_MINUTE_DP * density;
+        maxPixelsPerMinute = MAX_PIXELS_PER_MINUTE_DP * density;
+        pixelsPerMinute = DEFAULT_PIXELS_PER_MINUTE_DP * density;
+
+        cellPaint.setColor(Color.rgb(0x3F, 0x51, 0xB5));
+        headerPaint.setColor(Color.rgb(0xEE, 0xEE, 0xEE));
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(TEXT_SIZE_SP * getResources().getDisplayMetrics().scaledDensity);
+
+        scroller = new OverScroller(context);
+        gestureDetector = new GestureDetector(context,
+                new GestureDetector.SimpleOnGestureListener() {
+                    @Override
+                    public boolean onDown(MotionEvent e) {
+                        scroller.forceFinished(true);
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX,
+                                            float distanceY) {
+                        scrollTo(offsetX + distanceX, offsetY + distanceY);
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX,
+                                           float velocityY) {
+                        scroller.fling((int) offsetX, (int) offsetY, (int) -velocityX,
+                                (int) -velocityY, 0, (int) getMaxOffsetX(), 0,
+                                (int) getMaxOffsetY());
+                        ViewCompat.postInvalidateOnAnimation(TimetableView.this);
+                        return true;
+                    }
+                });
+        scaleGestureDetector = new ScaleGestureDetector(context,
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        zoom(detector.getScaleFactor(), detector.getFocusY());
+                        return true;
+                    }
+                });
+    }
+
+    /**
+     * show a lineup, keeping the cells of unchanged concerts
+     *
+     * @param concerts concerts of the festival
+     */
+    public void setSchedule(List<ScheduledConcert> concerts) {
+        if (!layout.setConcerts(concerts))
+            return;
+        stageLabels = new String[layout.getColumnCount()];
+        for (int i = 0; i < stageLabels.length; i++)
+            stageLabels[i] = getContext().getString(R.string.concert_stage, layout.getStage(i));
+        dayLabels = new String[layout.getDayCount()];
+        dayTimeZoneOffsets = new int[layout.getDayCount()];
+        TimeZone timeZone = TimeZone.getDefault();
+        for (int i = 0; i < dayLabels.length; i++) {
+            dayLabels[i] = getContext().getString(R.string.timetable_day, layout.getDay(i));
+            dayTimeZoneOffsets[i] = timeZone.getOffset(
+                    layout.getDayStart(i) * MINUTE_MILLIS) / (int) MINUTE_MILLIS;
+        }
+        scrollTo(offsetX, offsetY);
+        invalidate();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = scaleGestureDetector.onTouchEvent(event);
+        if (!scaleGestureDetector.isInProgress())
+            handled = gestureDetector.onTouchEvent(event) || handled;
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    public void computeScroll() {
+        if (scroller.computeScrollOffset()) {
+            scrollTo(scroller.getCurrX(), scroller.getCurrY());
+            ViewCompat.postInvalidateOnAnimation(this);
+        }
+    }
+
+    /**
+     * scale the time axis, keeping the time under the focus in place
+     */
+    private void zoom(float factor, float focusY) {
+        float scaled = Math.max(minPixelsPerMinute,
+                Math.min(maxPixelsPerMinute, pixelsPerMinute * factor));
+        float focus = focusY - headerHeight;
+        float minute = (offsetY + focus) / pixelsPerMinute;
+        pixelsPerMinute = scaled;
+        scrollTo(offsetX, minute * pixelsPerMinute - focus);
+    }
+
+    private void scrollTo(float x, float y) {
+        offsetX = Math.max(0, Math.min(x, getMaxOffsetX()));
+        offsetY = Math.max(0, Math.min(y, getMaxOffsetY()));
+        invalidate();
+    }
+
+    private float getMaxOffsetX() {
+        return Math.max(0, layout.getColumnCount() * columnWidth - (getWidth() - timeAxisWidth));
+    }
+
+    private float getMaxOffsetY() {
+        return Math.max(0, layout.getHeight() * pixelsPerMinute - (getHeight() - headerHeight));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int width = getWidth();
+        int height = getHeight();
+        float top = offsetY / pixelsPerMinute;
+        float bottom = (offsetY + height - headerHeight) / pixelsPerMinute;
+        int firstColumn = (int) (offsetX / columnWidth);
+        int lastColumn = (int) ((offsetX + width - timeAxisWidth) / columnWidth);
+        layout.getVisibleCells(firstColumn, lastColumn, top, bottom, visible);
+
+        canvas.save();
+        canvas.clipRect(timeAxisWidth, headerHeight, width, height);
+        float textHeight = textPaint.getTextSize() + textPadding;
+        for (int i = 0; i < visible.size(); i++) {
+            TimetableLayout.Cell cell = visible.get(i);
+            rect.set(timeAxisWidth + cell.column * columnWidth - offsetX + cellInset,
+                    headerHeight + cell.top * pixelsPerMinute - offsetY + cellInset,
+                    timeAxisWidth + (cell.column + 1) * columnWidth - offsetX - cellInset,
+                    headerHeight + cell.bottom * pixelsPerMinute - offsetY - cellInset);
+            canvas.drawRect(rect, cellPaint);
+            if (rect.height() < textHeight)
+                continue;
+            if (cell.label == null)
+                cell.label = TextUtils.ellipsize(cell.concert.getArtist(), textPaint,
+                        columnWidth - 2 * (cellInset + textPadding), TextUtils.TruncateAt.END);
+            canvas.drawText(cell.label, 0, cell.label.length(), rect.left + textPadding,
+                    rect.top + textHeight - textPadding / 2, textPaint);
+        }
+        textPaint.setColor(Color.DKGRAY);
+        for (int i = 0; i < dayLabels.length; i++) {
+            float dayTop = headerHeight + layout.getDayTop(i) * pixelsPerMinute - offsetY;
+            float headerTop = dayTop - TimetableLayout.DAY_HEADER * pixelsPerMinute;
+            if (dayTop < headerHeight || headerTop > height)
+                continue;
+            canvas.drawText(dayLabels[i], timeAxisWidth + textPadding, dayTop - textPadding,
+                    textPaint);
+        }
+        canvas.restore();
+
+        canvas.drawRect(0, 0, width, headerHeight, headerPaint);
+        canvas.drawRect(0, headerHeight, timeAxisWidth, height, headerPaint);
+        drawHourLabels(canvas, top, bottom, textHeight);
+        for (int c = Math.max(firstColumn, 0);
+             c <= Math.min(lastColumn, stageLabels.length - 1); c++) {
+            float left = timeAxisWidth + c * columnWidth - offsetX;
+            canvas.save();
+            canvas.clipRect(Math.max(left, timeAxisWidth), 0, left + columnWidth, headerHeight);
+            canvas.drawText(stageLabels[c], left + textPadding, headerHeight - textPadding,
+                    textPaint);
+            canvas.restore();
+        }
+        textPaint.setColor(Color.WHITE);
+    }
+
+    /**
+     * label the full hours of the visible days on the time axis, leaving out hours when they
+     * would overlap
+     */
+    private void drawHourLabels(Canvas canvas, float top, float bottom, float textHeight) {
+        int step = Math.max(1, (int) Math.ceil(textHeight / (MINUTES_PER_HOUR * pixelsPerMinute)));
+        canvas.save();
+        canvas.clipRect(0, headerHeight, timeAxisWidth, getHeight());
+        for (int i = 0; i < dayLabels.length; i++) {
+            float dayTop = layout.getDayTop(i);
+            float dayBottom = layout.getDayBottom(i);
+            if (dayBottom < top || dayTop > bottom)
+                continue;
+            long localStart = layout.getDayStart(i) + dayTimeZoneOffsets[i];
+            long hour = (localStart + MINUTES_PER_HOUR - 1) / MINUTES_PER_HOUR;
+            for (; ; hour += step) {
+                float minute = dayTop + (hour * MINUTES_PER_HOUR - localStart);
+                if (minute > dayBottom || minute > bottom + MINUTES_PER_HOUR)
+                    break;
+                canvas.drawText(HOUR_LABELS[(int) (hour % HOURS_PER_DAY)], textPadding,
+                        headerHeight + minute * pixelsPerMinute - offsetY + textHeight / 2,
+                        textPaint);
+            }
+        }
+        canvas.restore();
+    }
+}
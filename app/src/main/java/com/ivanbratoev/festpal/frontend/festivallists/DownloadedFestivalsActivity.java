@@ -14,19 +14,101 @@
  *    limitations under the License.
  */
 
+
 package com.ivanbratoev.festpal.frontend.festivallists;
 
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ListView;
 
 import com.ivanbratoev.festpal.R;
+import com.ivanbratoev.festpal.datamodel.DataModel;
+import com.ivanbratoev.festpal.datamodel.Festival;
+import com.ivanbratoev.festpal.datamodel.FestivalSummary;
+import com.ivanbratoev.festpal.datamodel.db.external.ClientDoesNotHavePermissionException;
 
-//TODO:implement
+/**
+ * Lists the festivals of the offline database from their summaries. The description, address
+ * and prices of a festival are read only when it is opened
+ */
 public class DownloadedFestivalsActivity extends AppCompatActivity {
 
+    private FestivalSummaryAdapter adapter;
+    private ListView listView;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_downloaded_festivals);
+        adapter = new FestivalSummaryAdapter(this);
+        listView = (ListView) findViewById(R.id.list);
+        listView.setAdapter(adapter);
+        listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                showDetails(adapter.getItem(position));
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final FestivalSummary[] festivals =
+                        DataModel.getInstance().getOfflineFestivalSummaries();
+                listView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        adapter.setFestivals(festivals);
+                    }
+                });
+            }
+        });
+    }
+
+    private void showDetails(final FestivalSummary summary) {
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Festival festival;
+                try {
+                    festival = DataModel.getInstance().readFestivalInfo(summary.getId(), false);
+                } catch (ClientDoesNotHavePermissionException ignore) {
+                    // only thrown when writing to the external database
+                    return;
+                }
+                if (festival == null)
+                    return;
+                listView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isFinishing())
+                            return;
+                        new AlertDialog.Builder(DownloadedFestivalsActivity.this)
+                                .setTitle(festival.getName())
+                                .setMessage(getString(R.string.festival_details,
+                                        orEmpty(festival.getDescription()),
+                                        orEmpty(festival.getAddress()),
+                                        orEmpty(festival.getPrices())))
+                                .setPositiveButton(android.R.string.ok, null)
+                                .show();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the text, or an empty one instead of null for fields the festival does not have
+     */
+    private static String orEmpty(String text) {
+        return (text == null) ? "" : text;
     }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.frontend.festivallists;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import com.ivanbratoev.festpal.R;
+import com.ivanbratoev.festpal.datamodel.FestivalSummary;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+/**
+ * Rows of a list of festivals. Only the fields of a {@link FestivalSummary} are bound, the
+ * whole festival is read when a row is opened
+ */
+class FestivalSummaryAdapter extends BaseAdapter {
+
+    private static final FestivalSummary[] NO_FESTIVALS = new FestivalSummary[0];
+
+    private final LayoutInflater inflater;
+    private final Context context;
+    private final DateFormat dateFormat;
+    private FestivalSummary[] festivals = NO_FESTIVALS;
+
+    FestivalSummaryAdapter(Context context) {
+        this.context = context;
+        this.inflater = LayoutInflater.from(context);
+        this.dateFormat = android.text.format.DateFormat.getDateFormat(context);
+    }
+
+    /**
+     * show other festivals. Called on the main thread
+     *
+     * @param update festivals to show, null for none
+     */
+    void setFestivals(FestivalSummary[] update) {
+        festivals = (update == null) ? NO_FESTIVALS : update;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        return festivals.length;
+    }
+
+    @Override
+    public FestivalSummary getItem(int position) {
+        return festivals[position];
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return festivals[position].getId();
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View row = convertView;
+        RowViews views;
+        if (row == null) {
+            row = inflater.inflate(R.layout.festival_summary_row, parent, false);
+            views = new RowViews(row);
+            row.setTag(views);
+        } else {
+            views = (RowViews) row.getTag();
+        }
+        FestivalSummary festival = festivals[position];
+        views.name.setText(festival.getName());
+        if (festival.hasDates())
+            views.cityDates.setText(context.getString(R.string.festival_city_dates,
+                    festival.getCity(), dateFormat.format(new Date(festival.getStart())),
+                    dateFormat.format(new Date(festival.getEnd()))));
+        else
+            views.cityDates.setText(festival.getCity());
+        views.votes.setText(context.getString(R.string.festival_votes, festival.getVotes()));
+        return row;
+    }
+
+    private static class RowViews {
+        final TextView name;
+        final TextView cityDates;
+        final TextView votes;
+
+        RowViews(View row) {
+            name = (TextView) row.findViewById(R.id.name);
+            cityDates = (TextView) row.findViewById(R.id.city_dates);
+            votes = (TextView) row.findViewById(R.id.votes);
+        }
+    }
+}
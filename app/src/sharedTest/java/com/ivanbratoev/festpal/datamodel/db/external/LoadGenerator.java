@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel.db.external;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives many {@link ExternalDatabaseHandler} clients concurrently, each from its own thread,
+ * and records the latency and outcome of every call
+ */
+public class LoadGenerator {
+
+    private final int clients;
+    private final int callsPerClient;
+
+    /**
+     * a call made repeatedly by every client
+     */
+    public interface Call {
+        /**
+         * @param handler   handler of the calling client
+         * @param client    index of the calling client
+         * @param iteration index of the call within the client
+         * @return true if the call succeeded
+         */
+        boolean run(ExternalDatabaseHandler handler, int client, int iteration) throws Exception;
+    }
+
+    /**
+     * @param clients        number of concurrent clients, each with its own handler
+     * @param callsPerClient number of calls made by every client
+     */
+    public LoadGenerator(int clients, int callsPerClient) {
+        this.clients = clients;
+        this.callsPerClient = callsPerClient;
+    }
+
+    /**
+     * run the call from all clients at once and wait for them to finish
+     */
+    public Result run(final Call call) throws InterruptedException {
+        final CountDownLatch ready = new CountDownLatch(clients);
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(clients);
+        final AtomicInteger failed = new AtomicInteger();
+        final long[][] latencies = new long[clients][callsPerClient];
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            final int client = i;
+            final ExternalDatabaseHandler handler =
+                    new ExternalDatabaseHandler("load-client-" + client);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ready.countDown();
+                        go.await();
+                        for (int iteration = 0; iteration < callsPerClient; iteration++) {
+                            long start = System.nanoTime();
+                            boolean succeeded;
+                            try {
+                                succeeded = call.run(handler, client, iteration);
+                            } catch (Exception ignore) {
+                                succeeded = false;
+                            }
+                            latencies[client][iteration] = System.nanoTime() - start;
+                            if (!succeeded)
+                                failed.incrementAndGet();
+                        }
+                    } catch (InterruptedException ignore) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "LoadGenerator-" + client);
+            threads.add(thread);
+            thread.start();
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        long[] all = new long[clients * callsPerClient];
+        for (int i = 0; i < clients; i++)
+            System.arraycopy(latencies[i], 0, all, i * callsPerClient, callsPerClient);
+        Arrays.sort(all);
+        return new Result(all, failed.get(), elapsed);
+    }
+
+    /**
+     * outcome of a load run
+     */
+    public static class Result {
+        private final long[] sortedLatencies;
+        private final int failed;
+        private final long elapsedNanos;
+
+        private Result(long[] sortedLatencies, int failed, long elapsedNanos) {
+            this.sortedLatencies = sortedLatencies;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getCalls() {
+            return sortedLatencies.length;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        /**
+         * @return completed calls per second over all clients
+         */
+        public double getThroughput() {
+            return sortedLatencies.length * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return latency of a single call in milliseconds
+         */
+        public double getLatencyMillis(double percentile) {
+            if (sortedLatencies.length == 0)
+                return 0;
+            int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+            index = Math.max(0, Math.min(sortedLatencies.length - 1, index));
+            return sortedLatencies[index] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d calls, %d failed, %.1f calls/s, p50 %.1fms, p99 %.1fms",
+                    getCalls(), failed, getThroughput(), getLatencyMillis(50),
+                    getLatencyMillis(99));
+        }
+    }
+}
@@ -0,0 +1,872 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel.db.external;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process HTTP server imitating the external database. It serves every endpoint of
+ * {@link ExternalDatabaseDefinitions} from memory, so {@link ExternalDatabaseHandler} can be
+ * exercised over a real connection. Latency, a bandwidth cap and failures can be injected to
+ * imitate realistic network conditions, and the requests made are counted.
+ * <p/>
+ * A failure status of 0 closes the connection without an answer.
+ */
+public class StubExternalServer {
+
+    private static final String CONTENT_TYPE_TEXT = "text/plain; charset=utf-8";
+    private static final String CONTENT_TYPE_JSON = "application/json; charset=utf-8";
+    private static final int BANDWIDTH_CHUNK = 512;
+    private static final Set<String> PATHS = new HashSet<>(Arrays.asList(
+            "register/", "login/", "logout/", "mult/fest/", "r/fest/", "w/fest/", "u/fest/",
+            "d/fest/", "v/", "dig/fest/", "mult/conc/", "r/conc/", "w/conc/", "u/conc/", "d/conc/",
+            "batch/w/conc/", "batch/u/conc/", "batch/d/conc/"));
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicLong bodyBytes = new AtomicLong();
+    private final ConcurrentHashMap<String, AtomicInteger> requestCountByPath =
+            new ConcurrentHashMap<>();
+    private final AtomicInteger pendingFailures = new AtomicInteger();
+    private volatile int failureStatus;
+    private volatile double failureRate;
+    private volatile int randomFailureStatus;
+    private volatile long latency;
+    private volatile int bandwidth;
+    private final Random random = new Random(1);
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Map<Long, JSONObject> festivals = new LinkedHashMap<>();
+    private final Map<Long, JSONObject> concerts = new LinkedHashMap<>();
+    private final Map<String, String> passwords = new HashMap<>();
+    private final Set<String> disabledUsers = new HashSet<>();
+    private final Map<String, String> sessions = new HashMap<>();
+    private final Set<String> deniedClients =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile boolean running;
+
+    public StubExternalServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    }
+
+    /**
+     * start accepting connections
+     */
+    public void start() {
+        running = true;
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        try {
+                            executor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    handleConnection(socket);
+                                }
+                            });
+                        } catch (RejectedExecutionException ignore) {
+                            socket.close();
+                        }
+                    } catch (IOException ignore) {
+                        // socket closed by stop()
+                    }
+                }
+            }
+        }, "StubExternalServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * stop accepting connections and release the port
+     */
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException ignore) {
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return base address of the server, ending with "/"
+     */
+    public String getAddress() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+    }
+
+    /**
+     * make every {@link ExternalDatabaseHandler} send its requests to this server
+     */
+    public void useForHandlers() {
+        ExternalDatabaseHelper.setAddress(getAddress());
+    }
+
+    /**
+     * @return number of requests served since start or the last reset
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @param path request path without the leading "/", e.g. "w/conc/"
+     * @return number of requests served for the path since start or the last reset
+     */
+    public int getRequestCount(String path) {
+        AtomicInteger count = requestCountByPath.get(path);
+        return (count == null) ? 0 : count.get();
+    }
+
+    /**
+     * @return total size of the response bodies sent since start or the last reset
+     */
+    public long getResponseBodyBytes() {
+        return bodyBytes.get();
+    }
+
+    public void resetRequestCounts() {
+        requestCount.set(0);
+        requestCountByPath.clear();
+        bodyBytes.set(0);
+    }
+
+    /**
+     * answer the next requests with an HTTP error instead of serving them
+     *
+     * @param count  number of requests to fail
+     * @param status HTTP status code to answer with
+     */
+    public void failNextRequests(int count, int status) {
+        failureStatus = status;
+        pendingFailures.set(count);
+    }
+
+    /**
+     * answer a random share of the requests with an HTTP error instead of serving them
+     *
+     * @param rate   share of the requests to fail, between 0 and 1
+     * @param status HTTP status code to answer with
+     */
+    public void setFailureRate(double rate, int status) {
+        randomFailureStatus = status;
+        failureRate = rate;
+    }
+
+    /**
+     * @param millis time to wait before answering each request
+     */
+    public void setLatency(long millis) {
+        latency = millis;
+    }
+
+    /**
+     * @param bytesPerSecond maximal rate at which responses are sent, 0 for no limit
+     */
+    public void setBandwidth(int bytesPerSecond) {
+        bandwidth = bytesPerSecond;
+    }
+
+    /**
+     * answer every request of the client with a permission error
+     *
+     * @param client client name as sent by {@link ExternalDatabaseHandler}
+     */
+    public void denyClient(String client) {
+        deniedClients.add(client);
+    }
+
+    /**
+     * add a user account which can log in
+     */
+    public synchronized void addUser(String username, String password) {
+        passwords.put(username, password);
+    }
+
+    /**
+     * keep the account, but refuse to log it in
+     */
+    public synchronized void disableUser(String username) {
+        disabledUsers.add(username);
+    }
+
+    /**
+     * add a festival to the served data
+     *
+     * @return external id of the festival
+     */
+    public synchronized long addFestival(String name, String owner) {
+        long id = nextId.getAndIncrement();
+        try {
+            JSONObject festival = new JSONObject();
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_ID, id);
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_NAME, name);
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_DESCRIPTION, "");
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_COUNTRY, "");
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_CITY, "");
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_ADDRESS, "");
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_GENRE, "");
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_PRICES, "");
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_OWNER, owner);
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_OFFICIAL, false);
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_VOTES, 0);
+            festivals.put(id, festival);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return id;
+    }
+
+    /**
+     * add festivals and concerts in the format the server sends them, e.g. the response fixtures
+     *
+     * @param festivalsJson JSON array of festivals
+     * @param concertsJson  JSON array of concerts of these festivals
+     */
+    public synchronized void addFixtures(String festivalsJson, String concertsJson)
+            throws JSONException {
+        JSONArray festivalArray = new JSONArray(festivalsJson);
+        for (int i = 0; i < festivalArray.length(); i++) {
+            JSONObject festival = festivalArray.getJSONObject(i);
+            long id = festival.getLong(
+                    ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_ID);
+            festivals.put(id, festival);
+            reserveId(id);
+        }
+        JSONArray concertArray = new JSONArray(concertsJson);
+        for (int i = 0; i < concertArray.length(); i++) {
+            JSONObject concert = concertArray.getJSONObject(i);
+            long id = concert.getLong(
+                    ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_EXTERNAL_ID);
+            concerts.put(id, concert);
+            reserveId(id);
+        }
+    }
+
+    private void reserveId(long id) {
+        long next;
+        do {
+            next = nextId.get();
+        } while (next <= id && !nextId.compareAndSet(next, id + 1));
+    }
+
+    /**
+     * @return number of festivals stored by the server
+     */
+    public synchronized int getFestivalCount() {
+        return festivals.size();
+    }
+
+    /**
+     * @return number of concerts stored by the server
+     */
+    public synchronized int getConcertCount() {
+        return concerts.size();
+    }
+
+    private void handleConnection(Socket socket) {
+        try {
+            InputStream in = socket.getInputStream();
+            String requestLine = readLine(in);
+            if (requestLine == null)
+                return;
+            String[] requestParts = requestLine.split(" ");
+            if (requestParts.length < 2)
+                return;
+            int contentLength = 0;
+            String header;
+            while ((header = readLine(in)) != null && !header.isEmpty()) {
+                int colon = header.indexOf(':');
+                if (colon > 0 && header.substring(0, colon).trim().
+                        equalsIgnoreCase("Content-Length"))
+                    contentLength = Integer.parseInt(header.substring(colon + 1).trim());
+            }
+            byte[] body = new byte[contentLength];
+            int read = 0;
+            while (read < contentLength) {
+                int count = in.read(body, read, contentLength - read);
+                if (count < 0)
+                    break;
+                read += count;
+            }
+            String path = requestParts[1].startsWith("/") ?
+                    requestParts[1].substring(1) : requestParts[1];
+            requestCount.incrementAndGet();
+            countPath(path);
+            if (latency > 0)
+                Thread.sleep(latency);
+            Response response;
+            if (takePendingFailure())
+                response = failure(failureStatus);
+            else if (takeRandomFailure())
+                response = failure(randomFailureStatus);
+            else if ("HEAD".equals(requestParts[0]))
+                response = text("");
+            else
+                response = route(path, parseParameters(new String(body, 0, read, "UTF-8")));
+            if (response.status == 0)
+                return;
+            writeResponse(socket.getOutputStream(), response, "HEAD".equals(requestParts[0]));
+        } catch (IOException | RuntimeException | InterruptedException ignore) {
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private boolean takePendingFailure() {
+        int pending;
+        do {
+            pending = pendingFailures.get();
+            if (pending <= 0)
+                return false;
+        } while (!pendingFailures.compareAndSet(pending, pending - 1));
+        return true;
+    }
+
+    private boolean takeRandomFailure() {
+        double rate = failureRate;
+        if (rate <= 0)
+            return false;
+        synchronized (random) {
+            return random.nextDouble() < rate;
+        }
+    }
+
+    private void countPath(String path) {
+        AtomicInteger count = requestCountByPath.get(path);
+        if (count == null) {
+            AtomicInteger created = new AtomicInteger();
+            count = requestCountByPath.putIfAbsent(path, created);
+            if (count == null)
+                count = created;
+        }
+        count.incrementAndGet();
+    }
+
+    private Response route(String path, Map<String, String> parameters) {
+        if (!PATHS.contains(path))
+            return new Response(404, CONTENT_TYPE_TEXT, "Not Found");
+        String client = parameters.get(ExternalDatabaseDefinitions.PARAMETER_CLIENT);
+        if (client == null || client.isEmpty())
+            return text(ExternalDatabaseDefinitions.RESPONSE_NO_CLIENT_NAME);
+        if (deniedClients.contains(client))
+            return text(ExternalDatabaseDefinitions.RESPONSE_CLIENT_NO_PERMISSION);
+        try {
+            switch (path) {
+                case "register/":
+                    return text(register(parameters));
+                case "login/":
+                    return text(login(client, parameters));
+                case "logout/":
+                    return text(logout(client));
+                case "mult/fest/":
+                    return readMultipleFestivals(parameters);
+                case "r/fest/":
+                    return readFestival(parameters);
+                case "w/fest/":
+                    return text(writeFestival(client, parameters));
+                case "u/fest/":
+                    return text(updateFestival(parameters));
+                case "d/fest/":
+                    return text(deleteFestival(parameters));
+                case "v/":
+                    return text(vote(parameters));
+                case "dig/fest/":
+                    return readFestivalDigest(parameters);
+                case "mult/conc/":
+                    return readFestivalConcerts(parameters);
+                case "r/conc/":
+                    return readConcert(parameters);
+                case "w/conc/":
+                    return text(writeConcert(new JSONObject(parameters)));
+                case "u/conc/":
+                    return text(updateConcert(new JSONObject(parameters)));
+                case "d/conc/":
+                    return text(deleteConcert(new JSONObject(parameters)));
+                default:
+                    return batch(path, parameters);
+            }
+        } catch (JSONException | NumberFormatException ignore) {
+            return text(ExternalDatabaseDefinitions.RESPONSE_INCORRECT_INPUT);
+        }
+    }
+
+    private synchronized String register(Map<String, String> parameters) {
+        String username = parameters.get(
+                ExternalDatabaseDefinitions.RegisterContext.PARAMETER_USERNAME);
+        String email = parameters.get(ExternalDatabaseDefinitions.RegisterContext.PARAMETER_EMAIL);
+        String password = parameters.get(
+                ExternalDatabaseDefinitions.RegisterContext.PARAMETER_PASSWORD);
+        if (isEmpty(username) || isEmpty(email) || isEmpty(password))
+            return ExternalDatabaseDefinitions.RegisterContext.RESULT_MISSING_NON_OPTIONAL_FIELDS;
+        if (passwords.containsKey(username))
+            return ExternalDatabaseDefinitions.RegisterContext.RESULT_INVALID_USERNAME;
+        if (!email.contains("@"))
+            return ExternalDatabaseDefinitions.RegisterContext.RESULT_INVALID_EMAIL;
+        passwords.put(username, password);
+        return ExternalDatabaseDefinitions.RegisterContext.RESULT_OK;
+    }
+
+    private synchronized String login(String client, Map<String, String> parameters) {
+        String username = parameters.get(
+                ExternalDatabaseDefinitions.LogInContext.PARAMETER_USERNAME);
+        String password = parameters.get(
+                ExternalDatabaseDefinitions.LogInContext.PARAMETER_PASSWORD);
+        if (isEmpty(username))
+            return ExternalDatabaseDefinitions.LogInContext.RESPONSE_NO_USERNAME;
+        if (isEmpty(password))
+            return ExternalDatabaseDefinitions.LogInContext.RESPONSE_NO_PASSWORD;
+        if (!password.equals(passwords.get(username)))
+            return ExternalDatabaseDefinitions.LogInContext.RESPONSE_INVALID;
+        if (disabledUsers.contains(username))
+            return ExternalDatabaseDefinitions.LogInContext.RESPONSE_DISABLED;
+        sessions.put(client, username);
+        return ExternalDatabaseDefinitions.LogInContext.RESPONSE_OK;
+    }
+
+    private synchronized String logout(String client) {
+        sessions.remove(client);
+        return ExternalDatabaseDefinitions.LOG_OUT_RESPONSE_SUCCESS;
+    }
+
+    private synchronized Response readMultipleFestivals(Map<String, String> parameters)
+            throws JSONException {
+        int number = Integer.parseInt(parameters.get(ExternalDatabaseDefinitions.PARAMETER_NUMBER));
+        String official = parameters.get(
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_OFFICIAL);
+        String artist = parameters.get(
+                ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_ARTIST);
+        String minPrice = parameters.get(ExternalDatabaseDefinitions.PARAMETER_MIN_PRICE);
+        String maxPrice = parameters.get(ExternalDatabaseDefinitions.PARAMETER_MAX_PRICE);
+        boolean summary = ExternalDatabaseDefinitions.FIELDS_SUMMARY.equals(
+                parameters.get(ExternalDatabaseDefinitions.PARAMETER_FIELDS));
+        String[] textFilters = new String[]{
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_NAME,
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_COUNTRY,
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_CITY,
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_GENRE};
+        JSONArray result = new JSONArray();
+        for (JSONObject festival : festivals.values()) {
+            if (result.length() >= number)
+                break;
+            boolean matches = true;
+            for (String filter : textFilters) {
+                String value = parameters.get(filter);
+                if (value != null && !festival.getString(filter).toLowerCase().
+                        contains(value.toLowerCase()))
+                    matches = false;
+            }
+            if (official != null && festival.getBoolean(
+                    ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_OFFICIAL)
+                    != Boolean.parseBoolean(official))
+                matches = false;
+            if (!pricesInRange(festival.getString(
+                    ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_PRICES),
+                    minPrice, maxPrice))
+                matches = false;
+            if (artist != null && !hostsArtist(festival.getLong(
+                    ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_ID), artist))
+                matches = false;
+            if (matches)
+                result.put(summary ? summarise(festival) : festival);
+        }
+        return json(result.toString());
+    }
+
+    private static JSONObject summarise(JSONObject festival) throws JSONException {
+        JSONObject summary = new JSONObject();
+        for (String field : new String[]{
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_ID,
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_NAME,
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_CITY,
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_VOTES})
+            summary.put(field, festival.get(field));
+        return summary;
+    }
+
+    /**
+     * prices are free text, only a "min-max" range is compared against the filters
+     */
+    private static boolean pricesInRange(String prices, String minPrice, String maxPrice) {
+        if (minPrice == null && maxPrice == null)
+            return true;
+        String[] range = prices.split("-");
+        try {
+            if (minPrice != null && Double.parseDouble(range[range.length - 1].trim())
+                    < Double.parseDouble(minPrice))
+                return false;
+            return maxPrice == null ||
+                    Double.parseDouble(range[0].trim()) <= Double.parseDouble(maxPrice);
+        } catch (NumberFormatException ignore) {
+            return true;
+        }
+    }
+
+    private boolean hostsArtist(long festival, String artist) throws JSONException {
+        for (JSONObject concert : concerts.values()) {
+            if (concert.getLong(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_FESTIVAL)
+                    == festival && concert.getString(ExternalDatabaseDefinitions.ConcertContext.
+                    RESULT_PARAMETER_ARTIST).toLowerCase().contains(artist.toLowerCase()))
+                return true;
+        }
+        return false;
+    }
+
+    private synchronized Response readFestival(Map<String, String> parameters) {
+        JSONObject festival = festivals.get(parseId(parameters.get(
+                ExternalDatabaseDefinitions.PARAMETER_ID)));
+        if (festival == null)
+            return text(ExternalDatabaseDefinitions.RESPONSE_INVALID_FESTIVAL_ID);
+        return json(festival.toString());
+    }
+
+    private synchronized String writeFestival(String client, Map<String, String> parameters)
+            throws JSONException {
+        String name = parameters.get(
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_NAME);
+        if (isEmpty(name))
+            return ExternalDatabaseDefinitions.RESPONSE_INCORRECT_INPUT;
+        for (JSONObject festival : festivals.values())
+            if (festival.getString(ExternalDatabaseDefinitions.FestivalsContext.
+                    RESULT_PARAMETER_NAME).equals(name))
+                return ExternalDatabaseDefinitions.RESPONSE_NAME_EXISTS;
+        String owner = sessions.get(client);
+        long id = addFestival(name, (owner == null) ? "" : owner);
+        applyFestivalFields(festivals.get(id), parameters);
+        return ExternalDatabaseDefinitions.RESPONSE_OK;
+    }
+
+    private synchronized String updateFestival(Map<String, String> parameters)
+            throws JSONException {
+        JSONObject festival = festivals.get(parseId(parameters.get(
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_ID)));
+        if (festival == null)
+            return ExternalDatabaseDefinitions.RESPONSE_INVALID_FESTIVAL_ID;
+        String name = parameters.get(
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_NAME);
+        if (name != null)
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_NAME, name);
+        applyFestivalFields(festival, parameters);
+        return ExternalDatabaseDefinitions.RESPONSE_OK;
+    }
+
+    private static void applyFestivalFields(JSONObject festival, Map<String, String> parameters)
+            throws JSONException {
+        String[] fields = new String[]{
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_DESCRIPTION,
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_COUNTRY,
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_CITY,
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_ADDRESS,
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_GENRE,
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_PRICES};
+        for (String field : fields) {
+            String value = parameters.get(field);
+            if (value != null)
+                festival.put(field, value);
+        }
+        String official = parameters.get(
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_OFFICIAL);
+        if (official != null)
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_OFFICIAL,
+                    Boolean.parseBoolean(official));
+    }
+
+    private synchronized String deleteFestival(Map<String, String> parameters)
+            throws JSONException {
+        long id = parseId(parameters.get(
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_ID));
+        if (festivals.remove(id) == null)
+            return ExternalDatabaseDefinitions.RESPONSE_INVALID_FESTIVAL_ID;
+        Iterator<JSONObject> iterator = concerts.values().iterator();
+        while (iterator.hasNext())
+            if (iterator.next().getLong(
+                    ExternalDatabaseDefinitions.ConcertContext.PARAMETER_FESTIVAL) == id)
+                iterator.remove();
+        return ExternalDatabaseDefinitions.RESPONSE_OK;
+    }
+
+    private synchronized String vote(Map<String, String> parameters) throws JSONException {
+        JSONObject festival = festivals.get(parseId(parameters.get(
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_ID)));
+        if (festival == null)
+            return ExternalDatabaseDefinitions.RESPONSE_INVALID_FESTIVAL_ID;
+        int votes = festival.getInt(
+                ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_VOTES) + 1;
+        festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_VOTES, votes);
+        return String.valueOf(votes);
+    }
+
+    /**
+     * the digest covers the festival and its concerts, in the order they were written
+     */
+    private synchronized Response readFestivalDigest(Map<String, String> parameters)
+            throws JSONException {
+        long id = parseId(parameters.get(ExternalDatabaseDefinitions.PARAMETER_ID));
+        JSONObject festival = festivals.get(id);
+        if (festival == null)
+            return text(ExternalDatabaseDefinitions.RESPONSE_INVALID_FESTIVAL_ID);
+        long digest = hash(0xcbf29ce484222325L, festival.toString());
+        for (JSONObject concert : concerts.values()) {
+            if (concert.getLong(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_FESTIVAL)
+                    == id)
+                digest = hash(digest, concert.toString());
+        }
+        JSONObject result = new JSONObject();
+        result.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_DIGEST,
+                Long.toHexString(digest));
+        return json(result.toString());
+    }
+
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private synchronized Response readFestivalConcerts(Map<String, String> parameters)
+            throws JSONException {
+        long festival = parseId(parameters.get(ExternalDatabaseDefinitions.PARAMETER_ID));
+        if (!festivals.containsKey(festival))
+            return text(ExternalDatabaseDefinitions.RESPONSE_INVALID_FESTIVAL_ID);
+        JSONArray result = new JSONArray();
+        for (JSONObject concert : concerts.values()) {
+            if (concert.getLong(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_FESTIVAL)
+                    == festival)
+                result.put(concert);
+        }
+        return json(result.toString());
+    }
+
+    private synchronized Response readConcert(Map<String, String> parameters) {
+        JSONObject concert = concerts.get(parseId(parameters.get(
+                ExternalDatabaseDefinitions.ConcertContext.PARAMETER_ID)));
+        if (concert == null)
+            return text(ExternalDatabaseDefinitions.RESPONSE_CONCERT_NOT_FOUND);
+        return json(concert.toString());
+    }
+
+    private synchronized String writeConcert(JSONObject item) throws JSONException {
+        long festival = item.getLong(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_FESTIVAL);
+        if (!festivals.containsKey(festival))
+            return ExternalDatabaseDefinitions.RESPONSE_INVALID_FESTIVAL_ID;
+        if (!item.has(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_ARTIST))
+            return ExternalDatabaseDefinitions.RESPONSE_INCORRECT_INPUT;
+        long id = nextId.getAndIncrement();
+        JSONObject concert = new JSONObject();
+        concert.put(ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_EXTERNAL_ID, id);
+        concert.put(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_FESTIVAL, festival);
+        concert.put(ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_ARTIST,
+                item.getString(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_ARTIST));
+        concert.put(ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_SCENE,
+                item.optInt(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_SCENE));
+        concert.put(ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_DAY,
+                item.optInt(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_DAY));
+        concert.put(ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_START,
+                item.getLong(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_START));
+        concert.put(ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_END,
+                item.getLong(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_END));
+        concerts.put(id, concert);
+        return ExternalDatabaseDefinitions.RESPONSE_OK;
+    }
+
+    private synchronized String updateConcert(JSONObject item) throws JSONException {
+        JSONObject concert = concerts.get(
+                item.getLong(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_ID));
+        if (concert == null)
+            return ExternalDatabaseDefinitions.RESPONSE_CONCERT_NOT_FOUND;
+        if (item.has(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_ARTIST))
+            concert.put(ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_ARTIST,
+                    item.getString(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_ARTIST));
+        if (item.has(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_SCENE))
+            concert.put(ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_SCENE,
+                    item.getInt(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_SCENE));
+        if (item.has(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_DAY))
+            concert.put(ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_DAY,
+                    item.getInt(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_DAY));
+        if (item.has(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_START))
+            concert.put(ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_START,
+                    item.getLong(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_START));
+        if (item.has(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_END))
+            concert.put(ExternalDatabaseDefinitions.ConcertContext.RESULT_PARAMETER_END,
+                    item.getLong(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_END));
+        return ExternalDatabaseDefinitions.RESPONSE_OK;
+    }
+
+    private synchronized String deleteConcert(JSONObject item) throws JSONException {
+        if (concerts.remove(item.getLong(ExternalDatabaseDefinitions.ConcertContext.PARAMETER_ID))
+                == null)
+            return ExternalDatabaseDefinitions.RESPONSE_CONCERT_NOT_FOUND;
+        return ExternalDatabaseDefinitions.RESPONSE_OK;
+    }
+
+    private Response batch(String path, Map<String, String> parameters) throws JSONException {
+        String itemsParameter = parameters.get(ExternalDatabaseDefinitions.PARAMETER_ITEMS);
+        if (itemsParameter == null)
+            return text(ExternalDatabaseDefinitions.RESPONSE_INCORRECT_INPUT);
+        JSONArray items = new JSONArray(itemsParameter);
+        JSONArray statuses = new JSONArray();
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = items.getJSONObject(i);
+            switch (path) {
+                case "batch/w/conc/":
+                    statuses.put(writeConcert(item));
+                    break;
+                case "batch/u/conc/":
+                    statuses.put(updateConcert(item));
+                    break;
+                default:
+                    statuses.put(deleteConcert(item));
+                    break;
+            }
+        }
+        return json(statuses.toString());
+    }
+
+    private static long parseId(String value) {
+        return (value == null) ? -1 : Long.parseLong(value);
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static Response failure(int status) {
+        return new Response(status, CONTENT_TYPE_TEXT, "Injected failure");
+    }
+
+    private static Response text(String body) {
+        return new Response(200, CONTENT_TYPE_TEXT, body);
+    }
+
+    private static Response json(String body) {
+        return new Response(200, CONTENT_TYPE_JSON, body);
+    }
+
+    private static Map<String, String> parseParameters(String body)
+            throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        if (body.isEmpty())
+            return parameters;
+        for (String pair : body.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator < 0)
+                parameters.put(URLDecoder.decode(pair, "UTF-8"), "");
+            else
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+        }
+        return parameters;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n')
+                break;
+            if (c != '\r')
+                line.write(c);
+        }
+        if (c == -1 && line.size() == 0)
+            return null;
+        return line.toString("UTF-8");
+    }
+
+    private void writeResponse(OutputStream out, Response response, boolean headOnly)
+            throws IOException, InterruptedException {
+        byte[] body = response.body.getBytes("UTF-8");
+        String head = "HTTP/1.1 " + response.status + " " + ((response.status == 200) ? "OK" : "Error")
+                + "\r\nContent-Type: " + response.contentType
+                + "\r\nContent-Length: " + body.length
+                + "\r\nConnection: close\r\n\r\n";
+        write(out, head.getBytes("UTF-8"));
+        if (!headOnly) {
+            bodyBytes.addAndGet(body.length);
+            write(out, body);
+        }
+        out.flush();
+    }
+
+    /**
+     * write the data, keeping within the bandwidth limit if one is set
+     */
+    private void write(OutputStream out, byte[] data) throws IOException, InterruptedException {
+        int limit = bandwidth;
+        if (limit <= 0) {
+            out.write(data);
+            return;
+        }
+        long start = System.nanoTime();
+        for (int offset = 0; offset < data.length; offset += BANDWIDTH_CHUNK) {
+            int length = Math.min(BANDWIDTH_CHUNK, data.length - offset);
+            out.write(data, offset, length);
+            out.flush();
+            long due = (offset + length) * 1_000_000_000L / limit;
+            long ahead = due - (System.nanoTime() - start);
+            if (ahead > 0)
+                Thread.sleep(ahead / 1_000_000, (int) (ahead % 1_000_000));
+        }
+    }
+
+    private static class Response {
+        private final int status;
+        private final String contentType;
+        private final String body;
+
+        private Response(int status, String contentType, String body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+}
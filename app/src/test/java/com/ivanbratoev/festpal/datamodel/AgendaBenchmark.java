@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import com.ivanbratoev.festpal.BuildConfig;
+import com.ivanbratoev.festpal.datamodel.db.internal.ConcertCursor;
+import com.ivanbratoev.festpal.datamodel.db.internal.InternalDatabaseHandler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reading the agenda of several overlapping festivals with {@link AgendaIterator}, compared
+ * with loading every lineup, keeping the concerts to notify of and sorting them
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class AgendaBenchmark {
+
+    private static final int FESTIVALS = 8;
+    private static final int CONCERTS = 2_000;
+    /**
+     * one concert in this many is flagged to notify of
+     */
+    private static final int NOTIFY_EVERY = 4;
+
+    private InternalDatabaseHandler handler;
+    private Festival[] festivals;
+
+    @Before
+    public void setUp() {
+        handler = new InternalDatabaseHandler(RuntimeEnvironment.application);
+        Random random = new Random(FESTIVALS);
+        for (int f = 0; f < FESTIVALS; f++) {
+            Festival festival = new Festival(null, f, "Fest " + f, "", "Bulgaria", "Sofia", "",
+                    "Rock", "", "owner", false, 0);
+            festival.setId(handler.addFestival(festival));
+            Concert[] concerts = new Concert[CONCERTS];
+            for (int i = 0; i < CONCERTS; i++) {
+                // the festivals run at the same time
+                long start = random.nextInt(5 * 24 * 60) * 60_000L;
+                concerts[i] = new Concert(null, i, festival, "Artist " + i, i % 8, i % 5,
+                        new Date(start), new Date(start + 3_600_000L),
+                        i % NOTIFY_EVERY == 0);
+            }
+            handler.addConcerts(concerts);
+        }
+        festivals = handler.getFestivals();
+    }
+
+    @After
+    public void tearDown() {
+        handler.close();
+        RuntimeEnvironment.application.deleteDatabase("festpal.db");
+    }
+
+    @Test
+    public void mergedCursors() throws Exception {
+        Benchmark.measure("Agenda k-way merge, concerts", FESTIVALS * CONCERTS / NOTIFY_EVERY,
+                new Benchmark.Operation() {
+                    @Override
+                    public int run() {
+                        List<ConcertCursor> cursors = new ArrayList<>(FESTIVALS);
+                        for (Festival festival : festivals)
+                            cursors.add(handler.getNotifiedConcerts(festival));
+                        AgendaIterator agenda = new AgendaIterator(cursors);
+                        int count = 0;
+                        while (agenda.hasNext()) {
+                            agenda.next();
+                            count++;
+                        }
+                        return count;
+                    }
+                });
+    }
+
+    @Test
+    public void firstPageOfMergedCursors() throws Exception {
+        Benchmark.measure("Agenda k-way merge, first 20 concerts", 20,
+                new Benchmark.Operation() {
+                    @Override
+                    public int run() {
+                        List<ConcertCursor> cursors = new ArrayList<>(FESTIVALS);
+                        for (Festival festival : festivals)
+                            cursors.add(handler.getNotifiedConcerts(festival));
+                        AgendaIterator agenda = new AgendaIterator(cursors);
+                        try {
+                            int count = 0;
+                            for (; count < 20 && agenda.hasNext(); count++)
+                                agenda.next();
+                            return count;
+                        } finally {
+                            agenda.close();
+                        }
+                    }
+                });
+    }
+
+    @Test
+    public void loadAllAndSort() throws Exception {
+        Benchmark.measure("Agenda load all and sort, concerts", FESTIVALS * CONCERTS / NOTIFY_EVERY,
+                new Benchmark.Operation() {
+                    @Override
+                    public int run() {
+                        List<Concert> agenda = new ArrayList<>();
+                        for (Festival festival : festivals)
+                            for (Concert concert : handler.getConcerts(festival))
+                                if (concert.isToNotify())
+                                    agenda.add(concert);
+                        Collections.sort(agenda, new Comparator<Concert>() {
+                            @Override
+                            public int compare(Concert a, Concert b) {
+                                return a.getStart().compareTo(b.getStart());
+                            }
+                        });
+                        return agenda.size();
+                    }
+                });
+    }
+}
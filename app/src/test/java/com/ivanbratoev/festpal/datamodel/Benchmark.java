@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Minimal benchmark harness for the JVM unit tests. An operation is run repeatedly for a fixed
+ * time per round; warm-up rounds let the JIT settle before the measured rounds are recorded.
+ * Results are printed and, when the <code>benchmark.output</code> system property names a file,
+ * appended to it as tab separated lines so runs can be compared between releases
+ */
+public final class Benchmark {
+
+    private static final int WARMUP_ROUNDS = Integer.getInteger("benchmark.warmupRounds", 5);
+    private static final int MEASURED_ROUNDS = Integer.getInteger("benchmark.rounds", 10);
+    private static final long ROUND_NANOS =
+            Long.getLong("benchmark.roundMillis", 200L) * 1_000_000L;
+
+    /**
+     * accumulates the values returned by the operations so the JIT can not drop them
+     */
+    private static volatile int sink;
+
+    private Benchmark() {
+    }
+
+    /**
+     * a single benchmarked operation
+     */
+    public interface Operation {
+        /**
+         * @return any value derived from the work done, it is consumed by the harness
+         */
+        int run() throws Exception;
+    }
+
+    /**
+     * @param name              name the result is reported under
+     * @param itemsPerOperation number of items processed by a single call of the operation, the
+     *                          result is reported in items per second
+     * @param operation         operation to measure
+     * @return measured throughput
+     */
+    public static Result measure(String name, int itemsPerOperation, Operation operation)
+            throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            round(operation);
+        double[] rates = new double[MEASURED_ROUNDS];
+        for (int i = 0; i < MEASURED_ROUNDS; i++)
+            rates[i] = round(operation) * itemsPerOperation;
+        Result result = new Result(name, rates);
+        report(result);
+        return result;
+    }
+
+    /**
+     * an allocation whose retained heap is measured
+     */
+    public interface Allocation {
+        /**
+         * @return the allocated object graph, it is kept reachable until the heap is measured
+         */
+        Object allocate() throws Exception;
+    }
+
+    /**
+     * @param name       name the result is reported under
+     * @param allocation allocation to measure
+     * @return heap in bytes retained by the object graph returned by the allocation
+     */
+    public static long measureRetainedHeap(String name, Allocation allocation) throws Exception {
+        long before = usedHeap();
+        Object retained = allocation.allocate();
+        long bytes = usedHeap() - before;
+        sink ^= System.identityHashCode(retained);
+        return reportSize(name, bytes);
+    }
+
+    /**
+     * report a size measured by the caller, such as the length of a file
+     *
+     * @param name  name the result is reported under
+     * @param bytes measured size
+     * @return the size
+     */
+    public static long reportSize(String name, long bytes) throws IOException {
+        System.out.println(String.format(Locale.US, "%-60s %14d bytes", name, bytes));
+        write(String.format(Locale.US, "%s\t%d\t0%n", name, bytes));
+        return bytes;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static double round(Operation operation) throws Exception {
+        int consumed = 0;
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            consumed ^= operation.run();
+            operations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ROUND_NANOS);
+        sink ^= consumed;
+        return operations * 1e9 / elapsed;
+    }
+
+    private static void report(Result result) throws IOException {
+        System.out.println(result);
+        write(String.format(Locale.US, "%s\t%.1f\t%.1f%n", result.getName(),
+                result.getMean(), result.getError()));
+    }
+
+    private static void write(String line) throws IOException {
+        String output = System.getProperty("benchmark.output");
+        if (output == null)
+            return;
+        Writer writer = new FileWriter(output, true);
+        try {
+            writer.write(line);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * throughput of a benchmarked operation in items per second
+     */
+    public static final class Result {
+        private final String name;
+        private final double[] rates;
+
+        private Result(String name, double[] rates) {
+            this.name = name;
+            this.rates = rates;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getMean() {
+            double sum = 0;
+            for (double rate : rates)
+                sum += rate;
+            return sum / rates.length;
+        }
+
+        /**
+         * @return standard deviation of the measured rounds
+         */
+        public double getError() {
+            double mean = getMean();
+            double sum = 0;
+            for (double rate : rates)
+                sum += (rate - mean) * (rate - mean);
+            return Math.sqrt(sum / rates.length);
+        }
+
+        public double getMedian() {
+            double[] sorted = rates.clone();
+            Arrays.sort(sorted);
+            return sorted[sorted.length / 2];
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-60s %14.1f +- %.1f items/s", name, getMean(),
+                    getError());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import com.ivanbratoev.festpal.BuildConfig;
+import com.ivanbratoev.festpal.datamodel.bundle.FestivalBundle;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link DataModel#importFestivalBundle(File)} publishing the schedule of the imported festival
+ * with the ids the concerts were stored under, and updating a festival imported before
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FestivalBundleImportTest {
+
+    private static final int CONCERTS = 50;
+
+    private DataModel dataModel;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        dataModel = DataModel.getInstance();
+        dataModel.init(RuntimeEnvironment.application, "test");
+        Festival festival = new Festival(null, 1, "Fest", "", "Bulgaria", "Sofia", "", "Rock",
+                "", "owner", false, 0);
+        Concert[] concerts = new Concert[CONCERTS];
+        for (int i = 0; i < concerts.length; i++)
+            concerts[i] = new Concert(null, i, festival, "Artist " + i, i % 3, i % 2,
+                    new Date(i * 60_000L), new Date(i * 60_000L + 3_600_000L), false);
+        // a concert which was never uploaded
+        concerts[0].setExternalId(null);
+        file = File.createTempFile("festival", ".bundle");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            new FestivalBundle(festival, concerts).write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Assert.assertTrue(file.delete());
+    }
+
+    @Test
+    public void publishedScheduleHasStoredIds() throws Exception {
+        long id = dataModel.importFestivalBundle(file);
+        Assert.assertTrue(id != -1);
+        Festival festival = dataModel.readFestivalInfo(id, false);
+
+        Set<Long> ids = new HashSet<>();
+        for (ScheduledConcert concert : dataModel.getSchedule(festival).getConcerts()) {
+            Assert.assertTrue(ids.add(concert.getId()));
+            Assert.assertEquals(concert.getArtist(),
+                    dataModel.readConcertInfo(id, concert.getId(), false).getArtist());
+        }
+        Assert.assertEquals(CONCERTS, ids.size());
+    }
+
+    @Test
+    public void importedTwiceNotDuplicated() throws Exception {
+        long id = dataModel.importFestivalBundle(file);
+        Assert.assertTrue(id != -1);
+        Assert.assertEquals(id, dataModel.importFestivalBundle(file));
+
+        Assert.assertEquals(1, dataModel.getOfflineFestivals().length);
+        Festival festival = dataModel.readFestivalInfo(id, false);
+        Assert.assertEquals(CONCERTS, dataModel.getFestivalStats(festival).getConcertCount());
+        Assert.assertEquals(CONCERTS, dataModel.getSchedule(festival).getConcerts().size());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+
+/**
+ * Cost of {@link Festival} and {@link Concert} equality checks, which synchronisation runs for
+ * every record
+ */
+public class ModelEqualityBenchmark {
+
+    private Festival festival;
+    private Festival sameFestival;
+    private Concert[] concerts;
+    private Concert[] sameConcerts;
+
+    @Before
+    public void setUp() {
+        festival = festival();
+        sameFestival = festival();
+        concerts = concerts(festival, 1000);
+        sameConcerts = concerts(sameFestival, 1000);
+    }
+
+    @Test
+    public void festivalEquals() throws Exception {
+        Benchmark.measure("Festival.equals", 1, new Benchmark.Operation() {
+            @Override
+            public int run() {
+                return festival.equals(sameFestival) ? 1 : 0;
+            }
+        });
+    }
+
+    @Test
+    public void festivalHashCode() throws Exception {
+        Benchmark.measure("Festival.hashCode", 1, new Benchmark.Operation() {
+            @Override
+            public int run() {
+                return festival.hashCode();
+            }
+        });
+    }
+
+    @Test
+    public void concertEquals() throws Exception {
+        Benchmark.measure("Concert.equals", concerts.length, new Benchmark.Operation() {
+            @Override
+            public int run() {
+                int equal = 0;
+                for (int i = 0; i < concerts.length; i++)
+                    if (concerts[i].equals(sameConcerts[i]))
+                        equal++;
+                return equal;
+            }
+        });
+    }
+
+    @Test
+    public void concertHashCode() throws Exception {
+        Benchmark.measure("Concert.hashCode", concerts.length, new Benchmark.Operation() {
+            @Override
+            public int run() {
+                int hash = 0;
+                for (Concert concert : concerts)
+                    hash += concert.hashCode();
+                return hash;
+            }
+        });
+    }
+
+    @Test
+    public void concertContentHashCompare() throws Exception {
+        // hashes restored from the internal database, as synchronisation sees them
+        for (int i = 0; i < concerts.length; i++)
+            concerts[i].setContentHash(sameConcerts[i].getContentHash());
+        Benchmark.measure("Concert.getContentHash compare", concerts.length,
+                new Benchmark.Operation() {
+                    @Override
+                    public int run() {
+                        int equal = 0;
+                        for (int i = 0; i < concerts.length; i++)
+                            if (concerts[i].getContentHash() == sameConcerts[i].getContentHash())
+                                equal++;
+                        return equal;
+                    }
+                });
+    }
+
+    private static Festival festival() {
+        return new Festival(1L, 1, "Benchmark Fest", "An open air festival with three stages",
+                "Bulgaria", "Sofia", "South Park", "Rock", "40-80", "owner", false, 12);
+    }
+
+    private static Concert[] concerts(Festival festival, int count) {
+        Concert[] result = new Concert[count];
+        for (int i = 0; i < count; i++)
+            result[i] = new Concert((long) i, i, festival, "Artist " + i, i % 3, i % 4,
+                    new Date(i * 60_000L), new Date(i * 60_000L + 3_600_000L), false);
+        return result;
+    }
+}
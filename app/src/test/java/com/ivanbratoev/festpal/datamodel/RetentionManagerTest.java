@@ -0,0 +1,218 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.ivanbratoev.festpal.BuildConfig;
+import com.ivanbratoev.festpal.datamodel.db.internal.InternalDatabaseHandler;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Date;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Eviction over a synthetic dataset of three years of monthly festivals, with the current time
+ * in the middle of the last year
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class RetentionManagerTest {
+
+    private static final long DAY = 24 * 60 * 60_000L;
+    private static final int YEARS = 3;
+    private static final int FESTIVALS_PER_YEAR = 12;
+    private static final int CONCERTS = 300;
+    private static final long NOW = (YEARS - 1) * 365 * DAY + 182 * DAY;
+
+    private InternalDatabaseHandler handler;
+    private ScheduleStore schedules;
+    private Festival[] festivals;
+    private long now = NOW;
+    private final Clock clock = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    };
+    private final Executor direct = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        handler = new InternalDatabaseHandler(RuntimeEnvironment.application);
+        schedules = new ScheduleStore();
+        festivals = new Festival[YEARS * FESTIVALS_PER_YEAR];
+        for (int f = 0; f < festivals.length; f++) {
+            Festival festival = new Festival(null, f, "Fest " + f, "", "Bulgaria", "Sofia", "",
+                    "Rock", "", "owner", false, 0);
+            long opening = f * 365 * DAY / FESTIVALS_PER_YEAR;
+            Concert[] concerts = new Concert[CONCERTS];
+            for (int i = 0; i < CONCERTS; i++) {
+                long start = opening + (i % 3) * DAY + (i / 3) * 10 * 60_000L;
+                concerts[i] = new Concert(null, i, festival, "Artist " + f + " " + i, i % 4,
+                        i % 3, new Date(start), new Date(start + 45 * 60_000L), false);
+            }
+            handler.importFestival(festival, concerts);
+            festivals[f] = festival;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        handler.close();
+        RuntimeEnvironment.application.deleteDatabase("festpal.db");
+        preferences().edit().clear().commit();
+    }
+
+    @Test
+    public void withinBudgetNothingEvicted() {
+        RetentionManager retention = retention(handler.getUsedSize());
+        Assert.assertEquals(0, retention.trim());
+        for (Festival festival : festivals)
+            Assert.assertEquals(CONCERTS, handler.getConcerts(festival).length);
+    }
+
+    @Test
+    public void pastFestivalsEvictedEarliestFirst() {
+        long[] ends = new long[festivals.length];
+        for (int f = 0; f < festivals.length; f++)
+            ends[f] = lastEnd(festivals[f]);
+        long budget = handler.getUsedSize() / 2;
+        RetentionManager retention = retention(budget);
+        schedules.publish(festivals[0].getId(), handler.getConcerts(festivals[0]));
+
+        int evicted = retention.trim();
+        Assert.assertTrue(evicted > 0);
+        Assert.assertTrue(handler.getUsedSize() <= budget);
+        Assert.assertEquals(0, schedules.get(festivals[0].getId()).size());
+        // the evicted festivals are the earliest ones, all of them over
+        for (int f = 0; f < festivals.length; f++) {
+            int concerts = handler.getConcerts(festivals[f]).length;
+            Assert.assertEquals("festival " + f, (f < evicted) ? 0 : CONCERTS, concerts);
+        }
+        Assert.assertTrue(ends[evicted - 1] < NOW);
+        // the festivals stay in the catalog
+        Assert.assertEquals(festivals.length, handler.getFestivals().length);
+    }
+
+    @Test
+    public void upcomingFestivalsOrderedByLastView() {
+        int past = 0;
+        while (lastEnd(festivals[past]) < NOW)
+            past++;
+        Assert.assertTrue(past < festivals.length - 2);
+        RetentionManager retention = retention(Long.MAX_VALUE);
+        Festival viewedFirst = festivals[past];
+        Festival viewedLast = festivals[past + 1];
+        now = NOW - DAY;
+        retention.recordAccess(viewedLast.getId());
+        retention.recordAccess(viewedFirst.getId());
+        now = NOW;
+        retention.recordAccess(viewedLast.getId());
+        // the views are written to the database when trimming
+        Assert.assertEquals(0, retention.trim());
+
+        long[] order = handler.getEvictionOrder(NOW);
+        Assert.assertEquals(festivals.length, order.length);
+        for (int f = 0; f < past; f++)
+            Assert.assertEquals((long) festivals[f].getId(), order[f]);
+        for (int f = past + 2, i = past; f < festivals.length; f++, i++)
+            Assert.assertEquals((long) festivals[f].getId(), order[i]);
+        Assert.assertEquals((long) viewedFirst.getId(), order[order.length - 2]);
+        Assert.assertEquals((long) viewedLast.getId(), order[order.length - 1]);
+    }
+
+    @Test
+    public void emptyBudgetEvictsEveryLineup() {
+        Assert.assertEquals(festivals.length, retention(0).trim());
+        for (Festival festival : festivals) {
+            Assert.assertEquals(0, handler.getConcerts(festival).length);
+            Assert.assertTrue(handler.isEvicted(festival.getId()));
+        }
+        Assert.assertEquals(festivals.length, handler.getEvictedFestivals().size());
+        Assert.assertEquals(0, handler.getEvictionOrder(NOW).length);
+        Assert.assertEquals(festivals.length, handler.getFestivals().length);
+    }
+
+    @Test
+    public void requestsMergedWhileTrimPending() {
+        final int[] executed = new int[1];
+        final Runnable[] queued = new Runnable[1];
+        RetentionManager retention = new RetentionManager(handler, new ReentrantLock(),
+                schedules, new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        executed[0]++;
+                        queued[0] = command;
+                    }
+                }, clock, preferences(), 0);
+        retention.requestTrim();
+        retention.requestTrim();
+        Assert.assertEquals(1, executed[0]);
+        queued[0].run();
+        retention.requestTrim();
+        Assert.assertEquals(2, executed[0]);
+    }
+
+    @Test
+    public void maintenanceRunsOnceADayAcrossRestarts() {
+        retention(Long.MAX_VALUE).trim();
+        Assert.assertEquals(NOW, preferences().getLong(RetentionManager.KEY_LAST_MAINTENANCE, 0));
+
+        // a new process within the interval finds the stored time and skips the maintenance
+        now = NOW + RetentionManager.MAINTENANCE_INTERVAL / 2;
+        retention(Long.MAX_VALUE).trim();
+        Assert.assertEquals(NOW, preferences().getLong(RetentionManager.KEY_LAST_MAINTENANCE, 0));
+
+        now = NOW + RetentionManager.MAINTENANCE_INTERVAL;
+        retention(Long.MAX_VALUE).trim();
+        Assert.assertEquals(now, preferences().getLong(RetentionManager.KEY_LAST_MAINTENANCE, 0));
+    }
+
+    private RetentionManager retention(long budget) {
+        return new RetentionManager(handler, new ReentrantLock(), schedules, direct, clock,
+                preferences(), budget);
+    }
+
+    private static SharedPreferences preferences() {
+        return RuntimeEnvironment.application.getSharedPreferences(RetentionManager.PREFERENCES,
+                Context.MODE_PRIVATE);
+    }
+
+    private long lastEnd(Festival festival) {
+        long end = Long.MIN_VALUE;
+        for (Concert concert : handler.getConcerts(festival))
+            end = Math.max(end, concert.getEnd().getTime());
+        return end;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ScheduleStoreTest {
+
+    private static final long FESTIVAL = 1;
+    private static final int READERS = 4;
+    private static final int GENERATIONS = 20_000;
+
+    @Test
+    public void snapshotSortedAndCopied() {
+        Festival festival = festival();
+        Concert late = concert(festival, 1, "Late", 2, 5_000);
+        Concert early = concert(festival, 2, "Early", 1, 1_000);
+        ScheduleSnapshot snapshot = ScheduleSnapshot.of(FESTIVAL, 1, new Concert[]{late, early});
+        late.setArtist("Changed");
+
+        Assert.assertEquals("Early", snapshot.get(0).getArtist());
+        Assert.assertEquals("Late", snapshot.get(1).getArtist());
+        try {
+            snapshot.getConcerts().remove(0);
+            Assert.fail("snapshot list is modifiable");
+        } catch (UnsupportedOperationException ignore) {
+
+        }
+    }
+
+    @Test
+    public void readerLoadDoesNotReplaceWriterSnapshot() {
+        ScheduleStore store = new ScheduleStore();
+        Festival festival = festival();
+        ScheduleSnapshot written = store.publish(FESTIVAL,
+                new Concert[]{concert(festival, 1, "New", 1, 0)});
+        ScheduleSnapshot read = store.publishIfAbsent(FESTIVAL, new Concert[0]);
+        Assert.assertSame(written, read);
+        Assert.assertSame(written, store.get(FESTIVAL));
+    }
+
+    @Test
+    public void readerLoadBeforeDeleteNotPublishedAfterIt() {
+        ScheduleStore store = new ScheduleStore();
+        Festival festival = festival();
+        // the reader loaded the lineup before the concerts were deleted
+        Concert[] loaded = new Concert[]{concert(festival, 1, "Deleted", 1, 0)};
+        ScheduleSnapshot cleared = store.clear(FESTIVAL);
+        ScheduleSnapshot read = store.publishIfAbsent(FESTIVAL, loaded);
+        Assert.assertSame(cleared, read);
+        Assert.assertEquals(0, store.get(FESTIVAL).size());
+    }
+
+    /**
+     * a writer keeps publishing lineups where every concert carries the generation number and
+     * mutates its concerts after publishing, while readers check that every snapshot they get is
+     * complete, ordered, unaffected by the mutation and never older than one seen before
+     */
+    @Test
+    public void concurrentReadersSeeWholeSnapshots() throws Exception {
+        final ScheduleStore store = new ScheduleStore();
+        final Festival festival = festival();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        store.publish(FESTIVAL, lineup(festival, 0));
+
+        Thread[] readers = new Thread[READERS];
+        for (int i = 0; i < READERS; i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long lastVersion = 0;
+                    try {
+                        while (writing.get()) {
+                            ScheduleSnapshot snapshot = store.get(FESTIVAL);
+                            Assert.assertTrue(snapshot.getVersion() >= lastVersion);
+                            lastVersion = snapshot.getVersion();
+                            checkSnapshot(snapshot);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            readers[i].start();
+        }
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int generation = 1; generation < GENERATIONS; generation++) {
+                        Concert[] concerts = lineup(festival, generation);
+                        store.publish(FESTIVAL, concerts);
+                        for (Concert concert : concerts)
+                            concert.setArtist("mutated");
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    writing.set(false);
+                }
+            }
+        });
+        writer.start();
+        writer.join();
+        for (Thread reader : readers)
+            reader.join();
+
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+        checkSnapshot(store.get(FESTIVAL));
+        Assert.assertEquals(GENERATIONS - 1, generation(store.get(FESTIVAL)));
+    }
+
+    private static void checkSnapshot(ScheduleSnapshot snapshot) {
+        int generation = generation(snapshot);
+        List<ScheduledConcert> concerts = snapshot.getConcerts();
+        Assert.assertEquals(size(generation), concerts.size());
+        long previous = Long.MIN_VALUE;
+        for (ScheduledConcert concert : concerts) {
+            Assert.assertEquals("generation " + generation, concert.getArtist());
+            Assert.assertTrue(concert.getStart() >= previous);
+            previous = concert.getStart();
+        }
+    }
+
+    private static int generation(ScheduleSnapshot snapshot) {
+        return Integer.parseInt(snapshot.get(0).getArtist().substring("generation ".length()));
+    }
+
+    private static int size(int generation) {
+        return generation % 50 + 1;
+    }
+
+    /**
+     * @return concerts in reverse start order, so the snapshot has to sort them
+     */
+    private static Concert[] lineup(Festival festival, int generation) {
+        Concert[] concerts = new Concert[size(generation)];
+        for (int i = 0; i < concerts.length; i++)
+            concerts[i] = concert(festival, i, "generation " + generation, i % 3,
+                    (concerts.length - i) * 60_000L);
+        return concerts;
+    }
+
+    private static Concert concert(Festival festival, long id, String artist, int stage,
+                                   long start) {
+        return new Concert(id, id, festival, artist, stage, 1, new Date(start),
+                new Date(start + 30_000), false);
+    }
+
+    private static Festival festival() {
+        return new Festival(FESTIVAL, FESTIVAL, "Fest", "", "", "", "", "", "", "", false, 0);
+    }
+}
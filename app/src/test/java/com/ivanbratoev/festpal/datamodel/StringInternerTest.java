@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StringInternerTest {
+
+    @Test
+    public void equalValuesShareInstance() {
+        StringInterner interner = new StringInterner(16);
+        String first = interner.intern(new String("Bulgaria"));
+        String second = interner.intern(new String("Bulgaria"));
+        Assert.assertEquals("Bulgaria", second);
+        Assert.assertSame(first, second);
+    }
+
+    @Test
+    public void nullPassedThrough() {
+        Assert.assertNull(new StringInterner(16).intern(null));
+    }
+
+    @Test
+    public void tableBounded() {
+        StringInterner interner = new StringInterner(4);
+        for (int i = 0; i < 1000; i++)
+            Assert.assertEquals("value " + i, interner.intern("value " + i));
+        String value = new String("value 999");
+        String interned = interner.intern(value);
+        Assert.assertEquals(value, interned);
+    }
+
+    @Test
+    public void collidingValueReplaced() {
+        StringInterner interner = new StringInterner(1);
+        String first = interner.intern(new String("Rock"));
+        interner.intern("Jazz");
+        String second = new String("Rock");
+        Assert.assertSame(second, interner.intern(second));
+        Assert.assertNotSame(first, second);
+    }
+}
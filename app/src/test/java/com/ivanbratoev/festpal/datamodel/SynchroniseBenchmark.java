@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel;
+
+import com.ivanbratoev.festpal.BuildConfig;
+import com.ivanbratoev.festpal.datamodel.db.external.ExternalDatabaseHandler;
+import com.ivanbratoev.festpal.datamodel.db.external.StubExternalServer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Date;
+
+/**
+ * End to end cost of {@link DataModel#synchronise(boolean)} against a local stub server
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SynchroniseBenchmark {
+
+    private static final String USERNAME = "benchmark";
+    private static final int FESTIVALS = 10;
+    private static final int CONCERTS_PER_FESTIVAL = 100;
+    private static final int LARGE_LINEUP = 2000;
+
+    private StubExternalServer server;
+    private DataModel dataModel;
+    private ExternalDatabaseHandler uploader;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubExternalServer();
+        server.start();
+        server.useForHandlers();
+
+        uploader = new ExternalDatabaseHandler(USERNAME);
+        dataModel = DataModel.getInstance();
+        dataModel.init(RuntimeEnvironment.application, USERNAME);
+        dataModel.setUsername(USERNAME);
+        for (int i = 0; i < FESTIVALS; i++) {
+            long externalId = server.addFestival("Festival " + i, "owner");
+            Festival festival = new Festival(null, externalId, "Festival " + i, "", "", "", "",
+                    "", "", USERNAME, false, 0);
+            dataModel.writeFestivalInfo(festival, false);
+            uploader.writeConcertInfoBatch(externalId, concerts(festival, CONCERTS_PER_FESTIVAL));
+        }
+        // the first run copies the concerts, the measured runs find everything up to date
+        Assert.assertTrue(dataModel.synchronise(false));
+        server.resetRequestCounts();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void synchroniseUnchanged() throws Exception {
+        Benchmark.measure("DataModel.synchronise unchanged, festivals", FESTIVALS,
+                new Benchmark.Operation() {
+                    @Override
+                    public int run() throws Exception {
+                        return dataModel.synchronise(false) ? 1 : 0;
+                    }
+                });
+    }
+
+    /**
+     * a no-change sync of a big lineup, which only compares the digest of each festival
+     */
+    @Test
+    public void synchroniseLargeLineupUnchanged() throws Exception {
+        long externalId = server.addFestival("Large lineup", "owner");
+        Festival festival = new Festival(null, externalId, "Large lineup", "", "", "", "", "", "",
+                USERNAME, false, 0);
+        dataModel.writeFestivalInfo(festival, false);
+        uploader.writeConcertInfoBatch(externalId, concerts(festival, LARGE_LINEUP));
+        Assert.assertTrue(dataModel.synchronise(false));
+
+        Benchmark.measure("DataModel.synchronise unchanged, concerts",
+                FESTIVALS * CONCERTS_PER_FESTIVAL + LARGE_LINEUP, new Benchmark.Operation() {
+                    @Override
+                    public int run() throws Exception {
+                        return dataModel.synchronise(false) ? 1 : 0;
+                    }
+                });
+    }
+
+    private static Concert[] concerts(Festival festival, int count) {
+        Concert[] result = new Concert[count];
+        for (int i = 0; i < result.length; i++)
+            result[i] = new Concert(null, 0, festival, "Artist " + i, i % 3, i % 4,
+                    new Date(i * 60_000L), new Date(i * 60_000L + 3_600_000L), false);
+        return result;
+    }
+}
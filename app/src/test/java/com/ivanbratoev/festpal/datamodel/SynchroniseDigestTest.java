@@ -0,0 +1,354 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel;
+
+import com.ivanbratoev.festpal.BuildConfig;
+import com.ivanbratoev.festpal.datamodel.db.external.ClientDoesNotHavePermissionException;
+import com.ivanbratoev.festpal.datamodel.db.external.ExternalDatabaseHandler;
+import com.ivanbratoev.festpal.datamodel.db.external.StubExternalServer;
+import com.ivanbratoev.festpal.datamodel.db.internal.ChangeObserver;
+import com.ivanbratoev.festpal.datamodel.db.internal.DatabaseChange;
+import com.ivanbratoev.festpal.datamodel.db.internal.InternalDatabaseHandler;
+import com.ivanbratoev.festpal.datamodel.db.internal.Subscription;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link DataModel#synchronise(boolean)} against a local stub server, checking that festivals
+ * whose digest did not change are not downloaded again
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SynchroniseDigestTest {
+
+    private static final String USERNAME = "test";
+    /**
+     * owner of the festival on the stub server, who may edit it locally
+     */
+    private static final String OWNER = "owner";
+    private static final int LINEUP_SIZE = 200;
+    private static final int MAX_DIGEST_RESPONSE_BYTES = 64;
+    private static final long NETWORK_LATENCY = 2_000;
+    private static final long AWAIT_TIMEOUT = 10_000;
+    private static final long STRESS_LATENCY = 20;
+    private static final int LOCAL_WRITES = 50;
+    private static final long LOCAL_EXTERNAL_ID = 1_000_000;
+
+    private StubExternalServer server;
+    private DataModel dataModel;
+    private Festival festival;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubExternalServer();
+        server.start();
+        server.useForHandlers();
+
+        dataModel = DataModel.getInstance();
+        dataModel.init(RuntimeEnvironment.application, USERNAME);
+        dataModel.setUsername(USERNAME);
+        long externalId = server.addFestival("TestFest", OWNER);
+        festival = new Festival(null, externalId, "TestFest", "", "", "", "", "", "", USERNAME,
+                false, 0);
+        festival.setId(dataModel.writeFestivalInfo(festival, false));
+        new ExternalDatabaseHandler(USERNAME).writeConcertInfoBatch(externalId,
+                concerts(festival, LINEUP_SIZE));
+        Assert.assertTrue(dataModel.synchronise(false));
+        server.resetRequestCounts();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void unchangedFestivalCostsOneSmallRequest() throws Exception {
+        Assert.assertTrue(dataModel.synchronise(false));
+        Assert.assertEquals(1, server.getRequestCount());
+        Assert.assertEquals(1, server.getRequestCount("dig/fest/"));
+        Assert.assertTrue(server.getResponseBodyBytes() <= MAX_DIGEST_RESPONSE_BYTES);
+    }
+
+    @Test
+    public void changedLineupDownloaded() throws Exception {
+        new ExternalDatabaseHandler(USERNAME).writeConcertInfoBatch(festival.getExternalId(),
+                concerts(festival, 1));
+        Assert.assertTrue(dataModel.synchronise(false));
+        Assert.assertEquals(1, server.getRequestCount("mult/conc/"));
+
+        server.resetRequestCounts();
+        Assert.assertTrue(dataModel.synchronise(false));
+        Assert.assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void localEditDownloadsLineupAgain() throws Exception {
+        Concert concert = new Concert(null, 0, festival, "Local", 0, 0, new Date(0),
+                new Date(3_600_000L), false);
+        Assert.assertTrue(dataModel.writeConcertsInfo(festival, new Concert[]{concert}, false));
+        Assert.assertTrue(dataModel.synchronise(false));
+        Assert.assertEquals(1, server.getRequestCount("mult/conc/"));
+    }
+
+    @Test
+    public void localWriteDoesNotWaitForNetwork() throws Exception {
+        server.setLatency(NETWORK_LATENCY);
+        Thread synchronisation = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    dataModel.synchronise(false);
+                } catch (ClientDoesNotHavePermissionException ignore) {
+
+                }
+            }
+        });
+        synchronisation.start();
+        // the synchronisation is waiting for the digest
+        Thread.sleep(NETWORK_LATENCY / 4);
+        long started = System.currentTimeMillis();
+        Concert concert = new Concert(null, 0, festival, "Local", 0, 0, new Date(0),
+                new Date(3_600_000L), false);
+        Assert.assertTrue(dataModel.writeConcertsInfo(festival, new Concert[]{concert}, false));
+        Assert.assertTrue(System.currentTimeMillis() - started < NETWORK_LATENCY / 2);
+        synchronisation.join();
+
+        // the digest read before the local write was not stored
+        server.setLatency(0);
+        server.resetRequestCounts();
+        Assert.assertTrue(dataModel.synchronise(false));
+        Assert.assertEquals(1, server.getRequestCount("mult/conc/"));
+    }
+
+    @Test
+    public void localFestivalEditDuringSynchronisationKept() throws Exception {
+        dataModel.setUsername(OWNER);
+        new ExternalDatabaseHandler(USERNAME).updateFestivalInfo(festival.getExternalId(),
+                "Renamed", null, null, null, null, null, null, null);
+        server.setLatency(NETWORK_LATENCY);
+        Thread synchronisation = synchronise(new AtomicBoolean(false),
+                new AtomicReference<Throwable>());
+        // the synchronisation read the festival and is waiting for the digest
+        Thread.sleep(NETWORK_LATENCY / 4);
+        Festival edited = dataModel.readFestivalInfo(festival.getId(), false);
+        edited.setDescription("Local");
+        Assert.assertEquals(festival.getId().longValue(),
+                dataModel.writeFestivalInfo(edited, false));
+        synchronisation.join();
+
+        Festival stored = dataModel.readFestivalInfo(festival.getId(), false);
+        Assert.assertEquals("Renamed", stored.getName());
+        Assert.assertEquals("Local", stored.getDescription());
+        Assert.assertEquals(computedHash(stored), stored.getContentHash());
+    }
+
+    @Test
+    public void synchronisationConcurrentWithLocalWrites() throws Exception {
+        dataModel.setUsername(OWNER);
+        new ExternalDatabaseHandler(USERNAME).updateFestivalInfo(festival.getExternalId(),
+                "Renamed", null, null, null, null, null, null, null);
+        server.setLatency(STRESS_LATENCY);
+        AtomicBoolean repeat = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread synchronisation = synchronise(repeat, failure);
+        for (int i = 0; i < LOCAL_WRITES; i++) {
+            Concert concert = new Concert(null, LOCAL_EXTERNAL_ID + i, festival, "Local " + i,
+                    i % 3, 0, new Date(i * 60_000L), new Date(i * 60_000L + 1_800_000L), false);
+            Assert.assertTrue(dataModel.writeConcertsInfo(festival, new Concert[]{concert},
+                    false));
+            Festival edited = dataModel.readFestivalInfo(festival.getId(), false);
+            edited.setDescription("Local " + i);
+            Assert.assertEquals(festival.getId().longValue(),
+                    dataModel.writeFestivalInfo(edited, false));
+            Thread.sleep(STRESS_LATENCY / 2);
+        }
+        repeat.set(false);
+        synchronisation.join();
+        Assert.assertNull(failure.get());
+
+        server.setLatency(0);
+        Assert.assertTrue(dataModel.synchronise(false));
+        Festival stored = dataModel.readFestivalInfo(festival.getId(), false);
+        Assert.assertEquals("Renamed", stored.getName());
+        Assert.assertEquals(computedHash(stored), stored.getContentHash());
+        // readers see every local concert next to the synchronised lineup
+        Assert.assertEquals(LINEUP_SIZE + LOCAL_WRITES,
+                dataModel.getSchedule(festival).getConcerts().size());
+        assertStatsMatchLineup(LINEUP_SIZE + LOCAL_WRITES);
+    }
+
+    @Test
+    public void evictedLineupLeftOutOfSynchronisation() throws Exception {
+        try {
+            // every synchronisation requests a trim, which finds nothing left to evict
+            dataModel.setInternalDatabaseBudget(0);
+            awaitConcertCount(0);
+            for (int i = 0; i < 3; i++) {
+                Assert.assertTrue(dataModel.synchronise(false));
+                Assert.assertEquals(0, server.getRequestCount("mult/conc/"));
+                Assert.assertEquals(0, dataModel.getFestivalStats(festival).getConcertCount());
+            }
+        } finally {
+            dataModel.setInternalDatabaseBudget(RetentionManager.DEFAULT_BUDGET);
+        }
+    }
+
+    @Test
+    public void evictedLineupDownloadedWhenViewed() throws Exception {
+        InternalDatabaseHandler handler =
+                new InternalDatabaseHandler(RuntimeEnvironment.application);
+        try {
+            Assert.assertEquals(LINEUP_SIZE, handler.removeConcerts(festival.getId()));
+        } finally {
+            handler.close();
+        }
+        Assert.assertTrue(dataModel.synchronise(false));
+        Assert.assertEquals(0, server.getRequestCount("mult/conc/"));
+
+        Assert.assertTrue(dataModel.getSchedule(festival).getConcerts().isEmpty());
+        awaitConcertCount(LINEUP_SIZE);
+        Assert.assertEquals(1, server.getRequestCount("mult/conc/"));
+        Assert.assertEquals(LINEUP_SIZE, dataModel.getSchedule(festival).getConcerts().size());
+
+        // no longer left out
+        new ExternalDatabaseHandler(USERNAME).writeConcertInfoBatch(festival.getExternalId(),
+                concerts(festival, 1));
+        Assert.assertTrue(dataModel.synchronise(false));
+        Assert.assertEquals(2, server.getRequestCount("mult/conc/"));
+    }
+
+    @Test
+    public void synchronisedLineupNotifiesSubscribers() throws Exception {
+        final CountDownLatch notified = new CountDownLatch(1);
+        Subscription subscription = dataModel.subscribeToConcerts(festival, new ChangeObserver() {
+            @Override
+            public void onChange(DatabaseChange change) {
+                if (!change.getConcerts(festival.getId()).isEmpty())
+                    notified.countDown();
+            }
+        });
+        try {
+            new ExternalDatabaseHandler(USERNAME).writeConcertInfoBatch(festival.getExternalId(),
+                    concerts(festival, 1));
+            Assert.assertTrue(dataModel.synchronise(false));
+            Assert.assertTrue(notified.await(AWAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+        } finally {
+            subscription.cancel();
+        }
+    }
+
+    @Test
+    public void statsFollowSynchronisedLineup() throws Exception {
+        assertStatsMatchLineup(LINEUP_SIZE);
+        new ExternalDatabaseHandler(USERNAME).writeConcertInfoBatch(festival.getExternalId(),
+                concerts(festival, 1));
+        Assert.assertTrue(dataModel.synchronise(false));
+        assertStatsMatchLineup(dataModel.getSchedule(festival).getConcerts().size());
+    }
+
+    /**
+     * wait for the background eviction or download to leave the festival with the given number
+     * of concerts
+     */
+    private void awaitConcertCount(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + AWAIT_TIMEOUT;
+        while (dataModel.getFestivalStats(festival).getConcertCount() != expected) {
+            Assert.assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * compare the statistics of the festival with ones computed from its whole lineup
+     */
+    private void assertStatsMatchLineup(int expectedConcerts) {
+        FestivalStats stats = dataModel.getFestivalStats(festival);
+        Assert.assertEquals(expectedConcerts, stats.getConcertCount());
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        Set<Integer> days = new TreeSet<>();
+        Set<Integer> stages = new TreeSet<>();
+        for (ScheduledConcert concert : dataModel.getSchedule(festival).getConcerts()) {
+            first = Math.min(first, concert.getStart());
+            last = Math.max(last, concert.getEnd());
+            days.add(concert.getDay());
+            stages.add(concert.getStage());
+        }
+        Assert.assertEquals(first, stats.getFirstStart());
+        Assert.assertEquals(last, stats.getLastEnd());
+        Assert.assertEquals(days.toString(), Arrays.toString(stats.getDays()));
+        Assert.assertEquals(stages.toString(), Arrays.toString(stats.getStages()));
+    }
+
+    /**
+     * start a thread synchronising once, or until repeat is cleared
+     */
+    private Thread synchronise(final AtomicBoolean repeat,
+                               final AtomicReference<Throwable> failure) {
+        Thread synchronisation = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    do {
+                        dataModel.synchronise(false);
+                    } while (repeat.get());
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        synchronisation.start();
+        return synchronisation;
+    }
+
+    /**
+     * @return content hash computed from the fields of the festival instead of the stored one
+     */
+    private static long computedHash(Festival festival) {
+        return new Festival(festival.getId(), festival.getExternalId(), festival.getName(),
+                festival.getDescription(), festival.getCountry(), festival.getCity(),
+                festival.getAddress(), festival.getGenre(), festival.getPrices(),
+                festival.getOwner(), festival.isOfficial(), festival.getVotes())
+                .getContentHash();
+    }
+
+    private static Concert[] concerts(Festival festival, int count) {
+        Concert[] result = new Concert[count];
+        for (int i = 0; i < result.length; i++)
+            result[i] = new Concert(null, 0, festival, "Artist " + i, i % 3, i % 4,
+                    new Date(i * 60_000L), new Date(i * 60_000L + 3_600_000L), false);
+        return result;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.bundle;
+
+import com.ivanbratoev.festpal.BuildConfig;
+import com.ivanbratoev.festpal.datamodel.Benchmark;
+import com.ivanbratoev.festpal.datamodel.Concert;
+import com.ivanbratoev.festpal.datamodel.Festival;
+import com.ivanbratoev.festpal.datamodel.db.internal.InternalDatabaseHandler;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Import rate of a festival bundle into the internal database, compared with adding the same
+ * rows one at a time
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FestivalBundleBenchmark {
+
+    private static final int CONCERTS = 1_000;
+
+    private InternalDatabaseHandler handler;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        handler = new InternalDatabaseHandler(RuntimeEnvironment.application);
+        Festival festival = new Festival(null, 1, "Benchmark Fest", "", "Bulgaria", "Sofia", "",
+                "Rock", "", "owner", false, 0);
+        Concert[] concerts = new Concert[CONCERTS];
+        for (int i = 0; i < CONCERTS; i++)
+            concerts[i] = new Concert(null, i, festival, "Artist " + i, i % 3, i % 4,
+                    new Date(i * 60_000L), new Date(i * 60_000L + 3_600_000L), false);
+        file = File.createTempFile("benchmark", ".bundle");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            new FestivalBundle(festival, concerts).write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        handler.close();
+        file.delete();
+    }
+
+    @Test
+    public void importBundle() throws Exception {
+        Benchmark.Result result = Benchmark.measure("FestivalBundle import, concerts", CONCERTS,
+                new Benchmark.Operation() {
+                    @Override
+                    public int run() throws Exception {
+                        FestivalBundle bundle = FestivalBundle.read(file);
+                        return (int) handler.importFestival(bundle.getFestival(),
+                                bundle.getConcerts());
+                    }
+                });
+        // the whole bundle within a fraction of a second
+        Assert.assertTrue(result.getMedian() > CONCERTS * 4);
+    }
+
+    @Test
+    public void importRowByRow() throws Exception {
+        Benchmark.measure("FestivalBundle addFestival/addConcert, concerts", CONCERTS,
+                new Benchmark.Operation() {
+                    @Override
+                    public int run() throws Exception {
+                        FestivalBundle bundle = FestivalBundle.read(file);
+                        Festival festival = bundle.getFestival();
+                        festival.setId(handler.addFestival(festival));
+                        for (Concert concert : bundle.getConcerts())
+                            handler.addConcert(concert);
+                        return festival.getId().intValue();
+                    }
+                });
+    }
+}
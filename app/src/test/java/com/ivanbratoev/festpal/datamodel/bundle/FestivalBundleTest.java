@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.bundle;
+
+import com.ivanbratoev.festpal.datamodel.Concert;
+import com.ivanbratoev.festpal.datamodel.Festival;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+
+public class FestivalBundleTest {
+
+    @Test
+    public void roundTripThroughMappedFile() throws Exception {
+        Festival festival = festival();
+        Concert[] concerts = concerts(festival, 100);
+        File file = File.createTempFile("festival", ".bundle");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                new FestivalBundle(festival, concerts).write(out);
+            } finally {
+                out.close();
+            }
+            FestivalBundle bundle = FestivalBundle.read(file);
+
+            Festival read = bundle.getFestival();
+            Assert.assertNull(read.getId());
+            Assert.assertEquals(festival.getExternalId(), read.getExternalId());
+            Assert.assertEquals("Festiva\u0142", read.getName());
+            Assert.assertEquals(festival.getCountry(), read.getCountry());
+            Assert.assertEquals(festival.getOwner(), read.getOwner());
+            Assert.assertEquals(festival.isOfficial(), read.isOfficial());
+            Assert.assertEquals(festival.getVotes(), read.getVotes());
+            Assert.assertEquals(festival.getContentHash(), read.getContentHash());
+            Assert.assertEquals(concerts.length, bundle.getConcerts().length);
+            for (int i = 0; i < concerts.length; i++) {
+                Concert concert = bundle.getConcerts()[i];
+                Assert.assertSame(read, concert.getFestival());
+                Assert.assertEquals(concerts[i].getContentHash(), concert.getContentHash());
+            }
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void nullsReadBackAsNulls() throws Exception {
+        Festival festival = new Festival(3L, 42, "Festival", null, "Bulgaria", "Sofia", "",
+                "Rock", null, "owner", false, 0);
+        Concert[] concerts = concerts(festival, 2);
+        concerts[0].setExternalId(null);
+        FestivalBundle bundle = FestivalBundle.read(ByteBuffer.wrap(
+                write(new FestivalBundle(festival, concerts))));
+
+        Assert.assertNull(bundle.getFestival().getDescription());
+        Assert.assertNull(bundle.getFestival().getPrices());
+        Assert.assertEquals("", bundle.getFestival().getAddress());
+        Assert.assertNull(bundle.getConcerts()[0].getExternalId());
+        Assert.assertEquals(Long.valueOf(1), bundle.getConcerts()[1].getExternalId());
+        Assert.assertEquals(concerts[0].getContentHash(),
+                bundle.getConcerts()[0].getContentHash());
+    }
+
+    @Test
+    public void repeatedStringsStoredOnce() throws Exception {
+        Festival festival = festival();
+        Concert[] concerts = concerts(festival, 10);
+        for (Concert concert : concerts)
+            concert.setArtist("Same Artist");
+        byte[] repeated = write(new FestivalBundle(festival, concerts));
+        concerts[0].setArtist("Other Artist");
+        byte[] distinct = write(new FestivalBundle(festival, concerts));
+        Assert.assertEquals(repeated.length + 4 + "Other Artist".length(), distinct.length);
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFileRejected() throws Exception {
+        FestivalBundle.read(ByteBuffer.wrap("{\"id\": 1}".getBytes("UTF-8")));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedBundleRejected() throws Exception {
+        byte[] bytes = write(new FestivalBundle(festival(), concerts(festival(), 10)));
+        FestivalBundle.read(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1)));
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptStringCountRejected() throws Exception {
+        byte[] bytes = write(new FestivalBundle(festival(), new Concert[0]));
+        ByteBuffer.wrap(bytes).putInt(6, Integer.MAX_VALUE);
+        FestivalBundle.read(ByteBuffer.wrap(bytes));
+    }
+
+    private static byte[] write(FestivalBundle bundle) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bundle.write(out);
+        return out.toByteArray();
+    }
+
+    private static Festival festival() {
+        return new Festival(3L, 42, "Festiva\u0142", "description", "Bulgaria", "Sofia", "address",
+                "Rock", "prices", "owner", true, 7);
+    }
+
+    private static Concert[] concerts(Festival festival, int count) {
+        Concert[] result = new Concert[count];
+        for (int i = 0; i < count; i++)
+            result[i] = new Concert(null, i, festival, "Artist " + i, i % 3, i % 4,
+                    new Date(i * 60_000L), new Date(i * 60_000L + 3_600_000L), false);
+        return result;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel.db.external;
+
+import com.ivanbratoev.festpal.BuildConfig;
+import com.ivanbratoev.festpal.datamodel.Benchmark;
+import com.ivanbratoev.festpal.datamodel.Concert;
+import com.ivanbratoev.festpal.datamodel.Festival;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Date;
+
+/**
+ * Throughput of many concurrent {@link ExternalDatabaseHandler} clients against the stub
+ * server under imitated mobile network conditions
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ExternalLoadBenchmark {
+
+    private static final int CLIENTS = 16;
+    private static final int CALLS_PER_CLIENT = 5;
+    private static final int CONCERTS = 100;
+
+    private StubExternalServer server;
+    private Festival festival;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubExternalServer();
+        server.start();
+        server.useForHandlers();
+        long festivalId = server.addFestival("Benchmark Fest", "owner");
+        festival = new Festival(festivalId, festivalId, "Benchmark Fest", "", "", "", "", "", "",
+                "owner", false, 0);
+        Concert[] lineup = new Concert[CONCERTS];
+        for (int i = 0; i < CONCERTS; i++)
+            lineup[i] = new Concert(null, 0, festival, "Artist " + i, i % 3, i % 4,
+                    new Date(i * 60_000L), new Date(i * 60_000L + 3_600_000L), false);
+        new ExternalDatabaseHandler("benchmark").writeConcertInfoBatch(festivalId, lineup);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void readConcertsOnLocalNetwork() throws Exception {
+        measureReadConcerts("concurrent readFestivalConcerts, local");
+    }
+
+    @Test
+    public void readConcertsOnMobileNetwork() throws Exception {
+        server.setLatency(100);
+        server.setBandwidth(200_000);
+        measureReadConcerts("concurrent readFestivalConcerts, 100ms 200KB/s");
+    }
+
+    @Test
+    public void readConcertsOnFlakyNetwork() throws Exception {
+        server.setLatency(100);
+        server.setFailureRate(0.05, 503);
+        measureReadConcerts("concurrent readFestivalConcerts, 100ms 5% errors");
+    }
+
+    private void measureReadConcerts(String name) throws Exception {
+        final LoadGenerator generator = new LoadGenerator(CLIENTS, CALLS_PER_CLIENT);
+        final LoadGenerator.Call call = new LoadGenerator.Call() {
+            @Override
+            public boolean run(ExternalDatabaseHandler handler, int client, int iteration)
+                    throws Exception {
+                Concert[] concerts = handler.readFestivalConcerts(festival);
+                return concerts != null && concerts.length == CONCERTS;
+            }
+        };
+        Benchmark.measure(name, CLIENTS * CALLS_PER_CLIENT, new Benchmark.Operation() {
+            @Override
+            public int run() throws Exception {
+                LoadGenerator.Result result = generator.run(call);
+                System.out.println(result);
+                return result.getFailed();
+            }
+        });
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.db.external;
+
+import com.ivanbratoev.festpal.BuildConfig;
+import com.ivanbratoev.festpal.datamodel.Benchmark;
+import com.ivanbratoev.festpal.datamodel.Festival;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Heap retained by a large search result, decoded with and without interning the values the
+ * festivals share
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FestivalFootprintBenchmark {
+
+    private static final int FESTIVALS = 50_000;
+    private static final String[] COUNTRIES = {"Bulgaria", "Germany", "United Kingdom",
+            "Netherlands", "Belgium", "Spain", "Portugal", "Hungary", "Serbia", "Croatia",
+            "Poland", "Czech Republic", "France", "Denmark", "Sweden", "Norway"};
+    private static final String[] GENRES = {"Rock", "Metal", "Electronic", "Jazz", "Pop",
+            "Hip Hop", "Folk", "Blues", "Classical", "Reggae", "Punk", "Indie"};
+    private static final int CITIES = 64;
+    private static final int OWNERS = 32;
+
+    private String body;
+
+    @Before
+    public void setUp() throws JSONException {
+        JSONArray festivals = new JSONArray();
+        for (int i = 0; i < FESTIVALS; i++) {
+            JSONObject festival = new JSONObject();
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_ID, i);
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_NAME,
+                    "Festival " + i);
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_DESCRIPTION,
+                    "");
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_COUNTRY,
+                    COUNTRIES[i % COUNTRIES.length]);
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_CITY,
+                    "City " + (i % CITIES));
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_ADDRESS,
+                    "");
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_GENRE,
+                    GENRES[i % GENRES.length]);
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_PRICES,
+                    "");
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_OWNER,
+                    "organiser" + (i % OWNERS));
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_OFFICIAL,
+                    i % 2 == 0);
+            festival.put(ExternalDatabaseDefinitions.FestivalsContext.RESULT_PARAMETER_VOTES, i);
+            festivals.put(festival);
+        }
+        body = festivals.toString();
+    }
+
+    @Test
+    public void searchResultFootprint() throws Exception {
+        long plain = Benchmark.measureRetainedHeap("50k festivals, separate strings",
+                new Benchmark.Allocation() {
+                    @Override
+                    public Object allocate() throws Exception {
+                        return parseWithoutInterning(body);
+                    }
+                });
+        long interned = Benchmark.measureRetainedHeap("50k festivals, interned strings",
+                new Benchmark.Allocation() {
+                    @Override
+                    public Object allocate() throws Exception {
+                        return ExternalDatabaseHandler.parseFestivals(body);
+                    }
+                });
+        Assert.assertTrue(interned < plain);
+    }
+
+    /**
+     * the decoding done before the values were interned
+     */
+    private static Festival[] parseWithoutInterning(String body) throws JSONException {
+        JSONArray json = new JSONArray(body);
+        Festival[] result = new Festival[json.length()];
+        for (int i = 0; i < json.length(); i++) {
+            JSONObject current = json.getJSONObject(i);
+            result[i] = new Festival(
+                    -1L,
+                    current.getLong(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_ID),
+                    current.getString(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_NAME),
+                    current.getString(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_DESCRIPTION),
+                    current.getString(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_COUNTRY),
+                    current.getString(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_CITY),
+                    current.getString(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_ADDRESS),
+                    current.getString(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_GENRE),
+                    current.getString(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_PRICES),
+                    current.getString(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_OWNER),
+                    current.getBoolean(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_OFFICIAL),
+                    current.getInt(ExternalDatabaseDefinitions.FestivalsContext.
+                            RESULT_PARAMETER_VOTES));
+        }
+        return result;
+    }
+}
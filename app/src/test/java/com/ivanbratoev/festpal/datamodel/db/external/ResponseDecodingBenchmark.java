@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel.db.external;
+
+import com.ivanbratoev.festpal.BuildConfig;
+import com.ivanbratoev.festpal.datamodel.Benchmark;
+import com.ivanbratoev.festpal.datamodel.Festival;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Decoding rate of server responses by {@link ExternalDatabaseHandler}, using canned fixtures
+ * so the network is not part of the measurement
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ResponseDecodingBenchmark {
+
+    private String festivals;
+    private String concerts;
+    private Festival festival;
+
+    @Before
+    public void setUp() throws IOException {
+        festivals = fixture("festivals.json");
+        concerts = fixture("concerts.json");
+        festival = new Festival(1L, 1, "Benchmark Fest", "", "", "", "", "", "", "owner",
+                false, 0);
+    }
+
+    @Test
+    public void parseFestivals() throws Exception {
+        final int count = ExternalDatabaseHandler.parseFestivals(festivals).length;
+        Benchmark.measure("ExternalDatabaseHandler.parseFestivals", count,
+                new Benchmark.Operation() {
+                    @Override
+                    public int run() throws Exception {
+                        return ExternalDatabaseHandler.parseFestivals(festivals).length;
+                    }
+                });
+    }
+
+    @Test
+    public void parseConcerts() throws Exception {
+        final int count = ExternalDatabaseHandler.parseConcerts(concerts, festival).length;
+        Benchmark.measure("ExternalDatabaseHandler.parseConcerts", count,
+                new Benchmark.Operation() {
+                    @Override
+                    public int run() throws Exception {
+                        return ExternalDatabaseHandler.parseConcerts(concerts, festival).length;
+                    }
+                });
+    }
+
+    private String fixture(String name) throws IOException {
+        InputStream in = getClass().getResourceAsStream("/fixtures/" + name);
+        if (in == null)
+            throw new IOException("missing fixture " + name);
+        Reader reader = new InputStreamReader(in, Charset.forName("UTF-8"));
+        try {
+            StringBuilder result = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1)
+                result.append(buffer, 0, read);
+            return result.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.db.internal;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+public class ChangeNotifierTest {
+
+    private final List<Runnable> queued = new ArrayList<>();
+    private ChangeNotifier notifier;
+
+    @Before
+    public void setUp() {
+        notifier = new ChangeNotifier(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        });
+    }
+
+    @Test
+    public void subscriptionsFilteredByKind() {
+        Recorder festival = new Recorder();
+        Recorder concerts = new Recorder();
+        Recorder table = new Recorder();
+        notifier.add(festival, Subscription.FESTIVAL, 1);
+        notifier.add(concerts, Subscription.CONCERTS, 2);
+        notifier.add(table, Subscription.FESTIVAL_TABLE, -1);
+
+        notifier.notify(new DatabaseChange.Builder().concertChanged(2L, 10));
+        runQueued();
+        Assert.assertEquals(0, festival.changes.size());
+        Assert.assertEquals(1, concerts.changes.size());
+        Assert.assertEquals(0, table.changes.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(10L)),
+                concerts.changes.get(0).getConcerts(2));
+
+        notifier.notify(new DatabaseChange.Builder().festivalAdded(1));
+        runQueued();
+        Assert.assertEquals(1, festival.changes.size());
+        Assert.assertEquals(1, concerts.changes.size());
+        Assert.assertEquals(1, table.changes.size());
+    }
+
+    @Test
+    public void changesQueuedBeforeDeliveryCoalesced() {
+        Recorder concerts = new Recorder();
+        notifier.add(concerts, Subscription.CONCERTS, 1);
+
+        for (long id = 0; id < 100; id++)
+            notifier.notify(new DatabaseChange.Builder().concertChanged(1L, id));
+        // the writers only queued, nothing was delivered on their thread
+        Assert.assertEquals(0, concerts.changes.size());
+        Assert.assertEquals(1, queued.size());
+
+        runQueued();
+        Assert.assertEquals(1, concerts.changes.size());
+        Assert.assertEquals(100, concerts.changes.get(0).getConcerts(1).size());
+
+        notifier.notify(new DatabaseChange.Builder().concertChanged(1L, 100));
+        runQueued();
+        Assert.assertEquals(2, concerts.changes.size());
+        Assert.assertEquals(1, concerts.changes.get(1).getConcerts(1).size());
+    }
+
+    @Test
+    public void cancelledSubscriptionNotNotified() {
+        Recorder table = new Recorder();
+        Subscription subscription = notifier.add(table, Subscription.FESTIVAL_TABLE, -1);
+        subscription.cancel();
+
+        notifier.notify(new DatabaseChange.Builder().festivalRemoved(3));
+        Assert.assertFalse(notifier.hasSubscriptions());
+        Assert.assertEquals(0, queued.size());
+    }
+
+    @Test
+    public void emptyChangeNotDelivered() {
+        notifier.add(new Recorder(), Subscription.FESTIVAL_TABLE, -1);
+        notifier.notify(new DatabaseChange.Builder());
+        Assert.assertEquals(0, queued.size());
+    }
+
+    @Test
+    public void changesAfterRejectedDeliveryNotLost() {
+        final boolean[] shutDown = {true};
+        notifier = new ChangeNotifier(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (shutDown[0])
+                    throw new RejectedExecutionException();
+                queued.add(command);
+            }
+        });
+        Recorder concerts = new Recorder();
+        notifier.add(concerts, Subscription.CONCERTS, 1);
+
+        notifier.notify(new DatabaseChange.Builder().concertChanged(1L, 1));
+        shutDown[0] = false;
+        notifier.notify(new DatabaseChange.Builder().concertChanged(1L, 2));
+        Assert.assertEquals(1, queued.size());
+        runQueued();
+        Assert.assertEquals(1, concerts.changes.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(2L)),
+                concerts.changes.get(0).getConcerts(1));
+    }
+
+    private void runQueued() {
+        List<Runnable> tasks = new ArrayList<>(queued);
+        queued.clear();
+        for (Runnable task : tasks)
+            task.run();
+    }
+
+    private static class Recorder implements ChangeObserver {
+        final List<DatabaseChange> changes = new ArrayList<>();
+
+        @Override
+        public void onChange(DatabaseChange change) {
+            changes.add(change);
+        }
+    }
+}
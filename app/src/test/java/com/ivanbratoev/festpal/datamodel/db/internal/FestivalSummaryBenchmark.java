@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.db.internal;
+
+import com.ivanbratoev.festpal.BuildConfig;
+import com.ivanbratoev.festpal.datamodel.Benchmark;
+import com.ivanbratoev.festpal.datamodel.Concert;
+import com.ivanbratoev.festpal.datamodel.Festival;
+import com.ivanbratoev.festpal.datamodel.FestivalSummary;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Time and retained heap of loading a festival list from whole festivals against loading it
+ * from {@link FestivalSummary} projections, for festivals with long descriptions
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FestivalSummaryBenchmark {
+
+    private static final String DATABASE = "festival-summary-benchmark.db";
+    private static final int FESTIVALS = 2_000;
+    private static final int CONCERTS = 4;
+    private static final String[] CITIES = {"Sofia", "Plovdiv", "Varna", "Burgas"};
+
+    private InternalDatabaseHandler handler;
+
+    @Before
+    public void setUp() {
+        RuntimeEnvironment.application.deleteDatabase(DATABASE);
+        handler = new InternalDatabaseHandler(
+                new InternalDBHelper(RuntimeEnvironment.application, DATABASE, false));
+        Random random = new Random(FESTIVALS);
+        char[] text = new char[2_000];
+        for (int f = 0; f < FESTIVALS; f++) {
+            for (int i = 0; i < text.length; i++)
+                text[i] = (char) ('a' + random.nextInt(26));
+            String description = new String(text);
+            Festival festival = new Festival(null, f, "Fest " + f, description, "Bulgaria",
+                    CITIES[f % CITIES.length], description.substring(0, 200), "Rock",
+                    description.substring(200, 400), "owner", false, random.nextInt(1000));
+            Concert[] concerts = new Concert[CONCERTS];
+            long start = f * 86_400_000L;
+            for (int i = 0; i < CONCERTS; i++)
+                concerts[i] = new Concert(null, i, festival, "Artist " + i, 0, 1,
+                        new Date(start + i * 3_600_000L), new Date(start + (i + 1) * 3_600_000L),
+                        false);
+            handler.importFestival(festival, concerts);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        handler.close();
+        RuntimeEnvironment.application.deleteDatabase(DATABASE);
+    }
+
+    @Test
+    public void loadList() throws Exception {
+        Benchmark.Result festivals = Benchmark.measure("Festival list from festivals", FESTIVALS,
+                new Benchmark.Operation() {
+                    @Override
+                    public int run() {
+                        return handler.getFestivals().length;
+                    }
+                });
+        Benchmark.Result summaries = Benchmark.measure("Festival list from summaries",
+                FESTIVALS, new Benchmark.Operation() {
+                    @Override
+                    public int run() {
+                        return handler.getFestivalSummaries().length;
+                    }
+                });
+        Assert.assertTrue(summaries + " vs " + festivals,
+                summaries.getMedian() > festivals.getMedian());
+    }
+
+    @Test
+    public void retainedHeap() throws Exception {
+        long festivals = Benchmark.measureRetainedHeap("Festival list of festivals",
+                new Benchmark.Allocation() {
+                    @Override
+                    public Object allocate() {
+                        return Arrays.asList(handler.getFestivals());
+                    }
+                });
+        long summaries = Benchmark.measureRetainedHeap("Festival list of summaries",
+                new Benchmark.Allocation() {
+                    @Override
+                    public Object allocate() {
+                        return Arrays.asList(handler.getFestivalSummaries());
+                    }
+                });
+        Assert.assertTrue(summaries + " vs " + festivals, summaries < festivals);
+    }
+}
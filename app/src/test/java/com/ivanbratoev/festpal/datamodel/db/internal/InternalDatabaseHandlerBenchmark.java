@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.ivanbratoev.festpal.datamodel.db.internal;
+
+import com.ivanbratoev.festpal.BuildConfig;
+import com.ivanbratoev.festpal.datamodel.Benchmark;
+import com.ivanbratoev.festpal.datamodel.Concert;
+import com.ivanbratoev.festpal.datamodel.Festival;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Date;
+
+/**
+ * Insert and query throughput of {@link InternalDatabaseHandler}
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class InternalDatabaseHandlerBenchmark {
+
+    private static final int SCHEDULE_SIZE = 500;
+    private static final int BATCH_SIZE = 500;
+
+    private InternalDatabaseHandler handler;
+    private Festival festival;
+
+    @Before
+    public void setUp() {
+        handler = new InternalDatabaseHandler(RuntimeEnvironment.application);
+        festival = new Festival(null, 1, "Benchmark Fest", "", "", "", "", "", "", "owner",
+                false, 0);
+        festival = handler.getFestival(handler.addFestival(festival));
+        handler.addConcerts(concerts(festival, SCHEDULE_SIZE));
+    }
+
+    @After
+    public void tearDown() {
+        handler.close();
+    }
+
+    @Test
+    public void addConcert() throws Exception {
+        final Concert concert = concerts(festival, 1)[0];
+        Benchmark.measure("InternalDatabaseHandler.addConcert", 1, new Benchmark.Operation() {
+            @Override
+            public int run() {
+                return (int) handler.addConcert(concert);
+            }
+        });
+    }
+
+    @Test
+    public void addConcerts() throws Exception {
+        final Concert[] batch = concerts(festival, BATCH_SIZE);
+        Benchmark.measure("InternalDatabaseHandler.addConcerts", BATCH_SIZE,
+                new Benchmark.Operation() {
+                    @Override
+                    public int run() {
+                        return handler.addConcerts(batch).length;
+                    }
+                });
+    }
+
+    @Test
+    public void getConcerts() throws Exception {
+        Benchmark.measure("InternalDatabaseHandler.getConcerts", SCHEDULE_SIZE,
+                new Benchmark.Operation() {
+                    @Override
+                    public int run() {
+                        return handler.getConcerts(festival).length;
+                    }
+                });
+    }
+
+    @Test
+    public void getConcertByExternalId() throws Exception {
+        Benchmark.measure("InternalDatabaseHandler.getConcertByExternalId", 1,
+                new Benchmark.Operation() {
+                    private int next;
+
+                    @Override
+                    public int run() {
+                        next = (next + 1) % SCHEDULE_SIZE;
+                        return handler.getConcertByExternalId(festival, next).getStage();
+                    }
+                });
+    }
+
+    private static Concert[] concerts(Festival festival, int count) {
+        Concert[] result = new Concert[count];
+        for (int i = 0; i < count; i++)
+            result[i] = new Concert(null, i, festival, "Artist " + i, i % 3, i % 4,
+                    new Date(i * 60_000L), new Date(i * 60_000L + 3_600_000L), false);
+        return result;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.db.internal;
+
+import com.ivanbratoev.festpal.BuildConfig;
+import com.ivanbratoev.festpal.datamodel.Benchmark;
+import com.ivanbratoev.festpal.datamodel.Concert;
+import com.ivanbratoev.festpal.datamodel.Festival;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Size of the database file and query latency after festivals were imported and removed over
+ * and over, before and after {@link InternalDatabaseHandler#performMaintenance(double)}. The
+ * rollback journal is used, so the file size is measured without waiting for a checkpoint
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MaintenanceBenchmark {
+
+    private static final String DATABASE = "maintenance-benchmark.db";
+    private static final int ROUNDS = 20;
+    private static final int FESTIVALS_PER_ROUND = 5;
+    private static final int CONCERTS = 400;
+
+    private InternalDatabaseHandler handler;
+    private final List<Festival> kept = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        RuntimeEnvironment.application.deleteDatabase(DATABASE);
+        handler = new InternalDatabaseHandler(
+                new InternalDBHelper(RuntimeEnvironment.application, DATABASE, false));
+        Random random = new Random(ROUNDS);
+        for (int round = 0; round < ROUNDS; round++) {
+            Festival[] imported = new Festival[FESTIVALS_PER_ROUND];
+            for (int f = 0; f < imported.length; f++) {
+                imported[f] = new Festival(null, round * FESTIVALS_PER_ROUND + f, "Fest", "",
+                        "Bulgaria", "Sofia", "", "Rock", "", "owner", false, 0);
+                handler.importFestival(imported[f], concerts(imported[f], random));
+            }
+            // one festival of each round stays, the others are removed with their concerts
+            int stays = random.nextInt(imported.length);
+            for (int f = 0; f < imported.length; f++) {
+                if (f == stays)
+                    kept.add(imported[f]);
+                else
+                    handler.removeFestival(imported[f].getId());
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        handler.close();
+        RuntimeEnvironment.application.deleteDatabase(DATABASE);
+    }
+
+    @Test
+    public void churn() throws Exception {
+        File file = RuntimeEnvironment.application.getDatabasePath(DATABASE);
+        long before = Benchmark.reportSize("Database file after churn", file.length());
+        Benchmark.Result queryBefore = measureQueries("Lineup queries after churn");
+
+        Assert.assertTrue(handler.performMaintenance(0));
+        long after = Benchmark.reportSize("Database file after maintenance", file.length());
+        Benchmark.Result queryAfter = measureQueries("Lineup queries after maintenance");
+
+        Assert.assertTrue(before + " -> " + after, after < before);
+        // the planner statistics must not make the lineup queries slower
+        Assert.assertTrue(queryAfter.toString(),
+                queryAfter.getMedian() > queryBefore.getMedian() * 0.8);
+    }
+
+    private Benchmark.Result measureQueries(String name) throws Exception {
+        return Benchmark.measure(name, CONCERTS, new Benchmark.Operation() {
+            private int next;
+
+            @Override
+            public int run() {
+                next = (next + 1) % kept.size();
+                return handler.getConcerts(kept.get(next)).length;
+            }
+        });
+    }
+
+    private static Concert[] concerts(Festival festival, Random random) {
+        Concert[] result = new Concert[CONCERTS];
+        for (int i = 0; i < CONCERTS; i++) {
+            long start = random.nextInt(3 * 24 * 60) * 60_000L;
+            result[i] = new Concert(null, i, festival, "Artist " + random.nextInt(), i % 4,
+                    i % 3, new Date(start), new Date(start + 3_600_000L), false);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.db.internal;
+
+import android.content.Context;
+
+import com.ivanbratoev.festpal.BuildConfig;
+import com.ivanbratoev.festpal.datamodel.Concert;
+import com.ivanbratoev.festpal.datamodel.Festival;
+import com.ivanbratoev.festpal.datamodel.db.external.ClientDoesNotHavePermissionException;
+import com.ivanbratoev.festpal.datamodel.db.external.ExternalDatabaseHandler;
+import com.ivanbratoev.festpal.datamodel.db.external.StubExternalServer;
+
+import org.json.JSONException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Writes the database shipped in the assets and copied by {@link InternalDBHelper} on first
+ * run. The curated festivals of the content directory are served by the stub server, downloaded
+ * through {@link ExternalDatabaseHandler} and stored through {@link InternalDatabaseHandler}, so
+ * the file always has the current schema. Only run by the <code>generatePreloadedDatabase</code>
+ * task, which exists when the build is given <code>-PpreloadedDatabase</code> and which sets the
+ * content and output paths.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PreloadedDatabaseGenerator {
+
+    private static final String DATABASE = "preloaded.db";
+
+    @Test
+    public void generate() throws Exception {
+        String content = System.getProperty("preloadedDatabase.content");
+        String output = System.getProperty("preloadedDatabase.output");
+        Assert.assertNotNull("preloadedDatabase.content not set", content);
+        Assert.assertNotNull("preloadedDatabase.output not set", output);
+        File file = new File(output);
+        file.getParentFile().mkdirs();
+        generate(RuntimeEnvironment.application, new File(content), file);
+    }
+
+    /**
+     * @param context application context
+     * @param content directory holding the festivals.json and concerts.json to ship
+     * @param output  file to write the database to
+     * @return number of festivals written
+     */
+    static int generate(Context context, File content, File output)
+            throws IOException, JSONException, ClientDoesNotHavePermissionException {
+        StubExternalServer server = new StubExternalServer();
+        server.start();
+        int count = 0;
+        try {
+            server.useForHandlers();
+            server.addFixtures(read(new File(content, "festivals.json")),
+                    read(new File(content, "concerts.json")));
+            ExternalDatabaseHandler external = new ExternalDatabaseHandler("preload");
+
+            context.deleteDatabase(DATABASE);
+            // without write-ahead logging the whole database is in a single file
+            InternalDatabaseHandler internal = new InternalDatabaseHandler(
+                    new InternalDBHelper(context, DATABASE, false));
+            try {
+                for (Festival festival : external.readMultipleFestivals(
+                        server.getFestivalCount())) {
+                    Concert[] concerts = external.readFestivalConcerts(festival);
+                    if (concerts == null || internal.importFestival(festival, concerts) == -1)
+                        throw new IOException("Could not copy " + festival.getName());
+                    count++;
+                }
+            } finally {
+                internal.close();
+            }
+        } finally {
+            server.stop();
+        }
+        copy(context.getDatabasePath(DATABASE), output);
+        context.deleteDatabase(DATABASE);
+        return count;
+    }
+
+    private static void copy(File source, File target) throws IOException {
+        InputStream in = new FileInputStream(source);
+        try {
+            OutputStream out = new FileOutputStream(target);
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1)
+                    out.write(buffer, 0, count);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8"));
+        try {
+            StringBuilder result = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1)
+                result.append(buffer, 0, read);
+            return result.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.db.internal;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.ivanbratoev.festpal.BuildConfig;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the database written by {@link PreloadedDatabaseGenerator} has the same schema as
+ * the one {@link InternalDBHelper} creates, so it can be copied in place on first run.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PreloadedDatabaseTest {
+
+    private static final String CREATED = "created.db";
+    private static final String INSTALLED = "installed.db";
+
+    private Context context;
+    private File preloaded;
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.application;
+        preloaded = File.createTempFile("preloaded", ".db");
+        // the schema does not depend on the content, the benchmark fixtures stand in for it
+        File content = new File(getClass().getResource("/fixtures").toURI());
+        Assert.assertTrue(PreloadedDatabaseGenerator.generate(context, content, preloaded) > 0);
+    }
+
+    @After
+    public void tearDown() {
+        preloaded.delete();
+        context.deleteDatabase(CREATED);
+        context.deleteDatabase(INSTALLED);
+    }
+
+    @Test
+    public void generatedSchemaMatchesContract() {
+        InternalDBHelper helper = new InternalDBHelper(context, CREATED, false);
+        SQLiteDatabase created = helper.getReadableDatabase();
+        SQLiteDatabase generated = SQLiteDatabase.openDatabase(preloaded.getPath(), null,
+                SQLiteDatabase.OPEN_READONLY);
+        try {
+            Assert.assertEquals(InternalDBHelper.DATABASE_VERSION, generated.getVersion());
+            for (String table : new String[]{InternalDBContract.FestivalEntry.TABLE_NAME,
+                    InternalDBContract.ConcertEntry.TABLE_NAME,
+                    InternalDBContract.ConcertStatsEntry.TABLE_NAME})
+                Assert.assertEquals(table, columns(created, table), columns(generated, table));
+        } finally {
+            generated.close();
+            helper.close();
+        }
+    }
+
+    @Test
+    public void installedDatabaseIsUsedByHandler() throws Exception {
+        File database = context.getDatabasePath(INSTALLED);
+        database.getParentFile().mkdirs();
+        Assert.assertTrue(preloaded.renameTo(database));
+
+        InternalDatabaseHandler handler = new InternalDatabaseHandler(
+                new InternalDBHelper(context, INSTALLED, true));
+        try {
+            Assert.assertTrue(handler.hasFestivals());
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    public void existingDatabaseIsNotReplaced() {
+        new InternalDBHelper(context, CREATED, false).getWritableDatabase().close();
+        Assert.assertFalse(InternalDBHelper.installPreloadedDatabase(context,
+                InternalDBHelper.PRELOADED_DATABASE_ASSET, CREATED));
+    }
+
+    /**
+     * @return name, type, not null and primary key flags of every column of the table
+     */
+    private static List<String> columns(SQLiteDatabase db, String table) {
+        List<String> result = new ArrayList<>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            while (cursor.moveToNext())
+                result.add(cursor.getString(1) + " " + cursor.getString(2) + " "
+                        + cursor.getInt(3) + " " + cursor.getInt(5));
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.metrics;
+
+import com.ivanbratoev.festpal.datamodel.Benchmark;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Cost of timing an operation with {@link Metrics}, compared with not timing it at all. With
+ * metrics disabled the cost should not be distinguishable from the baseline.
+ */
+public class MetricsOverheadBenchmark {
+
+    private static final int OPERATIONS = 1000;
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void baseline() throws Exception {
+        Benchmark.measure("baseline", OPERATIONS, new Benchmark.Operation() {
+            @Override
+            public int run() {
+                int result = 0;
+                for (int i = 0; i < OPERATIONS; i++)
+                    result += work(i);
+                return result;
+            }
+        });
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        Metrics.setEnabled(false);
+        Benchmark.measure("Metrics disabled", OPERATIONS, timedOperation());
+    }
+
+    @Test
+    public void enabled() throws Exception {
+        Metrics.setEnabled(true);
+        Benchmark.measure("Metrics enabled", OPERATIONS, timedOperation());
+    }
+
+    private static Benchmark.Operation timedOperation() {
+        return new Benchmark.Operation() {
+            @Override
+            public int run() {
+                int result = 0;
+                for (int i = 0; i < OPERATIONS; i++) {
+                    long timer = Metrics.start();
+                    result += work(i);
+                    Metrics.stop("MetricsOverheadBenchmark.work", timer);
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * stands for the body of an instrumented method, small enough for the overhead to show
+     */
+    private static int work(int i) {
+        return (i * 31) ^ (i >>> 3);
+    }
+}
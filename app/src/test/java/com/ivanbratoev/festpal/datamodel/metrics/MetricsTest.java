@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    @Before
+    public void setUp() {
+        Metrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void testDisabledRecordsNothing() {
+        Metrics.setEnabled(false);
+        long timer = Metrics.start();
+        Metrics.stop("MetricsTest.disabled", timer);
+        Metrics.increment("MetricsTest.disabled");
+        Metrics.record("MetricsTest.disabled.rows", 5);
+
+        assertEquals(0, Metrics.histogram("MetricsTest.disabled").getCount());
+        assertEquals(0, Metrics.counter("MetricsTest.disabled").getValue());
+        assertEquals(0, Metrics.histogram("MetricsTest.disabled.rows").getCount());
+    }
+
+    @Test
+    public void testTimerStartedWhileDisabledIsIgnored() {
+        Metrics.setEnabled(false);
+        long timer = Metrics.start();
+        Metrics.setEnabled(true);
+        Metrics.stop("MetricsTest.toggled", timer);
+
+        assertEquals(0, Metrics.histogram("MetricsTest.toggled").getCount());
+    }
+
+    @Test
+    public void testCounter() {
+        Metrics.increment("MetricsTest.counter");
+        Metrics.add("MetricsTest.counter", 41);
+
+        assertEquals(42, Metrics.counter("MetricsTest.counter").getValue());
+    }
+
+    @Test
+    public void testHistogram() {
+        for (int i = 1; i <= 100; i++)
+            Metrics.record("MetricsTest.histogram.rows", i);
+
+        Histogram histogram = Metrics.histogram("MetricsTest.histogram.rows");
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050, histogram.getSum());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+        long median = histogram.getPercentile(50);
+        assertTrue("median " + median, median >= 50 && median < 100);
+        assertEquals(100, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testReset() {
+        Metrics.increment("MetricsTest.reset");
+        Metrics.record("MetricsTest.reset.rows", 3);
+        Metrics.reset();
+
+        assertEquals(0, Metrics.counter("MetricsTest.reset").getValue());
+        assertEquals(0, Metrics.histogram("MetricsTest.reset.rows").getCount());
+    }
+
+    @Test
+    public void testDump() {
+        Metrics.add("MetricsTest.dump.b", 2);
+        Metrics.record("MetricsTest.dump.a.rows", 7);
+
+        String dump = Metrics.dump();
+        int rows = dump.indexOf("MetricsTest.dump.a.rows n=1 mean=7.0 p50=7 p99=7 max=7\n");
+        int counter = dump.indexOf("MetricsTest.dump.b 2\n");
+        assertTrue(dump, rows >= 0);
+        assertTrue(dump, counter > rows);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.datamodel.metrics;
+
+import com.ivanbratoev.festpal.BuildConfig;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs on Robolectric for the org.json classes the exported trace is parsed with
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TracerTest {
+
+    @Before
+    public void setUp() {
+        Tracer.setCapacity(4);
+        Tracer.setSampleInterval(1);
+        Tracer.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        Tracer.setEnabled(false);
+        Tracer.setSampleInterval(1);
+        Tracer.setCapacity(Tracer.DEFAULT_CAPACITY);
+    }
+
+    @Test
+    public void testNothingRecordedOutsideSession() {
+        Tracer.stop("test", "outside", Tracer.start());
+        assertEquals(0, Tracer.size());
+
+        Tracer.setEnabled(false);
+        assertFalse(Tracer.beginSession());
+        Tracer.stop("test", "disabled", Tracer.start());
+        assertEquals(0, Tracer.size());
+    }
+
+    @Test
+    public void testRingBufferKeepsNewestSpans() throws Exception {
+        assertTrue(Tracer.beginSession());
+        for (int i = 0; i < 6; i++)
+            Tracer.stop("test", "span", Tracer.start(), i);
+        Tracer.endSession();
+
+        assertEquals(4, Tracer.size());
+        JSONArray events = new JSONObject(Tracer.exportChromeTrace()).getJSONArray("traceEvents");
+        assertEquals(4, events.length());
+        for (int i = 0; i < 4; i++) {
+            JSONObject event = events.getJSONObject(i);
+            assertEquals("span", event.getString("name"));
+            assertEquals("test", event.getString("cat"));
+            assertEquals("X", event.getString("ph"));
+            assertEquals(Thread.currentThread().getId(), event.getLong("tid"));
+            assertEquals(i + 2, event.getJSONObject("args").getLong("id"));
+        }
+    }
+
+    @Test
+    public void testSpanWithoutArgument() throws Exception {
+        Tracer.beginSession();
+        Tracer.stop("test", "quoted \"name\"", Tracer.start());
+        Tracer.endSession();
+
+        JSONObject event = new JSONObject(Tracer.exportChromeTrace())
+                .getJSONArray("traceEvents").getJSONObject(0);
+        assertEquals("quoted \"name\"", event.getString("name"));
+        assertFalse(event.has("args"));
+    }
+
+    @Test
+    public void testQuoteEscapesControlCharacters() {
+        assertEquals("\"a\\\"b\\\\c\\nd\\u0001\"", Tracer.quote("a\"b\\c\nd\u0001"));
+    }
+
+    @Test
+    public void testSampling() {
+        Tracer.setSampleInterval(3);
+        int sampled = 0;
+        for (int i = 0; i < 9; i++) {
+            if (Tracer.beginSession()) {
+                sampled++;
+                Tracer.stop("test", "sampled", Tracer.start());
+                Tracer.endSession();
+            } else {
+                Tracer.stop("test", "skipped", Tracer.start());
+            }
+        }
+        assertEquals(3, sampled);
+        assertEquals(3, Tracer.size());
+    }
+
+    @Test
+    public void testClear() {
+        Tracer.beginSession();
+        Tracer.stop("test", "span", Tracer.start());
+        Tracer.endSession();
+        Tracer.clear();
+
+        assertEquals(0, Tracer.size());
+        assertEquals("{\"traceEvents\":[],\"displayTimeUnit\":\"ms\"}", Tracer.exportChromeTrace());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.frontend.currentfestival;
+
+import com.ivanbratoev.festpal.datamodel.Benchmark;
+import com.ivanbratoev.festpal.datamodel.ScheduledConcert;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Cost of diffing a large lineup after a synchronisation, which has to stay within a few
+ * milliseconds so the list updates right after it
+ */
+public class ConcertListDiffBenchmark {
+
+    private static final int ROWS = 2_000;
+    /**
+     * a 2,000 row diff in 5 ms
+     */
+    private static final double MINIMUM_ROWS_PER_SECOND = ROWS / 0.005;
+
+    private List<ScheduledConcert> before;
+
+    @Before
+    public void setUp() {
+        before = ConcertListDiffTest.lineup(ROWS);
+    }
+
+    @Test
+    public void unchanged() throws Exception {
+        measure("ConcertListDiff unchanged", new ArrayList<>(before));
+    }
+
+    @Test
+    public void threeRescheduled() throws Exception {
+        List<ScheduledConcert> after = new ArrayList<>(before);
+        after.set(10, ConcertListDiffTest.withStart(after.get(10),
+                after.get(1_500).getStart() + 1));
+        after.set(700, ConcertListDiffTest.withStart(after.get(700), after.get(5).getStart() + 1));
+        after.set(1_999, ConcertListDiffTest.withStart(after.get(1_999),
+                after.get(999).getStart() + 1));
+        ConcertListDiffTest.sortByStart(after);
+        measure("ConcertListDiff three rescheduled", after);
+    }
+
+    @Test
+    public void tenPercentShuffled() throws Exception {
+        List<ScheduledConcert> after = new ArrayList<>(before);
+        Random random = new Random(ROWS);
+        for (int i = 0; i < ROWS / 10; i++)
+            after.add(random.nextInt(ROWS), after.remove(random.nextInt(ROWS)));
+        measure("ConcertListDiff ten percent moved", after);
+    }
+
+    @Test
+    public void reversed() throws Exception {
+        List<ScheduledConcert> after = new ArrayList<>(before);
+        Collections.reverse(after);
+        measure("ConcertListDiff reversed", after);
+    }
+
+    private void measure(String name, List<ScheduledConcert> after) throws Exception {
+        Benchmark.Result result = Benchmark.measure(name, ROWS, diff(after));
+        Assert.assertTrue(result.toString(), result.getMedian() > MINIMUM_ROWS_PER_SECOND);
+    }
+
+    private Benchmark.Operation diff(final List<ScheduledConcert> after) {
+        return new Benchmark.Operation() {
+            @Override
+            public int run() {
+                return ConcertListDiff.compute(before, after).getOperations().size();
+            }
+        };
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.frontend.currentfestival;
+
+import com.ivanbratoev.festpal.datamodel.ScheduledConcert;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class ConcertListDiffTest {
+
+    @Test
+    public void identicalListsHaveNoOperations() {
+        List<ScheduledConcert> lineup = lineup(100);
+        ConcertListDiff diff = ConcertListDiff.compute(lineup, new ArrayList<>(lineup));
+        Assert.assertTrue(diff.getOperations().isEmpty());
+        Assert.assertFalse(diff.isStructural());
+    }
+
+    @Test
+    public void changedRowsOnlyChanged() {
+        List<ScheduledConcert> before = lineup(10);
+        List<ScheduledConcert> after = new ArrayList<>(before);
+        after.set(3, withArtist(after.get(3), "Renamed"));
+        after.set(4, withArtist(after.get(4), "Renamed"));
+        after.set(8, withArtist(after.get(8), "Renamed"));
+
+        ConcertListDiff diff = ConcertListDiff.compute(before, after);
+        Assert.assertFalse(diff.isStructural());
+        Assert.assertEquals("[change 3+2, change 8+1]", diff.getOperations().toString());
+        checkApplies(before, after, diff);
+    }
+
+    @Test
+    public void singleMoveForRotatedList() {
+        List<ScheduledConcert> before = lineup(5);
+        List<ScheduledConcert> after = new ArrayList<>(before);
+        Collections.rotate(after, -1);
+
+        ConcertListDiff diff = ConcertListDiff.compute(before, after);
+        Assert.assertEquals("[move 0->4]", diff.getOperations().toString());
+        Assert.assertEquals(4, diff.getNewPosition(0));
+        Assert.assertEquals(0, diff.getNewPosition(1));
+        checkApplies(before, after, diff);
+    }
+
+    @Test
+    public void removalsAndInsertionsGrouped() {
+        List<ScheduledConcert> before = lineup(10);
+        List<ScheduledConcert> after = new ArrayList<>(before.subList(0, 2));
+        after.add(concert(100, "New 1", 0));
+        after.add(concert(101, "New 2", 0));
+        after.addAll(before.subList(5, 10));
+
+        ConcertListDiff diff = ConcertListDiff.compute(before, after);
+        Assert.assertEquals("[remove 2+3, insert 2+2]", diff.getOperations().toString());
+        Assert.assertEquals(-1, diff.getNewPosition(3));
+        Assert.assertEquals(4, diff.getNewPosition(5));
+        checkApplies(before, after, diff);
+    }
+
+    @Test
+    public void rescheduledConcertsMovedAndChanged() {
+        List<ScheduledConcert> before = lineup(2_000);
+        List<ScheduledConcert> after = new ArrayList<>(before);
+        // three set times changed by the organisers, the list is ordered by start time
+        after.set(10, withStart(after.get(10), after.get(1_500).getStart() + 1));
+        after.set(700, withStart(after.get(700), after.get(5).getStart() + 1));
+        after.set(1_999, withStart(after.get(1_999), after.get(999).getStart() + 1));
+        sortByStart(after);
+
+        ConcertListDiff diff = ConcertListDiff.compute(before, after);
+        int moves = 0;
+        int changes = 0;
+        for (ConcertListDiff.Operation operation : diff.getOperations())
+            if (operation.getType() == ConcertListDiff.MOVE)
+                moves++;
+            else if (operation.getType() == ConcertListDiff.CHANGE)
+                changes += operation.getCount();
+        Assert.assertEquals(3, moves);
+        Assert.assertEquals(3, changes);
+        checkApplies(before, after, diff);
+    }
+
+    @Test
+    public void randomEditsApply() {
+        Random random = new Random(43);
+        for (int round = 0; round < 500; round++) {
+            List<ScheduledConcert> before = lineup(random.nextInt(40));
+            List<ScheduledConcert> after = new ArrayList<>(before);
+            int nextId = 1_000;
+            int edits = random.nextInt(10);
+            for (int i = 0; i < edits; i++) {
+                int action = random.nextInt(4);
+                if (action == 0 || after.isEmpty()) {
+                    after.add(random.nextInt(after.size() + 1),
+                            concert(nextId, "Added " + nextId, nextId));
+                    nextId++;
+                } else if (action == 1) {
+                    after.remove(random.nextInt(after.size()));
+                } else if (action == 2) {
+                    after.add(random.nextInt(after.size()),
+                            after.remove(random.nextInt(after.size())));
+                } else {
+                    int position = random.nextInt(after.size());
+                    after.set(position, withArtist(after.get(position), "Changed " + i));
+                }
+            }
+            checkApplies(before, after, ConcertListDiff.compute(before, after));
+        }
+    }
+
+    @Test
+    public void reversedListApplies() {
+        List<ScheduledConcert> before = lineup(300);
+        List<ScheduledConcert> after = new ArrayList<>(before);
+        Collections.reverse(after);
+        ConcertListDiff diff = ConcertListDiff.compute(before, after);
+        // one row stays in place, every other one is moved
+        Assert.assertEquals(before.size() - 1, diff.getOperations().size());
+        checkApplies(before, after, diff);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateIdRejected() {
+        List<ScheduledConcert> lineup = lineup(3);
+        ConcertListDiff.compute(lineup, Arrays.asList(lineup.get(0), lineup.get(0)));
+    }
+
+    /**
+     * replays the operations the way an adapter would and compares the result
+     */
+    private static void checkApplies(List<ScheduledConcert> before, List<ScheduledConcert> after,
+                                     ConcertListDiff diff) {
+        List<ScheduledConcert> list = new ArrayList<>(before);
+        for (ConcertListDiff.Operation operation : diff.getOperations()) {
+            switch (operation.getType()) {
+                case ConcertListDiff.REMOVE:
+                    list.subList(operation.getPosition(),
+                            operation.getPosition() + operation.getCount()).clear();
+                    break;
+                case ConcertListDiff.MOVE:
+                    list.add(operation.getToPosition(), list.remove(operation.getPosition()));
+                    break;
+                case ConcertListDiff.INSERT:
+                    list.addAll(operation.getPosition(), after.subList(operation.getPosition(),
+                            operation.getPosition() + operation.getCount()));
+                    break;
+                default:
+                    for (int i = 0; i < operation.getCount(); i++) {
+                        int position = operation.getPosition() + i;
+                        Assert.assertEquals(after.get(position).getId(),
+                                list.get(position).getId());
+                        list.set(position, after.get(position));
+                    }
+            }
+        }
+        Assert.assertEquals(after, list);
+    }
+
+    static List<ScheduledConcert> lineup(int size) {
+        List<ScheduledConcert> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            result.add(concert(i, "Artist " + i, i * 600_000L));
+        return result;
+    }
+
+    private static ScheduledConcert concert(long id, String artist, long start) {
+        return new ScheduledConcert(id, id, 1, artist, (int) (id % 3), 1, start,
+                start + 3_600_000L, false);
+    }
+
+    private static ScheduledConcert withArtist(ScheduledConcert concert, String artist) {
+        return new ScheduledConcert(concert.getId(), concert.getExternalId(),
+                concert.getFestivalId(), artist, concert.getStage(), concert.getDay(),
+                concert.getStart(), concert.getEnd(), concert.isToNotify());
+    }
+
+    static ScheduledConcert withStart(ScheduledConcert concert, long start) {
+        return new ScheduledConcert(concert.getId(), concert.getExternalId(),
+                concert.getFestivalId(), concert.getArtist(), concert.getStage(),
+                concert.getDay(), start, start + 3_600_000L, concert.isToNotify());
+    }
+
+    static void sortByStart(List<ScheduledConcert> list) {
+        Collections.sort(list, new Comparator<ScheduledConcert>() {
+            @Override
+            public int compare(ScheduledConcert a, ScheduledConcert b) {
+                return (a.getStart() < b.getStart()) ? -1 : ((a.getStart() == b.getStart()) ?
+                        0 : 1);
+            }
+        });
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.frontend.currentfestival;
+
+import com.ivanbratoev.festpal.datamodel.Benchmark;
+import com.ivanbratoev.festpal.datamodel.ScheduledConcert;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Cost of the timetable work done per frame and per lineup update for a 20 stage, 5 day
+ * festival. Finding the visible cells has to take a small part of a 16 ms frame
+ */
+public class TimetableLayoutBenchmark {
+
+    private static final int STAGES = 20;
+    private static final int DAYS = 5;
+    /**
+     * frames per second of the visible cells lookup, a tenth of a 60 fps frame
+     */
+    private static final double MINIMUM_FRAMES_PER_SECOND = 600;
+
+    private List<ScheduledConcert> lineup;
+    private TimetableLayout layout;
+
+    @Before
+    public void setUp() {
+        lineup = TimetableLayoutTest.festival(new Random(STAGES), STAGES, DAYS);
+        layout = new TimetableLayout();
+        layout.setConcerts(lineup);
+    }
+
+    @Test
+    public void visibleCells() throws Exception {
+        final List<TimetableLayout.Cell> visible = new ArrayList<>();
+        final float height = layout.getHeight();
+        Benchmark.Result result = Benchmark.measure("TimetableLayout visible cells", 1,
+                new Benchmark.Operation() {
+                    private float top;
+
+                    @Override
+                    public int run() {
+                        // a phone screen of 4 columns and 4 hours, scrolling down
+                        top = (top + 7) % height;
+                        layout.getVisibleCells(3, 6, top, top + 240, visible);
+                        return visible.size();
+                    }
+                });
+        Assert.assertTrue(result.toString(), result.getMedian() > MINIMUM_FRAMES_PER_SECOND);
+    }
+
+    @Test
+    public void fullLayout() throws Exception {
+        Benchmark.measure("TimetableLayout full layout", lineup.size(),
+                new Benchmark.Operation() {
+                    @Override
+                    public int run() {
+                        TimetableLayout fresh = new TimetableLayout();
+                        fresh.setConcerts(lineup);
+                        return fresh.getColumnCount();
+                    }
+                });
+    }
+
+    @Test
+    public void singleConcertUpdate() throws Exception {
+        final List<ScheduledConcert> changed = new ArrayList<>(lineup);
+        ScheduledConcert concert = changed.get(changed.size() / 2);
+        changed.set(changed.size() / 2, new ScheduledConcert(concert.getId(),
+                concert.getExternalId(), concert.getFestivalId(), concert.getArtist(),
+                concert.getStage(), concert.getDay(), concert.getStart() + 60_000,
+                concert.getEnd() + 60_000, concert.isToNotify()));
+        Benchmark.measure("TimetableLayout single concert update", 1,
+                new Benchmark.Operation() {
+                    private boolean flip;
+
+                    @Override
+                    public int run() {
+                        flip = !flip;
+                        return layout.setConcerts(flip ? changed : lineup) ? 1 : 0;
+                    }
+                });
+    }
+}
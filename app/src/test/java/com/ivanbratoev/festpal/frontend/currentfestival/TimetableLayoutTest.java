@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 Ivan Bratoev
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.ivanbratoev.festpal.frontend.currentfestival;
+
+import com.ivanbratoev.festpal.datamodel.ScheduledConcert;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class TimetableLayoutTest {
+
+    private static final long MINUTE = 60_000;
+    private static final long DAY = 24 * 60 * MINUTE;
+    /**
+     * 16:00 on the first day
+     */
+    private static final long FIRST_START = 16 * 60 * MINUTE;
+
+    @Test
+    public void stagesBecomeSortedColumns() {
+        TimetableLayout layout = new TimetableLayout();
+        List<ScheduledConcert> lineup = new ArrayList<>();
+        lineup.add(concert(1, 7, 1, FIRST_START, 60));
+        lineup.add(concert(2, 2, 1, FIRST_START, 60));
+        lineup.add(concert(3, 4, 1, FIRST_START, 60));
+        Assert.assertTrue(layout.setConcerts(lineup));
+
+        Assert.assertEquals(3, layout.getColumnCount());
+        Assert.assertEquals(2, layout.getStage(0));
+        Assert.assertEquals(4, layout.getStage(1));
+        Assert.assertEquals(7, layout.getStage(2));
+    }
+
+    @Test
+    public void nightsTakeNoSpace() {
+        TimetableLayout layout = new TimetableLayout();
+        List<ScheduledConcert> lineup = new ArrayList<>();
+        lineup.add(concert(1, 1, 1, FIRST_START, 120));
+        lineup.add(concert(2, 1, 2, FIRST_START + DAY, 60));
+        layout.setConcerts(lineup);
+
+        Assert.assertEquals(2, layout.getDayCount());
+        Assert.assertEquals(TimetableLayout.DAY_HEADER, layout.getDayTop(0), 0);
+        Assert.assertEquals(TimetableLayout.DAY_HEADER + 120, layout.getDayBottom(0), 0);
+        Assert.assertEquals(2 * TimetableLayout.DAY_HEADER + 120, layout.getDayTop(1), 0);
+        Assert.assertEquals(2 * TimetableLayout.DAY_HEADER + 180, layout.getHeight(), 0);
+    }
+
+    @Test
+    public void visibleCellsMatchBruteForce() {
+        Random random = new Random(44);
+        TimetableLayout layout = new TimetableLayout();
+        List<ScheduledConcert> lineup = festival(random, 20, 5);
+        layout.setConcerts(lineup);
+        List<TimetableLayout.Cell> all = new ArrayList<>();
+        layout.getVisibleCells(0, Integer.MAX_VALUE, -1, Float.MAX_VALUE, all);
+        Assert.assertEquals(lineup.size(), all.size());
+
+        List<TimetableLayout.Cell> visible = new ArrayList<>();
+        for (int round = 0; round < 200; round++) {
+            int firstColumn = random.nextInt(20);
+            int lastColumn = firstColumn + random.nextInt(5);
+            float top = random.nextFloat() * layout.getHeight();
+            float bottom = top + random.nextFloat() * 600;
+            layout.getVisibleCells(firstColumn, lastColumn, top, bottom, visible);
+
+            Set<TimetableLayout.Cell> expected = new HashSet<>();
+            for (TimetableLayout.Cell cell : all)
+                if (cell.column >= firstColumn && cell.column <= lastColumn &&
+                        cell.bottom > top && cell.top < bottom)
+                    expected.add(cell);
+            Assert.assertEquals(expected, new HashSet<>(visible));
+            Assert.assertEquals(expected.size(), visible.size());
+        }
+    }
+
+    @Test
+    public void unchangedCellsKeptOnUpdate() {
+        TimetableLayout layout = new TimetableLayout();
+        List<ScheduledConcert> lineup = new ArrayList<>();
+        lineup.add(concert(1, 1, 1, FIRST_START, 60));
+        lineup.add(concert(2, 1, 1, FIRST_START + 90 * MINUTE, 60));
+        lineup.add(concert(3, 2, 1, FIRST_START + 30 * MINUTE, 60));
+        layout.setConcerts(lineup);
+        TimetableLayout.Cell kept = cell(layout, 3);
+        kept.label = "Artist 3";
+        TimetableLayout.Cell moved = cell(layout, 2);
+        moved.label = "Artist 2";
+
+        Assert.assertFalse(layout.setConcerts(new ArrayList<>(lineup)));
+        // the second concert now plays before the first one on the same stage
+        lineup.set(1, concert(2, 1, 1, FIRST_START + 15 * MINUTE, 30));
+        Assert.assertTrue(layout.setConcerts(lineup));
+
+        Assert.assertSame(kept, cell(layout, 3));
+        Assert.assertEquals("Artist 3", kept.label);
+        Assert.assertSame(moved, cell(layout, 2));
+        Assert.assertEquals("Artist 2", moved.label);
+        Assert.assertEquals(TimetableLayout.DAY_HEADER + 15, moved.top, 0);
+        Assert.assertEquals(TimetableLayout.DAY_HEADER + 45, moved.bottom, 0);
+
+        lineup.remove(2);
+        layout.setConcerts(lineup);
+        Assert.assertEquals(1, layout.getColumnCount());
+        Assert.assertNull(cell(layout, 3));
+    }
+
+    private static TimetableLayout.Cell cell(TimetableLayout layout, long id) {
+        List<TimetableLayout.Cell> all = new ArrayList<>();
+        layout.getVisibleCells(0, Integer.MAX_VALUE, -1, Float.MAX_VALUE, all);
+        for (TimetableLayout.Cell cell : all)
+            if (cell.concert.getId() == id)
+                return cell;
+        return null;
+    }
+
+    /**
+     * @return a lineup with concerts of 30 to 90 minutes on every stage from 14:00 to about
+     * 02:00 every day, some of them overlapping
+     */
+    static List<ScheduledConcert> festival(Random random, int stages, int days) {
+        List<ScheduledConcert> result = new ArrayList<>();
+        long id = 0;
+        for (int day = 1; day <= days; day++)
+            for (int stage = 1; stage <= stages; stage++) {
+                long start = (day - 1) * DAY + 14 * 60 * MINUTE;
+                while (start < (day - 1) * DAY + 26 * 60 * MINUTE) {
+                    int length = 30 + random.nextInt(60);
+                    result.add(concert(id++, stage, day, start, length));
+                    start += (length - 10 + random.nextInt(30)) * MINUTE;
+                }
+            }
+        return result;
+    }
+
+    private static ScheduledConcert concert(long id, int stage, int day, long start,
+                                            int minutes) {
+        return new ScheduledConcert(id, id, 1, "Artist " + id, stage, day, start,
+                start + minutes * MINUTE, false);
+    }
+}